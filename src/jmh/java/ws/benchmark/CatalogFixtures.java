@@ -0,0 +1,59 @@
+package ws.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+
+/**
+ * Detached Product graphs shared by the benchmarks.
+ */
+final class CatalogFixtures {
+	private CatalogFixtures() {}
+	
+	/**
+	 * Builds a complete Product tree with ids assigned, as it would be read with all relations.
+	 * @param depth number of levels, 1 being a single Product
+	 * @param fanOut number of children of every non-leaf Product
+	 * @param imagesPerProduct number of Images of every Product
+	 * @return Product root of the tree
+	 */
+	static Product tree(int depth, int fanOut, int imagesPerProduct){
+		return node(null, depth, fanOut, imagesPerProduct, new long[]{1L, 1L});
+	}
+	
+	/**
+	 * Builds a flat batch of new Products, each one with a reference to an existing parent.
+	 */
+	static List<Product> batch(int size, Long parentId){
+		Product parent = new Product();
+		parent.setId(parentId);
+		List<Product> products = new ArrayList<Product>(size);
+		for(int i = 0; i < size; i++){
+			Product product = new Product("Part " + i, "Vintage muscle part");
+			product.setParent(parent);
+			products.add(product);
+		}
+		return products;
+	}
+	
+	private static Product node(Product parent, int depth, int fanOut, int imagesPerProduct, long[] ids){
+		Product product = new Product("Part " + ids[0], "Vintage muscle part");
+		product.setId(ids[0]++);
+		product.setParent(parent);
+		for(int i = 0; i < imagesPerProduct; i++){
+			Image image = new Image(ImageType.PNG);
+			image.setId(ids[1]++);
+			image.setProduct(product);
+			product.getImages().add(image);
+		}
+		if(depth > 1){
+			for(int i = 0; i < fanOut; i++){
+				product.getChildren().add(node(product, depth - 1, fanOut, imagesPerProduct, ids));
+			}
+		}
+		return product;
+	}
+}
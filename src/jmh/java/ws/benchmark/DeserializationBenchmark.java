@@ -0,0 +1,77 @@
+package ws.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+
+/**
+ * Jackson deserialization of the create/update payloads accepted by the endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeserializationBenchmark {
+	private static final TypeReference<List<Product>> PRODUCT_LIST = new TypeReference<List<Product>>() {};
+	
+	private ObjectMapper mapper;
+	
+	private byte[] productPayload;
+	
+	private byte[] batchPayload;
+	
+	private byte[] imagePayload;
+	
+	@Setup
+	public void setup() throws IOException {
+		mapper = Jackson2ObjectMapperBuilder.json().build();
+		
+		Product parent = new Product();
+		parent.setId(1L);
+		Product product = new Product("Camaro", "Vintage muscle car");
+		product.setParent(parent);
+		productPayload = mapper.writeValueAsBytes(product);
+		
+		batchPayload = mapper.writeValueAsBytes(CatalogFixtures.batch(1000, 1L));
+		
+		Image image = new Image(ImageType.PNG);
+		image.setProduct(parent);
+		imagePayload = mapper.writeValueAsBytes(image);
+	}
+	
+	@Benchmark
+	public Product readProduct() throws IOException {
+		return mapper.readValue(productPayload, Product.class);
+	}
+	
+	@Benchmark
+	public List<Product> readProductBatch() throws IOException {
+		return mapper.readValue(batchPayload, PRODUCT_LIST);
+	}
+	
+	@Benchmark
+	public Image readImage() throws IOException {
+		return mapper.readValue(imagePayload, Image.class);
+	}
+}
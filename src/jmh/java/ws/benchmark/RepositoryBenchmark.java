@@ -0,0 +1,124 @@
+package ws.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.StringUtils;
+
+import ws.Application;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.repository.ImageRepository;
+import ws.persistence.repository.ProductFetchPlan;
+import ws.persistence.repository.ProductRepository;
+import ws.validator.ProductValidator;
+
+/**
+ * Repository round-trips against the embedded H2 database, through the application context without the web layer.
+ * The catalog is a tree of depth 6, fan-out 4 and 2 Images per Product (1365 Products), created once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+	private ConfigurableApplicationContext context;
+	
+	private ProductRepository productRepo;
+	
+	private ProductValidator productValidator;
+	
+	private Product root;
+	
+	private Product leaf;
+	
+	private List<Long> leafAncestors;
+	
+	private List<Product> batch;
+	
+	@Setup
+	public void setup() {
+		context = new SpringApplicationBuilder(Application.class).web(false)
+				.properties("logging.level.root=warn", "spring.main.banner-mode=off")
+				.run();
+		productRepo = context.getBean(ProductRepository.class);
+		productValidator = context.getBean(ProductValidator.class);
+		
+		root = CatalogFixtures.tree(6, 4, 2);
+		List<Product> products = new ArrayList<Product>();
+		List<Image> images = new ArrayList<Image>();
+		collect(root, products, images);
+		productRepo.insertAll(products);
+		context.getBean(ImageRepository.class).insertAll(images);
+		leaf = products.get(products.size() - 1);
+		leafAncestors = new ArrayList<Long>();
+		for(String ancestor : StringUtils.tokenizeToStringArray(leaf.getPath(), "/")){
+			leafAncestors.add(Long.valueOf(ancestor));
+		}
+		batch = CatalogFixtures.batch(100, root.getId());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+	
+	@Benchmark
+	public Product findOne() {
+		return productRepo.findOne(leaf.getId(), ProductFetchPlan.NONE);
+	}
+	
+	@Benchmark
+	public Product findOneWithRelations() {
+		return productRepo.findOne(root.getId(), ProductFetchPlan.ALL);
+	}
+	
+	@Benchmark
+	public List<Product> findPage() {
+		return productRepo.findPage(0L, 100, ProductFetchPlan.NONE);
+	}
+	
+	@Benchmark
+	public List<Product> findSubtree() {
+		return productRepo.findSubtree(root.getSubtreePath(), Integer.MAX_VALUE);
+	}
+	
+	@Benchmark
+	public List<Product> findAncestors() {
+		return productRepo.findAncestors(leafAncestors);
+	}
+	
+	@Benchmark
+	public boolean validParent() {
+		return productValidator.hasValidParent(leaf);
+	}
+	
+	@Benchmark
+	public boolean validParents() {
+		return productValidator.hasValidParents(batch);
+	}
+	
+	private static void collect(Product product, List<Product> products, List<Image> images){
+		products.add(product);
+		images.addAll(product.getImages());
+		for(Product child : product.getChildren()){
+			collect(child, products, images);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package ws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ws.endpoint.representation.StreamedRepresentation;
+import ws.persistence.model.Product;
+
+/**
+ * Jackson serialization of Product graphs (with @JsonIdentityInfo references) by tree depth and number of Images per Product.
+ * Every tree has a fan-out of 2, so a depth of d holds 2^d - 1 Products.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+	@Param({"1", "4", "8"})
+	int depth;
+	
+	@Param({"0", "5", "20"})
+	int imagesPerProduct;
+	
+	private ObjectMapper mapper;
+	
+	private ObjectMapper streamMapper;
+	
+	private Product root;
+	
+	@Setup
+	public void setup() {
+		//same defaults as the mapper Spring Boot hands to Jersey
+		mapper = Jackson2ObjectMapperBuilder.json().build();
+		streamMapper = StreamedRepresentation.mapper(mapper);
+		root = CatalogFixtures.tree(depth, 2, imagesPerProduct);
+	}
+	
+	@Benchmark
+	public byte[] serializeGraph() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(root);
+	}
+	
+	@Benchmark
+	public byte[] serializeStreamed() throws JsonProcessingException {
+		return streamMapper.writeValueAsBytes(root);
+	}
+}
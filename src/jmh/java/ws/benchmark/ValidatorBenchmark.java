@@ -0,0 +1,75 @@
+package ws.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.validator.ImageValidator;
+import ws.validator.ProductValidator;
+
+/**
+ * In-memory validator paths. Checks that go to the database are measured by RepositoryBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+	private final ProductValidator productValidator = new ProductValidator();
+	
+	private final ImageValidator imageValidator = new ImageValidator();
+	
+	private Product product;
+	
+	private Image image;
+	
+	private List<Product> batch;
+	
+	@Setup
+	public void setup() {
+		product = new Product("Camaro", "Vintage muscle car");
+		image = new Image(ImageType.PNG);
+		image.setProduct(product);
+		
+		//a batch of 1000 chained Products, each one the parent of the next
+		batch = new ArrayList<Product>();
+		Product parent = null;
+		for(int i = 0; i < 1000; i++){
+			Product child = new Product("Part " + i, "Vintage muscle part");
+			child.setParent(parent);
+			batch.add(child);
+			parent = child;
+		}
+	}
+	
+	@Benchmark
+	public boolean productFields() {
+		return productValidator.hasValidFields(product);
+	}
+	
+	@Benchmark
+	public boolean imageFields() {
+		return imageValidator.hasValidFields(image);
+	}
+	
+	@Benchmark
+	public boolean acyclicBatch() {
+		return productValidator.hasAcyclicParents(batch);
+	}
+}
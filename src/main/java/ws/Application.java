@@ -2,6 +2,7 @@ package ws;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * System's main class. All subpackages and classes are scanned for spring annotations to be managed by spring.﻿
@@ -9,6 +10,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  *
  */
 @SpringBootApplication
+@EnableScheduling
 public class Application {
     public static void main(String[] args) throws Exception {
         SpringApplication.run(Application.class, args);
@@ -0,0 +1,326 @@
+package ws.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+
+/**
+ * <pre>
+ * Append-only local store of binary content (image bytes and their derivatives), keyed by strings such as "42" or "42/thumbnail".
+ * Every write appends a record (key, length, bytes) to a single data file and a delete appends a tombstone (key, -1);
+ * the in-memory index of the latest record per key is rebuilt from the record headers on startup, and a torn last record is truncated.
+ * Bytes never go through the heap as a whole: uploads are spooled to a temporary file and appended with FileChannel.transferFrom
+ * (which maps the source file), and downloads are copied from the data file to the response in bounded chunks with FileChannel.transferTo.
+ * Replaced and deleted content is not reclaimed. 
+ * The store lives in ws.blob.directory; when not set, in a temporary directory removed on shutdown, like the create-drop database.
+ * </pre>
+ */
+@Component
+public class BlobStore implements MetricsSource {
+	private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+	
+	static final String DATA_FILE = "blobs.dat";
+	
+	/**
+	 * Keys are written in record headers as UTF-8 bytes preceded by their length; longer keys are refused.
+	 */
+	static final int MAX_KEY_LENGTH = 1024;
+	
+	private static final long TOMBSTONE = -1;
+	
+	/**
+	 * Maximum number of bytes moved by a single channel transfer.
+	 */
+	private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+	
+	private final Path directory;
+	
+	private final boolean temporary;
+	
+	private final long maxSize;
+	
+	private final FileChannel data;
+	
+	private final Map<String, Blob> index = new ConcurrentHashMap<String, Blob>();
+	
+	private final LongAdder bytesWritten = new LongAdder();
+	
+	private final LongAdder bytesRead = new LongAdder();
+	
+	@Autowired
+	public BlobStore(@Value("${ws.blob.directory:}") String directory, @Value("${ws.blob.max-size:67108864}") long maxSize) throws IOException {
+		this.temporary = !StringUtils.hasText(directory);
+		this.directory = temporary ? Files.createTempDirectory("blobs") : Files.createDirectories(Paths.get(directory));
+		this.maxSize = maxSize;
+		this.data = FileChannel.open(this.directory.resolve(DATA_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		recover();
+	}
+	
+	/**
+	 * Stores the content of the given key, replacing any previous one. The content is read until its end.
+	 * @param key of the content, at most MAX_KEY_LENGTH UTF-8 bytes
+	 * @param content bytes to be stored
+	 * @return Blob stored, or null if the content exceeds ws.blob.max-size (nothing is stored)
+	 * @throws IOException if the content cannot be read or stored
+	 */
+	public Blob write(String key, InputStream content) throws IOException {
+		if(key.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_LENGTH){
+			throw new IllegalArgumentException("Key too long");
+		}
+		Path spool = Files.createTempFile(directory, "upload", ".tmp");
+		try (FileChannel upload = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+			ReadableByteChannel source = Channels.newChannel(content);
+			long size = 0;
+			long transferred;
+			//one byte beyond the maximum is enough to refuse the content
+			while((transferred = upload.transferFrom(source, size, Math.min(TRANSFER_SIZE, maxSize + 1 - size))) > 0){
+				size += transferred;
+				if(size > maxSize){
+					return null;
+				}
+			}
+			return append(key, upload, size);
+		}
+	}
+	
+	/**
+	 * @param key of the content
+	 * @return Blob latest content of the key, or null if none
+	 */
+	public Blob find(String key){
+		return index.get(key);
+	}
+	
+	/**
+	 * Writes a range of a stored content to the target, in chunks of at most TRANSFER_SIZE bytes.
+	 * Targets other than file or socket channels (e.g. a wrapped servlet stream) are written through a small temporary buffer.
+	 * @param blob content to be read, as returned by find
+	 * @param from first byte to be written, relative to the content
+	 * @param count number of bytes to be written
+	 * @param target channel to write to
+	 * @throws IOException if the content cannot be read or the target written
+	 */
+	public void transferTo(Blob blob, long from, long count, WritableByteChannel target) throws IOException {
+		if(from < 0 || count < 0 || from + count > blob.length){
+			throw new IllegalArgumentException("Range out of bounds");
+		}
+		long position = blob.offset + from;
+		long end = position + count;
+		while(position < end){
+			position += data.transferTo(position, Math.min(end - position, TRANSFER_SIZE), target);
+		}
+		bytesRead.add(count);
+	}
+	
+	/**
+	 * Opens a stored content for reading, for consumers that need the bytes themselves (e.g. image decoding).
+	 * @param blob content to be read, as returned by find
+	 * @return InputStream reading the content with positional reads, not to be shared between threads
+	 */
+	public InputStream open(Blob blob){
+		return new InputStream() {
+			private long position = blob.offset;
+			
+			private final long end = blob.offset + blob.length;
+			
+			@Override
+			public int read() throws IOException {
+				byte[] single = new byte[1];
+				return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(position >= end){
+					return -1;
+				}
+				int read = data.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+				if(read > 0){
+					position += read;
+					bytesRead.add(read);
+				}
+				return read;
+			}
+			
+			@Override
+			public int available() {
+				return (int) Math.min(Integer.MAX_VALUE, end - position);
+			}
+		};
+	}
+	
+	/**
+	 * Removes the content of the given key.
+	 * @param key of the content
+	 * @return boolean true if there was a content to be removed
+	 * @throws UncheckedIOException if the tombstone cannot be written
+	 */
+	public boolean delete(String key){
+		synchronized (data) {
+			if(index.remove(key) == null){
+				return false;
+			}
+			try {
+				writeFully(header(key, TOMBSTONE), data.size());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return true;
+		}
+	}
+	
+	@PreDestroy
+	public void close() throws IOException {
+		data.close();
+		if(temporary){
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+	
+	@Override
+	public void collect(MetricsWriter writer) {
+		long live = index.values().stream().mapToLong(Blob::getLength).sum();
+		writer.family("ws_blob_store_blobs", "gauge", "Contents in the blob store");
+		writer.sample("ws_blob_store_blobs", index.size());
+		writer.family("ws_blob_store_bytes", "gauge", "Size of the blob store data file, and of the contents it currently holds");
+		try {
+			writer.sample("ws_blob_store_bytes", data.size(), "kind", "file");
+		} catch (IOException e) {
+			log.warn("Blob store size unavailable", e);
+		}
+		writer.sample("ws_blob_store_bytes", live, "kind", "live");
+		writer.family("ws_blob_store_transferred_bytes_total", "counter", "Content bytes written to and read from the blob store");
+		writer.sample("ws_blob_store_transferred_bytes_total", bytesWritten.sum(), "direction", "write");
+		writer.sample("ws_blob_store_transferred_bytes_total", bytesRead.sum(), "direction", "read");
+	}
+	
+	/**
+	 * Appends a record with the spooled content. A torn record (header without all of its bytes) is detected by its length on recovery.
+	 */
+	private Blob append(String key, FileChannel upload, long size) throws IOException {
+		synchronized (data) {
+			long position = data.size();
+			//transfers only write within the file, so the header goes first
+			ByteBuffer header = header(key, size);
+			long offset = position + header.remaining();
+			writeFully(header, position);
+			long copied = 0;
+			while(copied < size){
+				copied += data.transferFrom(upload.position(copied), offset + copied, size - copied);
+			}
+			data.force(false);
+			Blob blob = new Blob(offset, size);
+			index.put(key, blob);
+			bytesWritten.add(size);
+			return blob;
+		}
+	}
+	
+	/**
+	 * Rebuilds the index from the record headers, truncating an incomplete last record.
+	 */
+	private void recover() throws IOException {
+		long size = data.size();
+		long position = 0;
+		while(position + Integer.BYTES <= size){
+			int keyLength = read(position, Integer.BYTES).getInt();
+			int headerSize = Integer.BYTES + keyLength + Long.BYTES;
+			if(keyLength < 0 || keyLength > MAX_KEY_LENGTH || position + headerSize > size){
+				break;
+			}
+			ByteBuffer header = read(position + Integer.BYTES, keyLength + Long.BYTES);
+			byte[] key = new byte[keyLength];
+			header.get(key);
+			long length = header.getLong();
+			if(length == TOMBSTONE){
+				index.remove(new String(key, StandardCharsets.UTF_8));
+				position += headerSize;
+				continue;
+			}
+			if(length < 0 || position + headerSize + length > size){
+				break;
+			}
+			index.put(new String(key, StandardCharsets.UTF_8), new Blob(position + headerSize, length));
+			position += headerSize + length;
+		}
+		if(position < size){
+			log.warn("Truncating incomplete blob store record at {} of {}", position, size);
+			data.truncate(position);
+		}
+	}
+	
+	/**
+	 * @return ByteBuffer record header ready to be written: key length, key bytes and content length
+	 */
+	static ByteBuffer header(String key, long length){
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + bytes.length + Long.BYTES);
+		header.putInt(bytes.length).put(bytes).putLong(length).flip();
+		return header;
+	}
+	
+	private ByteBuffer read(long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while(buffer.hasRemaining()){
+			data.read(buffer, position + buffer.position());
+		}
+		buffer.flip();
+		return buffer;
+	}
+	
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			position += data.write(buffer, position);
+		}
+	}
+	
+	/**
+	 * Location of a stored content in the data file.
+	 */
+	public static final class Blob {
+		private final long offset;
+		
+		private final long length;
+		
+		Blob(long offset, long length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * @return long content size in bytes
+		 */
+		public long getLength() {
+			return length;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package ws.blob;
+
+/**
+ * <pre>
+ * Single byte range of an HTTP Range request header (RFC 7233), resolved against the length of the requested content:
+ * "bytes=first-last", "bytes=first-" or "bytes=-suffixLength".
+ * </pre>
+ */
+public final class ByteRange {
+	private static final String UNIT = "bytes=";
+	
+	private final long first;
+	
+	private final long last;
+	
+	private final long length;
+	
+	private ByteRange(long first, long last, long length) {
+		this.first = first;
+		this.last = last;
+		this.length = length;
+	}
+	
+	/**
+	 * <pre>
+	 * Parses a Range header. Malformed headers and multiple ranges are ignored, so the whole content is served, as allowed by RFC 7233.
+	 * @param header Range header value, may be null
+	 * @param length content length in bytes
+	 * @return ByteRange requested range (possibly unsatisfiable), or null to serve the whole content
+	 * </pre>
+	 */
+	public static ByteRange parse(String header, long length){
+		if(header == null || !header.startsWith(UNIT) || header.indexOf(',') >= 0){
+			return null;
+		}
+		String spec = header.substring(UNIT.length()).trim();
+		int dash = spec.indexOf('-');
+		if(dash < 0){
+			return null;
+		}
+		try {
+			if(dash == 0){
+				long suffix = Long.parseLong(spec.substring(1));
+				return new ByteRange(Math.max(0, length - suffix), suffix == 0 ? -1 : length - 1, length);
+			}
+			long first = Long.parseLong(spec.substring(0, dash));
+			if(dash == spec.length() - 1){
+				return new ByteRange(first, length - 1, length);
+			}
+			long last = Long.parseLong(spec.substring(dash + 1));
+			//a range ending before it starts is syntactically invalid, and ignored
+			return last < first ? null : new ByteRange(first, Math.min(last, length - 1), length);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return boolean false if the range starts beyond the content (416 Range Not Satisfiable)
+	 */
+	public boolean isSatisfiable(){
+		return first < length && first <= last;
+	}
+	
+	public long getFirst() {
+		return first;
+	}
+	
+	public long getLast() {
+		return last;
+	}
+	
+	/**
+	 * @return long number of bytes in the range
+	 */
+	public long getCount() {
+		return last - first + 1;
+	}
+	
+	/**
+	 * @return String Content-Range header value of a 206 Partial Content response
+	 */
+	public String toContentRange(){
+		return "bytes " + first + "-" + last + "/" + length;
+	}
+	
+	/**
+	 * @param length content length in bytes
+	 * @return String Content-Range header value of a 416 Range Not Satisfiable response
+	 */
+	public static String unsatisfied(long length){
+		return "bytes */" + length;
+	}
+}
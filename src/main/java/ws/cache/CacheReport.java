@@ -0,0 +1,70 @@
+package ws.cache;
+
+import org.hibernate.stat.SecondLevelCacheStatistics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Point in time snapshot of the size and hit/miss statistics of a cache.
+ *
+ */
+public class CacheReport {
+	private String name;
+	
+	private long size;
+	
+	private long hitCount;
+	
+	private long missCount;
+	
+	private long evictionCount;
+	
+	private double hitRate;
+	
+	public CacheReport() {}
+	
+	CacheReport(String name, Cache<?, ?> cache) {
+		CacheStats stats = cache.stats();
+		this.name = name;
+		this.size = cache.estimatedSize();
+		this.hitCount = stats.hitCount();
+		this.missCount = stats.missCount();
+		this.evictionCount = stats.evictionCount();
+		this.hitRate = stats.hitRate();
+	}
+	
+	CacheReport(String name, SecondLevelCacheStatistics stats) {
+		long requests = stats.getHitCount() + stats.getMissCount();
+		this.name = name;
+		this.size = stats.getElementCountInMemory();
+		this.hitCount = stats.getHitCount();
+		this.missCount = stats.getMissCount();
+		//evictions are not tracked by Hibernate statistics
+		this.hitRate = requests == 0 ? 1.0 : (double) stats.getHitCount() / requests;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public double getHitRate() {
+		return hitRate;
+	}
+}
@@ -0,0 +1,222 @@
+package ws.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.Persistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.repository.ImageRepository;
+import ws.persistence.repository.ProductFetchPlan;
+import ws.persistence.repository.ProductRepository;
+
+/**
+ * <pre>
+ * In-process read-through cache in front of the Product and Image repositories.
+ * Both caches are bounded by the number of entries (ws.cache.maximum-size) and evicted with Caffeine's Window TinyLFU policy.
+ * Products are cached per fetch plan, so an entry never holds relations that were not requested.
+ * Unknown ids are not cached. Cached objects are shared between requests and must not be modified.
+ * Entries are invalidated by key where possible. No invalidation sees the loads still in flight (Caffeine skips keys being computed,
+ * and scans only visit loaded entries), so every invalidation advances a generation, and a load that overlapped a generation change
+ * is dropped once returned: it may have read the row before the change was committed.
+ * With ws.cache.enabled=false every lookup goes to the repositories (e.g. to rely on the Hibernate second-level cache alone).
+ * </pre>
+ */
+@Component
+public class CatalogCache implements MetricsSource {
+	private final Cache<ProductKey, Product> products;
+	
+	private final Cache<Long, Image> images;
+	
+	@Autowired
+	ProductRepository productRepo;
+	
+	@Autowired
+	ImageRepository imageRepo;
+	
+	@Value("${ws.cache.enabled:true}")
+	boolean enabled;
+	
+	private final AtomicLong generation = new AtomicLong();
+	
+	@Autowired
+	public CatalogCache(@Value("${ws.cache.maximum-size:10000}") long maximumSize) {
+		this.products = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+		this.images = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+	
+	/**
+	 * Retrieves a Product from the cache, reading it from the repository on a miss.
+	 * @param id of the Product to be retrieved
+	 * @param plan relations to be read together with the Product
+	 * @return Product or null if unknown
+	 */
+	public Product findProduct(Long id, ProductFetchPlan plan){
+		if(!enabled){
+			return productRepo.findOne(id, plan);
+		}
+		ProductKey key = new ProductKey(id, plan);
+		long started = generation.get();
+		Product product = products.get(key, k -> productRepo.findOne(k.id, k.plan));
+		if(generation.get() != started){
+			//possibly read before a change whose invalidation missed this load
+			products.invalidate(key);
+		}
+		return product;
+	}
+	
+	/**
+	 * Retrieves an Image from the cache, reading it from the repository on a miss.
+	 * @param id of the Image to be retrieved
+	 * @return Image or null if unknown
+	 */
+	public Image findImage(Long id){
+		if(!enabled){
+			return imageRepo.findOne(id);
+		}
+		long started = generation.get();
+		Image image = images.get(id, imageRepo::findOne);
+		if(generation.get() != started){
+			images.invalidate(id);
+		}
+		return image;
+	}
+	
+	/**
+	 * Invalidates every cached representation (all fetch plans) of the given Product.
+	 * @param id of the Product to be invalidated, ignored if null
+	 */
+	public void evictProduct(Long id){
+		if(id == null){
+			return;
+		}
+		List<ProductKey> keys = new ArrayList<ProductKey>();
+		for(ProductFetchPlan plan : ProductFetchPlan.values()){
+			keys.add(new ProductKey(id, plan));
+		}
+		generation.incrementAndGet();
+		products.invalidateAll(keys);
+	}
+	
+	/**
+	 * Invalidates the given Image.
+	 * @param id of the Image to be invalidated, ignored if null
+	 */
+	public void evictImage(Long id){
+		if(id != null){
+			generation.incrementAndGet();
+			images.invalidate(id);
+		}
+	}
+	
+	/**
+	 * Invalidates every cached graph in which the given Product is written: all of its representations, its parent's children,
+	 * its descendants (through their parent chain) and their Images. Used when the Product's own columns changed.
+	 * @param id of the Product to be invalidated, ignored if null
+	 */
+	public void evictEmbedding(Long id){
+		if(id == null){
+			return;
+		}
+		generation.incrementAndGet();
+		products.asMap().values().removeIf(p -> embeds(p, id));
+		images.asMap().values().removeIf(i -> embeds(i.getProduct(), id));
+	}
+	
+	/**
+	 * Invalidates every cached Product and Image. 
+	 * Used when a change reaches objects embedded in other cached graphs in ways evictEmbedding does not follow,
+	 * e.g. a subtree moved under another parent.
+	 */
+	public void evictAll(){
+		generation.incrementAndGet();
+		products.invalidateAll();
+		images.invalidateAll();
+	}
+	
+	/**
+	 * @return boolean true if the Product with the given id is written in the graph of p: p, its parent chain or its loaded children
+	 */
+	private static boolean embeds(Product p, Long id){
+		if(p != null && Persistence.getPersistenceUtil().isLoaded(p.getChildren())){
+			for(Product child : p.getChildren()){
+				if(id.equals(child.getId())){
+					return true;
+				}
+			}
+		}
+		for(Product ancestor = p; ancestor != null; ancestor = ancestor.getParent()){
+			if(id.equals(ancestor.getId())){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public CacheReport getProductReport(){
+		return new CacheReport("products", products);
+	}
+	
+	public CacheReport getImageReport(){
+		return new CacheReport("images", images);
+	}
+	
+	@Override
+	public void collect(MetricsWriter writer) {
+		List<CacheReport> reports = Arrays.asList(getProductReport(), getImageReport());
+		writer.family("ws_cache_size", "gauge", "Entries in each read-through cache");
+		for(CacheReport report : reports){
+			writer.sample("ws_cache_size", report.getSize(), "cache", report.getName());
+		}
+		writer.family("ws_cache_requests_total", "counter", "Lookups in each read-through cache by result");
+		for(CacheReport report : reports){
+			writer.sample("ws_cache_requests_total", report.getHitCount(), "cache", report.getName(), "result", "hit");
+			writer.sample("ws_cache_requests_total", report.getMissCount(), "cache", report.getName(), "result", "miss");
+		}
+		writer.family("ws_cache_evictions_total", "counter", "Size based evictions in each read-through cache");
+		for(CacheReport report : reports){
+			writer.sample("ws_cache_evictions_total", report.getEvictionCount(), "cache", report.getName());
+		}
+	}
+	
+	/**
+	 * Product cache key: the same Product is cached separately for each fetch plan.
+	 */
+	private static final class ProductKey {
+		private final Long id;
+		
+		private final ProductFetchPlan plan;
+		
+		private ProductKey(Long id, ProductFetchPlan plan) {
+			this.id = id;
+			this.plan = plan;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(id, plan);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof ProductKey)){
+				return false;
+			}
+			ProductKey other = (ProductKey) obj;
+			return id.equals(other.id) && plan == other.plan;
+		}
+	}
+}
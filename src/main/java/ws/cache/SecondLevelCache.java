@@ -0,0 +1,64 @@
+package ws.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+
+/**
+ * <pre>
+ * Statistics of the Hibernate second-level cache regions (entities, collections and queries), enabled by the l2cache profile.
+ * Reports are empty while the cache is disabled; hit and miss counts require hibernate.generate_statistics.
+ * </pre>
+ */
+@Component
+public class SecondLevelCache implements MetricsSource {
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	/**
+	 * @return List<CacheReport> one report per region, empty if the second-level cache is disabled
+	 */
+	public List<CacheReport> getReports(){
+		SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+		if(!sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled()){
+			return Collections.emptyList();
+		}
+		Statistics statistics = sessionFactory.getStatistics();
+		List<CacheReport> reports = new ArrayList<CacheReport>();
+		for(String region : statistics.getSecondLevelCacheRegionNames()){
+			SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+			if(regionStatistics != null){
+				reports.add(new CacheReport(region, regionStatistics));
+			}
+		}
+		return reports;
+	}
+
+	@Override
+	public void collect(MetricsWriter writer) {
+		List<CacheReport> reports = getReports();
+		if(reports.isEmpty()){
+			return;
+		}
+		writer.family("ws_hibernate_cache_size", "gauge", "Entries in each second-level cache region");
+		for(CacheReport report : reports){
+			writer.sample("ws_hibernate_cache_size", report.getSize(), "region", report.getName());
+		}
+		writer.family("ws_hibernate_cache_requests_total", "counter", "Lookups in each second-level cache region by result");
+		for(CacheReport report : reports){
+			writer.sample("ws_hibernate_cache_requests_total", report.getHitCount(), "region", report.getName(), "result", "hit");
+			writer.sample("ws_hibernate_cache_requests_total", report.getMissCount(), "region", report.getName(), "result", "miss");
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package ws.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * Concurrency limit adjusted to the latency observed (AIMD, gradient style), once per window of WINDOW completed requests.
+ * The average latency of the window (short) is compared to the long-run average of the previous windows (long):
+ * a window whose short average exceeds tolerance times the long one while at least half the limit was in use, or with a failed
+ * request, multiplies the limit by backoff; otherwise a window that used at least half the limit raises it by one.
+ * Averages rather than the minimum are compared, so bimodal latencies (cache hits and misses) at steady state keep the limit,
+ * and slow windows without load are not caused by the concurrency, so they do not decrease it either.
+ * The long average follows the windows slowly, so a lasting change of the database is eventually accepted.
+ * Requests over the limit are not queued: tryAcquire returns false at once.
+ * </pre>
+ */
+public class AdaptiveLimit {
+	/**
+	 * Completed requests per adjustment of the limit.
+	 */
+	static final int WINDOW = 20;
+
+	private static final double LONG_SMOOTHING = 0.1;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double tolerance;
+
+	private final double backoff;
+
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	private volatile double limit;
+
+	private double longNanos = -1;
+
+	private int windowCount;
+
+	private int windowSucceeded;
+
+	private double windowNanos;
+
+	private int windowMaxInflight;
+
+	private boolean windowFailed;
+
+	/**
+	 * @param initialLimit limit before any request completed
+	 * @param minLimit lowest limit, at least 1
+	 * @param maxLimit highest limit
+	 * @param tolerance short over long average latency ratio from which the limit is decreased, above 1
+	 * @param backoff factor applied to the limit when it is decreased, below 1
+	 */
+	public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.tolerance = tolerance;
+		this.backoff = backoff;
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+	}
+
+	/**
+	 * @return boolean true if the request may run, in which case release must be called once it completes
+	 */
+	public boolean tryAcquire() {
+		int current;
+		do {
+			current = inflight.get();
+			if(current >= (int) limit){
+				return false;
+			}
+		} while(!inflight.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * @param latencyNanos time the request took
+	 * @param failed true if the request failed or timed out for lack of resources, which decreases the limit at the end of the window
+	 */
+	public synchronized void release(long latencyNanos, boolean failed) {
+		int running = inflight.getAndDecrement();
+		windowCount++;
+		windowMaxInflight = Math.max(windowMaxInflight, running);
+		if(failed){
+			windowFailed = true;
+		} else {
+			windowSucceeded++;
+			windowNanos += latencyNanos;
+		}
+		if(windowCount < WINDOW){
+			return;
+		}
+		double shortNanos = windowSucceeded == 0 ? -1 : windowNanos / windowSucceeded;
+		if(longNanos < 0){
+			longNanos = shortNanos;
+		}
+		boolean used = windowMaxInflight * 2 >= limit;
+		if(windowFailed || (used && shortNanos > tolerance * longNanos)){
+			limit = Math.max(minLimit, limit * backoff);
+		} else if(used){
+			limit = Math.min(maxLimit, limit + 1);
+		}
+		if(shortNanos >= 0){
+			longNanos += LONG_SMOOTHING * (shortNanos - longNanos);
+		}
+		windowCount = 0;
+		windowSucceeded = 0;
+		windowNanos = 0;
+		windowMaxInflight = 0;
+		windowFailed = false;
+	}
+
+	/**
+	 * @return int current limit
+	 */
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * @return int requests running
+	 */
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	/**
+	 * @return double long-run average latency in milliseconds, 0 before the first window completed
+	 */
+	public synchronized double getLatencyMillis() {
+		return Math.max(0, longNanos) / 1e6;
+	}
+}
@@ -0,0 +1,155 @@
+package ws.concurrent;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import ws.constants.ErrorMessage;
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+
+/**
+ * <pre>
+ * Load shedding of the read endpoints, with separate adaptive concurrency limits ({@link AdaptiveLimit}) for cheap point reads
+ * (ws.limit.point.methods) and expensive bulk reads (ws.limit.bulk.methods), so a slow database throttles the bulk reads
+ * before the point reads queue behind them. Requests over their limit are answered at once, without touching the database:
+ * point reads with 503, bulk reads with 429, both with a Retry-After of the average latency of their budget (at least one second).
+ * A request holds its slot until its response is completely written; 500 and 503 responses (executor saturated or timed out)
+ * decrease the limit. Limits, running and rejected requests are reported at /metrics.
+ * </pre>
+ */
+@Component
+public class ConcurrencyLimitFilter implements ContainerRequestFilter, ApplicationEventListener, MetricsSource {
+	private static final String PERMIT = ConcurrencyLimitFilter.class.getName() + ".permit";
+
+	/**
+	 * Concurrency budget shared by a set of resource methods.
+	 */
+	static class Budget {
+		final String name;
+
+		final int status;
+
+		final String message;
+
+		final AdaptiveLimit limit;
+
+		final LongAdder rejected = new LongAdder();
+
+		Budget(String name, int status, String message, AdaptiveLimit limit) {
+			this.name = name;
+			this.status = status;
+			this.message = message;
+			this.limit = limit;
+		}
+	}
+
+	/**
+	 * Slot held by a running request.
+	 */
+	private static class Permit {
+		final Budget budget;
+
+		final long started = System.nanoTime();
+
+		Permit(Budget budget) {
+			this.budget = budget;
+		}
+	}
+
+	final Budget point;
+
+	final Budget bulk;
+
+	private final Map<String, Budget> budgets = new HashMap<String, Budget>();
+
+	@Value("${ws.limit.enabled:true}")
+	boolean enabled;
+
+	@Autowired
+	public ConcurrencyLimitFilter(@Value("${ws.limit.point.methods:getProduct,getImage}") String[] pointMethods,
+			@Value("${ws.limit.point.initial-limit:100}") int pointInitial, @Value("${ws.limit.point.min-limit:10}") int pointMin,
+			@Value("${ws.limit.point.max-limit:1000}") int pointMax,
+			@Value("${ws.limit.bulk.methods:getAllProducts,getProductDescendants,exportCatalog}") String[] bulkMethods,
+			@Value("${ws.limit.bulk.initial-limit:10}") int bulkInitial, @Value("${ws.limit.bulk.min-limit:1}") int bulkMin,
+			@Value("${ws.limit.bulk.max-limit:50}") int bulkMax,
+			@Value("${ws.limit.tolerance:2.0}") double tolerance, @Value("${ws.limit.backoff:0.9}") double backoff) {
+		point = new Budget("point", 503, ErrorMessage.SERVICE_UNAVAILABLE,
+				new AdaptiveLimit(pointInitial, pointMin, pointMax, tolerance, backoff));
+		bulk = new Budget("bulk", 429, ErrorMessage.TOO_MANY_BULK_REQUESTS,
+				new AdaptiveLimit(bulkInitial, bulkMin, bulkMax, tolerance, backoff));
+		for(String method : pointMethods){
+			budgets.put(method.trim(), point);
+		}
+		for(String method : bulkMethods){
+			budgets.put(method.trim(), bulk);
+		}
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		if(!enabled){
+			return;
+		}
+		ResourceMethod method = ((ExtendedUriInfo) requestContext.getUriInfo()).getMatchedResourceMethod();
+		Budget budget = method == null ? null : budgets.get(method.getInvocable().getDefinitionMethod().getName());
+		if(budget == null){
+			return;
+		}
+		if(!budget.limit.tryAcquire()){
+			budget.rejected.increment();
+			long retryAfter = Math.max(1, (long) Math.ceil(budget.limit.getLatencyMillis() / 1000));
+			requestContext.abortWith(Response.status(budget.status).header(HttpHeaders.RETRY_AFTER, retryAfter).entity(budget.message).build());
+			return;
+		}
+		requestContext.setProperty(PERMIT, new Permit(budget));
+	}
+
+	@Override
+	public void onEvent(ApplicationEvent event) {}
+
+	@Override
+	public RequestEventListener onRequest(RequestEvent requestEvent) {
+		//request properties are the servlet request attributes, which may be recycled once a suspended response is written
+		//and before it is FINISHED: the permit is kept here as soon as the filter set it
+		Permit[] permit = new Permit[1];
+		return event -> {
+			if(permit[0] == null && event.getType() != RequestEvent.Type.FINISHED){
+				permit[0] = (Permit) event.getContainerRequest().getProperty(PERMIT);
+			}
+			if(event.getType() == RequestEvent.Type.FINISHED && permit[0] != null){
+				int status = event.getContainerResponse() != null ? event.getContainerResponse().getStatus() : 500;
+				permit[0].budget.limit.release(System.nanoTime() - permit[0].started, status == 500 || status == 503);
+			}
+		};
+	}
+
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_concurrency_limit", "gauge", "Current adaptive concurrency limit per budget");
+		writer.sample("ws_concurrency_limit", point.limit.getLimit(), "budget", point.name);
+		writer.sample("ws_concurrency_limit", bulk.limit.getLimit(), "budget", bulk.name);
+		writer.family("ws_concurrency_inflight", "gauge", "Requests running per budget");
+		writer.sample("ws_concurrency_inflight", point.limit.getInflight(), "budget", point.name);
+		writer.sample("ws_concurrency_inflight", bulk.limit.getInflight(), "budget", bulk.name);
+		writer.family("ws_concurrency_rejected_total", "counter", "Requests shed over the concurrency limit per budget");
+		writer.sample("ws_concurrency_rejected_total", point.rejected.sum(), "budget", point.name);
+		writer.sample("ws_concurrency_rejected_total", bulk.rejected.sum(), "budget", bulk.name);
+	}
+}
@@ -0,0 +1,161 @@
+package ws.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import ws.constants.ErrorMessage;
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+import ws.metrics.PersistenceCounters;
+import ws.persistence.datasource.ReadYourWrites;
+
+/**
+ * <pre>
+ * Bounded executor for the database work of suspended requests, so container threads are released while JPA round-trips are in flight.
+ * Threads (ws.database-executor.threads) default to the connection pool size, since more could only wait for connections.
+ * Work that cannot be queued (ws.database-executor.queue-capacity) or that does not complete within ws.database-executor.timeout-ms
+ * is answered with 503. Writes (submitWrite) are only timed out while queued: once started they run to completion and answer
+ * with their result, so a 503 always means nothing was written and the request can be retried.
+ * With ws.database-executor.async=false, work runs in the calling container thread instead.
+ * </pre>
+ */
+@Component
+public class DatabaseExecutor implements MetricsSource {
+	private static final int QUEUED = 0;
+	
+	private static final int RUNNING = 1;
+	
+	private static final int TIMED_OUT = 2;
+	
+	private final ThreadPoolExecutor executor;
+	
+	private final int queueCapacity;
+	
+	@Value("${ws.database-executor.async:true}")
+	boolean async;
+	
+	@Value("${ws.database-executor.timeout-ms:10000}")
+	long timeoutMillis;
+	
+	private final LongAdder rejected = new LongAdder();
+	
+	private final LongAdder timedOut = new LongAdder();
+	
+	private final LongAdder queuedMicros = new LongAdder();
+	
+	@Autowired
+	public DatabaseExecutor(@Value("${ws.database-executor.threads:${spring.datasource.tomcat.max-active:100}}") int threads,
+			@Value("${ws.database-executor.queue-capacity:1000}") int queueCapacity) {
+		AtomicInteger count = new AtomicInteger();
+		this.queueCapacity = queueCapacity;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), 
+				r -> new Thread(r, "database-" + count.incrementAndGet()));
+	}
+	
+	/**
+	 * Runs a read handler for a suspended request and resumes the request with its result.
+	 * Exceptions thrown by the handler resume the request, so they are mapped as in a synchronous call.
+	 * The request is answered with 503 on timeout, the handler result being discarded.
+	 * @param response suspended response of the request
+	 * @param handler work producing the HTTP Response
+	 */
+	public void submit(AsyncResponse response, Callable<Response> handler){
+		submit(response, handler, false);
+	}
+	
+	/**
+	 * Runs a write handler for a suspended request as submit does, except that the timeout only applies while the handler is queued:
+	 * a running write is waited for, since answering 503 while it commits would have clients retry a successful write.
+	 * @param response suspended response of the request
+	 * @param handler work producing the HTTP Response
+	 */
+	public void submitWrite(AsyncResponse response, Callable<Response> handler){
+		submit(response, handler, true);
+	}
+	
+	private void submit(AsyncResponse response, Callable<Response> handler, boolean write){
+		if(!async){
+			run(response, handler);
+			return;
+		}
+		AtomicInteger state = new AtomicInteger(QUEUED);
+		response.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		response.setTimeoutHandler(timeout -> {
+			if(write && !state.compareAndSet(QUEUED, TIMED_OUT)){
+				//running: the write completes and answers with its result
+				timeout.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+				return;
+			}
+			timedOut.increment();
+			timeout.resume(Response.status(503).entity(ErrorMessage.SERVICE_UNAVAILABLE).build());
+		});
+		//the request thread is counting persistence work and tracking the client's writes, which now happen in the executor thread
+		PersistenceCounters counters = PersistenceCounters.current();
+		ReadYourWrites client = ReadYourWrites.current();
+		//the request thread goes on with other requests, while the request finishes in the executor thread (or the timeout's)
+		PersistenceCounters.stop(counters);
+		long submitted = System.nanoTime();
+		try {
+			executor.execute(() -> {
+				queuedMicros.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - submitted));
+				//timed out while queued, nobody is waiting for the result anymore
+				if(!state.compareAndSet(QUEUED, RUNNING) || !response.isSuspended()){
+					return;
+				}
+				PersistenceCounters.attach(counters);
+				ReadYourWrites.attach(client);
+				try {
+					run(response, handler);
+				} finally {
+					PersistenceCounters.stop(counters);
+					ReadYourWrites.stop(client);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			response.resume(Response.status(503).entity(ErrorMessage.SERVICE_UNAVAILABLE).build());
+		}
+	}
+	
+	private void run(AsyncResponse response, Callable<Response> handler){
+		try {
+			response.resume(handler.call());
+		} catch (Exception e) {
+			response.resume(e);
+		}
+	}
+	
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_database_executor_threads", "gauge", "Database executor threads by state");
+		writer.sample("ws_database_executor_threads", executor.getActiveCount(), "state", "active");
+		writer.sample("ws_database_executor_threads", executor.getMaximumPoolSize(), "state", "max");
+		writer.family("ws_database_executor_queue", "gauge", "Database executor queued work and queue capacity");
+		writer.sample("ws_database_executor_queue", executor.getQueue().size(), "state", "queued");
+		writer.sample("ws_database_executor_queue", queueCapacity, "state", "capacity");
+		writer.family("ws_database_executor_tasks_total", "counter", "Database executor work by outcome");
+		writer.sample("ws_database_executor_tasks_total", executor.getCompletedTaskCount(), "outcome", "completed");
+		writer.sample("ws_database_executor_tasks_total", rejected.sum(), "outcome", "rejected");
+		writer.sample("ws_database_executor_tasks_total", timedOut.sum(), "outcome", "timed_out");
+		writer.family("ws_database_executor_queue_wait_seconds_total", "counter", "Time spent by work in the database executor queue");
+		writer.sample("ws_database_executor_queue_wait_seconds_total", queuedMicros.sum() / (double) TimeUnit.SECONDS.toMicros(1));
+	}
+	
+	@PreDestroy
+	void shutdown(){
+		executor.shutdownNow();
+	}
+}
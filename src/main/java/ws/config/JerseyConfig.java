@@ -3,7 +3,13 @@ package ws.config;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.springframework.context.annotation.Configuration;
 
+import ws.concurrent.ConcurrencyLimitFilter;
+import ws.endpoint.MetricsEndpoint;
 import ws.endpoint.RestProductEndpoint;
+import ws.endpoint.encoding.CompressionInterceptor;
+import ws.endpoint.representation.JacksonFormatWriter;
+import ws.metrics.RequestMetricsListener;
+import ws.persistence.datasource.ReadYourWritesFilter;
 
 
 /**
@@ -15,5 +21,14 @@ import ws.endpoint.RestProductEndpoint;
 public class JerseyConfig extends ResourceConfig {
     public JerseyConfig() {
         register(RestProductEndpoint.class);
+        register(MetricsEndpoint.class);
+        register(RequestMetricsListener.class);
+        //adaptive concurrency limits of the point and bulk reads, shedding the requests over them
+        register(ConcurrencyLimitFilter.class);
+        //per client read-your-writes routing to the primary (replicas profile with ws.datasource.sticky-ms)
+        register(ReadYourWritesFilter.class);
+        //Smile and CBOR encodings of the bulk reads, and gzip/deflate compression of large response bodies
+        register(JacksonFormatWriter.class);
+        register(CompressionInterceptor.class);
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package ws.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import ws.persistence.datasource.ReplicaRoutingDataSource;
+
+/**
+ * <pre>
+ * DataSources of the replicas profile: the primary pool is configured as usual (spring.datasource.*), and one pool per url
+ * of ws.datasource.replica-urls is opened with the same settings. Read-only transactions are routed to the replicas.
+ * </pre>
+ */
+@Configuration
+@Profile("replicas")
+public class ReplicaDataSourceConfig {
+
+	@Bean
+	@ConfigurationProperties(prefix = "spring.datasource.tomcat")
+	public org.apache.tomcat.jdbc.pool.DataSource primaryDataSource(DataSourceProperties properties) {
+		return (org.apache.tomcat.jdbc.pool.DataSource) properties.initializeDataSourceBuilder()
+				.type(org.apache.tomcat.jdbc.pool.DataSource.class).build();
+	}
+
+	@Bean
+	public ReplicaRoutingDataSource routingDataSource(org.apache.tomcat.jdbc.pool.DataSource primaryDataSource,
+			@Value("${ws.datasource.replica-urls:}") String[] replicaUrls, @Value("${ws.datasource.sticky-ms:0}") long stickyMillis) {
+		List<DataSource> replicas = new ArrayList<DataSource>();
+		for(String url : replicaUrls){
+			if(!StringUtils.hasText(url)){
+				continue;
+			}
+			PoolProperties pool = new PoolProperties();
+			BeanUtils.copyProperties(primaryDataSource.getPoolProperties(), pool);
+			pool.setUrl(url.trim());
+			pool.setName("replica-" + replicas.size());
+			replicas.add(new org.apache.tomcat.jdbc.pool.DataSource(pool));
+		}
+		return new ReplicaRoutingDataSource(primaryDataSource, replicas, stickyMillis);
+	}
+
+	/**
+	 * Connections are fetched from the routing DataSource on their first statement, once the transaction is known to be read-only.
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+		return new LazyConnectionDataSourceProxy(routingDataSource);
+	}
+}
@@ -0,0 +1,27 @@
+package ws.config;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import ws.persistence.datasource.WriteBarrier;
+import ws.persistence.datasource.WriteBarrierTransactionManager;
+
+/**
+ * <pre>
+ * Transaction manager of the application, in place of Spring Boot's: read-write transactions pass the WriteBarrier,
+ * so catalog snapshots are taken between writes while the reads go on, and are rolled back when not committed within
+ * ws.sync.write-timeout-ms, so delta synchronization never skips them (see DeltaSync).
+ * </pre>
+ */
+@Configuration
+public class TransactionConfig {
+
+	@Bean
+	public WriteBarrierTransactionManager transactionManager(EntityManagerFactory entityManagerFactory, WriteBarrier writeBarrier,
+			@Value("${ws.sync.write-timeout-ms:800}") long writeTimeoutMillis) {
+		return new WriteBarrierTransactionManager(entityManagerFactory, writeBarrier, writeTimeoutMillis);
+	}
+}
@@ -0,0 +1,19 @@
+package ws.constants;
+
+/**
+ * Class containing the media types negotiated by the bulk read endpoints, besides application/json, the change feed, catalog transfer and merge patch ones.
+ *
+ */
+public class ContentType {
+	public final static String JSON = "application/json";
+	
+	public final static String SMILE = "application/x-jackson-smile";
+	
+	public final static String CBOR = "application/cbor";
+	
+	public final static String EVENT_STREAM = "text/event-stream";
+	
+	public final static String NDJSON = "application/x-ndjson";
+	
+	public final static String MERGE_PATCH = "application/merge-patch+json";
+}
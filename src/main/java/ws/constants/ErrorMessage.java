@@ -13,4 +13,56 @@ public class ErrorMessage {
 	public final static String UNKNOWN_PRODUCT = "Unknown product";
 	
 	public final static String UNKNOWN_IMAGE = "Unknown image";
+	
+	public final static String INVALID_PAGE_LIMIT = "Page limit must be a positive number";
+	
+	public final static String INVALID_BATCH_SIZE = "Batch must contain between 1 and 10000 items";
+	
+	public final static String CYCLIC_PARENT_REFERENCE = "Cyclic parent reference detected";
+	
+	public final static String INVALID_DEPTH = "Depth must be a positive number";
+	
+	public final static String UNKNOWN_JOB = "Unknown job";
+	
+	public final static String TOO_MANY_DELETION_JOBS = "Too many pending deletion jobs, try again later";
+	
+	public final static String SERVICE_UNAVAILABLE = "Service busy, try again later";
+	
+	public final static String TOO_MANY_BULK_REQUESTS = "Too many bulk reads running, try again later";
+	
+	public final static String EMPTY_QUERY = "Query must contain at least one letter or digit";
+	
+	public final static String INVALID_LIMIT = "Limit must be a positive number";
+	
+	public final static String EMPTY_PREFIX = "Prefix must contain at least one character";
+	
+	public final static String UNKNOWN_FIELD = "Unknown field requested";
+	
+	public final static String CONTENT_TOO_LARGE = "Content exceeds the maximum size";
+	
+	public final static String NO_IMAGE_CONTENT = "No content was uploaded for this image";
+	
+	public final static String RANGE_NOT_SATISFIABLE = "Requested range starts beyond the content";
+	
+	public final static String TOO_MANY_PENDING_DERIVATIVES = "Too many images waiting for derivative generation, try again later";
+	
+	public final static String UNKNOWN_DERIVATIVE = "Unknown image derivative";
+	
+	public final static String DERIVATIVE_NOT_AVAILABLE = "Derivative not available, see the image status";
+	
+	public final static String INVALID_EVENT_ID = "Invalid change event id, expected epoch:sequence";
+	
+	public final static String TOO_MANY_SUBSCRIBERS = "Too many open change streams, try again later";
+	
+	public final static String INVALID_SYNC_TOKEN = "Invalid sync token";
+	
+	public final static String SYNC_TOKEN_EXPIRED = "Sync token expired, the catalog must be reloaded";
+	
+	public final static String PRECONDITION_FAILED = "Entity tag does not match the current version, reload and retry";
+	
+	public final static String INVALID_IMPORT_RECORD = "Invalid import record";
+	
+	public final static String DUPLICATE_IMPORT_ID = "Duplicate product id in import";
+	
+	public final static String INVALID_PATCH = "Patch must be a JSON object of writable fields";
 }
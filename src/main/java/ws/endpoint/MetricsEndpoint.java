@@ -0,0 +1,42 @@
+package ws.endpoint;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+
+/**
+ * <pre>
+ * Endpoint exposing the service metrics in the Prometheus text exposition format.
+ * Every MetricsSource bean contributes to the output.
+ * </pre>
+ */
+@Component
+@Path("/metrics")
+public class MetricsEndpoint {
+	@Autowired
+	List<MetricsSource> sources;
+	
+	/**
+	 * <pre>
+	 * Endpoint for retrieval of all metrics.
+	 * @return String metrics in the text exposition format
+	 * </pre>
+	 */
+	@GET
+	@Produces(MetricsWriter.CONTENT_TYPE)
+	public String getMetrics() {
+		MetricsWriter writer = new MetricsWriter();
+		for(MetricsSource source : sources){
+			source.collect(writer);
+		}
+		return writer.toString();
+	}
+}
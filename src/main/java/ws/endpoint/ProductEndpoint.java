@@ -1,14 +1,22 @@
 package ws.endpoint;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
+import ws.cache.CacheReport;
 import ws.persistence.model.Image;
 import ws.persistence.model.Product;
 
 /**
  * API Endpoint contract for the Product/Image service.
+ * Endpoints reaching the database are asynchronous: the request is suspended and resumed from a bounded database executor.
  * @author Samuel
  *
  */
@@ -17,129 +25,439 @@ public interface ProductEndpoint {
 	 * <pre>
 	 * Endpoint for Product creation in the service. Input is validated for non-null/non-empty fields and known parent reference before insertion.
 	 * @param product marshaled Product object to be created
-	 * @return JAX-RS HTTP Response containing the persisted object or error message in the body 
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the persisted object or error message in the body 
 	 * 201 - Object successfully persisted
 	 * 400 - Null or empty fields detected
 	 * 404 - Unknown parent reference detected
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
+	 * </pre>
+	 */
+    public void createProduct(Product product, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for batch Product creation in the service. Every Product is validated as in createProduct, then all of them are inserted in JDBC batches.
+	 * A Product may reference another Product of the same batch as parent: give the parent a temporary id and use that id as the parent reference,
+	 * e.g. [{"id":-1,"name":"Car","description":"..."},{"name":"Wheel","description":"...","parent":-1}]. Temporary ids are replaced by generated ones.
+	 * As in any JSON document with Product identities, an existing parent is written as an object the first time ({"id":5}) and by id afterwards (5).
+	 * @param products marshaled list of Product objects to be created, at most 10000
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the persisted objects, in request order, or error message in the body
+	 * 201 - Objects successfully persisted
+	 * 400 - Empty or too large batch, null or empty fields or cyclic parent references detected
+	 * 404 - Unknown parent reference detected
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
 	 * </pre>
 	 */
-    public Response createProduct(Product product);
+    public void createProducts(List<Product> products, AsyncResponse response);
 	
 	/**
 	 * <pre>
 	 * Endpoint for Product retrieval in the service. Defaults to returning the Product object with contained collections (children and images).
 	 * This method is a non-redundant approach providing retrieval operation and requirements 2.c and 2.d. 
+	 * Contained collections are one level deep: collections of the children themselves are returned empty.
 	 * @param id of the Product to be retrieved
-	 * @param excludeChildren (optional) removes child collection from the returned object. Defaults to false.
-	 * @param excludeImages (optional) removes image collection from the returned object. Defaults to false.
-	 * @return JAX-RS HTTP Response containing the retrieved object or error message in the body
+	 * @param excludeChildren (optional) child collection is not read and is returned empty. Defaults to false.
+	 * @param excludeImages (optional) image collection is not read and is returned empty. Defaults to false.
+	 * @param fields (optional) comma separated Product fields to be written (id, name, description, parent, children, images), related objects written as ids.
+	 * Only the requested columns are read, the exclude flags are ignored. Defaults to the whole object.
+	 * Whole objects are returned with ETag and Last-Modified, derived from the versions of the Product and the objects written with it.
+	 * @param request JAX-RS request, evaluating If-None-Match and If-Modified-Since before the object is written
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the retrieved object or error message in the body
 	 * 200 - Successful call
+	 * 304 - Object unchanged since the copy held by the client
+	 * 400 - Unknown field requested
 	 * 404 - Unknown id reference detected
+	 * 503 - Database executor saturated, request timed out or over the point read concurrency limit (with Retry-After)
 	 * </pre>
 	 */
-    public Response getProduct(Long id, Boolean excludeChildren, Boolean excludeImages);
+    public void getProduct(Long id, Boolean excludeChildren, Boolean excludeImages, String fields, Request request, AsyncResponse response);
 	
 	/**
 	 * <pre>
 	 * Endpoint for Product update in the service. Input is validated for non-null/non-empty fields and known parent reference before insertion.
+	 * Moving a Product to another parent moves its whole subtree along with it.
 	 * @param id of the Product to be updated
 	 * @param product marshaled Product object to be updated
-	 * @return JAX-RS HTTP Response with empty body or error message
+	 * @param ifMatch (optional) If-Match header, ETag returned by getProduct for optimistic concurrency,
+	 * compared with the version of the Product alone (changes of its relations do not fail the update)
+	 * @param response suspended JAX-RS HTTP Response, resumed with an empty body or error message
 	 * 200 - Successful call
-	 * 400 - Null or empty fields detected
-	 * 404 - Unknown parent reference detected
+	 * 400 - Null or empty fields detected, or parent is the Product itself or one of its descendants
+	 * 404 - Unknown id or parent reference detected
+	 * 412 - Product changed since the given ETag, or updated concurrently
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
+	 * </pre>
+	 */
+    public void updateProduct(Long id, Product product, String ifMatch, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for partial Product update with a JSON Merge Patch (RFC 7396) document, e.g. {"description":"Restored"}.
+	 * Only name, description and parent can be patched: absent members are left unchanged, a null parent makes the Product a root.
+	 * Name and description changes are written with a single UPDATE of the patched columns, without reading the Product first.
+	 * @param id of the Product to be updated
+	 * @param patch application/merge-patch+json (or application/json) document
+	 * @param ifMatch (optional) If-Match header, ETag returned by getProduct for optimistic concurrency, 
+	 * compared with the version of the Product alone (changes of its relations do not fail the patch)
+	 * @param response suspended JAX-RS HTTP Response, resumed with an empty body or error message
+	 * 200 - Successful call
+	 * 400 - Not an object of writable members, null or empty name or description, or parent is the Product itself or one of its descendants
+	 * 404 - Unknown id or parent reference detected
+	 * 412 - Product changed since the given ETag, or updated concurrently
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
 	 * </pre>
 	 */
-    public Response updateProduct(Long id, Product product);
+    public void patchProduct(Long id, JsonNode patch, String ifMatch, AsyncResponse response);
 	
 	/**
 	 * <pre>
-	 * Endpoint for Product deletion in the service.
+	 * Endpoint for Product deletion in the service. Descendants and all their Images are deleted as well.
+	 * Subtrees with at least ws.delete.async-threshold descendants are deleted by an asynchronous job, whose state is available at the Location header.
 	 * @param id of the Product to be deleted
-	 * @return JAX-RS HTTP Response with empty body or error message
+	 * @param async optional, forces (true) or prevents (false) the deletion as an asynchronous job
+	 * @param response suspended JAX-RS HTTP Response, resumed with an empty body, DeletionJob or error message
 	 * 200 - Successful call
+	 * 202 - Deletion job scheduled
 	 * 404 - Unknown id reference
+	 * 503 - Too many pending deletion jobs, database executor saturated or timed out while queued (nothing written)
 	 * </pre>
 	 */	
-    public Response deleteProduct(Long id);
+    public void deleteProduct(Long id, Boolean async, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for retrieval of the state of an asynchronous Product deletion.
+	 * @param jobId of the deletion job, as returned by deleteProduct
+	 * @return JAX-RS HTTP Response with DeletionJob or error message
+	 * 200 - Successful call
+	 * 404 - Unknown or expired job id
+	 * </pre>
+	 */
+    public Response getDeletionJob(String jobId);
 	
 	/**
 	 * <pre>
 	 * Endpoint for Image creation in the service. Input is validated for non-null type and known product reference before insertion.
 	 * @param image marshaled Image object to be created
-	 * @return JAX-RS HTTP Response containing the persisted object or error message in the body 
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the persisted object or error message in the body 
 	 * 201 - Object successfully persisted
 	 * 400 - Null type field detected
 	 * 404 - Unknown product reference detected
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
+	 * </pre>
+	 */
+    public void createImage(Image i, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for batch Image creation in the service. Every Image is validated as in createImage, then all of them are inserted in JDBC batches.
+	 * As in any JSON document with Product identities, a Product is written as an object the first time ({"id":5}) and by id afterwards (5).
+	 * @param images marshaled list of Image objects to be created, at most 10000
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the persisted objects, in request order, or error message in the body
+	 * 201 - Objects successfully persisted
+	 * 400 - Empty or too large batch or null type field detected
+	 * 404 - Unknown product reference detected
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
 	 * </pre>
 	 */
-    public Response createImage(Image i);
+    public void createImages(List<Image> images, AsyncResponse response);
 	
 	/**
 	 * <pre>
 	 * Endpoint for Image retrieval in the service.
 	 * @param id of the Image to be retrieved
-	 * @return JAX-RS HTTP Response containing the retrieved object or error message in the body
+	 * @param fields (optional) comma separated Image fields to be written (id, type, status, product), product written as id. Defaults to the whole object.
+	 * Whole objects are returned with ETag and Last-Modified, derived from the versions of the Image and its product.
+	 * @param request JAX-RS request, evaluating If-None-Match and If-Modified-Since before the object is written
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the retrieved object or error message in the body
 	 * 200 - Successful call
+	 * 304 - Object unchanged since the copy held by the client
+	 * 400 - Unknown field requested
 	 * 404 - Unknown id reference
+	 * 503 - Database executor saturated, request timed out or over the point read concurrency limit (with Retry-After)
 	 * </pre>
 	 */
-    public Response getImage(Long id);
+    public void getImage(Long id, String fields, Request request, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for upload of the binary content of an Image, replacing any previous one. Content is streamed to the blob store.
+	 * The Image status becomes PENDING, and READY or FAILED once its derivatives are generated in the background.
+	 * @param id of the Image
+	 * @param content request body, in the media type of the Image type
+	 * @return JAX-RS HTTP Response with empty body or error message
+	 * 200 - Successful call
+	 * 404 - Unknown id reference
+	 * 413 - Content larger than ws.blob.max-size
+	 * 503 - Derivative generation saturated, content stored but status FAILED: the upload should be retried later
+	 * </pre>
+	 * @throws IOException if the content cannot be read or stored
+	 */
+    public Response uploadImageContent(Long id, InputStream content) throws IOException;
+	
+	/**
+	 * <pre>
+	 * Endpoint for download of the binary content of an Image, with the media type of its type.
+	 * A single byte range can be requested (Range: bytes=first-last, bytes=first- or bytes=-suffixLength), other Range headers are ignored.
+	 * @param id of the Image
+	 * @param range (optional) Range header
+	 * @return JAX-RS HTTP Response with the content, the requested range of the content or error message
+	 * 200 - Successful call, whole content
+	 * 206 - Successful call, requested range (Content-Range)
+	 * 404 - Unknown id reference or no uploaded content
+	 * 416 - Range beyond the content
+	 * </pre>
+	 */
+    public Response getImageContent(Long id, String range);
+	
+	/**
+	 * <pre>
+	 * Endpoint for download of a derivative of the binary content of an Image, as PNG. Byte ranges as for getImageContent.
+	 * @param id of the Image
+	 * @param variant thumbnail (at most 128 pixels wide or high) or medium (at most 640 pixels)
+	 * @param range (optional) Range header
+	 * @return JAX-RS HTTP Response with the derivative, the requested range of the derivative or error message
+	 * 200 - Successful call, whole derivative
+	 * 206 - Successful call, requested range (Content-Range)
+	 * 404 - Unknown id reference, unknown variant or derivative not generated (yet)
+	 * 416 - Range beyond the derivative
+	 * </pre>
+	 */
+    public Response getImageDerivative(Long id, String variant, String range);
 	
 	/**
 	 * <pre>
 	 * Endpoint for Image update in the service. Input is validated for non-null type and known product reference before insertion.
 	 * @param id of the Image to be updated
 	 * @param image marshaled Image object to be updated
-	 * @return JAX-RS HTTP Response with empty body or error message
+	 * @param ifMatch (optional) If-Match header, ETag returned by getImage for optimistic concurrency,
+	 * compared with the version of the Image alone (changes of its product do not fail the update)
+	 * @param response suspended JAX-RS HTTP Response, resumed with an empty body or error message
 	 * 200 - Successful call
 	 * 400 - Null type field detected
-	 * 404 - Unknown product reference
+	 * 404 - Unknown id or product reference
+	 * 412 - Image changed since the given ETag, or updated concurrently
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
 	 * </pre>
 	 */
-    public Response updateImage(Long id, Image i);
+    public void updateImage(Long id, Image i, String ifMatch, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for partial Image update with a JSON Merge Patch (RFC 7396) document, e.g. {"type":"PNG"}.
+	 * Only type and product can be patched, written with a single UPDATE of the patched columns (only the current product, status and version are read).
+	 * @param id of the Image to be updated
+	 * @param patch application/merge-patch+json (or application/json) document
+	 * @param ifMatch (optional) If-Match header, ETag returned by getImage for optimistic concurrency,
+	 * compared with the version of the Image alone (changes of its product do not fail the patch)
+	 * @param response suspended JAX-RS HTTP Response, resumed with an empty body or error message
+	 * 200 - Successful call
+	 * 400 - Not an object of writable members, or null type or product
+	 * 404 - Unknown id or product reference
+	 * 412 - Image changed since the given ETag, or updated concurrently
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
+	 * </pre>
+	 */
+    public void patchImage(Long id, JsonNode patch, String ifMatch, AsyncResponse response);
 	
 	/**
 	 * <pre>
 	 * Endpoint for Image deletion in the service.
 	 * @param id of the Image to be deleted
-	 * @return JAX-RS HTTP Response with empty body or error message
+	 * @param response suspended JAX-RS HTTP Response, resumed with an empty body or error message
 	 * 200 - Successful call
 	 * 404 - Unknown id reference
+	 * 503 - Database executor saturated or timed out while queued (nothing written)
 	 * </pre>
 	 */	
-    public Response deleteImage(Long id);
+    public void deleteImage(Long id, AsyncResponse response);
 	
 	/**
 	 * <pre>
 	 * Endpoint for retrieval of ALL the Products in the service. Defaults to returning the Product object with contained collections (children and images).
 	 * This method is a non-redundant approach providing retrieval operation for requirements 2.a and 2.b. 
-	 * @param excludeChildren (optional) removes child collection from the returned object. Defaults to false.
-	 * @param excludeImages (optional) removes image collection from the returned object. Defaults to false.
-	 * @return List<Product> containing ALL Product objects
+	 * When neither after nor limit are provided, ALL the Products are streamed as a JSON array while they are read from the database.
+	 * Since every Product is an element of the streamed array, parent, children and image product are written as id references to those elements.
+	 * Otherwise a keyset paginated page (products and next cursor) is returned, ordered by id.
+	 * @param excludeChildren (optional) child collection is not read and is returned empty. Defaults to false.
+	 * @param excludeImages (optional) image collection is not read and is returned empty. Defaults to false.
+	 * @param after (optional) cursor returned as "next" by the previous page. Defaults to the beginning of the catalog.
+	 * @param limit (optional) maximum number of Products in the page. Defaults to 100, truncated to 1000.
+	 * @param fields (optional) comma separated Product fields to be written (id, name, description, parent, children, images), related objects written as ids.
+	 * Only the requested columns are read, the exclude flags are ignored. Defaults to the whole object.
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing ALL Product objects, a page of Product objects or error message in the body
+	 * 200 - Successful call
+	 * 400 - Non positive limit or unknown field requested
+	 * 429 - Over the bulk read concurrency limit (with Retry-After)
+	 * 503 - Database executor saturated or request timed out
 	 * </pre>
 	 */
-    public List<Product> getAllProducts(Boolean excludeChildren, Boolean excludeImages);
+    public void getAllProducts(Boolean excludeChildren, Boolean excludeImages, Long after, Integer limit, String fields, AsyncResponse response);
 	
 	/**
 	 * <pre>
-	 * Endpoint for retrieval of only the children from given Product in the service. 
+	 * Endpoint for retrieval of only the children from given Product in the service. Collections of the children are returned empty.
+	 * The list is returned with ETag (one per negotiated encoding) and Last-Modified.
 	 * @param id of the Product from whom children will be retrieved
-	 * @return JAX-RS HTTP Response containing a list of objects or error message in the body
+	 * @param request JAX-RS request, evaluating If-None-Match and If-Modified-Since before the list is written
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing a list of objects or error message in the body
 	 * 200 - Successful call
+	 * 304 - List unchanged since the copy held by the client
 	 * 404 - Unknown id reference
+	 * 503 - Database executor saturated or request timed out
 	 * </pre>
 	 */
-    public Response getProductChildren(Long id);
+    public void getProductChildren(Long id, Request request, AsyncResponse response);
 	
 	/**
 	 * <pre>
 	 * Endpoint for retrieval of only the images from given Product in the service. 
 	 * @param id of the Product from whom images will be retrieved
-	 * @return JAX-RS HTTP Response containing a list of objects or error message in the body
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing a list of objects or error message in the body
+	 * 200 - Successful call
+	 * 404 - Unknown id reference
+	 * 503 - Database executor saturated or request timed out
+	 * </pre>
+	 */
+    public void getProductImages(Long id, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for retrieval of the descendants (children, grandchildren and so on) of given Product in the service, with a bounded number of queries regardless of the tree size.
+	 * Descendants are ordered by depth and id, and returned without their collections.
+	 * @param id of the Product from whom descendants will be retrieved
+	 * @param depth (optional) number of levels to be retrieved, 1 meaning only children. Defaults to the whole subtree.
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing a list of objects or error message in the body
+	 * 200 - Successful call
+	 * 400 - Non positive depth
+	 * 404 - Unknown id reference
+	 * 429 - Over the bulk read concurrency limit (with Retry-After)
+	 * 503 - Database executor saturated or request timed out
+	 * </pre>
+	 */
+    public void getProductDescendants(Long id, Integer depth, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for retrieval of the number of descendants of given Product in the service, without reading them.
+	 * @param id of the Product from whom descendants will be counted
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the number of descendants or error message in the body
+	 * 200 - Successful call
+	 * 404 - Unknown id reference
+	 * 503 - Database executor saturated or request timed out
+	 * </pre>
+	 */
+    public void getProductDescendantCount(Long id, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for retrieval of the ancestors of given Product in the service, from the root down to its parent, with a bounded number of queries.
+	 * Ancestors are returned without their collections.
+	 * @param id of the Product from whom ancestors will be retrieved
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing a list of objects or error message in the body
 	 * 200 - Successful call
 	 * 404 - Unknown id reference
+	 * 503 - Database executor saturated or request timed out
+	 * </pre>
+	 */
+    public void getProductAncestors(Long id, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint for full-text search over Product name and description, served from an in-memory index without reading the database.
+	 * Products matching any of the query terms are ranked by relevance (BM25), name matches weighing more than description ones.
+	 * Terms are case and accent insensitive.
+	 * @param query free text to be searched
+	 * @param limit (optional) maximum number of hits. Defaults to 10, truncated to 100.
+	 * @return JAX-RS HTTP Response containing a list of hits (id, name and score) by descending score, or error message in the body
+	 * 200 - Successful call
+	 * 400 - Query without terms or non positive limit
+	 * </pre>
+	 */
+    public Response searchProducts(String query, Integer limit);
+	
+	/**
+	 * <pre>
+	 * Endpoint for Product name suggestions (type-ahead), served from an in-memory sorted structure without reading the database.
+	 * Matching is case and accent insensitive, suggestions are returned in name order.
+	 * @param prefix start of the Product name
+	 * @param limit (optional) maximum number of suggestions. Defaults to 10, truncated to 100.
+	 * @return JAX-RS HTTP Response containing a list of suggestions (id and name) or error message in the body
+	 * 200 - Successful call
+	 * 400 - Empty prefix or non positive limit
+	 * </pre>
+	 */
+    public Response suggestProducts(String prefix, Integer limit);
+	
+	/**
+	 * <pre>
+	 * Endpoint for delta synchronization: retrieves the Products and Images created or updated after a sync token,
+	 * and tombstones {"entity","id","deletedAt"} of those deleted after it (Images deleted with their Product included).
+	 * The token is a last modification time; "next" is the token for the following call and "more" tells whether further changes are waiting.
+	 * Products are written with id, name, description, parent id, version and lastModified; Images with every field and their product id.
+	 * Changes are only returned from ws.sync.settle-ms ago, so that rows committed late are not skipped.
+	 * @param since (optional) "next" token of the previous call. Defaults to 0, the whole catalog.
+	 * @param limit (optional) maximum number of changes of each kind. Defaults to 100, truncated to 1000.
+	 * @param response suspended JAX-RS HTTP Response, resumed with a response containing the changes or error message in the body
+	 * 200 - Successful call
+	 * 400 - Negative token or non positive limit
+	 * 410 - Token older than ws.sync.tombstone-retention-days, deletions may be missing and the catalog must be reloaded
+	 * 503 - Database executor saturated or request timed out
+	 * </pre>
+	 */
+    public void getChanges(Long since, Integer limit, AsyncResponse response);
+	
+	/**
+	 * <pre>
+	 * Endpoint streaming Product and Image changes as Server-Sent Events, for consumers keeping their copies in sync without polling.
+	 * Each change is a "change" event whose id is "epoch:sequence" and whose data is {"sequence","entity","operation","id"},
+	 * entity being PRODUCT or IMAGE and operation CREATED, UPDATED or DELETED (including Images deleted with their Product).
+	 * Sequences restart on every boot, the epoch telling them apart. Only the latest ws.changes.capacity changes are retained:
+	 * when resuming from another epoch or an older sequence, or when falling that far behind,
+	 * a "reset" event carrying the current event id is sent instead, after which the consumer must reload its copy.
+	 * @param lastEventId (optional) Last-Event-ID header, id of the last change seen, sent by EventSource clients when reconnecting
+	 * @param since (optional) id of the last change seen, for the first connection. Without either, only new changes are streamed.
+	 * @return JAX-RS HTTP Response with the open text/event-stream or error message
+	 * 200 - Successful call
+	 * 400 - Invalid event id
+	 * 503 - ws.changes.max-subscribers streams already open
+	 * </pre>
+	 */
+    public Response streamChanges(String lastEventId, String since);
+	
+	/**
+	 * <pre>
+	 * Endpoint for exporting the whole catalog as newline delimited JSON, streamed from a database cursor in constant memory.
+	 * Each line is a record: {"kind":"PRODUCT","id","name","description","parent"} or {"kind":"IMAGE","id","type","product"}.
+	 * Every Product comes after its parent and before its Images, so the output can be imported as is. Image contents are not exported.
+	 * @return JAX-RS HTTP Response with the application/x-ndjson stream
+	 * 200 - Successful call
+	 * 429 - Over the bulk read concurrency limit (with Retry-After)
+	 * </pre>
+	 */
+    public Response exportCatalog();
+	
+	/**
+	 * <pre>
+	 * Endpoint for importing newline delimited JSON records, as exported, parsed one at a time and inserted in batches of ws.transfer.batch-size.
+	 * Ids in the records are only references between them: new ids are generated. A parent may come after its children,
+	 * an Image must come after its Product. Images are created with status NONE, their content being uploaded afterwards.
+	 * Every batch is committed on its own: the import stops at the first invalid record, keeping the batches already inserted.
+	 * @param records request body, application/x-ndjson
+	 * @return JAX-RS HTTP Response with {"products","images"} numbers of inserted records, plus "error" and "line" if the import stopped early
+	 * 200 - Successful call
+	 * 400 - Malformed record, empty fields, duplicate Product id, unknown Product or parent, or cyclic parent reference
+	 * </pre>
+	 * @throws IOException if the request body cannot be read
+	 */
+    public Response importCatalog(InputStream records) throws IOException;
+	
+	/**
+	 * <pre>
+	 * Endpoint for retrieval of the Product and Image cache statistics (size, hits, misses, evictions and hit rate).
+	 * When the Hibernate second-level cache is enabled (l2cache profile), its regions are reported as well, without eviction counts.
+	 * @return List<CacheReport> one report per cache
 	 * </pre>
 	 */
-    public Response getProductImages(Long id);
+    public List<CacheReport> getCacheStatistics();
 }
@@ -1,28 +1,91 @@
 package ws.endpoint;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.annotation.PostConstruct;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Variant;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import ws.blob.BlobStore;
+import ws.blob.BlobStore.Blob;
+import ws.blob.ByteRange;
+import ws.cache.CacheReport;
+import ws.cache.CatalogCache;
+import ws.cache.SecondLevelCache;
+import ws.concurrent.DatabaseExecutor;
+import ws.constants.ContentType;
 import ws.constants.ErrorMessage;
+import ws.endpoint.representation.ChangeSet;
+import ws.endpoint.representation.GeneratorOutput;
+import ws.endpoint.representation.MergePatch;
+import ws.endpoint.representation.ProductPage;
+import ws.endpoint.representation.SparseRepresentation;
+import ws.endpoint.representation.StreamedRepresentation;
+import ws.endpoint.representation.VersionTag;
+import ws.event.ImageChangeEvent;
+import ws.event.ProductChangeEvent;
+import ws.feed.ChangeFeed;
+import ws.feed.DeltaSync;
+import ws.image.DerivativeGenerator;
+import ws.image.ImageVariant;
+import ws.job.DeletionJob;
+import ws.job.SubtreeDeletion;
+import ws.persistence.enumerate.ImageStatus;
 import ws.persistence.model.Image;
 import ws.persistence.model.Product;
+import ws.persistence.repository.ImageField;
 import ws.persistence.repository.ImageRepository;
+import ws.persistence.repository.ProductFetchPlan;
+import ws.persistence.repository.ProductField;
 import ws.persistence.repository.ProductRepository;
+import ws.search.ProductNameSuggester;
+import ws.search.ProductSearchIndex;
+import ws.search.SearchHit;
+import ws.search.Suggestion;
+import ws.transfer.CatalogTransfer;
+import ws.transfer.ImportReport;
 import ws.validator.ImageValidator;
 import ws.validator.ProductValidator;
 
@@ -34,6 +97,44 @@ import ws.validator.ProductValidator;
 @Component
 @Path("/product")
 public class RestProductEndpoint implements ProductEndpoint {
+	/**
+	 * Page size used when only the "after" cursor is provided.
+	 */
+	static final int DEFAULT_PAGE_SIZE = 100;
+	
+	/**
+	 * Upper bound for the requested page size, larger values are truncated.
+	 */
+	static final int MAX_PAGE_SIZE = 1000;
+	
+	/**
+	 * Upper bound for the number of items in a batch creation request.
+	 */
+	static final int MAX_BATCH_SIZE = 10000;
+	
+	/**
+	 * Number of search hits or suggestions returned when no limit is provided.
+	 */
+	static final int DEFAULT_SEARCH_LIMIT = 10;
+	
+	/**
+	 * Upper bound for the requested number of search hits or suggestions, larger values are truncated.
+	 */
+	static final int MAX_SEARCH_LIMIT = 100;
+	
+	/**
+	 * Range request headers (RFC 7233), not defined by JAX-RS.
+	 */
+	private static final String ACCEPT_RANGES = "Accept-Ranges";
+	
+	private static final String CONTENT_RANGE = "Content-Range";
+	
+	/**
+	 * Encodings of the bulk reads, in the order of their @Produces, each one a distinct representation with its own entity tag.
+	 */
+	private static final List<Variant> BULK_VARIANTS = Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE, 
+			MediaType.valueOf(ContentType.SMILE), MediaType.valueOf(ContentType.CBOR)).build();
+	
 	@Autowired
 	ProductRepository productRepo;
 	
@@ -46,187 +147,885 @@ public class RestProductEndpoint implements ProductEndpoint {
 	@Autowired
 	ImageValidator imageValidator;
 	
+	@Autowired
+	ObjectMapper objectMapper;
+	
+	/**
+	 * Mapper for the streaming mode of getAllProducts, writing references between Products as ids.
+	 */
+	private ObjectMapper streamMapper;
+	
+	@Autowired
+	CatalogCache catalogCache;
+	
+	@Autowired
+	SecondLevelCache secondLevelCache;
+	
+	@Autowired
+	BlobStore blobStore;
+	
+	@Autowired
+	DerivativeGenerator derivativeGenerator;
+	
+	@Autowired
+	ChangeFeed changeFeed;
+	
+	@Autowired
+	DeltaSync deltaSync;
+	
+	@Autowired
+	SubtreeDeletion subtreeDeletion;
+	
+	@Autowired
+	CatalogTransfer catalogTransfer;
+	
+	@Autowired
+	DatabaseExecutor databaseExecutor;
+	
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+	
+	@Autowired
+	ProductSearchIndex searchIndex;
+	
+	@Autowired
+	ProductNameSuggester nameSuggester;
+	
+	/**
+	 * Number of descendants from which a Product deletion runs as an asynchronous job, unless requested otherwise.
+	 */
+	@Value("${ws.delete.async-threshold:10000}")
+	long asyncDeleteThreshold;
+	
+	/**
+	 * Mapper for sparse fieldsets, writing only the requested properties.
+	 */
+	private ObjectMapper sparseMapper;
+	
+	@PostConstruct
+	void init() {
+		streamMapper = StreamedRepresentation.mapper(objectMapper);
+		sparseMapper = SparseRepresentation.mapper(objectMapper);
+	}
+	
 	@Override
 	@POST
 	@Consumes("application/json")
 	@Produces("application/json")
-    public Response createProduct(Product p) {
-		if(!productValidator.hasValidFields(p)){
-			return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
-		}
-		if(!productValidator.hasValidParent(p)){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PARENT_PRODUCT).build();
-		}
-		productRepo.save(p);
-		p = productRepo.findOne(p.getId());
-		return Response.status(201).entity(p).build();
+    public void createProduct(Product p, @Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			if(!productValidator.hasValidFields(p)){
+				return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+			}
+			if(!productValidator.hasValidParent(p)){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PARENT_PRODUCT).build();
+			}
+			//the saved object already holds the generated id, no need to read it back
+			productRepo.insert(p);
+			eventPublisher.publishEvent(ProductChangeEvent.created(this, Collections.singletonList(p)));
+			//the parent's child collection changed
+			catalogCache.evictProduct(p.getParent() == null ? null : p.getParent().getId());
+			return Response.status(201).entity(p).build();
+		});
     }
 	
 
+	@Override
+	@POST
+	@Path("/batch")
+	@Consumes("application/json")
+	@Produces("application/json")
+    public void createProducts(List<Product> products, @Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			if(products == null || products.isEmpty() || products.size() > MAX_BATCH_SIZE){
+				return Response.status(400).entity(ErrorMessage.INVALID_BATCH_SIZE).build();
+			}
+			for(Product p : products){
+				if(!productValidator.hasValidFields(p)){
+					return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+				}
+			}
+			if(!productValidator.hasAcyclicParents(products)){
+				return Response.status(400).entity(ErrorMessage.CYCLIC_PARENT_REFERENCE).build();
+			}
+			if(!productValidator.hasValidParents(products)){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PARENT_PRODUCT).build();
+			}
+			productRepo.insertAll(products);
+			eventPublisher.publishEvent(ProductChangeEvent.created(this, products));
+			for(Product p : products){
+				catalogCache.evictProduct(p.getParent() == null ? null : p.getParent().getId());
+			}
+			return Response.status(201).entity(products).build();
+		});
+    }
+	
 	@Override
 	@GET
 	@Path("/{id}")
 	@Produces("application/json")
-    public Response getProduct(
+    public void getProduct(
     		@PathParam("id") Long id,
     		@DefaultValue("false") @QueryParam("excludeChildren") Boolean excludeChildren,
-    		@DefaultValue("false") @QueryParam("excludeImages") Boolean excludeImages) {
-		Product p = productRepo.findOne(id);
-		if(p == null){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
-		}
-		p = excludeProductRelations(p, excludeChildren, excludeImages);
-		return Response.status(200).entity(p).build();
+    		@DefaultValue("false") @QueryParam("excludeImages") Boolean excludeImages,
+    		@QueryParam("fields") String fields,
+    		@Context Request request,
+    		@Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			if(fields != null){
+				Set<ProductField> requested = ProductField.parse(fields);
+				if(requested == null){
+					return Response.status(400).entity(ErrorMessage.UNKNOWN_FIELD).build();
+				}
+				//projections are cheap to read and are not cached
+				Product p = productRepo.findOne(id, requested);
+				if(p == null){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+				}
+				return Response.status(200).entity(sparse(SparseRepresentation.productWriter(sparseMapper, requested), p)).build();
+			}
+			Product p = catalogCache.findProduct(id, ProductFetchPlan.of(excludeChildren, excludeImages));
+			if(p == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			return conditional(request, VersionTag.of(p), p);
+		});
     }
 	
 	@Override
 	@PUT
 	@Path("/{id}")
 	@Consumes("application/json")
-    public Response updateProduct(@PathParam("id") Long id, Product p) {
-		if(!productValidator.hasValidFields(p)){
-			return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
-		}
-		if(!productValidator.hasValidParent(p)){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PARENT_PRODUCT).build();
-		}
-		p.setId(id);
-		productRepo.save(p);
-		return Response.status(200).build();
+    public void updateProduct(@PathParam("id") Long id, Product p, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, 
+    		@Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			if(!productValidator.hasValidFields(p)){
+				return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+			}
+			if(!productValidator.hasValidParent(p)){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PARENT_PRODUCT).build();
+			}
+			if(!productValidator.hasAcyclicParent(id, p)){
+				return Response.status(400).entity(ErrorMessage.CYCLIC_PARENT_REFERENCE).build();
+			}
+			Long expectedVersion = null;
+			if(ifMatch != null){
+				//only the Product's own columns are written: its version is checked, without reading its relations,
+				//and enforced by the versioned update
+				Product current = productRepo.findOne(id, EnumSet.of(ProductField.ID, ProductField.VERSION));
+				if(current == null){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+				}
+				if(!VersionTag.matchesVersion(ifMatch, current.getVersion())){
+					return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+				}
+				expectedVersion = current.getVersion();
+			}
+			p.setId(id);
+			String path = productRepo.findPathById(id);
+			String[] ancestors = path == null ? new String[0] : StringUtils.tokenizeToStringArray(path, "/");
+			String previousParent = ancestors.length == 0 ? null : ancestors[ancestors.length - 1];
+			String parent = p.getParent() == null ? null : String.valueOf(p.getParent().getId());
+			Product updated;
+			try {
+				updated = productRepo.update(p, expectedVersion);
+			} catch (OptimisticLockingFailureException e) {
+				return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+			}
+			if(updated == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			eventPublisher.publishEvent(ProductChangeEvent.saved(this, Collections.singletonList(updated)));
+			if(Objects.equals(previousParent, parent)){
+				catalogCache.evictEmbedding(id);
+			} else {
+				//a moved subtree changes the children of both parents and the parent chain written in every descendant
+				catalogCache.evictAll();
+			}
+			return Response.status(200).build();
+		});
+    }
+	
+	@Override
+	@PATCH
+	@Path("/{id}")
+	@Consumes({ContentType.MERGE_PATCH, ContentType.JSON})
+    public void patchProduct(@PathParam("id") Long id, JsonNode patch, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, 
+    		@Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			Map<ProductField, Object> changes = MergePatch.productChanges(patch);
+			if(changes == null){
+				return Response.status(400).entity(ErrorMessage.INVALID_PATCH).build();
+			}
+			if(!productValidator.hasValidChanges(changes)){
+				return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+			}
+			if(changes.get(ProductField.PARENT) != null){
+				Product parent = new Product();
+				parent.setId((Long) changes.get(ProductField.PARENT));
+				Product moved = new Product();
+				moved.setParent(parent);
+				if(!productValidator.hasValidParent(moved)){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_PARENT_PRODUCT).build();
+				}
+				if(!productValidator.hasAcyclicParent(id, moved)){
+					return Response.status(400).entity(ErrorMessage.CYCLIC_PARENT_REFERENCE).build();
+				}
+			}
+			Long expectedVersion = null;
+			if(ifMatch != null){
+				//only the Product's own columns are patched: its version is checked, without reading its relations
+				Product current = productRepo.findOne(id, EnumSet.of(ProductField.ID, ProductField.VERSION));
+				if(current == null){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+				}
+				if(!VersionTag.matchesVersion(ifMatch, current.getVersion())){
+					return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+				}
+				expectedVersion = current.getVersion();
+			}
+			Product patched;
+			try {
+				patched = productRepo.patch(id, changes, expectedVersion);
+			} catch (OptimisticLockingFailureException e) {
+				return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+			}
+			if(patched == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			eventPublisher.publishEvent(ProductChangeEvent.saved(this, Collections.singletonList(patched)));
+			if(changes.containsKey(ProductField.PARENT)){
+				//a moved subtree changes the children of both parents and the parent chain written in every descendant
+				catalogCache.evictAll();
+			} else {
+				catalogCache.evictEmbedding(id);
+			}
+			return Response.status(200).build();
+		});
     }
 	
 	@Override
 	@DELETE
 	@Path("/{id}")
-    public Response deleteProduct(@PathParam("id") Long id) {
-		if(productRepo.findOne(id) == null){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
-		}
-        productRepo.delete(id);
-        return Response.status(200).build();
+	@Produces("application/json")
+    public void deleteProduct(@PathParam("id") Long id, @QueryParam("async") Boolean async, @Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			String path = productRepo.findPathById(id);
+			if(path == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			long descendants = Boolean.FALSE.equals(async) ? 0 : productRepo.countSubtree(path + id + "/");
+			if(async != null ? !async : descendants < asyncDeleteThreshold){
+				if(subtreeDeletion.delete(id) == 0){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+				}
+				return Response.status(200).build();
+			}
+			DeletionJob job;
+			try {
+				job = subtreeDeletion.submit(id, descendants + 1);
+			} catch (RejectedExecutionException e) {
+				return Response.status(503).entity(ErrorMessage.TOO_MANY_DELETION_JOBS).build();
+			}
+			return Response.status(202).location(URI.create("product/delete-jobs/" + job.getId())).entity(job).build();
+		});
     }	
 	
+	@Override
+	@GET
+	@Path("/delete-jobs/{jobId}")
+	@Produces("application/json")
+    public Response getDeletionJob(@PathParam("jobId") String jobId) {
+		DeletionJob job = subtreeDeletion.findJob(jobId);
+		if(job == null){
+			return Response.status(404).entity(ErrorMessage.UNKNOWN_JOB).build();
+		}
+		return Response.status(200).entity(job).build();
+    }
+	
 	@Override
 	@POST
 	@Path("/image")
 	@Consumes("application/json")
 	@Produces("application/json")
-    public Response createImage(Image i) {
-		if(!imageValidator.hasValidFields(i)){
-			return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
-		}
-		if(!imageValidator.hasValidProduct(i)){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
-		}
-		imageRepo.save(i);
-		i = imageRepo.findOne(i.getId());
-		return Response.status(201).entity(i).build();
+    public void createImage(Image i, @Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			if(!imageValidator.hasValidFields(i)){
+				return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+			}
+			if(!imageValidator.hasValidProduct(i)){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			//the content is uploaded afterwards
+			i.setStatus(ImageStatus.NONE);
+			imageRepo.save(i);
+			eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.CREATED, Collections.singletonList(i.getId())));
+			//the Product's image collection changed
+			catalogCache.evictProduct(i.getProduct().getId());
+			return Response.status(201).entity(i).build();
+		});
+    }
+	
+	@Override
+	@POST
+	@Path("/image/batch")
+	@Consumes("application/json")
+	@Produces("application/json")
+    public void createImages(List<Image> images, @Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			if(images == null || images.isEmpty() || images.size() > MAX_BATCH_SIZE){
+				return Response.status(400).entity(ErrorMessage.INVALID_BATCH_SIZE).build();
+			}
+			for(Image i : images){
+				if(!imageValidator.hasValidFields(i)){
+					return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+				}
+			}
+			if(!imageValidator.hasValidProducts(images)){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			images.forEach(i -> i.setStatus(ImageStatus.NONE));
+			imageRepo.insertAll(images);
+			eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.CREATED, ids(images)));
+			for(Image i : images){
+				catalogCache.evictProduct(i.getProduct().getId());
+			}
+			return Response.status(201).entity(images).build();
+		});
     }
 	
 	@Override
 	@GET
 	@Path("/image/{id}")
 	@Produces("application/json")
-    public Response getImage(@PathParam("id") Long id) {
-		if(imageRepo.findOne(id) == null){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
-		}
-		Image i = imageRepo.findOne(id);
-		return Response.status(200).entity(i).build();
+    public void getImage(@PathParam("id") Long id, @QueryParam("fields") String fields, @Context Request request, @Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			if(fields != null){
+				Set<ImageField> requested = ImageField.parse(fields);
+				if(requested == null){
+					return Response.status(400).entity(ErrorMessage.UNKNOWN_FIELD).build();
+				}
+				Image i = imageRepo.findOne(id, requested);
+				if(i == null){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
+				}
+				return Response.status(200).entity(sparse(SparseRepresentation.imageWriter(sparseMapper, requested), i)).build();
+			}
+			Image i = catalogCache.findImage(id);
+			if(i == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
+			}
+			return conditional(request, VersionTag.of(i), i);
+		});
     }
 	
 	@Override
 	@PUT
 	@Path("/image/{id}")
 	@Consumes("application/json")
-    public Response updateImage(@PathParam("id") Long id, Image i) {
-		if(!imageValidator.hasValidFields(i)){
-			return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+    public void updateImage(@PathParam("id") Long id, Image i, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, 
+    		@Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			if(!imageValidator.hasValidFields(i)){
+				return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+			}
+			if(!imageValidator.hasValidProduct(i)){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			Image previous = imageRepo.findOne(id, EnumSet.of(ImageField.ID, ImageField.VERSION, ImageField.STATUS, ImageField.PRODUCT));
+			if(previous == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
+			}
+			Long expectedVersion = null;
+			if(ifMatch != null){
+				//checked against the Image's own version, as for patchImage, and enforced by the versioned update
+				if(!VersionTag.matchesVersion(ifMatch, previous.getVersion())){
+					return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+				}
+				expectedVersion = previous.getVersion();
+			}
+			Long previousProductId = previous.getProduct().getId();
+			ImageStatus status = previous.getStatus();
+			i.setId(id);
+			//the content is unchanged; derivatives that could not be generated are retried, e.g. after a type correction
+			boolean retry = status == ImageStatus.FAILED;
+			i.setStatus(retry ? ImageStatus.PENDING : status);
+			try {
+				if(imageRepo.update(i, expectedVersion) == null){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
+				}
+			} catch (OptimisticLockingFailureException e) {
+				return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+			}
+			if(retry && !derivativeGenerator.submit(id)){
+				imageRepo.updateStatus(Collections.singletonList(id), ImageStatus.FAILED);
+			}
+			eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.UPDATED, Collections.singletonList(id)));
+			//both the previous and the current Product image collections may have changed
+			catalogCache.evictImage(id);
+			catalogCache.evictProduct(previousProductId);
+			catalogCache.evictProduct(i.getProduct().getId());
+			return Response.status(200).build();
+		});
+    }
+	
+	@Override
+	@PATCH
+	@Path("/image/{id}")
+	@Consumes({ContentType.MERGE_PATCH, ContentType.JSON})
+    public void patchImage(@PathParam("id") Long id, JsonNode patch, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, 
+    		@Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			Map<ImageField, Object> changes = MergePatch.imageChanges(patch);
+			if(changes == null){
+				return Response.status(400).entity(ErrorMessage.INVALID_PATCH).build();
+			}
+			if(!imageValidator.hasValidChanges(changes)){
+				return Response.status(400).entity(ErrorMessage.EMPTY_FIELDS).build();
+			}
+			if(changes.containsKey(ImageField.PRODUCT)){
+				Product product = new Product();
+				product.setId((Long) changes.get(ImageField.PRODUCT));
+				Image moved = new Image();
+				moved.setProduct(product);
+				if(!imageValidator.hasValidProduct(moved)){
+					return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+				}
+			}
+			Image previous = imageRepo.findOne(id, EnumSet.of(ImageField.ID, ImageField.VERSION, ImageField.STATUS, ImageField.PRODUCT));
+			if(previous == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
+			}
+			Long expectedVersion = null;
+			if(ifMatch != null){
+				//only the Image's own columns are patched: its version is checked, as for patchProduct
+				if(!VersionTag.matchesVersion(ifMatch, previous.getVersion())){
+					return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+				}
+				expectedVersion = previous.getVersion();
+			}
+			//derivatives that could not be generated are retried after a type correction, as in updateImage
+			boolean retry = changes.containsKey(ImageField.TYPE) && previous.getStatus() == ImageStatus.FAILED;
+			if(retry){
+				changes.put(ImageField.STATUS, ImageStatus.PENDING);
+			}
+			Image patched;
+			try {
+				patched = imageRepo.patch(id, changes, expectedVersion);
+			} catch (OptimisticLockingFailureException e) {
+				return Response.status(412).entity(ErrorMessage.PRECONDITION_FAILED).build();
+			}
+			if(patched == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
+			}
+			if(retry && !derivativeGenerator.submit(id)){
+				imageRepo.updateStatus(Collections.singletonList(id), ImageStatus.FAILED);
+			}
+			eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.UPDATED, Collections.singletonList(id)));
+			catalogCache.evictImage(id);
+			catalogCache.evictProduct(previous.getProduct().getId());
+			catalogCache.evictProduct(patched.getProduct().getId());
+			return Response.status(200).build();
+		});
+    }
+	
+	@Override
+	@DELETE
+	@Path("/image/{id}")
+    public void deleteImage(@PathParam("id") Long id, @Suspended AsyncResponse response) {
+		databaseExecutor.submitWrite(response, () -> {
+			Long productId = imageRepo.findProductIdById(id);
+			if(productId == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
+			}
+	        imageRepo.deleteById(id);
+	        //content and derivatives are removed by the DerivativeGenerator
+	        eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.DELETED, Collections.singletonList(id)));
+	        catalogCache.evictImage(id);
+	        catalogCache.evictProduct(productId);
+	        return Response.status(200).build();
+		});
+    }
+	
+	@Override
+	@PUT
+	@Path("/image/{id}/content")
+	@Consumes("*/*")
+    public Response uploadImageContent(@PathParam("id") Long id, InputStream content) throws IOException {
+		//streamed from the request to the store, not bound to the database executor timeout
+		Image i = catalogCache.findImage(id);
+		if(i == null){
+			return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
 		}
-		if(!imageValidator.hasValidProduct(i)){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+		if(blobStore.write(ImageVariant.ORIGINAL.key(id), content) == null){
+			return Response.status(413).entity(ErrorMessage.CONTENT_TOO_LARGE).build();
+		}
+		//pending before queuing, so the generator outcome is never overwritten
+		setImageStatus(i, ImageStatus.PENDING);
+		if(!derivativeGenerator.submit(id)){
+			setImageStatus(i, ImageStatus.FAILED);
+			return Response.status(503).entity(ErrorMessage.TOO_MANY_PENDING_DERIVATIVES).build();
 		}
-		i.setId(id);
-		imageRepo.save(i);
 		return Response.status(200).build();
     }
 	
 	@Override
-	@DELETE
-	@Path("/image/{id}")
-    public Response deleteImage(@PathParam("id") Long id) {
-		if(imageRepo.findOne(id) == null){
+	@GET
+	@Path("/image/{id}/content")
+    public Response getImageContent(@PathParam("id") Long id, @HeaderParam("Range") String range) {
+		Image i = catalogCache.findImage(id);
+		Blob blob = i == null ? null : blobStore.find(ImageVariant.ORIGINAL.key(id));
+		if(blob == null){
+			return Response.status(404).entity(i == null ? ErrorMessage.UNKNOWN_IMAGE : ErrorMessage.NO_IMAGE_CONTENT).build();
+		}
+		return content(blob, i.getType().getMediaType(), range);
+    }
+	
+	@Override
+	@GET
+	@Path("/image/{id}/content/{variant}")
+    public Response getImageDerivative(@PathParam("id") Long id, @PathParam("variant") String variant, @HeaderParam("Range") String range) {
+		ImageVariant derivative = ImageVariant.derivative(variant);
+		if(derivative == null){
+			return Response.status(404).entity(ErrorMessage.UNKNOWN_DERIVATIVE).build();
+		}
+		if(catalogCache.findImage(id) == null){
 			return Response.status(404).entity(ErrorMessage.UNKNOWN_IMAGE).build();
 		}
-        imageRepo.delete(id);
-        return Response.status(200).build();
+		Blob blob = blobStore.find(derivative.key(id));
+		if(blob == null){
+			return Response.status(404).entity(ErrorMessage.DERIVATIVE_NOT_AVAILABLE).build();
+		}
+		return content(blob, ImageVariant.DERIVATIVE_MEDIA_TYPE, range);
     }
 	
 	@Override
 	@GET
 	@Path("/all")
-	@Produces("application/json")
-    public List<Product> getAllProducts(
+	@Produces({ContentType.JSON, ContentType.SMILE, ContentType.CBOR})
+    public void getAllProducts(
     		@DefaultValue("false") @QueryParam("excludeChildren") Boolean excludeChildren,
-    		@DefaultValue("false") @QueryParam("excludeImages") Boolean excludeImages) {
-		Iterable<Product> products = productRepo.findAll();
-		return excludeRelations(products, excludeChildren, excludeImages);
+    		@DefaultValue("false") @QueryParam("excludeImages") Boolean excludeImages,
+    		@QueryParam("after") Long after,
+    		@QueryParam("limit") Integer limit,
+    		@QueryParam("fields") String fields,
+    		@Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			Set<ProductField> requested = fields == null ? null : ProductField.parse(fields);
+			if(fields != null && requested == null){
+				return Response.status(400).entity(ErrorMessage.UNKNOWN_FIELD).build();
+			}
+			if(after == null && limit == null){
+				return Response.status(200).entity(requested != null ? streamProducts(requested) : 
+					streamProducts(ProductFetchPlan.of(excludeChildren, excludeImages))).build();
+			}
+			if(limit != null && limit <= 0){
+				return Response.status(400).entity(ErrorMessage.INVALID_PAGE_LIMIT).build();
+			}
+			int size = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+			if(requested != null){
+				List<Product> products = productRepo.findPage(after == null ? 0L : after, size, requested);
+				Long next = products.size() == size ? products.get(size - 1).getId() : null;
+				return Response.status(200).entity(sparse(SparseRepresentation.productWriter(sparseMapper, requested), new ProductPage(products, next))).build();
+			}
+			List<Product> products = productRepo.findPage(after == null ? 0L : after, size, ProductFetchPlan.of(excludeChildren, excludeImages));
+			//a full page means there may be more rows after the last key
+			Long next = products.size() == size ? products.get(size - 1).getId() : null;
+			return Response.status(200).entity(new ProductPage(products, next)).build();
+		});
     }
 	
 	@Override
 	@GET
 	@Path("/{id}/children")
+	@Produces({ContentType.JSON, ContentType.SMILE, ContentType.CBOR})
+    public void getProductChildren(@PathParam("id") Long id, @Context Request request, @Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			Product p = catalogCache.findProduct(id, ProductFetchPlan.CHILDREN);
+			if(p == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			Variant variant = request.selectVariant(BULK_VARIANTS);
+			MediaType mediaType = variant == null ? MediaType.APPLICATION_JSON_TYPE : variant.getMediaType();
+			return conditional(request, VersionTag.of(p.getChildren(), mediaType), p.getChildren());
+		});
+    }
+	
+	@Override
+	@GET
+	@Path("/{id}/image")
+	@Produces({ContentType.JSON, ContentType.SMILE, ContentType.CBOR})
+    public void getProductImages(@PathParam("id") Long id, @Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			Product p = catalogCache.findProduct(id, ProductFetchPlan.IMAGES);
+			if(p == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			return Response.status(200).entity(p.getImages()).build();
+		});
+    }
+	
+	@Override
+	@GET
+	@Path("/{id}/descendants")
+	@Produces({ContentType.JSON, ContentType.SMILE, ContentType.CBOR})
+    public void getProductDescendants(@PathParam("id") Long id, @QueryParam("depth") Integer depth, @Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			if(depth != null && depth <= 0){
+				return Response.status(400).entity(ErrorMessage.INVALID_DEPTH).build();
+			}
+			String path = productRepo.findPathById(id);
+			if(path == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			//the path lists every ancestor, so its depth is the number of ids in it
+			int maxDepth = depth == null ? Integer.MAX_VALUE : StringUtils.countOccurrencesOf(path, "/") - 1 + depth;
+			return Response.status(200).entity(productRepo.findSubtree(path + id + "/", maxDepth)).build();
+		});
+    }
+	
+	@Override
+	@GET
+	@Path("/{id}/descendants/count")
+	@Produces("application/json")
+    public void getProductDescendantCount(@PathParam("id") Long id, @Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			String path = productRepo.findPathById(id);
+			if(path == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			return Response.status(200).entity(productRepo.countSubtree(path + id + "/")).build();
+		});
+    }
+	
+	@Override
+	@GET
+	@Path("/{id}/ancestors")
+	@Produces({ContentType.JSON, ContentType.SMILE, ContentType.CBOR})
+    public void getProductAncestors(@PathParam("id") Long id, @Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			String path = productRepo.findPathById(id);
+			if(path == null){
+				return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+			}
+			List<Long> ids = new ArrayList<Long>();
+			for(String ancestor : StringUtils.tokenizeToStringArray(path, "/")){
+				ids.add(Long.valueOf(ancestor));
+			}
+			return Response.status(200).entity(ids.isEmpty() ? ids : productRepo.findAncestors(ids)).build();
+		});
+    }
+	
+	@Override
+	@GET
+	@Path("/search")
 	@Produces("application/json")
-    public Response getProductChildren(@PathParam("id") Long id) {
-		Product p = productRepo.findOne(id);
-		if(p == null){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+    public Response searchProducts(@QueryParam("q") String query, @QueryParam("limit") Integer limit) {
+		if(!ProductSearchIndex.hasTerms(query)){
+			return Response.status(400).entity(ErrorMessage.EMPTY_QUERY).build();
+		}
+		if(limit != null && limit <= 0){
+			return Response.status(400).entity(ErrorMessage.INVALID_LIMIT).build();
 		}
-		return Response.status(200).entity(p.getChildren()).build();
+		List<SearchHit> hits = searchIndex.search(query, limit == null ? DEFAULT_SEARCH_LIMIT : Math.min(limit, MAX_SEARCH_LIMIT));
+		return Response.status(200).entity(hits).build();
     }
 	
 	@Override
 	@GET
-	@Path("/{id}/image")
+	@Path("/suggest")
+	@Produces("application/json")
+    public Response suggestProducts(@QueryParam("prefix") String prefix, @QueryParam("limit") Integer limit) {
+		if(!ProductNameSuggester.isValidPrefix(prefix)){
+			return Response.status(400).entity(ErrorMessage.EMPTY_PREFIX).build();
+		}
+		if(limit != null && limit <= 0){
+			return Response.status(400).entity(ErrorMessage.INVALID_LIMIT).build();
+		}
+		List<Suggestion> suggestions = nameSuggester.suggest(prefix, limit == null ? DEFAULT_SEARCH_LIMIT : Math.min(limit, MAX_SEARCH_LIMIT));
+		return Response.status(200).entity(suggestions).build();
+    }
+	
+	@Override
+	@GET
+	@Path("/changes")
 	@Produces("application/json")
-    public Response getProductImages(@PathParam("id") Long id) {
-		Product p = productRepo.findOne(id);
-		if(productRepo.findOne(id) == null){
-			return Response.status(404).entity(ErrorMessage.UNKNOWN_PRODUCT).build();
+    public void getChanges(@DefaultValue("0") @QueryParam("since") Long since, @QueryParam("limit") Integer limit, @Suspended AsyncResponse response) {
+		databaseExecutor.submit(response, () -> {
+			if(since < 0){
+				return Response.status(400).entity(ErrorMessage.INVALID_SYNC_TOKEN).build();
+			}
+			if(limit != null && limit <= 0){
+				return Response.status(400).entity(ErrorMessage.INVALID_PAGE_LIMIT).build();
+			}
+			if(deltaSync.isExpired(since)){
+				return Response.status(410).entity(ErrorMessage.SYNC_TOKEN_EXPIRED).build();
+			}
+			ChangeSet changes = deltaSync.changesSince(since, limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE));
+			return Response.status(200).entity(sparse(SparseRepresentation.writer(sparseMapper, DeltaSync.PRODUCT_FIELDS, DeltaSync.IMAGE_FIELDS), changes)).build();
+		});
+    }
+	
+	@Override
+	@GET
+	@Path("/changes/stream")
+	@Produces(ContentType.EVENT_STREAM)
+    public Response streamChanges(@HeaderParam("Last-Event-ID") String lastEventId, @QueryParam("since") String since) {
+		//set by EventSource clients when reconnecting, takes precedence over the initial since
+		String after = lastEventId != null ? lastEventId.trim() : since;
+		try {
+			return Response.status(200).entity(changeFeed.subscribe(after)).build();
+		} catch (IllegalArgumentException e) {
+			return Response.status(400).entity(ErrorMessage.INVALID_EVENT_ID).build();
+		} catch (RejectedExecutionException e) {
+			return Response.status(503).entity(ErrorMessage.TOO_MANY_SUBSCRIBERS).build();
 		}
-		return Response.status(200).entity(p.getImages()).build();
+    }
+	
+	@Override
+	@GET
+	@Path("/export")
+	@Produces(ContentType.NDJSON)
+    public Response exportCatalog() {
+		//streamed from a database cursor, not bound to the database executor timeout
+		return Response.status(200).entity((StreamingOutput) catalogTransfer::export).build();
+    }
+	
+	@Override
+	@POST
+	@Path("/import")
+	@Consumes(ContentType.NDJSON)
+	@Produces("application/json")
+    public Response importCatalog(InputStream records) throws IOException {
+		//streamed from the request in batches, not bound to the database executor timeout
+		ImportReport report = catalogTransfer.importFrom(records);
+		return Response.status(report.getError() == null ? 200 : 400).entity(report).build();
+    }
+	
+	@Override
+	@GET
+	@Path("/cache/stats")
+	@Produces("application/json")
+    public List<CacheReport> getCacheStatistics() {
+		List<CacheReport> reports = new ArrayList<CacheReport>(Arrays.asList(catalogCache.getProductReport(), catalogCache.getImageReport()));
+		reports.addAll(secondLevelCache.getReports());
+		return reports;
     }
 	
 	/**
 	 * <pre>
-	 * Internal method to remove child and image collections from Product object for output purpose.
-	 * @param product Product object to be striped from collections 
-	 * @param excludeChildren (optional) removes child collection from the returned object. Defaults to false.
-	 * @param excludeImages (optional) removes image collection from the returned object. Defaults to false.
-	 * @return product Product object striped from specified collections
+	 * Internal method to write ALL the Products as an array while they are read from the database, instead of materializing a list first.
+	 * @param plan relations to be read together with the Products
+	 * @return GeneratorOutput writing the array to the response body in the negotiated format
 	 * </pre> 
 	 */
-	private Product excludeProductRelations(Product p, boolean excludeChildren, boolean excludeImages){
-		if(excludeChildren){ p.getChildren().clear(); }			
-		if(excludeImages){ p.getImages().clear(); }
-		return p;
+	private GeneratorOutput streamProducts(ProductFetchPlan plan){
+		return generator -> {
+			generator.writeStartArray();
+			productRepo.scrollAll(plan, p -> {
+				try {
+					streamMapper.writeValue(generator, p);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			generator.writeEndArray();
+		};
 	}
 	
 	/**
 	 * <pre>
-	 * Internal method to remove child and image collections from Product objects contained in an Iterable.
-	 * @param products Iterable from whom objects will be striped from collections 
-	 * @param excludeChildren (optional) removes child collection from the objects.
-	 * @param excludeImages (optional) removes image collection from the objects.
-	 * @return List<Product> List of Product objects striped from specified collections
+	 * Internal method to write ALL the Products as sparse fieldsets in an array, reading them in keyset pages of projections.
+	 * @param fields Product fields to be read and written
+	 * @return GeneratorOutput writing the array to the response body in the negotiated format
 	 * </pre> 
 	 */
-	private List<Product> excludeRelations(Iterable<Product> products, boolean excludeChildren, boolean excludeImages){
-		List<Product> output = new ArrayList<Product>();
-		for(Product p : products){
-			p = excludeProductRelations(p, excludeChildren, excludeImages);
+	private GeneratorOutput streamProducts(Set<ProductField> fields){
+		ObjectWriter writer = SparseRepresentation.productWriter(sparseMapper, fields);
+		return generator -> {
+			generator.writeStartArray();
+			List<Product> page;
+			Long after = 0L;
+			do {
+				page = productRepo.findPage(after, MAX_PAGE_SIZE, fields);
+				for(Product p : page){
+					writer.writeValue(generator, p);
+				}
+				after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+			} while(page.size() == MAX_PAGE_SIZE);
+			generator.writeEndArray();
+		};
+	}
+	
+	/**
+	 * <pre>
+	 * Internal method to build the response serving a stored content: whole, a single requested byte range or 416.
+	 * @param blob stored content
+	 * @param mediaType of the content
+	 * @param range Range request header, may be null
+	 * @return Response with the content or error message
+	 * </pre>
+	 */
+	private Response content(Blob blob, String mediaType, String range){
+		ByteRange requested = ByteRange.parse(range, blob.getLength());
+		if(requested == null){
+			return Response.status(200).type(mediaType)
+					.header(HttpHeaders.CONTENT_LENGTH, blob.getLength())
+					.header(ACCEPT_RANGES, "bytes")
+					.entity(transfer(blob, 0, blob.getLength())).build();
+		}
+		if(!requested.isSatisfiable()){
+			return Response.status(416).header(CONTENT_RANGE, ByteRange.unsatisfied(blob.getLength()))
+					.entity(ErrorMessage.RANGE_NOT_SATISFIABLE).build();
 		}
-		return output;
+		return Response.status(206).type(mediaType)
+				.header(HttpHeaders.CONTENT_LENGTH, requested.getCount())
+				.header(CONTENT_RANGE, requested.toContentRange())
+				.header(ACCEPT_RANGES, "bytes")
+				.entity(transfer(blob, requested.getFirst(), requested.getCount())).build();
+	}
+	
+	/**
+	 * Internal method to answer a read with 304 when the client's copy is current (If-None-Match, or If-Modified-Since without it),
+	 * before the representation is written; otherwise the representation is returned with its validators.
+	 */
+	private static Response conditional(Request request, VersionTag tag, Object entity){
+		Response.ResponseBuilder notModified = request.evaluatePreconditions(tag.getLastModified(), tag.getEntityTag());
+		if(notModified != null){
+			return notModified.build();
+		}
+		return Response.status(200).entity(entity).tag(tag.getEntityTag()).lastModified(tag.getLastModified()).build();
+	}
+	
+	private static List<Long> ids(List<Image> images){
+		List<Long> ids = new ArrayList<Long>(images.size());
+		for(Image i : images){
+			ids.add(i.getId());
+		}
+		return ids;
+	}
+	
+	/**
+	 * Internal method to record the content status of an Image, invalidating its cached representations.
+	 */
+	private void setImageStatus(Image i, ImageStatus status){
+		imageRepo.updateStatus(Collections.singletonList(i.getId()), status);
+		eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.UPDATED, Collections.singletonList(i.getId())));
+		catalogCache.evictImage(i.getId());
+		catalogCache.evictProduct(i.getProduct().getId());
+	}
+	
+	/**
+	 * Internal method to write a range of a stored content to the response body, through the blob store channel transfer.
+	 */
+	private StreamingOutput transfer(Blob blob, long from, long count){
+		return output -> blobStore.transferTo(blob, from, count, Channels.newChannel(output));
+	}
+	
+	/**
+	 * Internal method to write a sparse fieldset representation to the response body.
+	 */
+	private static GeneratorOutput sparse(ObjectWriter writer, Object value){
+		return generator -> writer.writeValue(generator, value);
 	}
-
 }
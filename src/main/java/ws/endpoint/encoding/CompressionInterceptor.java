@@ -0,0 +1,185 @@
+package ws.endpoint.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import ws.constants.ContentType;
+
+/**
+ * <pre>
+ * Jersey filter and interceptor compressing response bodies with gzip or deflate, as accepted by the client (Accept-Encoding).
+ * Bodies are buffered up to min-size bytes: smaller bodies are written as they are, since compression would not pay off,
+ * larger ones (streamed bodies included) are compressed as they are written.
+ * A compressed body is a distinct representation, so its strong ETag gets the coding as a suffix ("tag--gzip"). The suffix is
+ * stripped from If-None-Match and If-Match before the endpoints evaluate them, and restored in the ETag of 304 responses.
+ * </pre>
+ */
+@Component
+public class CompressionInterceptor implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+	/**
+	 * Request property holding the content coding chosen for the response.
+	 */
+	static final String ENCODING_PROPERTY = CompressionInterceptor.class.getName() + ".encoding";
+	
+	static final String GZIP = "gzip";
+	
+	static final String DEFLATE = "deflate";
+	
+	/**
+	 * Separator between an entity tag and the content coding of the compressed representation.
+	 */
+	static final String TAG_SEPARATOR = "--";
+	
+	private static final Pattern TAG_CODING = Pattern.compile(TAG_SEPARATOR + "(" + GZIP + "|" + DEFLATE + ")\"");
+	
+	/**
+	 * Request property holding the content coding found in the entity tags of the request preconditions.
+	 */
+	static final String TAG_CODING_PROPERTY = CompressionInterceptor.class.getName() + ".tagCoding";
+	
+	/**
+	 * Number of bytes from which a response body is compressed.
+	 */
+	@Value("${ws.compression.min-size:1024}")
+	int minSize;
+	
+	@Value("${ws.compression.enabled:true}")
+	boolean enabled;
+
+	@Override
+	public void filter(ContainerRequestContext request) throws IOException {
+		for(String header : new String[]{HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MATCH}){
+			String value = request.getHeaderString(header);
+			Matcher coding = value == null ? null : TAG_CODING.matcher(value);
+			if(coding != null && coding.find()){
+				request.setProperty(TAG_CODING_PROPERTY, coding.group(1));
+				request.getHeaders().putSingle(header, TAG_CODING.matcher(value).replaceAll("\""));
+			}
+		}
+	}
+
+	@Override
+	public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+		String tagCoding = (String) request.getProperty(TAG_CODING_PROPERTY);
+		if(response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() && tagCoding != null){
+			//the client validated the compressed representation, which is the one it holds
+			encodeTag(response.getHeaders(), tagCoding);
+		}
+		if(!enabled || !response.hasEntity() || response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING) 
+				|| !isCompressible(response.getMediaType())){
+			return;
+		}
+		String encoding = negotiate(request.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+		response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if(encoding != null){
+			request.setProperty(ENCODING_PROPERTY, encoding);
+		}
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+		String encoding = (String) context.getProperty(ENCODING_PROPERTY);
+		if(encoding == null){
+			context.proceed();
+			return;
+		}
+		OutputStream original = context.getOutputStream();
+		ThresholdCompressingOutputStream compressing = new ThresholdCompressingOutputStream(original, minSize, encoding, 
+				() -> {
+					context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+					encodeTag(context.getHeaders(), encoding);
+				});
+		context.setOutputStream(compressing);
+		try {
+			context.proceed();
+			compressing.finish();
+		} finally {
+			context.setOutputStream(original);
+		}
+	}
+	
+	/**
+	 * <pre>
+	 * Chooses the content coding of the response, gzip being preferred over deflate.
+	 * Codings with a zero quality value are refused by the client. The identity coding is always acceptable and is not negotiated.
+	 * @param acceptEncoding Accept-Encoding header value, may be null
+	 * @return String gzip, deflate or null for an uncompressed response
+	 * </pre>
+	 */
+	static String negotiate(String acceptEncoding){
+		if(acceptEncoding == null){
+			return null;
+		}
+		boolean deflate = false;
+		for(String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")){
+			String[] parts = coding.split(";");
+			String name = parts[0].trim();
+			if(parts.length > 1 && isZeroQuality(parts[1])){
+				continue;
+			}
+			if(name.equals(GZIP) || name.equals("x-gzip") || name.equals("*")){
+				return GZIP;
+			}
+			deflate |= name.equals(DEFLATE);
+		}
+		return deflate ? DEFLATE : null;
+	}
+	
+	/**
+	 * Media types worth compressing: structured and text bodies. Binary content (e.g. images) is usually compressed already,
+	 * and is served with its length and byte ranges, which a content coding would invalidate.
+	 */
+	static boolean isCompressible(MediaType mediaType){
+		if(mediaType == null){
+			return false;
+		}
+		if(MediaType.valueOf(ContentType.EVENT_STREAM).isCompatible(mediaType)){
+			//events must reach the client as they are written, not once the threshold is buffered
+			return false;
+		}
+		String subtype = mediaType.getSubtype();
+		return mediaType.getType().equals("text") || subtype.equals("json") || subtype.endsWith("+json")
+				|| MediaType.valueOf(ContentType.NDJSON).isCompatible(mediaType) || MediaType.valueOf(ContentType.SMILE).isCompatible(mediaType) || MediaType.valueOf(ContentType.CBOR).isCompatible(mediaType);
+	}
+	
+	/**
+	 * Appends the content coding to the ETag of a response, if it has one.
+	 */
+	static void encodeTag(MultivaluedMap<String, Object> headers, String encoding){
+		Object value = headers.getFirst(HttpHeaders.ETAG);
+		if(value != null){
+			EntityTag tag = value instanceof EntityTag ? (EntityTag) value : EntityTag.valueOf(value.toString());
+			headers.putSingle(HttpHeaders.ETAG, new EntityTag(tag.getValue() + TAG_SEPARATOR + encoding, tag.isWeak()));
+		}
+	}
+	
+	private static boolean isZeroQuality(String parameter){
+		String[] pair = parameter.split("=");
+		if(pair.length != 2 || !pair[0].trim().equals("q")){
+			return false;
+		}
+		try {
+			return Double.parseDouble(pair[1].trim()) == 0;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+}
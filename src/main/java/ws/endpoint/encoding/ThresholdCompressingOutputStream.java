@@ -0,0 +1,131 @@
+package ws.endpoint.encoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <pre>
+ * Output stream buffering the first threshold bytes of a response body.
+ * When the threshold is exceeded, the content coding header is set (the container has not committed the headers yet, nothing was written)
+ * and the buffered and following bytes are compressed. Otherwise the buffered bytes are written as they are on finish.
+ * </pre>
+ */
+class ThresholdCompressingOutputStream extends FilterOutputStream {
+	private static final int BUFFER_SIZE = 8192;
+	
+	private final int threshold;
+	
+	private final String encoding;
+	
+	private final Runnable onCompress;
+	
+	private ByteArrayOutputStream buffer;
+	
+	private DeflaterOutputStream compressed;
+	
+	private Deflater deflater;
+	
+	private boolean finished;
+	
+	/**
+	 * @param out underlying response stream
+	 * @param threshold number of bytes from which the body is compressed
+	 * @param encoding gzip or deflate
+	 * @param onCompress callback setting the content coding header, called before the first compressed byte is written
+	 */
+	ThresholdCompressingOutputStream(OutputStream out, int threshold, String encoding, Runnable onCompress) {
+		super(out);
+		this.threshold = threshold;
+		this.encoding = encoding;
+		this.onCompress = onCompress;
+		this.buffer = new ByteArrayOutputStream(Math.min(threshold, BUFFER_SIZE));
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(compressed != null){
+			compressed.write(b, off, len);
+			return;
+		}
+		buffer.write(b, off, len);
+		if(buffer.size() > threshold){
+			onCompress.run();
+			//no sync flush: flushes after every streamed element would emit tiny deflate blocks
+			OutputStream shielded = new NonClosingOutputStream(out);
+			if(CompressionInterceptor.GZIP.equals(encoding)){
+				compressed = new GZIPOutputStream(shielded, BUFFER_SIZE);
+			}
+			else {
+				deflater = new Deflater();
+				compressed = new DeflaterOutputStream(shielded, deflater, BUFFER_SIZE);
+			}
+			buffer.writeTo(compressed);
+			buffer = null;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		//the buffered bytes are kept until it is known whether they are compressed
+		if(compressed != null){
+			compressed.flush();
+		}
+	}
+	
+	/**
+	 * Writes the buffered bytes or the compressed stream trailer, without closing the underlying stream.
+	 * @throws IOException if the underlying stream cannot be written
+	 */
+	void finish() throws IOException {
+		if(finished){
+			return;
+		}
+		finished = true;
+		if(compressed != null){
+			//releases the native compressor, the underlying stream is left open
+			compressed.close();
+			if(deflater != null){
+				deflater.end();
+			}
+		}
+		else {
+			buffer.writeTo(out);
+		}
+		out.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+	
+	/**
+	 * Keeps the compressed stream from closing the response stream, which is closed by the container.
+	 */
+	private static class NonClosingOutputStream extends FilterOutputStream {
+		NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
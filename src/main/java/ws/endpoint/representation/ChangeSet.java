@@ -0,0 +1,55 @@
+package ws.endpoint.representation;
+
+import java.util.List;
+
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.model.Tombstone;
+
+/**
+ * Products and Images created or updated, and tombstones of those deleted, between the "since" token of a delta request and "next".
+ * The next token is the value to be provided as "since" in order to retrieve the following changes; more is true when further changes
+ * are already known, so the client should ask again right away instead of waiting for its next polling interval.
+ *
+ */
+public class ChangeSet {
+	private List<Product> products;
+	
+	private List<Image> images;
+	
+	private List<Tombstone> deleted;
+	
+	private long next;
+	
+	private boolean more;
+	
+	public ChangeSet() {}
+	
+	public ChangeSet(List<Product> products, List<Image> images, List<Tombstone> deleted, long next, boolean more) {
+		this.products = products;
+		this.images = images;
+		this.deleted = deleted;
+		this.next = next;
+		this.more = more;
+	}
+
+	public List<Product> getProducts() {
+		return products;
+	}
+
+	public List<Image> getImages() {
+		return images;
+	}
+
+	public List<Tombstone> getDeleted() {
+		return deleted;
+	}
+
+	public long getNext() {
+		return next;
+	}
+
+	public boolean isMore() {
+		return more;
+	}
+}
@@ -0,0 +1,18 @@
+package ws.endpoint.representation;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Response body written token by token, like a StreamingOutput, to a generator of the negotiated format (JSON, Smile or CBOR).
+ * Generators are created and closed by JacksonFormatWriter.
+ */
+@FunctionalInterface
+public interface GeneratorOutput {
+	/**
+	 * @param generator JsonGenerator of the negotiated format
+	 * @throws IOException if the response body cannot be written
+	 */
+	void write(JsonGenerator generator) throws IOException;
+}
@@ -0,0 +1,94 @@
+package ws.endpoint.representation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import ws.constants.ContentType;
+
+/**
+ * <pre>
+ * Jersey writer for the binary encodings of the service (Smile and CBOR), and for GeneratorOutput bodies in any of the negotiated formats.
+ * The tree model and the serializers are the ones of the application ObjectMapper, only the token encoding changes,
+ * so a binary response carries exactly the same properties as its JSON counterpart.
+ * Plain JSON entities are left to the default Jackson provider.
+ * </pre>
+ */
+@Component
+@Produces({ContentType.JSON, ContentType.SMILE, ContentType.CBOR})
+public class JacksonFormatWriter implements MessageBodyWriter<Object> {
+	private static final MediaType SMILE = MediaType.valueOf(ContentType.SMILE);
+	
+	private static final MediaType CBOR = MediaType.valueOf(ContentType.CBOR);
+	
+	private ObjectMapper objectMapper;
+	
+	private JsonFactory jsonFactory;
+	
+	private final JsonFactory smileFactory = new SmileFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	
+	private final JsonFactory cborFactory = new CBORFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	
+	@Autowired
+	void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+		//the response stream belongs to the container
+		this.jsonFactory = objectMapper.getFactory().copy().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return GeneratorOutput.class.isAssignableFrom(type) || isBinary(mediaType);
+	}
+
+	@Override
+	public long getSize(Object t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(Object t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+		JsonGenerator generator = factory(mediaType).createGenerator(entityStream);
+		if(t instanceof GeneratorOutput){
+			((GeneratorOutput) t).write(generator);
+		}
+		else {
+			objectMapper.writerFor(objectMapper.constructType(genericType)).writeValue(generator, t);
+		}
+		generator.close();
+	}
+	
+	/**
+	 * @param mediaType negotiated media type
+	 * @return boolean true if the media type is one of the binary encodings
+	 */
+	static boolean isBinary(MediaType mediaType){
+		return !mediaType.isWildcardSubtype() && (SMILE.isCompatible(mediaType) || CBOR.isCompatible(mediaType));
+	}
+	
+	private JsonFactory factory(MediaType mediaType){
+		if(mediaType.isWildcardSubtype()){
+			return jsonFactory;
+		}
+		if(SMILE.isCompatible(mediaType)){
+			return smileFactory;
+		}
+		return CBOR.isCompatible(mediaType) ? cborFactory : jsonFactory;
+	}
+}
@@ -0,0 +1,102 @@
+package ws.endpoint.representation;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.repository.ImageField;
+import ws.persistence.repository.ProductField;
+
+/**
+ * <pre>
+ * JSON Merge Patch (RFC 7396) documents of Products and Images, read into the new values of the columns they replace.
+ * Members absent from the document are left unchanged and null members remove the value, which only the parent of a Product allows.
+ * Related objects are referenced as in the regular representation, {"id":1}, or by the id alone.
+ * Read-only members (id, version, lastModified, children, images, status) and unknown ones make the document invalid.
+ * </pre>
+ */
+public final class MergePatch {
+	private MergePatch() {}
+
+	/**
+	 * @param patch merge patch document of a Product
+	 * @return Map<ProductField, Object> new name and description (String) and parent id (Long), or null if the document is invalid
+	 */
+	public static Map<ProductField, Object> productChanges(JsonNode patch){
+		if(patch == null || !patch.isObject()){
+			return null;
+		}
+		Map<ProductField, Object> changes = new EnumMap<ProductField, Object>(ProductField.class);
+		for(Iterator<Map.Entry<String, JsonNode>> members = patch.fields(); members.hasNext();){
+			Map.Entry<String, JsonNode> member = members.next();
+			JsonNode value = member.getValue();
+			switch(member.getKey()){
+			case "name":
+			case "description":
+				if(!value.isNull() && !value.isTextual()){
+					return null;
+				}
+				changes.put(member.getKey().equals("name") ? ProductField.NAME : ProductField.DESCRIPTION, value.isNull() ? null : value.asText());
+				break;
+			case "parent":
+				Long parent = reference(value);
+				if(parent == null && !value.isNull()){
+					return null;
+				}
+				changes.put(ProductField.PARENT, parent);
+				break;
+			default:
+				return null;
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * @param patch merge patch document of an Image
+	 * @return Map<ImageField, Object> new type (ImageType) and product id (Long), or null if the document is invalid
+	 */
+	public static Map<ImageField, Object> imageChanges(JsonNode patch){
+		if(patch == null || !patch.isObject()){
+			return null;
+		}
+		Map<ImageField, Object> changes = new EnumMap<ImageField, Object>(ImageField.class);
+		for(Iterator<Map.Entry<String, JsonNode>> members = patch.fields(); members.hasNext();){
+			Map.Entry<String, JsonNode> member = members.next();
+			JsonNode value = member.getValue();
+			switch(member.getKey()){
+			case "type":
+				if(!value.isNull() && !value.isTextual()){
+					return null;
+				}
+				try {
+					changes.put(ImageField.TYPE, value.isNull() ? null : ImageType.valueOf(value.asText()));
+				} catch (IllegalArgumentException e) {
+					return null;
+				}
+				break;
+			case "product":
+				Long product = reference(value);
+				if(product == null && !value.isNull()){
+					return null;
+				}
+				changes.put(ImageField.PRODUCT, product);
+				break;
+			default:
+				return null;
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * @return Long id of a related object written as {"id":1} or 1, null otherwise
+	 */
+	private static Long reference(JsonNode value){
+		JsonNode id = value.isObject() ? value.get("id") : value;
+		return id != null && id.canConvertToLong() && id.isIntegralNumber() ? id.asLong() : null;
+	}
+}
@@ -0,0 +1,31 @@
+package ws.endpoint.representation;
+
+import java.util.List;
+
+import ws.persistence.model.Product;
+
+/**
+ * Keyset paginated slice of the Products in the service.
+ * The next cursor is the id to be provided as the "after" parameter in order to retrieve the following page, and is null on the last page.
+ *
+ */
+public class ProductPage {
+	private List<Product> products;
+	
+	private Long next;
+	
+	public ProductPage() {}
+	
+	public ProductPage(List<Product> products, Long next) {
+		this.products = products;
+		this.next = next;
+	}
+
+	public List<Product> getProducts() {
+		return products;
+	}
+
+	public Long getNext() {
+		return next;
+	}
+}
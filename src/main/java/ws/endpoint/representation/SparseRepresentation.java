@@ -0,0 +1,96 @@
+package ws.endpoint.representation;
+
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.repository.ImageField;
+import ws.persistence.repository.ProductField;
+
+/**
+ * <pre>
+ * JSON representation of Product and Image sparse fieldsets (?fields=id,name,parent).
+ * Only the requested properties are written, and related objects (parent, children, images, an Image's product) are written as ids.
+ * The filters are bound to the mixins of a dedicated mapper, so the regular representation is not affected.
+ * </pre>
+ */
+public final class SparseRepresentation {
+	private static final String PRODUCT_FILTER = "sparseProduct";
+	
+	private static final String IMAGE_FILTER = "sparseImage";
+	
+	private SparseRepresentation() {}
+	
+	/**
+	 * Creates a copy of the given mapper with filterable Products and Images.
+	 * @param mapper ObjectMapper to be copied
+	 * @return ObjectMapper for sparse fieldsets, to be used through productWriter and imageWriter
+	 */
+	public static ObjectMapper mapper(ObjectMapper mapper){
+		return mapper.copy()
+				.addMixIn(Product.class, ProductMixin.class)
+				.addMixIn(Image.class, ImageMixin.class);
+	}
+	
+	/**
+	 * @param mapper ObjectMapper created by mapper
+	 * @param fields Product fields to be written
+	 * @return ObjectWriter writing only the given Product fields
+	 */
+	public static ObjectWriter productWriter(ObjectMapper mapper, Set<ProductField> fields){
+		String[] properties = fields.stream().map(ProductField::getProperty).toArray(String[]::new);
+		return mapper.writer(new SimpleFilterProvider()
+				.addFilter(PRODUCT_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(properties))
+				.addFilter(IMAGE_FILTER, SimpleBeanPropertyFilter.serializeAll()));
+	}
+	
+	/**
+	 * @param mapper ObjectMapper created by mapper
+	 * @param fields Image fields to be written
+	 * @return ObjectWriter writing only the given Image fields
+	 */
+	public static ObjectWriter imageWriter(ObjectMapper mapper, Set<ImageField> fields){
+		String[] properties = fields.stream().map(ImageField::getProperty).toArray(String[]::new);
+		return mapper.writer(new SimpleFilterProvider()
+				.addFilter(PRODUCT_FILTER, SimpleBeanPropertyFilter.serializeAll())
+				.addFilter(IMAGE_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(properties)));
+	}
+	
+	/**
+	 * @param mapper ObjectMapper created by mapper
+	 * @param productFields Product fields to be written
+	 * @param imageFields Image fields to be written
+	 * @return ObjectWriter writing only the given Product and Image fields, e.g. for values holding both
+	 */
+	public static ObjectWriter writer(ObjectMapper mapper, Set<ProductField> productFields, Set<ImageField> imageFields){
+		return mapper.writer(new SimpleFilterProvider()
+				.addFilter(PRODUCT_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(productFields.stream().map(ProductField::getProperty).toArray(String[]::new)))
+				.addFilter(IMAGE_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(imageFields.stream().map(ImageField::getProperty).toArray(String[]::new))));
+	}
+	
+	@JsonFilter(PRODUCT_FILTER)
+	abstract static class ProductMixin {
+		@JsonIdentityReference(alwaysAsId = true)
+		Product parent;
+		
+		@JsonIdentityReference(alwaysAsId = true)
+		abstract List<Product> getLoadedChildren();
+		
+		@JsonIdentityReference(alwaysAsId = true)
+		abstract List<Image> getLoadedImages();
+	}
+	
+	@JsonFilter(IMAGE_FILTER)
+	abstract static class ImageMixin {
+		@JsonIdentityReference(alwaysAsId = true)
+		Product product;
+	}
+}
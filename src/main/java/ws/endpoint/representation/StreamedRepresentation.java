@@ -0,0 +1,45 @@
+package ws.endpoint.representation;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+
+/**
+ * <pre>
+ * JSON representation of Products written one at a time as elements of a streamed array.
+ * Every Product appears exactly once in the stream, so references to other Products (parent, children, an Image's product)
+ * are written as ids and resolved by the client as forward or backward references within the same document.
+ * Images are only written inside their Product and keep being written in full.
+ * </pre>
+ */
+public final class StreamedRepresentation {
+	private StreamedRepresentation() {}
+	
+	/**
+	 * Creates a copy of the given mapper writing Product references as ids.
+	 * @param mapper ObjectMapper to be copied
+	 * @return ObjectMapper for streamed Products
+	 */
+	public static ObjectMapper mapper(ObjectMapper mapper){
+		return mapper.copy()
+				.addMixIn(Product.class, ProductMixin.class)
+				.addMixIn(Image.class, ImageMixin.class);
+	}
+	
+	abstract static class ProductMixin {
+		@JsonIdentityReference(alwaysAsId = true)
+		Product parent;
+		
+		@JsonIdentityReference(alwaysAsId = true)
+		abstract List<Product> getLoadedChildren();
+	}
+	
+	abstract static class ImageMixin {
+		@JsonIdentityReference(alwaysAsId = true)
+		Product product;
+	}
+}
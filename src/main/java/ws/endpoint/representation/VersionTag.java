@@ -0,0 +1,151 @@
+package ws.endpoint.representation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import javax.persistence.Persistence;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+
+/**
+ * <pre>
+ * Validators (ETag and Last-Modified) of a Product or Image representation, computed from the version columns of the object graph
+ * without serializing it. The graph is walked as it is written: parents, loaded children and images, an Image's product,
+ * each object once. The version of a Product only covers its own columns, so the tag combines the id and version of every object
+ * in the graph, and it changes as well when a related object is added, removed or updated.
+ * Last-Modified is the latest modification time in the graph; removals are reflected by touching the Product they were removed from.
+ * The tag of a single Product or Image is prefixed with its own version ("version-hash"), so a precondition on the object's columns
+ * alone can be checked against its version column without reading the graph (see matchesVersion).
+ * </pre>
+ */
+public final class VersionTag {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+	private long hash = FNV_OFFSET;
+
+	private long lastModified;
+
+	private Long version;
+
+	private VersionTag() {}
+
+	/**
+	 * @param product Product as written by the endpoint, with the relations of its fetch plan
+	 * @return VersionTag of its representation
+	 */
+	public static VersionTag of(Product product){
+		VersionTag tag = new VersionTag();
+		tag.version = product.getVersion();
+		tag.walk(product);
+		return tag;
+	}
+
+	/**
+	 * @param image Image as written by the endpoint
+	 * @return VersionTag of its representation
+	 */
+	public static VersionTag of(Image image){
+		VersionTag tag = new VersionTag();
+		tag.version = image.getVersion();
+		tag.walk(image);
+		return tag;
+	}
+
+	/**
+	 * @param products Products as written by the endpoint, in order
+	 * @param mediaType negotiated media type, since each encoding is a distinct representation
+	 * @return VersionTag of the list representation
+	 */
+	public static VersionTag of(Collection<Product> products, MediaType mediaType){
+		VersionTag tag = new VersionTag();
+		tag.mix(mediaType.toString().hashCode());
+		tag.mix(products.size());
+		products.forEach(tag::walk);
+		return tag;
+	}
+
+	/**
+	 * @return EntityTag strong tag of the representation
+	 */
+	public EntityTag getEntityTag(){
+		return new EntityTag(version == null ? Long.toHexString(hash) : version + "-" + Long.toHexString(hash));
+	}
+
+	/**
+	 * @param ifMatch If-Match header, "*" or a list of strong tags
+	 * @param version current version of the single Product or Image the tags were returned for
+	 * @return boolean true if the header is "*" or one of its tags was returned for the given version, whatever the rest of the graph
+	 */
+	public static boolean matchesVersion(String ifMatch, long version){
+		for(String tag : ifMatch.split(",")){
+			tag = tag.trim();
+			if(tag.equals("*")){
+				return true;
+			}
+			//weak tags never match If-Match
+			if(tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"") && tag.startsWith("\"" + version + "-")){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return Date latest modification time of the objects in the representation
+	 */
+	public Date getLastModified(){
+		return new Date(lastModified);
+	}
+
+	private void walk(Product p){
+		if(p == null || !visited.add(p)){
+			return;
+		}
+		visit('P', p.getId(), p.getVersion(), p.getLastModified());
+		walk(p.getParent());
+		//relations left out of the fetch plan are written empty, their sizes tell a loaded empty collection apart
+		if(Persistence.getPersistenceUtil().isLoaded(p.getChildren())){
+			mix(p.getChildren().size());
+			p.getChildren().forEach(this::walk);
+		}
+		if(Persistence.getPersistenceUtil().isLoaded(p.getImages())){
+			mix(p.getImages().size());
+			p.getImages().forEach(this::walk);
+		}
+	}
+
+	private void walk(Image i){
+		if(i == null || !visited.add(i)){
+			return;
+		}
+		visit('I', i.getId(), i.getVersion(), i.getLastModified());
+		walk(i.getProduct());
+	}
+
+	private void visit(char kind, Long id, long version, long modified){
+		mix(kind);
+		mix(id);
+		mix(version);
+		lastModified = Math.max(lastModified, modified);
+	}
+
+	/**
+	 * FNV-1a step over the 8 bytes of a value.
+	 */
+	private void mix(long value){
+		for(int shift = 0; shift < Long.SIZE; shift += Byte.SIZE){
+			hash ^= (value >>> shift) & 0xff;
+			hash *= FNV_PRIME;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package ws.event;
+
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Spring application event published after Images are committed: created, updated (including their content status) or deleted,
+ * also when deleted along with their Product subtree (published before the ProductChangeEvent of the same chunk).
+ * Listeners run synchronously in the publishing thread.
+ */
+public class ImageChangeEvent extends ApplicationEvent {
+	private static final long serialVersionUID = 1L;
+
+	public enum Type { CREATED, UPDATED, DELETED }
+	
+	private final Type type;
+	
+	private final List<Long> ids;
+	
+	/**
+	 * @param source publisher of the event
+	 * @param type of change
+	 * @param ids of the changed Images
+	 */
+	public ImageChangeEvent(Object source, Type type, List<Long> ids) {
+		super(source);
+		this.type = type;
+		this.ids = ids;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public List<Long> getIds() {
+		return ids;
+	}
+}
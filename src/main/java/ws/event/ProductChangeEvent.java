@@ -0,0 +1,86 @@
+package ws.event;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+
+import ws.persistence.model.Product;
+
+/**
+ * Spring application event published after Products are committed: created or updated (SAVED) or deleted (DELETED).
+ * Listeners run synchronously in the publishing thread and must not modify the Products.
+ */
+public class ProductChangeEvent extends ApplicationEvent {
+	private static final long serialVersionUID = 1L;
+
+	public enum Type { SAVED, DELETED }
+	
+	private final Type type;
+	
+	private final List<Product> products;
+	
+	private final List<Long> ids;
+	
+	private final boolean created;
+	
+	private ProductChangeEvent(Object source, Type type, List<Product> products, List<Long> ids, boolean created) {
+		super(source);
+		this.type = type;
+		this.products = products;
+		this.ids = ids;
+		this.created = created;
+	}
+	
+	/**
+	 * @param source publisher of the event
+	 * @param products newly created Products
+	 * @return ProductChangeEvent of type SAVED, flagged as created
+	 */
+	public static ProductChangeEvent created(Object source, List<Product> products){
+		return new ProductChangeEvent(source, Type.SAVED, products, Collections.<Long>emptyList(), true);
+	}
+	
+	/**
+	 * @param source publisher of the event
+	 * @param products created or updated Products, with their current state
+	 * @return ProductChangeEvent of type SAVED
+	 */
+	public static ProductChangeEvent saved(Object source, List<Product> products){
+		return new ProductChangeEvent(source, Type.SAVED, products, Collections.<Long>emptyList(), false);
+	}
+	
+	/**
+	 * @param source publisher of the event
+	 * @param ids of the deleted Products
+	 * @return ProductChangeEvent of type DELETED
+	 */
+	public static ProductChangeEvent deleted(Object source, List<Long> ids){
+		return new ProductChangeEvent(source, Type.DELETED, Collections.<Product>emptyList(), ids, false);
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * @return List<Product> saved Products, empty for DELETED
+	 */
+	public List<Product> getProducts() {
+		return products;
+	}
+	
+	/**
+	 * @return List<Long> ids of the deleted Products, empty for SAVED
+	 */
+	public List<Long> getIds() {
+		return ids;
+	}
+	
+	/**
+	 * @return boolean true if the saved Products did not exist before
+	 */
+	public boolean isCreated() {
+		return created;
+	}
+}
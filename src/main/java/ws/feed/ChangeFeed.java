@@ -0,0 +1,198 @@
+package ws.feed;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ws.event.ImageChangeEvent;
+import ws.event.ProductChangeEvent;
+import ws.feed.ChangeRecord.Entity;
+import ws.feed.ChangeRecord.Operation;
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+import ws.persistence.model.Product;
+
+/**
+ * <pre>
+ * Feed of Product and Image changes streamed as Server-Sent Events, so consumers can keep their copies in sync without polling.
+ * Every committed change is appended to a ChangeLog of the last ws.changes.capacity records, the only memory the feed holds:
+ * each subscriber reads the log from its own cursor in its request thread, so a slow consumer only delays itself.
+ * Event ids are "epoch:sequence", the epoch telling the sequences of this boot apart from those of a previous one (or another node).
+ * A subscriber resuming from another epoch or from a sequence no longer retained (or one falling that far behind) receives a reset event
+ * carrying the current event id, after which it must reload its state and continue from there.
+ * At most ws.changes.max-subscribers streams are open at a time; idle streams get a comment every ws.changes.heartbeat-ms,
+ * which also detects disconnected clients.
+ * </pre>
+ */
+@Component
+public class ChangeFeed implements MetricsSource {
+	public static final String CHANGE_EVENT = "change";
+
+	public static final String RESET_EVENT = "reset";
+
+	private static final int READ_SIZE = 100;
+
+	/**
+	 * Jersey buffers response bodies up to its content length buffer (8192 bytes by default) before committing them,
+	 * so the first comment is padded beyond it for the subscription to reach the client at once.
+	 */
+	private static final int COMMIT_PADDING = 8192;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Value("${ws.changes.heartbeat-ms:15000}")
+	long heartbeatMillis;
+
+	@Value("${ws.changes.max-subscribers:100}")
+	int maxSubscribers;
+
+	private final ChangeLog changeLog;
+
+	private final AtomicInteger subscribers = new AtomicInteger();
+
+	private final LongAdder resets = new LongAdder();
+
+	private volatile boolean running = true;
+
+	@Autowired
+	public ChangeFeed(@Value("${ws.changes.capacity:10000}") int capacity) {
+		this.changeLog = new ChangeLog(capacity);
+	}
+
+	@EventListener
+	public void onProductChange(ProductChangeEvent event){
+		if(event.getType() == ProductChangeEvent.Type.SAVED){
+			Operation operation = event.isCreated() ? Operation.CREATED : Operation.UPDATED;
+			for(Product product : event.getProducts()){
+				changeLog.append(Entity.PRODUCT, operation, product.getId());
+			}
+		} else {
+			for(Long id : event.getIds()){
+				changeLog.append(Entity.PRODUCT, Operation.DELETED, id);
+			}
+		}
+	}
+
+	@EventListener
+	public void onImageChange(ImageChangeEvent event){
+		Operation operation = Operation.valueOf(event.getType().name());
+		for(Long id : event.getIds()){
+			changeLog.append(Entity.IMAGE, operation, id);
+		}
+	}
+
+	/**
+	 * Opens a stream of the changes following an event, written until the client disconnects or the feed shuts down.
+	 * @param after id of the last change event seen by the subscriber ("epoch:sequence"), null for only the changes from now on
+	 * @return StreamingOutput text/event-stream body
+	 * @throws IllegalArgumentException if after is not an event id
+	 * @throws RejectedExecutionException if ws.changes.max-subscribers streams are already open
+	 */
+	public StreamingOutput subscribe(String after){
+		long cursor = changeLog.getLastSequence();
+		boolean reset = false;
+		if(after != null){
+			int colon = after.lastIndexOf(':');
+			if(colon <= 0){
+				throw new IllegalArgumentException("Not a change event id: " + after);
+			}
+			long sequence = Long.parseLong(after.substring(colon + 1));
+			if(sequence < 0){
+				throw new IllegalArgumentException("Not a change event id: " + after);
+			}
+			//a sequence of another epoch says nothing about the changes of this one
+			reset = !after.substring(0, colon).equals(changeLog.getEpoch());
+			if(!reset){
+				cursor = sequence;
+			}
+		}
+		if(subscribers.incrementAndGet() > maxSubscribers){
+			subscribers.decrementAndGet();
+			throw new RejectedExecutionException("Too many change feed subscribers");
+		}
+		long start = cursor;
+		boolean startReset = reset;
+		return output -> {
+			try {
+				stream(new OutputStreamWriter(output, StandardCharsets.UTF_8), start, startReset);
+			} catch (IOException e) {
+				//client disconnected
+			} finally {
+				subscribers.decrementAndGet();
+			}
+		};
+	}
+
+	@PreDestroy
+	void shutdown(){
+		running = false;
+		changeLog.wakeUp();
+	}
+
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_changes_sequence", "counter", "Sequence number of the latest Product or Image change");
+		writer.sample("ws_changes_sequence", changeLog.getLastSequence());
+		writer.family("ws_changes_subscribers", "gauge", "Open change feed streams");
+		writer.sample("ws_changes_subscribers", subscribers.get());
+		writer.family("ws_changes_resets_total", "counter", "Change feed subscribers that had to reload, being behind the retained changes");
+		writer.sample("ws_changes_resets_total", resets.sum());
+	}
+
+	private void stream(Writer writer, long after, boolean reset) throws IOException {
+		long cursor = after;
+		//commits the response, so the client knows it is subscribed before the first change
+		comment(writer, "subscribed" + String.format("%" + COMMIT_PADDING + "s", ""));
+		try {
+			while(running){
+				List<ChangeRecord> records = reset ? null : changeLog.read(cursor, READ_SIZE);
+				reset = false;
+				if(records == null){
+					cursor = changeLog.getLastSequence();
+					resets.increment();
+					event(writer, RESET_EVENT, cursor, eventId(cursor));
+				} else if(!records.isEmpty()){
+					for(ChangeRecord record : records){
+						event(writer, CHANGE_EVENT, record.getSequence(), objectMapper.writeValueAsString(record));
+					}
+					cursor = records.get(records.size() - 1).getSequence();
+				} else if(!changeLog.await(cursor, heartbeatMillis, TimeUnit.MILLISECONDS)){
+					comment(writer, "heartbeat");
+				}
+				writer.flush();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void event(Writer writer, String name, long sequence, String data) throws IOException {
+		writer.write("id: " + eventId(sequence) + "\nevent: " + name + "\ndata: " + data + "\n\n");
+	}
+
+	private String eventId(long sequence){
+		return changeLog.getEpoch() + ":" + sequence;
+	}
+
+	private static void comment(Writer writer, String text) throws IOException {
+		writer.write(": " + text + "\n\n");
+		writer.flush();
+	}
+}
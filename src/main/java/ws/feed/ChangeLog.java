@@ -0,0 +1,118 @@
+package ws.feed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import ws.feed.ChangeRecord.Entity;
+import ws.feed.ChangeRecord.Operation;
+
+/**
+ * <pre>
+ * Bounded ring buffer of the latest ChangeRecords. Sequence numbers start at 1; once full, every append overwrites the oldest record.
+ * Readers keep their own cursor (the last sequence they have seen) and detect when it fell behind the retained records.
+ * Sequences restart with every log, so each log has a random epoch: a cursor is only meaningful together with the epoch it was read in.
+ * </pre>
+ */
+public class ChangeLog {
+	private final ChangeRecord[] records;
+	
+	private final String epoch;
+	
+	/**
+	 * Sequence of the last appended record, 0 when empty.
+	 */
+	private long last;
+	
+	public ChangeLog(int capacity) {
+		this(capacity, Long.toHexString(ThreadLocalRandom.current().nextLong()));
+	}
+	
+	/**
+	 * @param capacity number of retained records
+	 * @param epoch identifier of this log's sequences, without ':'
+	 */
+	public ChangeLog(int capacity, String epoch) {
+		if(capacity < 1){
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.records = new ChangeRecord[capacity];
+		this.epoch = epoch;
+	}
+	
+	/**
+	 * Appends a record and wakes up waiting readers.
+	 * @return ChangeRecord appended record, with its sequence
+	 */
+	public synchronized ChangeRecord append(Entity entity, Operation operation, Long id){
+		ChangeRecord record = new ChangeRecord(++last, entity, operation, id);
+		records[(int) (record.getSequence() % records.length)] = record;
+		notifyAll();
+		return record;
+	}
+	
+	/**
+	 * @param after sequence of the last record seen by the reader
+	 * @param max maximum number of records returned
+	 * @return List<ChangeRecord> records following after, in order, empty if none;
+	 * null if some of them were already overwritten or after is unknown (ahead of the log, e.g. from before a restart)
+	 */
+	public synchronized List<ChangeRecord> read(long after, int max){
+		if(after > last || after < last - records.length){
+			return null;
+		}
+		if(after == last){
+			return Collections.emptyList();
+		}
+		int count = (int) Math.min(max, last - after);
+		List<ChangeRecord> result = new ArrayList<ChangeRecord>(count);
+		for(long sequence = after + 1; sequence <= after + count; sequence++){
+			result.add(records[(int) (sequence % records.length)]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Waits for a record to follow after.
+	 * @param after sequence of the last record seen by the reader
+	 * @param timeout maximum wait
+	 * @param unit of the timeout
+	 * @return boolean true if there are records following after
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized boolean await(long after, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long remaining;
+		while(last <= after && (remaining = deadline - System.nanoTime()) > 0){
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return last > after;
+	}
+	
+	/**
+	 * Wakes up waiting readers without appending, e.g. on shutdown.
+	 */
+	public synchronized void wakeUp(){
+		notifyAll();
+	}
+	
+	/**
+	 * @return long sequence of the last appended record, 0 when empty
+	 */
+	public synchronized long getLastSequence(){
+		return last;
+	}
+	
+	public int getCapacity(){
+		return records.length;
+	}
+	
+	/**
+	 * @return String epoch of the sequences of this log, different on every boot
+	 */
+	public String getEpoch(){
+		return epoch;
+	}
+}
@@ -0,0 +1,41 @@
+package ws.feed;
+
+/**
+ * Compact entry of the change feed: which entity changed and how, identified by a sequence number increasing by one per change.
+ */
+public class ChangeRecord {
+	public enum Entity { PRODUCT, IMAGE }
+	
+	public enum Operation { CREATED, UPDATED, DELETED }
+	
+	private final long sequence;
+	
+	private final Entity entity;
+	
+	private final Operation operation;
+	
+	private final Long id;
+	
+	public ChangeRecord(long sequence, Entity entity, Operation operation, Long id) {
+		this.sequence = sequence;
+		this.entity = entity;
+		this.operation = operation;
+		this.id = id;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Entity getEntity() {
+		return entity;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public Long getId() {
+		return id;
+	}
+}
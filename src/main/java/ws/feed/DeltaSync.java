@@ -0,0 +1,141 @@
+package ws.feed;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import ws.endpoint.representation.ChangeSet;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.model.Tombstone;
+import ws.persistence.repository.ImageField;
+import ws.persistence.repository.ImageRepository;
+import ws.persistence.repository.ProductField;
+import ws.persistence.repository.ProductRepository;
+import ws.persistence.repository.TombstoneRepository;
+
+/**
+ * <pre>
+ * Delta synchronization of Products and Images, for consumers polling the catalog instead of following the change feed.
+ * The sync token is a last modification time (epoch milliseconds): a delta holds the rows modified, and the tombstones written,
+ * after the token and up to the returned next token, read through the lastModified and deletedAt indexes.
+ * Deltas stop ws.sync.settle-ms before the current time, so writes that were still uncommitted when a delta was read
+ * (their time is taken before commit) are picked up by the following delta instead of being skipped. This holds because
+ * write transactions are rolled back unless committed within ws.sync.write-timeout-ms of their begin, before which their times are
+ * taken (see WriteBarrierTransactionManager): settle-ms must exceed it, which is checked at startup.
+ * Tombstones are purged after ws.sync.tombstone-retention-days; older tokens are expired and the consumer must reload its copy.
+ * </pre>
+ */
+@Component
+public class DeltaSync {
+	/**
+	 * Product properties written by deltas; relations are read by following the parent references.
+	 */
+	public static final Set<ProductField> PRODUCT_FIELDS = EnumSet.of(ProductField.ID, ProductField.NAME, ProductField.DESCRIPTION, 
+			ProductField.PARENT, ProductField.VERSION, ProductField.LAST_MODIFIED);
+	
+	public static final Set<ImageField> IMAGE_FIELDS = EnumSet.allOf(ImageField.class);
+	
+	@Autowired
+	ProductRepository productRepo;
+	
+	@Autowired
+	ImageRepository imageRepo;
+	
+	@Autowired
+	TombstoneRepository tombstoneRepo;
+	
+	@Value("${ws.sync.settle-ms:1000}")
+	long settleMillis;
+	
+	@Value("${ws.sync.tombstone-retention-days:7}")
+	long retentionDays;
+	
+	@Value("${ws.sync.write-timeout-ms:800}")
+	long writeTimeoutMillis;
+	
+	@PostConstruct
+	void checkSettle(){
+		if(writeTimeoutMillis <= 0 || settleMillis <= writeTimeoutMillis){
+			throw new IllegalStateException("ws.sync.settle-ms (" + settleMillis + ") must exceed ws.sync.write-timeout-ms (" + writeTimeoutMillis
+					+ "), or deltas may skip late commits");
+		}
+	}
+	
+	/**
+	 * @param since sync token
+	 * @return boolean true if tombstones after the token may have been purged; 0, the initial token, never expires
+	 */
+	public boolean isExpired(long since){
+		return since != 0 && since < horizon();
+	}
+	
+	/**
+	 * Reads the changes after a sync token. Each of products, images and deleted holds at most limit elements,
+	 * except when more than limit changes of a kind share a single millisecond, which are never split between deltas.
+	 * @param since sync token, 0 for the whole catalog
+	 * @param limit maximum number of changes of each kind
+	 * @return ChangeSet changes and next token
+	 */
+	public ChangeSet changesSince(long since, int limit){
+		long upTo = System.currentTimeMillis() - settleMillis;
+		if(upTo <= since){
+			return new ChangeSet(new ArrayList<Product>(), new ArrayList<Image>(), new ArrayList<Tombstone>(), since, false);
+		}
+		List<Product> products = productRepo.findModified(since, upTo, limit + 1, PRODUCT_FIELDS);
+		List<Image> images = imageRepo.findModified(since, upTo, limit + 1, IMAGE_FIELDS);
+		List<Tombstone> deleted = tombstoneRepo.findDeleted(since, upTo, new PageRequest(0, limit + 1));
+		//a truncated kind bounds the delta just before its first row left out, so no kind skips changes of another
+		long next = upTo;
+		next = bound(next, products, limit, Product::getLastModified);
+		next = bound(next, images, limit, Image::getLastModified);
+		next = bound(next, deleted, limit, Tombstone::getDeletedAt);
+		if(next <= since){
+			//over limit changes in the millisecond after the token, that millisecond is returned whole
+			next = since + 1;
+			products = productRepo.findModified(since, next, Integer.MAX_VALUE, PRODUCT_FIELDS);
+			images = imageRepo.findModified(since, next, Integer.MAX_VALUE, IMAGE_FIELDS);
+			deleted = tombstoneRepo.findDeleted(since, next, new PageRequest(0, Integer.MAX_VALUE));
+		}
+		return new ChangeSet(upTo(products, next, Product::getLastModified), upTo(images, next, Image::getLastModified), 
+				upTo(deleted, next, Tombstone::getDeletedAt), next, next < upTo);
+	}
+	
+	/**
+	 * Purges the tombstones older than the retention period.
+	 * @return int number of purged tombstones
+	 */
+	@Scheduled(fixedDelayString = "${ws.sync.purge-interval-ms:3600000}")
+	public int purge(){
+		return tombstoneRepo.deleteOlderThan(horizon());
+	}
+	
+	private long horizon(){
+		return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+	}
+	
+	private static <T> long bound(long next, List<T> changes, int limit, ToLongFunction<T> time){
+		return changes.size() > limit ? Math.min(next, time.applyAsLong(changes.get(limit)) - 1) : next;
+	}
+	
+	private static <T> List<T> upTo(List<T> changes, long next, ToLongFunction<T> time){
+		List<T> bounded = new ArrayList<T>(changes.size());
+		for(T change : changes){
+			if(time.applyAsLong(change) <= next){
+				bounded.add(change);
+			}
+		}
+		return bounded;
+	}
+}
@@ -0,0 +1,297 @@
+package ws.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import ws.blob.BlobStore;
+import ws.blob.BlobStore.Blob;
+import ws.cache.CatalogCache;
+import ws.event.ImageChangeEvent;
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+import ws.persistence.enumerate.ImageStatus;
+import ws.persistence.repository.ImageRepository;
+
+/**
+ * <pre>
+ * Generates the resized derivatives (thumbnail, medium) of uploaded Image contents off the request path, storing them in the BlobStore.
+ * Submitted Images wait in a bounded queue (ws.derivatives.queue-capacity): when it is full, submissions are refused, so callers
+ * can push back on clients instead of piling up work. Workers (ws.derivatives.threads, defaulting to the number of cores) take up to
+ * ws.derivatives.batch-size Images at a time and record their statuses with one statement per outcome.
+ * An Image submitted again while waiting is processed once; one submitted while being processed is processed again with its latest content.
+ * The content and derivatives of an Image are removed when it is deleted (ImageChangeEvent).
+ * Contents larger than ws.derivatives.max-pixels are failed from their header, before being decoded; workers outlive the failure of a batch.
+ * </pre>
+ */
+@Component
+public class DerivativeGenerator implements MetricsSource {
+	private static final Logger log = LoggerFactory.getLogger(DerivativeGenerator.class);
+	
+	@Autowired
+	BlobStore blobStore;
+	
+	@Autowired
+	ImageRepository imageRepo;
+	
+	@Autowired
+	CatalogCache catalogCache;
+	
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+	
+	@Value("${ws.derivatives.threads:0}")
+	int threads;
+	
+	@Value("${ws.derivatives.batch-size:16}")
+	int batchSize;
+	
+	@Value("${ws.derivatives.max-pixels:40000000}")
+	long maxPixels;
+	
+	private final BlockingQueue<Long> queue;
+	
+	/**
+	 * Images waiting in the queue.
+	 */
+	private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+	
+	private ExecutorService workers;
+	
+	private final LongAdder generated = new LongAdder();
+	
+	private final LongAdder failed = new LongAdder();
+	
+	private final LongAdder rejected = new LongAdder();
+	
+	private final LongAdder batches = new LongAdder();
+	
+	@Autowired
+	public DerivativeGenerator(@Value("${ws.derivatives.queue-capacity:1000}") int queueCapacity) {
+		this.queue = new LinkedBlockingQueue<Long>(queueCapacity);
+	}
+	
+	@PostConstruct
+	void start() {
+		int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		AtomicInteger index = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(count, r -> {
+			Thread thread = new Thread(r, "derivatives-" + index.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for(int i = 0; i < count; i++){
+			workers.execute(this::work);
+		}
+	}
+	
+	/**
+	 * Queues the derivative generation of an Image whose status was set to PENDING.
+	 * @param imageId id of the Image
+	 * @return boolean false if the queue is full and the Image was not queued
+	 */
+	public boolean submit(Long imageId){
+		if(!pending.add(imageId)){
+			return true;
+		}
+		if(!queue.offer(imageId)){
+			pending.remove(imageId);
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes the derivatives of an Image.
+	 * @param imageId id of the Image
+	 */
+	public void delete(Long imageId){
+		for(ImageVariant variant : ImageVariant.values()){
+			if(variant != ImageVariant.ORIGINAL){
+				blobStore.delete(variant.key(imageId));
+			}
+		}
+	}
+	
+	/**
+	 * Removes the content and the derivatives of deleted Images, whether deleted alone or with their Product subtree.
+	 */
+	@EventListener
+	public void onImageChange(ImageChangeEvent event){
+		if(event.getType() != ImageChangeEvent.Type.DELETED){
+			return;
+		}
+		for(Long id : event.getIds()){
+			blobStore.delete(ImageVariant.ORIGINAL.key(id));
+			delete(id);
+		}
+	}
+	
+	@PreDestroy
+	void shutdown() {
+		workers.shutdownNow();
+	}
+	
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_derivatives_queued", "gauge", "Images waiting for derivative generation");
+		writer.sample("ws_derivatives_queued", queue.size());
+		writer.family("ws_derivatives_images_total", "counter", "Images processed by the derivative generator by outcome");
+		writer.sample("ws_derivatives_images_total", generated.sum(), "outcome", "generated");
+		writer.sample("ws_derivatives_images_total", failed.sum(), "outcome", "failed");
+		writer.sample("ws_derivatives_images_total", rejected.sum(), "outcome", "rejected");
+		writer.family("ws_derivatives_batches_total", "counter", "Batches of Images processed by the derivative generator");
+		writer.sample("ws_derivatives_batches_total", batches.sum());
+	}
+	
+	private void work(){
+		List<Long> batch = new ArrayList<Long>(batchSize);
+		while(!Thread.currentThread().isInterrupted()){
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, batchSize - 1);
+			//removed before reading the content, so a new upload during processing queues the Image again
+			pending.removeAll(batch);
+			try {
+				process(batch);
+			} catch (Throwable e) {
+				//errors included, which would otherwise end the worker for good
+				log.error("Derivative generation failed for images {}", batch, e);
+			}
+			batch.clear();
+		}
+	}
+	
+	/**
+	 * Generates the derivatives of a batch of Images and records the outcome of each one.
+	 */
+	void process(List<Long> imageIds){
+		List<Long> ready = new ArrayList<Long>();
+		List<Long> failures = new ArrayList<Long>();
+		for(Long id : imageIds){
+			Blob original = blobStore.find(ImageVariant.ORIGINAL.key(id));
+			if(original == null){
+				//deleted in the meantime
+				continue;
+			}
+			(generate(id, original) ? ready : failures).add(id);
+			if(blobStore.find(ImageVariant.ORIGINAL.key(id)) == null){
+				//deleted while generating
+				delete(id);
+			}
+		}
+		updateStatus(ready, ImageStatus.READY);
+		updateStatus(failures, ImageStatus.FAILED);
+		generated.add(ready.size());
+		failed.add(failures.size());
+		batches.increment();
+	}
+	
+	private boolean generate(Long id, Blob original){
+		try {
+			BufferedImage source;
+			try (InputStream content = blobStore.open(original); ImageInputStream input = ImageIO.createImageInputStream(content)) {
+				Iterator<ImageReader> readers = input == null ? Collections.<ImageReader>emptyIterator() : ImageIO.getImageReaders(input);
+				if(!readers.hasNext()){
+					//no decoder for the format
+					return false;
+				}
+				ImageReader reader = readers.next();
+				try {
+					reader.setInput(input, true, true);
+					long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+					if(pixels > maxPixels){
+						log.warn("Derivatives of image {} not generated: {} pixels, more than {}", id, pixels, maxPixels);
+						return false;
+					}
+					source = reader.read(0);
+				} finally {
+					reader.dispose();
+				}
+			}
+			for(ImageVariant variant : ImageVariant.values()){
+				if(variant == ImageVariant.ORIGINAL){
+					continue;
+				}
+				ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+				ImageIO.write(resize(source, variant.getMaxDimension()), "png", encoded);
+				blobStore.write(variant.key(id), new ByteArrayInputStream(encoded.toByteArray()));
+			}
+			return true;
+		} catch (IOException | RuntimeException | OutOfMemoryError e) {
+			log.warn("Derivatives of image {} could not be generated", id, e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Scales an image down to fit the given dimension, keeping its aspect ratio. Smaller images are not scaled up.
+	 * @param source decoded image
+	 * @param maxDimension largest width or height of the result
+	 * @return BufferedImage scaled image
+	 */
+	static BufferedImage resize(BufferedImage source, int maxDimension){
+		double scale = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+		int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+		BufferedImage target = new BufferedImage(width, height, source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = target.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(source, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		return target;
+	}
+	
+	private void updateStatus(Collection<Long> ids, ImageStatus status){
+		if(ids.isEmpty()){
+			return;
+		}
+		imageRepo.updateStatus(ids, status);
+		eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.UPDATED, new ArrayList<Long>(ids)));
+		for(Long id : ids){
+			catalogCache.evictImage(id);
+		}
+		for(Long productId : imageRepo.findProductIds(ids)){
+			catalogCache.evictProduct(productId);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package ws.image;
+
+/**
+ * Binary contents kept for an Image: the uploaded original and its resized derivatives.
+ *
+ */
+public enum ImageVariant {
+	ORIGINAL("original", 0),
+	THUMBNAIL("thumbnail", 128),
+	MEDIUM("medium", 640);
+	
+	/**
+	 * Media type of the derivatives, encoded as PNG regardless of the original format (lossless, keeps transparency).
+	 */
+	public static final String DERIVATIVE_MEDIA_TYPE = "image/png";
+	
+	private final String name;
+	
+	private final int maxDimension;
+	
+	private ImageVariant(String name, int maxDimension) {
+		this.name = name;
+		this.maxDimension = maxDimension;
+	}
+	
+	/**
+	 * @param imageId id of the Image
+	 * @return String blob store key of this variant of the Image content
+	 */
+	public String key(Long imageId){
+		return this == ORIGINAL ? String.valueOf(imageId) : imageId + "/" + name;
+	}
+	
+	/**
+	 * @param name variant name, as used in the derivative path
+	 * @return ImageVariant derivative with the given name, or null if unknown (the original is not a derivative)
+	 */
+	public static ImageVariant derivative(String name){
+		for(ImageVariant variant : values()){
+			if(variant != ORIGINAL && variant.name.equals(name)){
+				return variant;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return int largest width or height of the variant in pixels, 0 for the original
+	 */
+	public int getMaxDimension() {
+		return maxDimension;
+	}
+}
@@ -0,0 +1,70 @@
+package ws.job;
+
+import java.util.UUID;
+
+/**
+ * State of an asynchronous Product subtree deletion, as reported to clients.
+ * @see SubtreeDeletion
+ */
+public class DeletionJob {
+	public enum Status { PENDING, RUNNING, COMPLETED, FAILED }
+	
+	private final String id = UUID.randomUUID().toString();
+	
+	private final Long productId;
+	
+	private final long total;
+	
+	private volatile long deleted;
+	
+	private volatile Status status = Status.PENDING;
+	
+	private volatile String error;
+	
+	DeletionJob(Long productId, long total) {
+		this.productId = productId;
+		this.total = total;
+	}
+	
+	public String getId() {
+		return id;
+	}
+	
+	public Long getProductId() {
+		return productId;
+	}
+	
+	/**
+	 * @return long number of Products in the subtree when the job was submitted
+	 */
+	public long getTotal() {
+		return total;
+	}
+	
+	/**
+	 * @return long number of Products deleted so far
+	 */
+	public long getDeleted() {
+		return deleted;
+	}
+	
+	void setDeleted(long deleted) {
+		this.deleted = deleted;
+	}
+	
+	public Status getStatus() {
+		return status;
+	}
+	
+	void setStatus(Status status) {
+		this.status = status;
+	}
+	
+	public String getError() {
+		return error;
+	}
+	
+	void setError(String error) {
+		this.error = error;
+	}
+}
@@ -0,0 +1,138 @@
+package ws.job;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import ws.cache.CatalogCache;
+import ws.event.ImageChangeEvent;
+import ws.event.ProductChangeEvent;
+import ws.persistence.repository.ProductRepository;
+
+/**
+ * <pre>
+ * Deletes Product subtrees, either in the calling thread or as an asynchronous job.
+ * The work is done by the repository in chunks of ws.delete.chunk-size Products, deepest levels first.
+ * A ProductChangeEvent, and an ImageChangeEvent for the Images deleted along, are published for every committed chunk.
+ * Jobs run one at a time (at most ws.delete.max-pending-jobs waiting) and the last ws.delete.retained-jobs are kept for status queries.
+ * </pre>
+ */
+@Component
+public class SubtreeDeletion {
+	private static final Logger log = LoggerFactory.getLogger(SubtreeDeletion.class);
+	
+	@Autowired
+	ProductRepository productRepo;
+	
+	@Autowired
+	CatalogCache catalogCache;
+	
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+	
+	@Value("${ws.delete.chunk-size:1000}")
+	int chunkSize;
+	
+	private final ThreadPoolExecutor executor;
+	
+	private final Map<String, DeletionJob> jobs;
+	
+	@Autowired
+	public SubtreeDeletion(@Value("${ws.delete.max-pending-jobs:100}") int maxPendingJobs, 
+			@Value("${ws.delete.retained-jobs:1000}") int retainedJobs) {
+		this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(maxPendingJobs), 
+				r -> new Thread(r, "subtree-deletion"));
+		this.jobs = Collections.synchronizedMap(new LinkedHashMap<String, DeletionJob>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, DeletionJob> eldest) {
+				return size() > retainedJobs;
+			}
+		});
+	}
+	
+	/**
+	 * Deletes a Product subtree in the calling thread.
+	 * @param id of the Product to be deleted
+	 * @return long number of deleted Products, 0 if unknown
+	 */
+	public long delete(Long id){
+		long deleted = productRepo.deleteSubtree(id, chunkSize, this::published);
+		if(deleted > 0){
+			//descendants and images may be embedded anywhere in cached graphs
+			catalogCache.evictAll();
+		}
+		return deleted;
+	}
+	
+	/**
+	 * Schedules the deletion of a Product subtree.
+	 * @param id of the Product to be deleted
+	 * @param total number of Products in the subtree, reported as the job size
+	 * @return DeletionJob scheduled job
+	 * @throws RejectedExecutionException if too many jobs are pending
+	 */
+	public DeletionJob submit(Long id, long total){
+		DeletionJob job = new DeletionJob(id, total);
+		jobs.put(job.getId(), job);
+		try {
+			executor.execute(() -> run(job));
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			throw e;
+		}
+		return job;
+	}
+	
+	/**
+	 * @param jobId of a submitted job
+	 * @return DeletionJob or null if unknown or no longer retained
+	 */
+	public DeletionJob findJob(String jobId){
+		return jobs.get(jobId);
+	}
+	
+	private void run(DeletionJob job){
+		job.setStatus(DeletionJob.Status.RUNNING);
+		try {
+			productRepo.deleteSubtree(job.getProductId(), chunkSize, (ids, imageIds) -> {
+				job.setDeleted(job.getDeleted() + ids.size());
+				published(ids, imageIds);
+				//readers must not keep serving the part of the subtree that is already gone
+				catalogCache.evictAll();
+			});
+			job.setStatus(DeletionJob.Status.COMPLETED);
+		} catch (RuntimeException e) {
+			log.error("Deletion of product subtree " + job.getProductId() + " failed", e);
+			job.setError(e.getMessage());
+			job.setStatus(DeletionJob.Status.FAILED);
+		}
+	}
+	
+	private void published(List<Long> ids, List<Long> imageIds){
+		if(!imageIds.isEmpty()){
+			eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.DELETED, imageIds));
+		}
+		eventPublisher.publishEvent(ProductChangeEvent.deleted(this, ids));
+	}
+	
+	@PreDestroy
+	void shutdown(){
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,20 @@
+package ws.metrics;
+
+import java.io.Serializable;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+
+/**
+ * Hibernate interceptor feeding the per-request entity load count.
+ * Configured through spring.jpa.properties.hibernate.ejb.interceptor.
+ */
+public class EntityLoadCountingInterceptor extends EmptyInterceptor {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		PersistenceCounters.entityLoaded();
+		return false;
+	}
+}
@@ -0,0 +1,12 @@
+package ws.metrics;
+
+/**
+ * Contributor to the /metrics endpoint. Every Spring bean implementing it is collected on each scrape.
+ */
+public interface MetricsSource {
+	/**
+	 * Writes the current values of the metrics owned by this source.
+	 * @param writer destination in the Prometheus text exposition format
+	 */
+	public void collect(MetricsWriter writer);
+}
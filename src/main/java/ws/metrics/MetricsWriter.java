@@ -0,0 +1,68 @@
+package ws.metrics;
+
+/**
+ * Minimal writer for the Prometheus text exposition format (version 0.0.4).
+ */
+public class MetricsWriter {
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	private final StringBuilder out = new StringBuilder(4096);
+	
+	/**
+	 * Starts a metric family, to be followed by its samples.
+	 * @param name metric name
+	 * @param type counter, gauge, summary or untyped
+	 * @param help one line description
+	 */
+	public void family(String name, String type, String help){
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+	
+	/**
+	 * Writes a sample.
+	 * @param name sample name, the family name or a suffixed variant of it (e.g. _count, _sum)
+	 * @param value sample value
+	 * @param labels label names and values, alternated
+	 */
+	public void sample(String name, double value, String... labels){
+		out.append(name);
+		if(labels.length > 0){
+			out.append('{');
+			for(int i = 0; i + 1 < labels.length; i += 2){
+				if(i > 0){
+					out.append(',');
+				}
+				out.append(labels[i]).append("=\"");
+				escape(labels[i + 1]);
+				out.append('"');
+			}
+			out.append('}');
+		}
+		out.append(' ');
+		if(value == Math.rint(value) && !Double.isInfinite(value)){
+			out.append((long) value);
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+	}
+	
+	private void escape(String value){
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c == '\\' || c == '"'){
+				out.append('\\').append(c);
+			} else if(c == '\n'){
+				out.append("\\n");
+			} else {
+				out.append(c);
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return out.toString();
+	}
+}
@@ -0,0 +1,77 @@
+package ws.metrics;
+
+/**
+ * SQL statements and entity loads performed by the current request thread.
+ * Counting only happens between start and stop (or attach and stop, for work handed over to another thread),
+ * so work outside of requests (e.g. background jobs) costs a ThreadLocal read.
+ * @see StatementCountingInspector
+ * @see EntityLoadCountingInterceptor
+ */
+public final class PersistenceCounters {
+	private static final ThreadLocal<PersistenceCounters> CURRENT = new ThreadLocal<PersistenceCounters>();
+	
+	private int statements;
+	
+	private int entityLoads;
+	
+	private PersistenceCounters() {}
+	
+	/**
+	 * Starts counting for the current thread, discarding any previous counters.
+	 * @return PersistenceCounters new counters of the current thread
+	 */
+	public static PersistenceCounters start(){
+		PersistenceCounters counters = new PersistenceCounters();
+		CURRENT.set(counters);
+		return counters;
+	}
+	
+	/**
+	 * Stops counting in the current thread, if it is still counting into the given counters.
+	 * @param counters as returned by start or passed to attach
+	 */
+	public static void stop(PersistenceCounters counters){
+		if(CURRENT.get() == counters){
+			CURRENT.remove();
+		}
+	}
+	
+	/**
+	 * @return PersistenceCounters of the current thread, or null if not counting
+	 */
+	public static PersistenceCounters current(){
+		return CURRENT.get();
+	}
+	
+	/**
+	 * Continues counting into the given counters in the current thread, for work handed over by the request thread.
+	 * @param counters as returned by current in the request thread, ignored if null
+	 */
+	public static void attach(PersistenceCounters counters){
+		if(counters != null){
+			CURRENT.set(counters);
+		}
+	}
+	
+	static void statementPrepared(){
+		PersistenceCounters counters = CURRENT.get();
+		if(counters != null){
+			counters.statements++;
+		}
+	}
+	
+	static void entityLoaded(){
+		PersistenceCounters counters = CURRENT.get();
+		if(counters != null){
+			counters.entityLoads++;
+		}
+	}
+	
+	public int getStatements() {
+		return statements;
+	}
+	
+	public int getEntityLoads() {
+		return entityLoads;
+	}
+}
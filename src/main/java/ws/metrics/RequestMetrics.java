@@ -0,0 +1,112 @@
+package ws.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+/**
+ * <pre>
+ * Latency distribution, status codes and persistence work of every resource method, since startup.
+ * Recording is wait-free (HdrHistogram Recorder and LongAdder counters); 
+ * interval histograms are only folded into the cumulative one when metrics are collected.
+ * </pre>
+ */
+@Component
+public class RequestMetrics implements MetricsSource {
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+	
+	private static final double MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+	
+	private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+	
+	/**
+	 * Records a finished request.
+	 * @param method name of the resource method that handled it
+	 * @param status HTTP status code of the response
+	 * @param nanos elapsed time, including the writing of the response
+	 * @param counters persistence work done by the request, may be null
+	 */
+	public void record(String method, int status, long nanos, PersistenceCounters counters){
+		MethodMetrics metrics = methods.get(method);
+		if(metrics == null){
+			metrics = methods.computeIfAbsent(method, MethodMetrics::new);
+		}
+		metrics.record(status, nanos, counters);
+	}
+	
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_request_duration_seconds", "summary", "Latency of each resource method, including response writing");
+		for(MethodMetrics metrics : methods.values()){
+			Histogram histogram = metrics.snapshot();
+			for(double quantile : QUANTILES){
+				writer.sample("ws_request_duration_seconds", histogram.getValueAtPercentile(quantile * 100) / MICROS_PER_SECOND, 
+						"method", metrics.name, "quantile", String.valueOf(quantile));
+			}
+			writer.sample("ws_request_duration_seconds_count", histogram.getTotalCount(), "method", metrics.name);
+			writer.sample("ws_request_duration_seconds_sum", metrics.micros.sum() / MICROS_PER_SECOND, "method", metrics.name);
+		}
+		writer.family("ws_responses_total", "counter", "Responses of each resource method by status code");
+		for(MethodMetrics metrics : methods.values()){
+			for(Map.Entry<Integer, LongAdder> status : metrics.statuses.entrySet()){
+				writer.sample("ws_responses_total", status.getValue().sum(), "method", metrics.name, "status", String.valueOf(status.getKey()));
+			}
+		}
+		writer.family("ws_sql_statements_total", "counter", "SQL statements prepared while serving each resource method");
+		for(MethodMetrics metrics : methods.values()){
+			writer.sample("ws_sql_statements_total", metrics.statements.sum(), "method", metrics.name);
+		}
+		writer.family("ws_entity_loads_total", "counter", "Entities loaded while serving each resource method");
+		for(MethodMetrics metrics : methods.values()){
+			writer.sample("ws_entity_loads_total", metrics.entityLoads.sum(), "method", metrics.name);
+		}
+	}
+	
+	private static final class MethodMetrics {
+		private final String name;
+		
+		private final Recorder recorder = new Recorder(3);
+		
+		private final Histogram cumulative = new Histogram(3);
+		
+		private Histogram interval;
+		
+		private final LongAdder micros = new LongAdder();
+		
+		private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<Integer, LongAdder>();
+		
+		private final LongAdder statements = new LongAdder();
+		
+		private final LongAdder entityLoads = new LongAdder();
+		
+		private MethodMetrics(String name) {
+			this.name = name;
+		}
+		
+		private void record(int status, long nanos, PersistenceCounters counters){
+			long elapsed = TimeUnit.NANOSECONDS.toMicros(nanos);
+			recorder.recordValue(elapsed);
+			micros.add(elapsed);
+			LongAdder count = statuses.get(status);
+			if(count == null){
+				count = statuses.computeIfAbsent(status, s -> new LongAdder());
+			}
+			count.increment();
+			if(counters != null){
+				statements.add(counters.getStatements());
+				entityLoads.add(counters.getEntityLoads());
+			}
+		}
+		
+		private synchronized Histogram snapshot(){
+			interval = recorder.getIntervalHistogram(interval);
+			cumulative.add(interval);
+			return cumulative.copy();
+		}
+	}
+}
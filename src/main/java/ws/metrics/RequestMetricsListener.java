@@ -0,0 +1,45 @@
+package ws.metrics;
+
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Jersey listener timing every request from its start until the response is completely written (streamed bodies included),
+ * and attributing it to the matched resource method in RequestMetrics.
+ */
+@Component
+public class RequestMetricsListener implements ApplicationEventListener {
+	/**
+	 * Method name used for requests not matched to any resource method.
+	 */
+	static final String UNMATCHED = "unmatched";
+	
+	@Autowired
+	RequestMetrics requestMetrics;
+
+	@Override
+	public void onEvent(ApplicationEvent event) {}
+
+	@Override
+	public RequestEventListener onRequest(RequestEvent requestEvent) {
+		//suspended requests finish in another thread, so the counters are kept here rather than looked up again;
+		//the request thread stops counting when it hands the request over (see DatabaseExecutor)
+		PersistenceCounters counters = PersistenceCounters.start();
+		long started = System.nanoTime();
+		return event -> {
+			if(event.getType() == RequestEvent.Type.FINISHED){
+				//only clears the thread it finishes in if it counts for this request, not the one of a later request
+				PersistenceCounters.stop(counters);
+				ResourceMethod method = event.getUriInfo().getMatchedResourceMethod();
+				int status = event.getContainerResponse() != null ? event.getContainerResponse().getStatus() : 500;
+				requestMetrics.record(method != null ? method.getInvocable().getDefinitionMethod().getName() : UNMATCHED, 
+						status, System.nanoTime() - started, counters);
+			}
+		};
+	}
+}
@@ -0,0 +1,17 @@
+package ws.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate statement inspector feeding the per-request SQL statement count.
+ * Configured through spring.jpa.properties.hibernate.session_factory.statement_inspector.
+ */
+public class StatementCountingInspector implements StatementInspector {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public String inspect(String sql) {
+		PersistenceCounters.statementPrepared();
+		return sql;
+	}
+}
@@ -0,0 +1,86 @@
+package ws.persistence.datasource;
+
+/**
+ * Latest write commit time of the client of the current request, for read-your-writes routing (see ReplicaRoutingDataSource).
+ * The time is carried by the client from request to request (see ReadYourWritesFilter), so stickiness is kept per client,
+ * whichever node or thread serves it. Only set between start and stop (or attach and stop, for work handed over to another thread).
+ */
+public final class ReadYourWrites {
+	private static final ThreadLocal<ReadYourWrites> CURRENT = new ThreadLocal<ReadYourWrites>();
+
+	private volatile long lastWrite;
+
+	private volatile boolean written;
+
+	private ReadYourWrites(long lastWrite) {
+		this.lastWrite = lastWrite;
+	}
+
+	/**
+	 * Starts tracking the writes of a client in the current thread.
+	 * @param lastWrite commit time of the client's latest write as sent by the client, 0 if none
+	 * @return ReadYourWrites new tracker of the current thread
+	 */
+	public static ReadYourWrites start(long lastWrite){
+		ReadYourWrites client = new ReadYourWrites(lastWrite);
+		CURRENT.set(client);
+		return client;
+	}
+
+	/**
+	 * Stops tracking in the current thread, if it is still tracking the given client.
+	 * @param client as returned by start or passed to attach
+	 */
+	public static void stop(ReadYourWrites client){
+		if(CURRENT.get() == client){
+			CURRENT.remove();
+		}
+	}
+
+	/**
+	 * @return ReadYourWrites of the current thread, or null if not tracking
+	 */
+	public static ReadYourWrites current(){
+		return CURRENT.get();
+	}
+
+	/**
+	 * Continues tracking the given client in the current thread, for work handed over by the request thread.
+	 * @param client as returned by current in the request thread, ignored if null
+	 */
+	public static void attach(ReadYourWrites client){
+		if(client != null){
+			CURRENT.set(client);
+		}
+	}
+
+	/**
+	 * @param time at which a write transaction of the client committed
+	 */
+	void committed(long time){
+		lastWrite = Math.max(lastWrite, time);
+		written = true;
+	}
+
+	/**
+	 * @param millis stickiness window
+	 * @return boolean true if the client's latest write committed less than millis ago
+	 */
+	boolean wroteWithin(long millis){
+		return System.currentTimeMillis() - lastWrite < millis;
+	}
+
+	/**
+	 * @return long commit time of the client's latest write, 0 if none
+	 */
+	public long getLastWrite() {
+		return lastWrite;
+	}
+
+	/**
+	 * @return boolean true if a write of the client committed during this request
+	 */
+	public boolean isWritten() {
+		return written;
+	}
+}
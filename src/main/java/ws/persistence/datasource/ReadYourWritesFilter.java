@@ -0,0 +1,83 @@
+package ws.persistence.datasource;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.NewCookie;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * <pre>
+ * Carries the commit time of a client's latest write in a cookie (ws-last-write), so its reads within ws.datasource.sticky-ms
+ * go to the primary while other clients keep reading from the replicas. The cookie is set on the response of a request whose write
+ * committed and expires with the stickiness window. Times are taken from the clock of the node the write committed on.
+ * The request thread tracks the client (ReadYourWrites) from the request filters until the resource method returns;
+ * the database executor carries it over to its own thread. Disabled when ws.datasource.sticky-ms is 0.
+ * </pre>
+ */
+@Component
+public class ReadYourWritesFilter implements ContainerRequestFilter, ContainerResponseFilter, ApplicationEventListener {
+	public static final String COOKIE = "ws-last-write";
+
+	private static final String CLIENT = ReadYourWritesFilter.class.getName() + ".client";
+
+	@Value("${ws.datasource.sticky-ms:0}")
+	long stickyMillis;
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		if(stickyMillis <= 0){
+			return;
+		}
+		long lastWrite = 0;
+		Cookie cookie = requestContext.getCookies().get(COOKIE);
+		if(cookie != null){
+			try {
+				lastWrite = Long.parseLong(cookie.getValue());
+			} catch (NumberFormatException e) {
+				//not one of ours, the client is not sticky
+			}
+		}
+		requestContext.setProperty(CLIENT, ReadYourWrites.start(lastWrite));
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		ReadYourWrites client = (ReadYourWrites) requestContext.getProperty(CLIENT);
+		if(client != null && client.isWritten()){
+			int maxAge = (int) Math.max(1, (stickyMillis + 999) / 1000);
+			responseContext.getHeaders().add(HttpHeaders.SET_COOKIE,
+					new NewCookie(COOKIE, String.valueOf(client.getLastWrite()), "/", null, null, maxAge, false, true));
+		}
+	}
+
+	@Override
+	public void onEvent(ApplicationEvent event) {}
+
+	@Override
+	public RequestEventListener onRequest(RequestEvent requestEvent) {
+		//request properties are recycled once a suspended response is written: the client is kept here as soon as the filter set it
+		ReadYourWrites[] client = new ReadYourWrites[1];
+		return event -> {
+			if(client[0] == null && event.getType() != RequestEvent.Type.FINISHED){
+				client[0] = (ReadYourWrites) event.getContainerRequest().getProperty(CLIENT);
+			}
+			//the resource method returned in the request thread (suspended requests continue in the database executor),
+			//or the request was answered without reaching it
+			if(client[0] != null && (event.getType() == RequestEvent.Type.RESOURCE_METHOD_FINISHED || event.getType() == RequestEvent.Type.FINISHED)){
+				ReadYourWrites.stop(client[0]);
+			}
+		};
+	}
+}
@@ -0,0 +1,138 @@
+package ws.persistence.datasource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+
+/**
+ * <pre>
+ * DataSource sending the connections of read-only transactions to the replica pools in turn, and every other connection to the primary.
+ * The transaction is only known once it has started, so it must be used behind a LazyConnectionDataSourceProxy,
+ * which fetches the connection on the first statement.
+ * Replicas lag behind the primary: with a stickiness window (ws.datasource.sticky-ms), read-only transactions of a client
+ * starting within it after a write transaction of the same client committed go to the primary, so clients read what they have just written.
+ * The client is the one tracked by ReadYourWrites in the current thread; work without a client (e.g. background jobs) reads from the replicas.
+ * Connections are counted per pool, and the tomcat pools report their active and idle connections.
+ * </pre>
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements MetricsSource {
+	public static final String PRIMARY = "primary";
+
+	private final Map<String, DataSource> pools = new LinkedHashMap<String, DataSource>();
+
+	private final Map<String, LongAdder> routed = new LinkedHashMap<String, LongAdder>();
+
+	private final String[] replicas;
+
+	private final long stickyMillis;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final LongAdder stickyReads = new LongAdder();
+
+	/**
+	 * @param primary pool of the writable database
+	 * @param replicas pools of the read-only copies, none to send everything to the primary
+	 * @param stickyMillis time after a client's write commit during which its reads still go to the primary, 0 for none
+	 */
+	public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long stickyMillis) {
+		this.replicas = new String[replicas.size()];
+		this.stickyMillis = stickyMillis;
+		pools.put(PRIMARY, primary);
+		for(int i = 0; i < replicas.size(); i++){
+			this.replicas[i] = "replica-" + i;
+			pools.put(this.replicas[i], replicas.get(i));
+		}
+		pools.keySet().forEach(key -> routed.put(key, new LongAdder()));
+		setTargetDataSources(new LinkedHashMap<Object, Object>(pools));
+		setDefaultTargetDataSource(primary);
+	}
+
+	/**
+	 * @return List<DataSource> replica pools, in routing order
+	 */
+	public List<DataSource> getReplicas() {
+		List<DataSource> list = new ArrayList<DataSource>(replicas.length);
+		for(String replica : replicas){
+			list.add(pools.get(replica));
+		}
+		return list;
+	}
+
+	/**
+	 * @param pool PRIMARY or replica-N
+	 * @return long number of connections handed out by the pool through this DataSource
+	 */
+	public long getRoutedCount(String pool) {
+		return routed.get(pool).sum();
+	}
+
+	/**
+	 * Closes the replica pools, the primary one being closed by its owner.
+	 */
+	public void close() {
+		for(String replica : replicas){
+			if(pools.get(replica) instanceof DataSourceProxy){
+				((DataSourceProxy) pools.get(replica)).close();
+			}
+		}
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		String key = route();
+		routed.get(key).increment();
+		return key;
+	}
+
+	private String route() {
+		ReadYourWrites client = stickyMillis > 0 ? ReadYourWrites.current() : null;
+		if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly()){
+			if(client != null && TransactionSynchronizationManager.isSynchronizationActive()){
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCommit() {
+						client.committed(System.currentTimeMillis());
+					}
+				});
+			}
+			return PRIMARY;
+		}
+		if(replicas.length == 0){
+			return PRIMARY;
+		}
+		if(client != null && client.wroteWithin(stickyMillis)){
+			stickyReads.increment();
+			return PRIMARY;
+		}
+		return replicas[Math.floorMod(next.getAndIncrement(), replicas.length)];
+	}
+
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_datasource_connections_total", "counter", "Connections handed out per pool, read-only transactions going to the replicas");
+		routed.forEach((pool, count) -> writer.sample("ws_datasource_connections_total", count.sum(), "pool", pool));
+		writer.family("ws_datasource_sticky_reads_total", "counter", "Read-only transactions sent to the primary, a write of the same client having committed within ws.datasource.sticky-ms");
+		writer.sample("ws_datasource_sticky_reads_total", stickyReads.sum());
+		writer.family("ws_datasource_pool_connections", "gauge", "Open connections per pool");
+		pools.forEach((pool, dataSource) -> {
+			if(dataSource instanceof DataSourceProxy){
+				writer.sample("ws_datasource_pool_connections", ((DataSourceProxy) dataSource).getActive(), "pool", pool, "state", "active");
+				writer.sample("ws_datasource_pool_connections", ((DataSourceProxy) dataSource).getIdle(), "pool", pool, "state", "idle");
+			}
+		});
+	}
+}
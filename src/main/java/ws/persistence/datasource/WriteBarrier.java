@@ -0,0 +1,64 @@
+package ws.persistence.datasource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * <pre>
+ * Lets a task see the database without write transactions in flight (see CatalogSnapshot), without stopping the reads.
+ * Read-write transactions pass the barrier for their whole duration (see WriteBarrierTransactionManager); block waits for those
+ * in flight to complete and holds the new ones until unblock, while read-only transactions and plain connections go on.
+ * The barrier is fair: a blocking task is not starved by a steady flow of writes.
+ * </pre>
+ */
+@Component
+public class WriteBarrier {
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+
+	/**
+	 * Passes the barrier, waiting while it is blocked. Reentrant.
+	 */
+	public void enter() {
+		lock.readLock().lock();
+	}
+
+	/**
+	 * @param timeout longest wait
+	 * @param unit of timeout
+	 * @return boolean true if the barrier was passed, in which case exit must be called
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean tryEnter(long timeout, TimeUnit unit) throws InterruptedException {
+		return lock.readLock().tryLock(timeout, unit);
+	}
+
+	/**
+	 * Leaves the barrier, once per enter.
+	 */
+	public void exit() {
+		lock.readLock().unlock();
+	}
+
+	/**
+	 * Waits for the writes in flight to complete and holds the new ones until unblock.
+	 */
+	public void block() {
+		lock.writeLock().lock();
+	}
+
+	/**
+	 * Lets the writes held by block go on.
+	 */
+	public void unblock() {
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * @return boolean true while the writes are held, or a task waits for those in flight to block them
+	 */
+	public boolean isBlocked() {
+		return lock.isWriteLocked() || lock.hasQueuedThreads();
+	}
+}
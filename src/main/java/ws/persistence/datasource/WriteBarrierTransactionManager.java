@@ -0,0 +1,117 @@
+package ws.persistence.datasource;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <pre>
+ * JpaTransactionManager whose read-write transactions pass the WriteBarrier from their begin until their completion.
+ * Read-only transactions do not, so they are never held by the barrier.
+ * A read-write transaction reaching its commit more than writeTimeoutMillis after its begin (once past the barrier) is rolled back
+ * with a TransactionTimedOutException, so rows time stamped in a transaction are committed within writeTimeoutMillis of their
+ * time stamp (DeltaSync relies on it).
+ * </pre>
+ */
+public class WriteBarrierTransactionManager extends JpaTransactionManager {
+	/**
+	 * A transaction begun in the thread.
+	 */
+	private static final class Begun {
+		final boolean write;
+		
+		final long started = System.nanoTime();
+		
+		Begun(boolean write) {
+			this.write = write;
+		}
+	}
+	
+	private final WriteBarrier barrier;
+
+	private final long writeTimeoutMillis;
+
+	/**
+	 * Transactions begun in the thread and not completed yet, innermost first (suspended transactions complete last).
+	 */
+	private final ThreadLocal<Deque<Begun>> begun = ThreadLocal.withInitial(ArrayDeque::new);
+
+	/**
+	 * @param entityManagerFactory of the transactions
+	 * @param barrier passed by read-write transactions
+	 * @param writeTimeoutMillis longest time from the begin to the commit of a read-write transaction, 0 for no limit
+	 */
+	public WriteBarrierTransactionManager(EntityManagerFactory entityManagerFactory, WriteBarrier barrier, long writeTimeoutMillis) {
+		super(entityManagerFactory);
+		this.barrier = barrier;
+		this.writeTimeoutMillis = writeTimeoutMillis;
+		//a commit refused for its timeout rolls the transaction back
+		setRollbackOnCommitFailure(true);
+	}
+
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+		boolean write = !definition.isReadOnly();
+		if(write){
+			barrier.enter();
+		}
+		try {
+			super.doBegin(transaction, definition);
+		} catch (RuntimeException | Error e) {
+			//not completed, so not cleaned up either
+			if(write){
+				barrier.exit();
+			}
+			throw e;
+		}
+		begun.get().push(new Begun(write));
+	}
+
+	@Override
+	protected void doCommit(DefaultTransactionStatus status) {
+		Begun transaction = begun.get().peek();
+		if(transaction == null || !transaction.write || writeTimeoutMillis <= 0){
+			super.doCommit(status);
+			return;
+		}
+		//flushed first, so time stamps set on flush (@PreUpdate) and lock waits of the flush are within the check
+		EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.getResource(getEntityManagerFactory());
+		if(holder != null){
+			try {
+				holder.getEntityManager().flush();
+			} catch (RuntimeException e) {
+				//as the failure of the flush within the commit would be
+				throw DataAccessUtils.translateIfNecessary(e, getJpaDialect());
+			}
+		}
+		if(System.nanoTime() - transaction.started > TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis)){
+			throw new TransactionTimedOutException("Write transaction not committed within " + writeTimeoutMillis + " ms of its begin");
+		}
+		super.doCommit(status);
+	}
+
+	@Override
+	protected void doCleanupAfterCompletion(Object transaction) {
+		try {
+			super.doCleanupAfterCompletion(transaction);
+		} finally {
+			Deque<Begun> transactions = begun.get();
+			if(transactions.pop().write){
+				barrier.exit();
+			}
+			if(transactions.isEmpty()){
+				begun.remove();
+			}
+		}
+	}
+}
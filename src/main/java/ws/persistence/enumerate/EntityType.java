@@ -0,0 +1,10 @@
+package ws.persistence.enumerate;
+
+/**
+ * Kinds of catalog entities recorded by tombstones.
+ *
+ */
+public enum EntityType {
+	PRODUCT,
+	IMAGE
+}
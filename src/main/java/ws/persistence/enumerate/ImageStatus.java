@@ -0,0 +1,24 @@
+package ws.persistence.enumerate;
+
+/**
+ * Processing state of the binary content of an Image, maintained by the service.
+ *
+ */
+public enum ImageStatus {
+	/**
+	 * No content was uploaded.
+	 */
+	NONE,
+	/**
+	 * Content uploaded, derivatives (thumbnail, medium) waiting to be generated.
+	 */
+	PENDING,
+	/**
+	 * Content and derivatives available.
+	 */
+	READY,
+	/**
+	 * Content uploaded, but derivatives could not be generated (e.g. format not decodable).
+	 */
+	FAILED
+}
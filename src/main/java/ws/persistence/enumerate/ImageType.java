@@ -6,11 +6,25 @@ package ws.persistence.enumerate;
  *
  */
 public enum ImageType {
-	BAT,
-	BMP,
-	EXIF,
-	GIF,
-	JPEG,
-	PNG,
-	RAW	
+	//types without a registered image media type are served as plain binary content
+	BAT("application/octet-stream"),
+	BMP("image/bmp"),
+	EXIF("application/octet-stream"),
+	GIF("image/gif"),
+	JPEG("image/jpeg"),
+	PNG("image/png"),
+	RAW("application/octet-stream");
+	
+	private final String mediaType;
+	
+	private ImageType(String mediaType) {
+		this.mediaType = mediaType;
+	}
+	
+	/**
+	 * @return String media type of the image content
+	 */
+	public String getMediaType() {
+		return mediaType;
+	}
 }
@@ -1,36 +1,64 @@
 package ws.persistence.model;
 
+import javax.persistence.Cacheable;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 
+import ws.persistence.enumerate.ImageStatus;
 import ws.persistence.enumerate.ImageType;
 
 @Entity
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(indexes = @Index(name = "idx_image_last_modified", columnList = "lastModified"))
 @JsonIdentityInfo(
 		  generator = ObjectIdGenerators.PropertyGenerator.class, 
-		  property = "id")
+		  property = "id",
+		  scope = Image.class)
+@JsonIgnoreProperties(value = {"version", "lastModified"}, allowGetters = true)
 public class Image {
 	
     /**
      * Hibernate managed unique identifier.
      */
     @Id
-    @GeneratedValue(strategy=GenerationType.AUTO)
+    @GeneratedValue(strategy=GenerationType.SEQUENCE, generator="image_seq")
+    @SequenceGenerator(name="image_seq", sequenceName="image_seq", allocationSize=50)
     private Long id;	
 	
 	@Enumerated(EnumType.STRING)
 	ImageType type;
 	
 	
+	/**
+	 * Processing state of the binary content, maintained by the service: ignored on creation and updates.
+	 */
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false)
+	ImageStatus status = ImageStatus.NONE;
+	
 	/**
 	 * Relation with associated product.
 	 */
@@ -38,6 +66,19 @@ public class Image {
 	@JoinColumn(name = "product_id")
 	Product product;
 	
+	/**
+	 * Optimistic lock version, incremented on every update, including content status changes.
+	 */
+	@Version
+	@Column(nullable = false)
+	long version;
+	
+	/**
+	 * Time of the last creation or update (epoch milliseconds), including content status changes, read by delta synchronization.
+	 */
+	@Column(nullable = false)
+	long lastModified;
+	
 	public Image() {}
 	
 	public Image(ImageType type) {
@@ -60,6 +101,14 @@ public class Image {
 		this.type = type;
 	}
 
+	public ImageStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(ImageStatus status) {
+		this.status = status;
+	}
+
 	public Product getProduct() {
 		return product;
 	}
@@ -67,4 +116,26 @@ public class Image {
 	public void setProduct(Product product) {
 		this.product = product;
 	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+	
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		lastModified = System.currentTimeMillis();
+	}
 }
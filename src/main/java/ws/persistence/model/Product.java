@@ -1,30 +1,76 @@
 package ws.persistence.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import javax.persistence.CascadeType;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedEntityGraphs;
 import javax.persistence.OneToMany;
+import javax.persistence.Persistence;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 
 @Entity
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(indexes = {
+	@Index(name = "idx_product_path", columnList = "path"),
+	@Index(name = "idx_product_last_modified", columnList = "lastModified")
+})
+@NamedEntityGraphs({
+	@NamedEntityGraph(name = Product.CHILDREN_GRAPH, attributeNodes = @NamedAttributeNode("children")),
+	@NamedEntityGraph(name = Product.IMAGES_GRAPH, attributeNodes = @NamedAttributeNode("images"))
+})
 @JsonIdentityInfo(
 		  generator = ObjectIdGenerators.PropertyGenerator.class, 
-		  property = "id")
+		  property = "id",
+		  scope = Product.class)
+@JsonIgnoreProperties(value = {"version", "lastModified"}, allowGetters = true)
 public class Product {
+	/**
+	 * Entity graph fetching the child collection.
+	 */
+	public static final String CHILDREN_GRAPH = "Product.children";
+	
+	/**
+	 * Entity graph fetching the image collection.
+	 */
+	public static final String IMAGES_GRAPH = "Product.images";
+	
+	/**
+	 * Hierarchy path of Products without parent.
+	 */
+	public static final String ROOT_PATH = "/";
 	
     @Id
-    @GeneratedValue(strategy=GenerationType.AUTO)
+    @GeneratedValue(strategy=GenerationType.SEQUENCE, generator="product_seq")
+    @SequenceGenerator(name="product_seq", sequenceName="product_seq", allocationSize=50)
     private Long id;
 	
 	@Column
@@ -37,11 +83,47 @@ public class Product {
 	@JoinColumn(name = "parent_product_id")
 	private Product parent;
 	
+	/**
+	 * Hierarchy index: ids of the ancestors from the root down to the parent, e.g. "/1/5/" ("/" for Products without parent).
+	 * Descendants of a Product are the ones whose path starts with its path followed by its id.
+	 * Maintained by the repository on creation and parent changes.
+	 */
+	@JsonIgnore
+	@Column(nullable = false)
+	private String path = ROOT_PATH;
+	
+	/**
+	 * Number of ancestors, kept along with the path.
+	 */
+	@JsonIgnore
+	@Column(nullable = false)
+	private int depth;
+	
+	/**
+	 * Optimistic lock version, incremented by Hibernate on every update of the Product's own columns.
+	 */
+	@Version
+	@Column(nullable = false)
+	private long version;
+	
+	/**
+	 * Time of the last creation or update (epoch milliseconds), read by delta synchronization.
+	 */
+	@Column(nullable = false)
+	private long lastModified;
+	
 	//assuming that once a parent is removed, so should be the children to retain consistency
-	@OneToMany(mappedBy="parent", fetch = FetchType.EAGER, cascade=CascadeType.REMOVE)
+	//removal of the whole subtree is done by the repository with set based statements, not by cascading
+	//relations are only read when requested through a fetch plan
+	//with the second-level cache enabled, collections are cached as id lists of the cached entities
+	@JsonProperty
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+	@OneToMany(mappedBy="parent", fetch = FetchType.LAZY)
 	private List<Product> children = new ArrayList<Product>();
 	
-	@OneToMany(mappedBy="product", fetch = FetchType.EAGER, cascade=CascadeType.REMOVE)
+	@JsonProperty
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+	@OneToMany(mappedBy="product", fetch = FetchType.LAZY)
 	private List<Image> images = new ArrayList<Image>();
 	
 	public Product(){}
@@ -83,12 +165,79 @@ public class Product {
 		this.parent = parent;
 	}
 
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+	
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		lastModified = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Hierarchy path prefix shared by all the descendants of this Product.
+	 * @return String path of this Product's children
+	 */
+	@JsonIgnore
+	public String getSubtreePath() {
+		return path + id + "/";
+	}
+
+	@JsonIgnore
 	public List<Product> getChildren() {
 		return children;
 	}
 
+	@JsonIgnore
 	public List<Image> getImages() {
 		return images;
 	}
+	
+	/**
+	 * Child collection for output purpose. Written as empty when it was left out of the fetch plan, instead of being loaded.
+	 * @return List<Product> loaded children or empty list
+	 */
+	@JsonProperty("children")
+	List<Product> getLoadedChildren() {
+		return Persistence.getPersistenceUtil().isLoaded(children) ? children : Collections.<Product>emptyList();
+	}
+	
+	/**
+	 * Image collection for output purpose. Written as empty when it was left out of the fetch plan, instead of being loaded.
+	 * @return List<Image> loaded images or empty list
+	 */
+	@JsonProperty("images")
+	List<Image> getLoadedImages() {
+		return Persistence.getPersistenceUtil().isLoaded(images) ? images : Collections.<Image>emptyList();
+	}
 
 }
@@ -0,0 +1,96 @@
+package ws.persistence.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import ws.persistence.enumerate.EntityType;
+
+/**
+ * Record of a deleted Product or Image, so delta synchronization can report deletions.
+ * Written by the repositories in the transaction of the deletion, and purged once older than the retention period.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_tombstone_deleted_at", columnList = "deletedAt"))
+@IdClass(Tombstone.Key.class)
+public class Tombstone {
+	@Id
+	@Enumerated(EnumType.STRING)
+	private EntityType entity;
+	
+	/**
+	 * Id of the deleted Product or Image, never reused by the sequences, so (entity, entityId) identifies a deletion.
+	 */
+	@Id
+	@JsonProperty("id")
+	private Long entityId;
+	
+	/**
+	 * Time of the deletion (epoch milliseconds).
+	 */
+	@Column(nullable = false)
+	private long deletedAt;
+	
+	public Tombstone() {}
+	
+	public Tombstone(EntityType entity, Long entityId, long deletedAt) {
+		this.entity = entity;
+		this.entityId = entityId;
+		this.deletedAt = deletedAt;
+	}
+
+	public EntityType getEntity() {
+		return entity;
+	}
+
+	@JsonProperty("id")
+	public Long getEntityId() {
+		return entityId;
+	}
+
+	public long getDeletedAt() {
+		return deletedAt;
+	}
+	
+	/**
+	 * Identifier of a Tombstone: the kind and id of the deleted object.
+	 */
+	public static class Key implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private EntityType entity;
+		
+		private Long entityId;
+		
+		public Key() {}
+		
+		public Key(EntityType entity, Long entityId) {
+			this.entity = entity;
+			this.entityId = entityId;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)){
+				return false;
+			}
+			Key other = (Key) o;
+			return entity == other.entity && Objects.equals(entityId, other.entityId);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(entity, entityId);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package ws.persistence.repository;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Image properties that can be requested as a sparse fieldset. The product is represented by its id.
+ *
+ */
+public enum ImageField {
+	ID("id"),
+	TYPE("type"),
+	STATUS("status"),
+	PRODUCT("product"),
+	VERSION("version"),
+	LAST_MODIFIED("lastModified");
+	
+	private final String property;
+	
+	private ImageField(String property) {
+		this.property = property;
+	}
+	
+	/**
+	 * Parses a comma separated list of property names, e.g. "id,type". The id is always part of the result.
+	 * @param fields property names
+	 * @return Set<ImageField> requested fields, or null if any of the names is unknown
+	 */
+	public static Set<ImageField> parse(String fields){
+		Set<ImageField> parsed = EnumSet.of(ID);
+		for(String name : StringUtils.tokenizeToStringArray(fields, ",")){
+			ImageField field = byProperty(name);
+			if(field == null){
+				return null;
+			}
+			parsed.add(field);
+		}
+		return parsed;
+	}
+	
+	private static ImageField byProperty(String property){
+		for(ImageField field : values()){
+			if(field.property.equals(property)){
+				return field;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return String JSON property name
+	 */
+	public String getProperty() {
+		return property;
+	}
+}
@@ -1,6 +1,14 @@
 package ws.persistence.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import ws.persistence.model.Image;
 
@@ -9,5 +17,21 @@ import ws.persistence.model.Image;
  * @author Samuel
  *
  */
-public interface ImageRepository extends CrudRepository<Image,Long>{
+public interface ImageRepository extends CrudRepository<Image,Long>, ImageRepositoryCustom {
+	/**
+	 * Retrieves only the id of the Product an Image belongs to, without loading either entity.
+	 * @param id of the Image
+	 * @return Long product id or null if the Image is unknown
+	 */
+	@Query("select i.product.id from Image i where i.id = :id")
+	@QueryHints(@QueryHint(name = ProductRepository.CACHEABLE, value = "true"))
+	public Long findProductIdById(@Param("id") Long id);
+	
+	/**
+	 * Retrieves the ids of the Products the given Images belong to, without loading either entity.
+	 * @param ids of the Images
+	 * @return List<Long> distinct product ids
+	 */
+	@Query("select distinct i.product.id from Image i where i.id in :ids")
+	public List<Long> findProductIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,88 @@
+package ws.persistence.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ws.persistence.enumerate.ImageStatus;
+import ws.persistence.model.Image;
+
+/**
+ * Image persistence operations that go beyond what Spring Data derives from method names.
+ * Implemented by {@link ImageRepositoryImpl} and exposed through {@link ImageRepository}.
+ *
+ */
+public interface ImageRepositoryCustom {
+	/**
+	 * Inserts all the given Images in a single transaction using JDBC batches, flushing and clearing the persistence context after every batch.
+	 * @param images Images to be inserted, referencing existing Products
+	 * @return List<Image> the given list, with generated ids
+	 */
+	public List<Image> insertAll(List<Image> images);
+	
+	/**
+	 * Sparse fieldset lookup: selects only the columns of the requested fields.
+	 * The returned Image is a detached projection, its product holds only the id and fields that were not requested are left null.
+	 * @param id of the Image to be retrieved
+	 * @param fields Image fields to be read
+	 * @return Image projection or null if unknown
+	 */
+	public Image findOne(Long id, Set<ImageField> fields);
+	
+	/**
+	 * Sparse fieldset query of the Images of the given Products, in product then id order, selecting only the columns of the requested fields.
+	 * @param productIds ids of the Products
+	 * @param fields Image fields to be read
+	 * @return List<Image> projected Images
+	 */
+	public List<Image> findByProducts(Collection<Long> productIds, Set<ImageField> fields);
+	
+	/**
+	 * Sparse fieldset delta query: retrieves the Images created or updated after a point in time, up to another one,
+	 * in last modification order (ties broken by id), selecting only the columns of the requested fields as findOne does.
+	 * @param since exclusive lower bound of the last modification time (epoch milliseconds)
+	 * @param upTo inclusive upper bound of the last modification time (epoch milliseconds)
+	 * @param limit maximum number of Images to be read
+	 * @param fields Image fields to be read
+	 * @return List<Image> at most limit projected Images
+	 */
+	public List<Image> findModified(long since, long upTo, int limit, Set<ImageField> fields);
+	
+	/**
+	 * Replaces type, status and product of an existing Image, incrementing its version. 
+	 * When the product changes, the previous one is touched (see {@link ProductRepositoryCustom#touch(Long)}).
+	 * @param image Image holding the id and the new values, with an existing product
+	 * @param expectedVersion version the Image must still have, null for an unconditional update
+	 * @return Image updated object or null if unknown
+	 * @throws javax.persistence.OptimisticLockException if the Image has another version, or is updated concurrently
+	 */
+	public Image update(Image image, Long expectedVersion);
+	
+	/**
+	 * Partial update: replaces only the given columns of an existing Image with a single bulk statement, without loading it,
+	 * incrementing its version. When the product changes, the previous one is touched as in update.
+	 * @param id of the Image to be updated
+	 * @param changes new values of TYPE (ImageType), STATUS (ImageStatus) and PRODUCT (id of an existing Product)
+	 * @param expectedVersion version the Image must still have, null for an unconditional update
+	 * @return Image projection of the updated Image (every field, its product holding only the id) or null if unknown
+	 * @throws javax.persistence.OptimisticLockException if the Image has another version
+	 */
+	public Image patch(Long id, Map<ImageField, Object> changes, Long expectedVersion);
+	
+	/**
+	 * Sets the content status of the given Images with a single statement, incrementing their version and last modification time.
+	 * @param ids of the Images
+	 * @param status to be set
+	 * @return int number of updated rows
+	 */
+	public int updateStatus(Collection<Long> ids, ImageStatus status);
+	
+	/**
+	 * Deletes an Image with a single statement, without loading it first, leaving a {@link ws.persistence.model.Tombstone} 
+	 * and touching its product in the same transaction.
+	 * @param id of the Image to be deleted
+	 * @return int number of deleted rows
+	 */
+	public int deleteById(Long id);
+}
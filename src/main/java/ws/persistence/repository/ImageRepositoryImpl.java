@@ -0,0 +1,230 @@
+package ws.persistence.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import ws.persistence.enumerate.EntityType;
+import ws.persistence.enumerate.ImageStatus;
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.model.Tombstone;
+
+/**
+ * JPA backed implementation of {@link ImageRepositoryCustom}.
+ * @see ImageRepositoryCustom
+ */
+public class ImageRepositoryImpl implements ImageRepositoryCustom {
+	@PersistenceContext
+	EntityManager em;
+	
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	int batchSize;
+
+	@Override
+	@Transactional
+	public List<Image> insertAll(List<Image> images) {
+		int count = 0;
+		for(Image i : images){
+			i.setId(null);
+			em.persist(i);
+			if(++count % batchSize == 0){
+				em.flush();
+				em.clear();
+			}
+		}
+		em.flush();
+		em.clear();
+		return images;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Image findOne(Long id, Set<ImageField> fields) {
+		List<?> rows = em.createQuery("select " + projection(fields) + " from Image i where i.id = :id").setParameter("id", id).getResultList();
+		return rows.isEmpty() ? null : project(rows.get(0), fields);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Image> findByProducts(Collection<Long> productIds, Set<ImageField> fields) {
+		if(productIds.isEmpty()){
+			return new ArrayList<Image>();
+		}
+		return project(em.createQuery("select " + projection(fields) + " from Image i where i.product.id in :ids order by i.product.id, i.id")
+				.setParameter("ids", productIds)
+				.getResultList(), fields);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Image> findModified(long since, long upTo, int limit, Set<ImageField> fields) {
+		return project(em.createQuery("select " + projection(fields) + " from Image i where i.lastModified > :since and i.lastModified <= :upTo order by i.lastModified, i.id")
+				.setParameter("since", since)
+				.setParameter("upTo", upTo)
+				.setMaxResults(limit)
+				.getResultList(), fields);
+	}
+	
+	@Override
+	@Transactional
+	public Image update(Image image, Long expectedVersion) {
+		Image i = em.find(Image.class, image.getId());
+		if(i == null){
+			return null;
+		}
+		if(expectedVersion != null && i.getVersion() != expectedVersion){
+			throw new OptimisticLockException("Image " + i.getId() + " is at version " + i.getVersion(), null, i);
+		}
+		if(!i.getProduct().getId().equals(image.getProduct().getId())){
+			touch(i.getProduct().getId());
+		}
+		i.setType(image.getType());
+		i.setStatus(image.getStatus());
+		i.setProduct(em.getReference(Product.class, image.getProduct().getId()));
+		return i;
+	}
+	
+	@Override
+	@Transactional
+	public Image patch(Long id, Map<ImageField, Object> changes, Long expectedVersion) {
+		int updated = 0;
+		if(!changes.isEmpty()){
+			if(changes.containsKey(ImageField.PRODUCT)){
+				em.createQuery("update Product p set p.lastModified = :now where p.id = (select i.product.id from Image i where i.id = :id) and p.id <> :product")
+						.setParameter("now", System.currentTimeMillis())
+						.setParameter("id", id)
+						.setParameter("product", changes.get(ImageField.PRODUCT))
+						.executeUpdate();
+			}
+			StringBuilder assignments = new StringBuilder();
+			changes.keySet().forEach(field -> assignments.append("i.").append(field.getProperty()).append(" = :").append(field.getProperty()).append(", "));
+			Query update = em.createQuery("update versioned Image i set " + assignments + "i.lastModified = :now where i.id = :id"
+					+ (expectedVersion == null ? "" : " and i.version = :version"))
+					.setParameter("now", System.currentTimeMillis())
+					.setParameter("id", id);
+			changes.forEach((field, value) -> update.setParameter(field.getProperty(), 
+					field == ImageField.PRODUCT ? em.getReference(Product.class, value) : value));
+			if(expectedVersion != null){
+				update.setParameter("version", expectedVersion);
+			}
+			updated = update.executeUpdate();
+		}
+		Image i = findOne(id, EnumSet.allOf(ImageField.class));
+		if(i != null && expectedVersion != null && (changes.isEmpty() ? i.getVersion() != expectedVersion : updated == 0)){
+			//rolls back the touch of the previous product
+			throw new OptimisticLockException("Image " + id + " is at version " + i.getVersion(), null, i);
+		}
+		return i;
+	}
+	
+	@Override
+	@Transactional
+	public int updateStatus(Collection<Long> ids, ImageStatus status) {
+		return em.createQuery("update versioned Image i set i.status = :status, i.lastModified = :now where i.id in :ids")
+				.setParameter("status", status)
+				.setParameter("now", System.currentTimeMillis())
+				.setParameter("ids", ids)
+				.executeUpdate();
+	}
+	
+	@Override
+	@Transactional
+	public int deleteById(Long id) {
+		em.createQuery("update Product p set p.lastModified = :now where p.id = (select i.product.id from Image i where i.id = :id)")
+				.setParameter("now", System.currentTimeMillis())
+				.setParameter("id", id)
+				.executeUpdate();
+		int removed = em.createQuery("delete from Image i where i.id = :id").setParameter("id", id).executeUpdate();
+		if(removed > 0){
+			em.persist(new Tombstone(EntityType.IMAGE, id, System.currentTimeMillis()));
+		}
+		return removed;
+	}
+	
+	/**
+	 * Advances the last modification time of a Product an Image was removed from.
+	 */
+	private void touch(Long productId){
+		em.createQuery("update Product p set p.lastModified = :now where p.id = :id")
+				.setParameter("now", System.currentTimeMillis())
+				.setParameter("id", productId)
+				.executeUpdate();
+	}
+	
+	/**
+	 * Select clause of a sparse fieldset query: the id, then the columns of the requested fields in ImageField order.
+	 */
+	private static String projection(Set<ImageField> fields){
+		StringBuilder select = new StringBuilder("i.id");
+		if(fields.contains(ImageField.TYPE)){
+			select.append(", i.type");
+		}
+		if(fields.contains(ImageField.STATUS)){
+			select.append(", i.status");
+		}
+		if(fields.contains(ImageField.PRODUCT)){
+			//the foreign key column itself, the product row is not joined
+			select.append(", i.product.id");
+		}
+		if(fields.contains(ImageField.VERSION)){
+			select.append(", i.version");
+		}
+		if(fields.contains(ImageField.LAST_MODIFIED)){
+			select.append(", i.lastModified");
+		}
+		return select.toString();
+	}
+	
+	private static List<Image> project(List<?> rows, Set<ImageField> fields){
+		List<Image> images = new ArrayList<Image>(rows.size());
+		for(Object row : rows){
+			images.add(project(row, fields));
+		}
+		return images;
+	}
+	
+	/**
+	 * Builds a detached Image out of a projected row.
+	 */
+	private static Image project(Object result, Set<ImageField> fields){
+		//a single selected expression comes back as the bare value
+		Object[] row = result instanceof Object[] ? (Object[]) result : new Object[]{result};
+		int column = 0;
+		Image i = new Image();
+		i.setId((Long) row[column++]);
+		if(fields.contains(ImageField.TYPE)){
+			i.setType((ImageType) row[column++]);
+		}
+		if(fields.contains(ImageField.STATUS)){
+			i.setStatus((ImageStatus) row[column++]);
+		}
+		if(fields.contains(ImageField.PRODUCT)){
+			Long productId = (Long) row[column++];
+			if(productId != null){
+				Product product = new Product();
+				product.setId(productId);
+				i.setProduct(product);
+			}
+		}
+		if(fields.contains(ImageField.VERSION)){
+			i.setVersion((Long) row[column++]);
+		}
+		if(fields.contains(ImageField.LAST_MODIFIED)){
+			i.setLastModified((Long) row[column++]);
+		}
+		return i;
+	}
+}
@@ -0,0 +1,42 @@
+package ws.persistence.repository;
+
+/**
+ * Relations of a Product to be read together with it. Relations left out of the plan are never queried.
+ *
+ */
+public enum ProductFetchPlan {
+	NONE(false, false),
+	CHILDREN(true, false),
+	IMAGES(false, true),
+	ALL(true, true);
+	
+	private final boolean children;
+	
+	private final boolean images;
+	
+	private ProductFetchPlan(boolean children, boolean images) {
+		this.children = children;
+		this.images = images;
+	}
+	
+	/**
+	 * Translates the endpoint exclusion flags into the corresponding fetch plan.
+	 * @param excludeChildren leaves the child collection out of the plan
+	 * @param excludeImages leaves the image collection out of the plan
+	 * @return ProductFetchPlan matching the flags
+	 */
+	public static ProductFetchPlan of(boolean excludeChildren, boolean excludeImages){
+		if(excludeChildren){
+			return excludeImages ? NONE : IMAGES;
+		}
+		return excludeImages ? CHILDREN : ALL;
+	}
+
+	public boolean includesChildren() {
+		return children;
+	}
+
+	public boolean includesImages() {
+		return images;
+	}
+}
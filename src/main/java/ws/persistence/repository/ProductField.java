@@ -0,0 +1,60 @@
+package ws.persistence.repository;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Product properties that can be requested as a sparse fieldset. Relations are represented by the ids of the related objects.
+ *
+ */
+public enum ProductField {
+	ID("id"),
+	NAME("name"),
+	DESCRIPTION("description"),
+	PARENT("parent"),
+	CHILDREN("children"),
+	IMAGES("images"),
+	VERSION("version"),
+	LAST_MODIFIED("lastModified");
+	
+	private final String property;
+	
+	private ProductField(String property) {
+		this.property = property;
+	}
+	
+	/**
+	 * Parses a comma separated list of property names, e.g. "id,name,parent". The id is always part of the result.
+	 * @param fields property names
+	 * @return Set<ProductField> requested fields, or null if any of the names is unknown
+	 */
+	public static Set<ProductField> parse(String fields){
+		Set<ProductField> parsed = EnumSet.of(ID);
+		for(String name : StringUtils.tokenizeToStringArray(fields, ",")){
+			ProductField field = byProperty(name);
+			if(field == null){
+				return null;
+			}
+			parsed.add(field);
+		}
+		return parsed;
+	}
+	
+	private static ProductField byProperty(String property){
+		for(ProductField field : values()){
+			if(field.property.equals(property)){
+				return field;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return String JSON property name
+	 */
+	public String getProperty() {
+		return property;
+	}
+}
@@ -1,6 +1,14 @@
 package ws.persistence.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import ws.persistence.model.Product;
 
@@ -9,5 +17,57 @@ import ws.persistence.model.Product;
  * @author Samuel
  *
  */
-public interface ProductRepository extends CrudRepository<Product,Long>{
+public interface ProductRepository extends CrudRepository<Product,Long>, ProductRepositoryCustom {
+	/**
+	 * Query hint caching the results of a lookup in the query cache, when enabled (l2cache profile).
+	 * Cached results are invalidated by any write to the queried tables.
+	 */
+	String CACHEABLE = "org.hibernate.cacheable";
+	
+	/**
+	 * Retrieves which of the given ids belong to existing Products, without loading them.
+	 * @param ids Product ids to be verified
+	 * @return List<Long> the known ids among the given ones
+	 */
+	@Query("select p.id from Product p where p.id in :ids")
+	@QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
+	public List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+	
+	/**
+	 * Retrieves only the hierarchy path of a Product.
+	 * @param id of the Product
+	 * @return String path of ancestor ids or null if the Product is unknown
+	 * @see Product#getPath()
+	 */
+	@Query("select p.path from Product p where p.id = :id")
+	@QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
+	public String findPathById(@Param("id") Long id);
+	
+	/**
+	 * Retrieves every Product under the given hierarchy path up to a maximum depth, in a single query, ordered by depth and id.
+	 * @param subtreePath path shared by the descendants, as given by Product.getSubtreePath()
+	 * @param maxDepth deepest level to be retrieved (absolute depth)
+	 * @return List<Product> descendants
+	 */
+	@Query("select p from Product p where p.path like concat(:path, '%') and p.depth <= :maxDepth order by p.depth, p.id")
+	@QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
+	public List<Product> findSubtree(@Param("path") String subtreePath, @Param("maxDepth") int maxDepth);
+	
+	/**
+	 * Counts the Products under the given hierarchy path, without loading them.
+	 * @param subtreePath path shared by the descendants, as given by Product.getSubtreePath()
+	 * @return long number of descendants
+	 */
+	@Query("select count(p) from Product p where p.path like concat(:path, '%')")
+	@QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
+	public long countSubtree(@Param("path") String subtreePath);
+	
+	/**
+	 * Retrieves the given Products ordered from the root down, in a single query.
+	 * @param ids of the ancestors, as listed in a hierarchy path
+	 * @return List<Product> ancestors ordered by depth
+	 */
+	@Query("select p from Product p where p.id in :ids order by p.depth")
+	@QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
+	public List<Product> findAncestors(@Param("ids") Collection<Long> ids);
 }
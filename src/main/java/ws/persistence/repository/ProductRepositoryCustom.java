@@ -0,0 +1,150 @@
+package ws.persistence.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import ws.persistence.model.Product;
+
+/**
+ * Product persistence operations that go beyond what Spring Data derives from method names.
+ * Implemented by {@link ProductRepositoryImpl} and exposed through {@link ProductRepository}.
+ *
+ */
+public interface ProductRepositoryCustom {
+	/**
+	 * Retrieves a Product reading only the relations in the fetch plan, each one with a single query.
+	 * @param id of the Product to be retrieved
+	 * @param plan relations to be read together with the Product
+	 * @return Product or null if unknown
+	 */
+	public Product findOne(Long id, ProductFetchPlan plan);
+	
+	/**
+	 * Keyset pagination query: retrieves Products with id greater than the given one, in id order.
+	 * Relations in the fetch plan are read for the whole page at once, with a single query per relation.
+	 * @param after id of the last Product of the previous page
+	 * @param limit maximum number of Products in the page
+	 * @param plan relations to be read together with the Products
+	 * @return List<Product> at most limit Products
+	 */
+	public List<Product> findPage(Long after, int limit, ProductFetchPlan plan);
+	
+	/**
+	 * Sparse fieldset keyset pagination query: as findPage, but only the columns of the requested fields are selected.
+	 * Returned Products are detached projections: relations are made of objects holding only their id, 
+	 * read with a single id-only query per requested relation, and fields that were not requested are left null or empty.
+	 * @param after id of the last Product of the previous page
+	 * @param limit maximum number of Products in the page
+	 * @param fields Product fields to be read
+	 * @return List<Product> at most limit projected Products
+	 */
+	public List<Product> findPage(Long after, int limit, Set<ProductField> fields);
+	
+	/**
+	 * Sparse fieldset lookup: as findPage with fields, for a single Product.
+	 * @param id of the Product to be retrieved
+	 * @param fields Product fields to be read
+	 * @return Product projection or null if unknown
+	 */
+	public Product findOne(Long id, Set<ProductField> fields);
+	
+	/**
+	 * Sparse fieldset delta query: retrieves the Products created or updated after a point in time, up to another one,
+	 * in last modification order (ties broken by id), selecting only the columns of the requested fields as findPage does.
+	 * @param since exclusive lower bound of the last modification time (epoch milliseconds)
+	 * @param upTo inclusive upper bound of the last modification time (epoch milliseconds)
+	 * @param limit maximum number of Products to be read
+	 * @param fields Product fields to be read
+	 * @return List<Product> at most limit projected Products
+	 */
+	public List<Product> findModified(long since, long upTo, int limit, Set<ProductField> fields);
+	
+	/**
+	 * Reads ALL the Products ordered by id through a forward-only scrollable result, handing them to the consumer in chunks as they are read.
+	 * The persistence context is cleared after every chunk, so memory usage does not grow with the size of the table.
+	 * The consumer is called inside a read-only transaction and must not keep references to the objects it receives.
+	 * @param plan relations to be read together with the Products, with a single query per relation and chunk
+	 * @param consumer callback invoked once per Product, in id order
+	 */
+	public void scrollAll(ProductFetchPlan plan, Consumer<Product> consumer);
+	
+	/**
+	 * Reads ALL the Products as sparse fieldset projections (see findPage) through a forward-only scrollable result,
+	 * parents before their children (depth, then id order), handing them to the consumer in chunks as they are read.
+	 * The consumer is called inside a read-only transaction and must not keep references to the chunks it receives.
+	 * @param fields Product fields to be read
+	 * @param consumer callback invoked once per chunk of at most 100 projected Products
+	 */
+	public void scrollByDepth(Set<ProductField> fields, Consumer<List<Product>> consumer);
+	
+	/**
+	 * Inserts a Product placing it in the hierarchy under its (existing) parent.
+	 * @param product Product to be inserted
+	 * @return Product the given object, with generated id and the managed parent
+	 */
+	public Product insert(Product product);
+	
+	/**
+	 * Replaces name, description and parent of an existing Product. When the parent changes, the hierarchy path
+	 * of the whole subtree is rewritten with a single bulk statement, and the previous parent is touched (see touch).
+	 * @param product Product holding the id and the new values, with an existing parent that is not one of its descendants
+	 * @param expectedVersion version the Product must still have, null for an unconditional update
+	 * @return Product updated object or null if unknown
+	 * @throws javax.persistence.OptimisticLockException if the Product has another version, or is updated concurrently
+	 */
+	public Product update(Product product, Long expectedVersion);
+	
+	/**
+	 * Partial update: replaces only the given columns of an existing Product, incrementing its version.
+	 * Name and description changes are written with a single bulk statement, without loading the Product;
+	 * a parent change moves the subtree as update does, writing only the columns that changed.
+	 * @param id of the Product to be updated
+	 * @param changes new values of NAME, DESCRIPTION (String) and PARENT (id of an existing Product that is not a descendant, null for none)
+	 * @param expectedVersion version the Product must still have, null for an unconditional update
+	 * @return Product projection of the updated Product (id, name, description, parent id, version and lastModified) or null if unknown
+	 * @throws javax.persistence.OptimisticLockException if the Product has another version, or is updated concurrently
+	 */
+	public Product patch(Long id, Map<ProductField, Object> changes, Long expectedVersion);
+	
+	/**
+	 * Advances the last modification time of a Product without incrementing its version, when one of its children or images is removed.
+	 * Its own columns are unchanged, but the representations embedding its collections are not.
+	 * @param id of the Product, ignored if null or unknown
+	 */
+	public void touch(Long id);
+	
+	/**
+	 * Moves an existing Product under another one, rewriting the hierarchy path of its whole subtree as update does.
+	 * @param id of the Product to be moved
+	 * @param parentId of the new parent
+	 * @return Product moved object, or null if either is unknown or the parent is the Product itself or one of its descendants
+	 */
+	public Product move(Long id, Long parentId);
+	
+	/**
+	 * Inserts all the given Products in a single transaction using JDBC batches, flushing and clearing the persistence context after every batch.
+	 * Parent references between the given Products are allowed (and must be acyclic): parents are inserted before their children.
+	 * Every Product is placed in the hierarchy, existing parents are read with a single query for the whole batch.
+	 * Ids present in the given objects are only used for references inside the batch and are replaced by generated ones.
+	 * @param products Products to be inserted
+	 * @return List<Product> the given list, with generated ids
+	 */
+	public List<Product> insertAll(List<Product> products);
+	
+	/**
+	 * Deletes a Product together with its descendants and all their Images with set based statements, without loading any of them.
+	 * The subtree is deleted from the deepest levels up in chunks of at most chunkSize Products, each chunk in its own transaction,
+	 * so locks are only held for the duration of a chunk. The Product itself is deleted last, in a transaction locking the rows
+	 * left in the subtree and deleting the Products inserted or moved under it meanwhile, so the tree is never left half deleted.
+	 * Every deleted Product and Image leaves a {@link ws.persistence.model.Tombstone} written by the same transaction,
+	 * and the parent of the given Product is touched.
+	 * @param id of the Product to be deleted
+	 * @param chunkSize maximum number of Products deleted per transaction
+	 * @param deleted callback receiving the ids of the Products and of the Images deleted by every committed chunk
+	 * @return long number of deleted Products including the given one, 0 if unknown
+	 */
+	public long deleteSubtree(Long id, int chunkSize, BiConsumer<List<Long>, List<Long>> deleted);
+}
@@ -0,0 +1,602 @@
+package ws.persistence.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.hibernate.Hibernate;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ws.persistence.enumerate.EntityType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.model.Tombstone;
+
+/**
+ * Hibernate backed implementation of {@link ProductRepositoryCustom}.
+ * @see ProductRepositoryCustom
+ */
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+	/**
+	 * Number of rows fetched from the JDBC cursor at a time, also used as the persistence context clearing interval.
+	 */
+	private static final int SCROLL_FETCH_SIZE = 100;
+	
+	private static final String FETCH_GRAPH_HINT = "javax.persistence.fetchgraph";
+	
+	/**
+	 * Fields of the Product returned by patch: its columns, without collections.
+	 */
+	private static final Set<ProductField> PATCHED_FIELDS = EnumSet.of(ProductField.ID, ProductField.NAME, ProductField.DESCRIPTION, 
+			ProductField.PARENT, ProductField.VERSION, ProductField.LAST_MODIFIED);
+	
+	@PersistenceContext
+	EntityManager em;
+	
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	int batchSize;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	@Autowired
+	void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Product findOne(Long id, ProductFetchPlan plan) {
+		//the first relation is joined in the lookup itself, a second one gets its own query to avoid the cartesian product
+		Map<String, Object> hints = Collections.emptyMap();
+		if(plan.includesChildren()){
+			hints = fetchGraph(Product.CHILDREN_GRAPH);
+		} else if(plan.includesImages()){
+			hints = fetchGraph(Product.IMAGES_GRAPH);
+		}
+		Product p = em.find(Product.class, id, hints);
+		if(p != null){
+			//no-op for relations joined by the lookup; a Product taken from the second-level cache comes without them, 
+			//and its collections are then initialized from the collection cache
+			if(plan.includesChildren()){ Hibernate.initialize(p.getChildren()); }
+			if(plan.includesImages()){ Hibernate.initialize(p.getImages()); }
+		}
+		return p;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Product> findPage(Long after, int limit, ProductFetchPlan plan) {
+		List<Product> products = em.createQuery("select p from Product p where p.id > :after order by p.id", Product.class)
+				.setParameter("after", after)
+				.setMaxResults(limit)
+				.getResultList();
+		fetchRelations(products, plan);
+		return products;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Product> findPage(Long after, int limit, Set<ProductField> fields) {
+		List<?> rows = em.createQuery("select " + projection(fields) + " from Product p where p.id > :after order by p.id")
+				.setParameter("after", after)
+				.setMaxResults(limit)
+				.getResultList();
+		return project(rows, fields);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Product findOne(Long id, Set<ProductField> fields) {
+		List<?> rows = em.createQuery("select " + projection(fields) + " from Product p where p.id = :id")
+				.setParameter("id", id)
+				.getResultList();
+		List<Product> products = project(rows, fields);
+		return products.isEmpty() ? null : products.get(0);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Product> findModified(long since, long upTo, int limit, Set<ProductField> fields) {
+		List<?> rows = em.createQuery("select " + projection(fields) + " from Product p where p.lastModified > :since and p.lastModified <= :upTo order by p.lastModified, p.id")
+				.setParameter("since", since)
+				.setParameter("upTo", upTo)
+				.setMaxResults(limit)
+				.getResultList();
+		return project(rows, fields);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void scrollAll(ProductFetchPlan plan, Consumer<Product> consumer) {
+		Session session = em.unwrap(Session.class);
+		ScrollableResults results = session.createQuery("select p from Product p order by p.id")
+				.setReadOnly(true)
+				.setFetchSize(SCROLL_FETCH_SIZE)
+				.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			List<Product> chunk = new ArrayList<Product>(SCROLL_FETCH_SIZE);
+			while(results.next()){
+				chunk.add((Product) results.get(0));
+				if(chunk.size() == SCROLL_FETCH_SIZE){
+					emit(session, chunk, plan, consumer);
+				}
+			}
+			emit(session, chunk, plan, consumer);
+		} finally {
+			results.close();
+		}
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public void scrollByDepth(Set<ProductField> fields, Consumer<List<Product>> consumer) {
+		ScrollableResults results = em.unwrap(Session.class).createQuery("select " + projection(fields) + " from Product p order by p.depth, p.id")
+				.setReadOnly(true)
+				.setFetchSize(SCROLL_FETCH_SIZE)
+				.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			List<Object> rows = new ArrayList<Object>(SCROLL_FETCH_SIZE);
+			while(results.next()){
+				//a single selected expression comes back as a one element row
+				Object[] row = results.get();
+				rows.add(row.length == 1 ? row[0] : row);
+				if(rows.size() == SCROLL_FETCH_SIZE){
+					consumer.accept(project(rows, fields));
+					rows.clear();
+				}
+			}
+			if(!rows.isEmpty()){
+				consumer.accept(project(rows, fields));
+			}
+		} finally {
+			results.close();
+		}
+	}
+	
+	@Override
+	@Transactional
+	public Product insert(Product product) {
+		Product parent = product.getParent() == null ? null : lockParent(product.getParent().getId());
+		product.setParent(parent);
+		placeUnder(product, parent);
+		em.persist(product);
+		return product;
+	}
+	
+	@Override
+	@Transactional
+	public Product update(Product product, Long expectedVersion) {
+		Product p = em.find(Product.class, product.getId());
+		if(p == null){
+			return null;
+		}
+		if(expectedVersion != null && p.getVersion() != expectedVersion){
+			throw new OptimisticLockException("Product " + p.getId() + " is at version " + p.getVersion(), null, p);
+		}
+		p.setName(product.getName());
+		p.setDescription(product.getDescription());
+		Product parent = product.getParent() == null ? null : lockParent(product.getParent().getId());
+		if(parent != p.getParent()){
+			moveUnder(p, parent);
+		}
+		return p;
+	}
+	
+	@Override
+	@Transactional
+	public Product move(Long id, Long parentId) {
+		Product p = em.find(Product.class, id);
+		Product parent = lockParent(parentId);
+		//the parent must not be in the subtree being moved
+		if(p == null || parent == null || parent == p || parent.getSubtreePath().startsWith(p.getSubtreePath())){
+			return null;
+		}
+		if(parent != p.getParent()){
+			moveUnder(p, parent);
+		}
+		return p;
+	}
+	
+	@Override
+	@Transactional
+	public Product patch(Long id, Map<ProductField, Object> changes, Long expectedVersion) {
+		if(changes.containsKey(ProductField.PARENT)){
+			//the subtree paths depend on the current ones, the Product is loaded and its dirty columns written on flush
+			Product p = em.find(Product.class, id);
+			if(p == null){
+				return null;
+			}
+			if(expectedVersion != null && p.getVersion() != expectedVersion){
+				throw new OptimisticLockException("Product " + id + " is at version " + p.getVersion(), null, p);
+			}
+			if(changes.containsKey(ProductField.NAME)){
+				p.setName((String) changes.get(ProductField.NAME));
+			}
+			if(changes.containsKey(ProductField.DESCRIPTION)){
+				p.setDescription((String) changes.get(ProductField.DESCRIPTION));
+			}
+			Long parentId = (Long) changes.get(ProductField.PARENT);
+			Product parent = parentId == null ? null : lockParent(parentId);
+			if(parent != p.getParent()){
+				moveUnder(p, parent);
+			}
+			return findOne(id, PATCHED_FIELDS);
+		}
+		int updated = 0;
+		if(!changes.isEmpty()){
+			StringBuilder assignments = new StringBuilder();
+			changes.keySet().forEach(field -> assignments.append("p.").append(field.getProperty()).append(" = :").append(field.getProperty()).append(", "));
+			Query update = em.createQuery("update versioned Product p set " + assignments + "p.lastModified = :now where p.id = :id"
+					+ (expectedVersion == null ? "" : " and p.version = :version"))
+					.setParameter("now", System.currentTimeMillis())
+					.setParameter("id", id);
+			changes.forEach((field, value) -> update.setParameter(field.getProperty(), value));
+			if(expectedVersion != null){
+				update.setParameter("version", expectedVersion);
+			}
+			updated = update.executeUpdate();
+		}
+		Product p = findOne(id, PATCHED_FIELDS);
+		if(p != null && expectedVersion != null && (changes.isEmpty() ? p.getVersion() != expectedVersion : updated == 0)){
+			throw new OptimisticLockException("Product " + id + " is at version " + p.getVersion(), null, p);
+		}
+		return p;
+	}
+	
+	@Override
+	@Transactional
+	public void touch(Long id) {
+		if(id != null){
+			em.createQuery("update Product p set p.lastModified = :now where p.id = :id")
+					.setParameter("now", System.currentTimeMillis())
+					.setParameter("id", id)
+					.executeUpdate();
+		}
+	}
+	
+	@Override
+	@Transactional
+	public List<Product> insertAll(List<Product> products) {
+		Map<Long, Product> existingParents = findExistingParents(products);
+		int count = 0;
+		for(Product p : parentsFirst(products)){
+			p.setId(null);
+			if(p.getParent() != null && existingParents.containsKey(p.getParent().getId())){
+				p.setParent(existingParents.get(p.getParent().getId()));
+			}
+			//parents in the batch were already persisted, so their path and id are known
+			placeUnder(p, p.getParent());
+			em.persist(p);
+			if(++count % batchSize == 0){
+				em.flush();
+				em.clear();
+			}
+		}
+		em.flush();
+		em.clear();
+		return products;
+	}
+	
+	@Override
+	public long deleteSubtree(Long id, int chunkSize, BiConsumer<List<Long>, List<Long>> deleted) {
+		List<String> path = em.createQuery("select p.path from Product p where p.id = :id", String.class).setParameter("id", id).getResultList();
+		if(path.isEmpty()){
+			return 0;
+		}
+		String subtreePath = path.get(0) + id + "/";
+		long count = 0;
+		List<Long> chunk;
+		do {
+			List<Long> images = new ArrayList<Long>();
+			chunk = transactionTemplate.execute(status -> deleteDeepest(subtreePath, chunkSize, images));
+			if(!chunk.isEmpty()){
+				count += chunk.size();
+				deleted.accept(chunk, images);
+			}
+		} while(chunk.size() == chunkSize);
+		List<Long> products = new ArrayList<Long>();
+		List<Long> images = new ArrayList<Long>();
+		transactionTemplate.execute(status -> {
+			//Products inserted or moved under the subtree since the chunks were read are locked with the root and deleted before it;
+			//later inserts and moves, which lock their parent, wait for this transaction and then find the parent gone
+			int locked = em.createQuery("select p from Product p where p.id = :id or p.path like :path", Product.class)
+					.setParameter("id", id)
+					.setParameter("path", subtreePath + "%")
+					.setLockMode(LockModeType.PESSIMISTIC_WRITE)
+					.getResultList().size();
+			if(locked > 1){
+				for(List<Long> remaining = deleteDeepest(subtreePath, chunkSize, images); !remaining.isEmpty(); remaining = deleteDeepest(subtreePath, chunkSize, images)){
+					products.addAll(remaining);
+				}
+			}
+			em.createQuery("update Product p set p.lastModified = :now where p.id = (select r.parent.id from Product r where r.id = :id)")
+					.setParameter("now", System.currentTimeMillis())
+					.setParameter("id", id)
+					.executeUpdate();
+			images.addAll(deleteImages(Collections.singletonList(id)));
+			if(deleteProducts(Collections.singletonList(id)) > 0){
+				products.add(id);
+			}
+			return null;
+		});
+		if(!products.isEmpty()){
+			count += products.size();
+			deleted.accept(products, images);
+		}
+		return count;
+	}
+	
+	/**
+	 * Places a Product under a new parent, rewriting the prefix of every descendant at once; the subtree keeps its inner shape.
+	 * The previous parent is touched, having lost a child.
+	 */
+	private void moveUnder(Product p, Product parent){
+		Long previousParentId = p.getParent() == null ? null : p.getParent().getId();
+		String previousSubtreePath = p.getSubtreePath();
+		int previousDepth = p.getDepth();
+		p.setParent(parent);
+		placeUnder(p, parent);
+		em.createQuery("update Product d set d.path = concat(:path, substring(d.path, :offset)), d.depth = d.depth + :delta where d.path like :previous")
+				.setParameter("path", p.getSubtreePath())
+				.setParameter("offset", previousSubtreePath.length() + 1)
+				.setParameter("delta", p.getDepth() - previousDepth)
+				.setParameter("previous", previousSubtreePath + "%")
+				.executeUpdate();
+		//after the bulk statement, which flushed the changes above as a single versioned update
+		touch(previousParentId);
+	}
+	
+	/**
+	 * Deletes the deepest Products under the given path, together with their Images.
+	 * Taking the deepest ones first means that every child of a chunk member is either in the chunk or already gone.
+	 * Tombstones of every deleted row are written in the same transaction.
+	 * @param images receiving the ids of the deleted Images
+	 * @return List<Long> ids of the deleted Products
+	 */
+	private List<Long> deleteDeepest(String subtreePath, int chunkSize, List<Long> images){
+		List<Long> ids = em.createQuery("select p.id from Product p where p.path like :path order by p.depth desc", Long.class)
+				.setParameter("path", subtreePath + "%")
+				.setMaxResults(chunkSize)
+				.getResultList();
+		if(ids.isEmpty()){
+			return ids;
+		}
+		//parent links inside the chunk are dropped first, so row deletion order does not matter to the foreign key
+		em.createQuery("update Product p set p.parent = null where p.id in :ids").setParameter("ids", ids).executeUpdate();
+		images.addAll(deleteImages(ids));
+		deleteProducts(ids);
+		return ids;
+	}
+	
+	/**
+	 * Deletes the Images of the given Products, leaving a tombstone for each one.
+	 * @return List<Long> ids of the deleted Images
+	 */
+	private List<Long> deleteImages(List<Long> productIds){
+		List<Long> ids = em.createQuery("select i.id from Image i where i.product.id in :ids", Long.class).setParameter("ids", productIds).getResultList();
+		if(!ids.isEmpty()){
+			bury(EntityType.IMAGE, ids);
+			em.createQuery("delete from Image i where i.id in :ids").setParameter("ids", ids).executeUpdate();
+		}
+		return ids;
+	}
+	
+	/**
+	 * Deletes the given Products, which must have no Images or children left, leaving a tombstone for each deleted one.
+	 * @return int number of deleted Products
+	 */
+	private int deleteProducts(List<Long> ids){
+		int removed = em.createQuery("delete from Product p where p.id in :ids").setParameter("ids", ids).executeUpdate();
+		if(removed > 0){
+			bury(EntityType.PRODUCT, ids);
+		}
+		return removed;
+	}
+	
+	private void bury(EntityType entity, List<Long> ids){
+		long now = System.currentTimeMillis();
+		for(Long id : ids){
+			em.persist(new Tombstone(entity, id, now));
+		}
+		em.flush();
+	}
+	
+	/**
+	 * Select clause of a sparse fieldset query: the id, then the columns of the requested fields in ProductField order.
+	 */
+	private static String projection(Set<ProductField> fields){
+		StringBuilder select = new StringBuilder("p.id");
+		if(fields.contains(ProductField.NAME)){
+			select.append(", p.name");
+		}
+		if(fields.contains(ProductField.DESCRIPTION)){
+			select.append(", p.description");
+		}
+		if(fields.contains(ProductField.PARENT)){
+			//the foreign key column itself, the parent row is not joined
+			select.append(", p.parent.id");
+		}
+		if(fields.contains(ProductField.VERSION)){
+			select.append(", p.version");
+		}
+		if(fields.contains(ProductField.LAST_MODIFIED)){
+			select.append(", p.lastModified");
+		}
+		return select.toString();
+	}
+	
+	/**
+	 * Builds detached Products out of projected rows, reading the requested relations as ids with one query per relation.
+	 */
+	private List<Product> project(List<?> rows, Set<ProductField> fields){
+		Map<Long, Product> products = new LinkedHashMap<Long, Product>();
+		for(Object result : rows){
+			//a single selected expression comes back as the bare value
+			Object[] row = result instanceof Object[] ? (Object[]) result : new Object[]{result};
+			int column = 0;
+			Product p = new Product();
+			p.setId((Long) row[column++]);
+			if(fields.contains(ProductField.NAME)){
+				p.setName((String) row[column++]);
+			}
+			if(fields.contains(ProductField.DESCRIPTION)){
+				p.setDescription((String) row[column++]);
+			}
+			if(fields.contains(ProductField.PARENT)){
+				Long parentId = (Long) row[column++];
+				if(parentId != null){
+					Product parent = new Product();
+					parent.setId(parentId);
+					p.setParent(parent);
+				}
+			}
+			if(fields.contains(ProductField.VERSION)){
+				p.setVersion((Long) row[column++]);
+			}
+			if(fields.contains(ProductField.LAST_MODIFIED)){
+				p.setLastModified((Long) row[column++]);
+			}
+			products.put(p.getId(), p);
+		}
+		if(products.isEmpty()){
+			return new ArrayList<Product>();
+		}
+		if(fields.contains(ProductField.CHILDREN)){
+			for(Object[] row : em.createQuery("select c.parent.id, c.id from Product c where c.parent.id in :ids order by c.id", Object[].class)
+					.setParameter("ids", products.keySet()).getResultList()){
+				Product child = new Product();
+				child.setId((Long) row[1]);
+				products.get(row[0]).getChildren().add(child);
+			}
+		}
+		if(fields.contains(ProductField.IMAGES)){
+			for(Object[] row : em.createQuery("select i.product.id, i.id from Image i where i.product.id in :ids order by i.id", Object[].class)
+					.setParameter("ids", products.keySet()).getResultList()){
+				Image image = new Image();
+				image.setId((Long) row[1]);
+				products.get(row[0]).getImages().add(image);
+			}
+		}
+		return new ArrayList<Product>(products.values());
+	}
+	
+	/**
+	 * Reads the parent a Product is placed under, locked until the end of the transaction, so its path cannot change
+	 * (its subtree being moved concurrently) before the Product is written with the path derived from it,
+	 * and a concurrent subtree deletion either sees the new child or makes the parent disappear first.
+	 * @return Product locked parent or null if unknown
+	 */
+	private Product lockParent(Long id){
+		//a locking query rather than find, which would also soft lock the second-level cache entry of the parent
+		List<Product> parent = em.createQuery("select p from Product p where p.id = :id", Product.class)
+				.setParameter("id", id)
+				.setLockMode(LockModeType.PESSIMISTIC_WRITE)
+				.getResultList();
+		return parent.isEmpty() ? null : parent.get(0);
+	}
+	
+	/**
+	 * Reads and locks (see lockParent), with a single query, the parents of a batch that are not part of the batch itself.
+	 */
+	private Map<Long, Product> findExistingParents(List<Product> products){
+		Set<Product> batch = Collections.newSetFromMap(new IdentityHashMap<Product, Boolean>());
+		batch.addAll(products);
+		Set<Long> ids = new HashSet<Long>();
+		for(Product p : products){
+			if(p.getParent() != null && !batch.contains(p.getParent())){
+				ids.add(p.getParent().getId());
+			}
+		}
+		Map<Long, Product> parents = new HashMap<Long, Product>();
+		if(!ids.isEmpty()){
+			for(Product parent : em.createQuery("select p from Product p where p.id in :ids", Product.class).setParameter("ids", ids)
+					.setLockMode(LockModeType.PESSIMISTIC_WRITE).getResultList()){
+				parents.put(parent.getId(), parent);
+			}
+		}
+		return parents;
+	}
+	
+	/**
+	 * Sets the hierarchy path and depth of a Product according to its parent.
+	 */
+	private void placeUnder(Product p, Product parent){
+		p.setPath(parent == null ? Product.ROOT_PATH : parent.getSubtreePath());
+		p.setDepth(parent == null ? 0 : parent.getDepth() + 1);
+	}
+	
+	/**
+	 * Orders a batch so that every Product comes after its parent, when the parent is part of the same batch.
+	 */
+	private List<Product> parentsFirst(List<Product> products){
+		Set<Product> batch = Collections.newSetFromMap(new IdentityHashMap<Product, Boolean>());
+		batch.addAll(products);
+		Map<Product, Integer> depth = new IdentityHashMap<Product, Integer>();
+		for(Product p : products){
+			int d = 0;
+			for(Product parent = p.getParent(); parent != null && batch.contains(parent); parent = parent.getParent()){
+				d++;
+			}
+			depth.put(p, d);
+		}
+		List<Product> ordered = new ArrayList<Product>(products);
+		ordered.sort(Comparator.comparing(depth::get));
+		return ordered;
+	}
+	
+	/**
+	 * Reads the relations of a chunk of scrolled Products, hands them to the consumer and drops them from the session.
+	 */
+	private void emit(Session session, List<Product> chunk, ProductFetchPlan plan, Consumer<Product> consumer){
+		fetchRelations(chunk, plan);
+		chunk.forEach(consumer);
+		chunk.clear();
+		session.clear();
+	}
+	
+	/**
+	 * Initializes the relations in the fetch plan for already managed Products, with a single query per relation.
+	 */
+	private void fetchRelations(List<Product> products, ProductFetchPlan plan){
+		if(plan.includesChildren()){ fetchRelation(products, Product.CHILDREN_GRAPH); }
+		if(plan.includesImages()){ fetchRelation(products, Product.IMAGES_GRAPH); }
+	}
+	
+	private void fetchRelation(List<Product> products, String graph){
+		if(products.isEmpty()){
+			return;
+		}
+		//the managed instances get their collections initialized, results themselves are not needed
+		em.createQuery("select p from Product p where p in :products", Product.class)
+				.setParameter("products", products)
+				.setHint(FETCH_GRAPH_HINT, em.getEntityGraph(graph))
+				.getResultList();
+	}
+	
+	private Map<String, Object> fetchGraph(String graph){
+		return Collections.<String, Object>singletonMap(FETCH_GRAPH_HINT, em.getEntityGraph(graph));
+	}
+}
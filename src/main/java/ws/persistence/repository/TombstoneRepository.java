@@ -0,0 +1,38 @@
+package ws.persistence.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import ws.persistence.model.Tombstone;
+
+/**
+ * JPA Repository interface for the Tombstones left by deleted Products and Images.
+ *
+ */
+public interface TombstoneRepository extends CrudRepository<Tombstone,Tombstone.Key> {
+	/**
+	 * Retrieves the Tombstones written after a point in time, up to another one, in deletion order.
+	 * @param since exclusive lower bound of the deletion time (epoch milliseconds)
+	 * @param upTo inclusive upper bound of the deletion time (epoch milliseconds)
+	 * @param page maximum number of Tombstones to be read
+	 * @return List<Tombstone> at most page size Tombstones
+	 */
+	@Query("select t from Tombstone t where t.deletedAt > :since and t.deletedAt <= :upTo order by t.deletedAt, t.entity, t.entityId")
+	public List<Tombstone> findDeleted(@Param("since") long since, @Param("upTo") long upTo, Pageable page);
+	
+	/**
+	 * Purges the Tombstones written before a point in time with a single statement.
+	 * @param before exclusive upper bound of the deletion time (epoch milliseconds)
+	 * @return int number of deleted rows
+	 */
+	@Modifying
+	@Transactional
+	@Query("delete from Tombstone t where t.deletedAt < :before")
+	public int deleteOlderThan(@Param("before") long before);
+}
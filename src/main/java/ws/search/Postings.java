@@ -0,0 +1,86 @@
+package ws.search;
+
+import java.util.Arrays;
+
+/**
+ * Append-only postings list of a term: ascending document numbers and term frequencies,
+ * stored as variable length integers with document numbers delta encoded (usually 2 bytes per posting).
+ */
+final class Postings {
+	interface Visitor {
+		void visit(int doc, int frequency);
+	}
+	
+	private byte[] bytes = new byte[4];
+	
+	private int length;
+	
+	private int lastDoc = -1;
+	
+	private int count;
+	
+	/**
+	 * @param doc document number, greater than any previously added
+	 * @param frequency occurrences of the term in the document
+	 */
+	void add(int doc, int frequency){
+		write(doc - lastDoc);
+		write(frequency);
+		lastDoc = doc;
+		count++;
+	}
+	
+	void forEach(Visitor visitor){
+		int doc = -1;
+		int position = 0;
+		while(position < length){
+			int delta = 0;
+			for(int shift = 0; ; shift += 7){
+				byte b = bytes[position++];
+				delta |= (b & 0x7F) << shift;
+				if(b >= 0){
+					break;
+				}
+			}
+			int frequency = 0;
+			for(int shift = 0; ; shift += 7){
+				byte b = bytes[position++];
+				frequency |= (b & 0x7F) << shift;
+				if(b >= 0){
+					break;
+				}
+			}
+			doc += delta;
+			visitor.visit(doc, frequency);
+		}
+	}
+	
+	/**
+	 * @return int number of postings, i.e. document frequency of the term
+	 */
+	int count(){
+		return count;
+	}
+	
+	int sizeInBytes(){
+		return bytes.length;
+	}
+	
+	/**
+	 * Releases the unused capacity of the underlying array.
+	 */
+	void trim(){
+		bytes = Arrays.copyOf(bytes, length);
+	}
+	
+	private void write(int value){
+		if(length + 5 > bytes.length){
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+		}
+		while((value & ~0x7F) != 0){
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte) value;
+	}
+}
@@ -0,0 +1,300 @@
+package ws.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import ws.event.ProductChangeEvent;
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+import ws.persistence.model.Product;
+import ws.persistence.repository.ProductFetchPlan;
+import ws.persistence.repository.ProductRepository;
+
+/**
+ * <pre>
+ * Prefix suggestions over Product names, case and accent insensitive, in name order.
+ * Names live in parallel arrays sorted by folded name (binary searched for the prefix range), 
+ * written Products go to a small sorted delta and replaced or deleted ones are masked by id, 
+ * until the delta is merged back into the arrays.
+ * Built from the repository at startup and kept up to date by ProductChangeEvents.
+ * </pre>
+ */
+@Component
+public class ProductNameSuggester implements MetricsSource {
+	private static final Logger log = LoggerFactory.getLogger(ProductNameSuggester.class);
+	
+	/**
+	 * Minimum number of pending changes (delta entries and masked ids) that triggers a merge.
+	 */
+	private static final int MIN_MERGE_SIZE = 1024;
+	
+	@Autowired
+	ProductRepository productRepo;
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private String[] keys = new String[0];
+	
+	private long[] ids = new long[0];
+	
+	private String[] names = new String[0];
+	
+	/**
+	 * Products written since the last merge, by folded name and id.
+	 */
+	private final TreeMap<Key, String> delta = new TreeMap<Key, String>();
+	
+	private final Map<Long, Key> deltaKeys = new HashMap<Long, Key>();
+	
+	/**
+	 * Ids whose entry in the arrays is no longer current.
+	 */
+	private final Set<Long> masked = new HashSet<Long>();
+	
+	@EventListener(ContextRefreshedEvent.class)
+	public void build(){
+		lock.writeLock().lock();
+		try {
+			productRepo.scrollAll(ProductFetchPlan.NONE, this::put);
+			merge();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Name suggestions built with " + ids.length + " products, " + estimateBytes() + " bytes");
+	}
+	
+	@EventListener
+	public void onProductChange(ProductChangeEvent event){
+		lock.writeLock().lock();
+		try {
+			if(event.getType() == ProductChangeEvent.Type.SAVED){
+				for(Product product : event.getProducts()){
+					remove(product.getId());
+					put(product);
+				}
+			} else {
+				for(Long id : event.getIds()){
+					remove(id);
+				}
+			}
+			if(delta.size() + masked.size() > Math.max(MIN_MERGE_SIZE, ids.length / 8)){
+				merge();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param prefix start of the Product name
+	 * @return boolean if the prefix has at least one character once folded
+	 */
+	public static boolean isValidPrefix(String prefix){
+		return prefix != null && !Tokenizer.fold(prefix).trim().isEmpty();
+	}
+	
+	/**
+	 * Suggests Products whose name starts with the given prefix.
+	 * @param prefix start of the Product name, leading spaces ignored
+	 * @param limit maximum number of suggestions
+	 * @return List<Suggestion> suggestions in name order
+	 */
+	public List<Suggestion> suggest(String prefix, int limit){
+		String folded = Tokenizer.fold(prefix).replaceFirst("^\\s+", "");
+		List<Suggestion> suggestions = new ArrayList<Suggestion>(limit);
+		lock.readLock().lock();
+		try {
+			int i = lowerBound(folded);
+			Iterator<Map.Entry<Key, String>> pending = delta.tailMap(new Key(folded, Long.MIN_VALUE)).entrySet().iterator();
+			Map.Entry<Key, String> next = nextMatch(pending, folded);
+			while(suggestions.size() < limit){
+				while(i < keys.length && keys[i].startsWith(folded) && masked.contains(ids[i])){
+					i++;
+				}
+				boolean inArrays = i < keys.length && keys[i].startsWith(folded);
+				if(!inArrays && next == null){
+					break;
+				}
+				if(next == null || (inArrays && next.getKey().compareTo(keys[i], ids[i]) > 0)){
+					suggestions.add(new Suggestion(ids[i], names[i]));
+					i++;
+				} else {
+					suggestions.add(new Suggestion(next.getKey().id, next.getValue()));
+					next = nextMatch(pending, folded);
+				}
+			}
+			return suggestions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return long estimated heap size of the suggestion structures, in bytes
+	 */
+	public long estimateBytes(){
+		lock.readLock().lock();
+		try {
+			//array headers and references, plus a long per id
+			long bytes = 3 * 16 + (long) ids.length * (4 + 4 + 8);
+			for(int i = 0; i < keys.length; i++){
+				bytes += stringBytes(keys[i]);
+				if(names[i] != keys[i]){
+					bytes += stringBytes(names[i]);
+				}
+			}
+			//tree and hash entries, boxed ids and keys of the pending changes
+			for(Map.Entry<Key, String> entry : delta.entrySet()){
+				bytes += 40 + 32 + 24 + stringBytes(entry.getKey().key) + stringBytes(entry.getValue());
+			}
+			bytes += (long) masked.size() * (32 + 16);
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_suggest_entries", "gauge", "Product names in the suggestion structures by location");
+		lock.readLock().lock();
+		try {
+			writer.sample("ws_suggest_entries", ids.length, "location", "sorted");
+			writer.sample("ws_suggest_entries", delta.size(), "location", "delta");
+			writer.sample("ws_suggest_entries", masked.size(), "location", "masked");
+		} finally {
+			lock.readLock().unlock();
+		}
+		writer.family("ws_suggest_bytes", "gauge", "Estimated heap size of the suggestion structures");
+		writer.sample("ws_suggest_bytes", estimateBytes());
+	}
+	
+	private void put(Product product){
+		if(product.getName() == null){
+			return;
+		}
+		Key key = new Key(Tokenizer.fold(product.getName()), product.getId());
+		delta.put(key, product.getName());
+		deltaKeys.put(product.getId(), key);
+	}
+	
+	private void remove(Long id){
+		Key key = deltaKeys.remove(id);
+		if(key != null){
+			delta.remove(key);
+		}
+		masked.add(id);
+	}
+	
+	/**
+	 * Rewrites the arrays with the current entries: unmasked array entries merged with the delta, both already sorted.
+	 */
+	private void merge(){
+		int size = 0;
+		for(long id : ids){
+			if(!masked.contains(id)){
+				size++;
+			}
+		}
+		size += delta.size();
+		String[] mergedKeys = new String[size];
+		long[] mergedIds = new long[size];
+		String[] mergedNames = new String[size];
+		Iterator<Map.Entry<Key, String>> pending = delta.entrySet().iterator();
+		Map.Entry<Key, String> next = pending.hasNext() ? pending.next() : null;
+		int i = 0;
+		for(int m = 0; m < size; m++){
+			while(i < ids.length && masked.contains(ids[i])){
+				i++;
+			}
+			if(next == null || (i < ids.length && next.getKey().compareTo(keys[i], ids[i]) > 0)){
+				mergedKeys[m] = keys[i];
+				mergedIds[m] = ids[i];
+				mergedNames[m] = names[i];
+				i++;
+			} else {
+				mergedNames[m] = next.getValue();
+				//names already in lower case share a single String
+				mergedKeys[m] = next.getKey().key.equals(next.getValue()) ? next.getValue() : next.getKey().key;
+				mergedIds[m] = next.getKey().id;
+				next = pending.hasNext() ? pending.next() : null;
+			}
+		}
+		keys = mergedKeys;
+		ids = mergedIds;
+		names = mergedNames;
+		delta.clear();
+		deltaKeys.clear();
+		masked.clear();
+	}
+	
+	/**
+	 * @return int position of the first array entry not lower than the prefix
+	 */
+	private int lowerBound(String prefix){
+		int index = Arrays.binarySearch(keys, prefix);
+		if(index < 0){
+			return -index - 1;
+		}
+		//equal keys may precede the one found
+		while(index > 0 && keys[index - 1].equals(prefix)){
+			index--;
+		}
+		return index;
+	}
+	
+	private static Map.Entry<Key, String> nextMatch(Iterator<Map.Entry<Key, String>> pending, String prefix){
+		if(pending.hasNext()){
+			Map.Entry<Key, String> entry = pending.next();
+			if(entry.getKey().key.startsWith(prefix)){
+				return entry;
+			}
+		}
+		return null;
+	}
+	
+	private static long stringBytes(String value){
+		//String header and fields, char array header and 2 bytes per char, 8 byte aligned
+		return 24 + ((16 + 2L * value.length() + 7) & ~7L);
+	}
+	
+	/**
+	 * Delta key: folded name, then id for Products with the same name.
+	 */
+	private static final class Key implements Comparable<Key> {
+		private final String key;
+		
+		private final long id;
+		
+		private Key(String key, long id) {
+			this.key = key;
+			this.id = id;
+		}
+		
+		private int compareTo(String otherKey, long otherId){
+			int compared = key.compareTo(otherKey);
+			return compared != 0 ? compared : Long.compare(id, otherId);
+		}
+
+		@Override
+		public int compareTo(Key other) {
+			return compareTo(other.key, other.id);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package ws.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import ws.event.ProductChangeEvent;
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+import ws.persistence.model.Product;
+import ws.persistence.repository.ProductFetchPlan;
+import ws.persistence.repository.ProductRepository;
+
+/**
+ * <pre>
+ * In-memory inverted index over Product name and description, ranked with BM25 (name matches weigh twice as much).
+ * Built from the repository at startup and kept up to date by ProductChangeEvents.
+ * Every indexed Product gets a document number; postings lists hold document numbers, so updates and deletions
+ * only flag the previous document as deleted, and the index is compacted once half of its documents are deleted.
+ * A search scores only the documents in the postings lists of its terms (ScoreMap) and keeps the best ones in a heap bounded by its limit.
+ * </pre>
+ */
+@Component
+public class ProductSearchIndex implements MetricsSource {
+	private static final Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+	
+	private static final double K1 = 1.2;
+	
+	private static final double B = 0.75;
+	
+	private static final double NAME_WEIGHT = 2.0;
+	
+	@Autowired
+	ProductRepository productRepo;
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private final Field name = new Field();
+	
+	private final Field description = new Field();
+	
+	private final Map<Long, Integer> docsByProduct = new HashMap<Long, Integer>();
+	
+	private long[] productIds = new long[1024];
+	
+	private String[] names = new String[1024];
+	
+	private final BitSet deleted = new BitSet();
+	
+	private int docs;
+	
+	@EventListener(ContextRefreshedEvent.class)
+	public void build(){
+		long started = System.currentTimeMillis();
+		lock.writeLock().lock();
+		try {
+			productRepo.scrollAll(ProductFetchPlan.NONE, this::add);
+			name.trim();
+			description.trim();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Search index built with " + docs + " products in " + (System.currentTimeMillis() - started) + " ms");
+	}
+	
+	@EventListener
+	public void onProductChange(ProductChangeEvent event){
+		lock.writeLock().lock();
+		try {
+			if(event.getType() == ProductChangeEvent.Type.SAVED){
+				for(Product product : event.getProducts()){
+					remove(product.getId());
+					add(product);
+				}
+			} else {
+				for(Long id : event.getIds()){
+					remove(id);
+				}
+			}
+			if(deleted.cardinality() * 2 > docs){
+				compact();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param query free text
+	 * @return boolean if the query has at least one searchable term
+	 */
+	public static boolean hasTerms(String query){
+		return !Tokenizer.tokenize(query).isEmpty();
+	}
+	
+	/**
+	 * Searches Products matching any of the query terms.
+	 * @param query free text
+	 * @param limit maximum number of hits
+	 * @return List<SearchHit> hits by descending score
+	 */
+	public List<SearchHit> search(String query, int limit){
+		Set<String> terms = new LinkedHashSet<String>(Tokenizer.tokenize(query));
+		lock.readLock().lock();
+		try {
+			int live = docs - deleted.cardinality();
+			if(terms.isEmpty() || live == 0){
+				return Collections.emptyList();
+			}
+			int matches = 0;
+			for(String term : terms){
+				matches += name.count(term) + description.count(term);
+			}
+			ScoreMap scores = new ScoreMap(Math.min(matches, docs));
+			for(String term : terms){
+				name.score(term, NAME_WEIGHT, live, scores);
+				description.score(term, 1.0, live, scores);
+			}
+			if(scores.size() == 0 || limit <= 0){
+				return Collections.emptyList();
+			}
+			PriorityQueue<Integer> top = new PriorityQueue<Integer>(Math.min(limit, scores.size()), (a, b) -> Double.compare(scores.score(a), scores.score(b)));
+			for(int slot = 0; slot < scores.slots(); slot++){
+				int doc = scores.doc(slot);
+				if(doc < 0 || deleted.get(doc)){
+					continue;
+				}
+				if(top.size() < limit){
+					top.add(slot);
+				} else if(scores.score(slot) > scores.score(top.peek())){
+					top.poll();
+					top.add(slot);
+				}
+			}
+			List<SearchHit> hits = new ArrayList<SearchHit>(top.size());
+			while(!top.isEmpty()){
+				int slot = top.poll();
+				hits.add(new SearchHit(productIds[scores.doc(slot)], names[scores.doc(slot)], scores.score(slot)));
+			}
+			Collections.reverse(hits);
+			return hits;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void collect(MetricsWriter writer) {
+		lock.readLock().lock();
+		try {
+			writer.family("ws_search_index_documents", "gauge", "Documents in the search index by state");
+			writer.sample("ws_search_index_documents", docs - deleted.cardinality(), "state", "live");
+			writer.sample("ws_search_index_documents", deleted.cardinality(), "state", "deleted");
+			writer.family("ws_search_index_terms", "gauge", "Distinct terms in the search index by field");
+			writer.sample("ws_search_index_terms", name.terms.size(), "field", "name");
+			writer.sample("ws_search_index_terms", description.terms.size(), "field", "description");
+			writer.family("ws_search_index_postings_bytes", "gauge", "Size of the encoded postings lists by field");
+			writer.sample("ws_search_index_postings_bytes", name.sizeInBytes(), "field", "name");
+			writer.sample("ws_search_index_postings_bytes", description.sizeInBytes(), "field", "description");
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private void add(Product product){
+		int doc = docs++;
+		if(doc == productIds.length){
+			productIds = Arrays.copyOf(productIds, doc * 2);
+			names = Arrays.copyOf(names, doc * 2);
+		}
+		productIds[doc] = product.getId();
+		names[doc] = product.getName();
+		docsByProduct.put(product.getId(), doc);
+		name.add(doc, product.getName());
+		description.add(doc, product.getDescription());
+	}
+	
+	private void remove(Long id){
+		Integer doc = docsByProduct.remove(id);
+		if(doc != null){
+			deleted.set(doc);
+			names[doc] = null;
+			name.remove(doc);
+			description.remove(doc);
+		}
+	}
+	
+	/**
+	 * Renumbers the live documents and rewrites the postings lists without the deleted ones.
+	 */
+	private void compact(){
+		int[] renumbered = new int[docs];
+		int live = 0;
+		for(int doc = 0; doc < docs; doc++){
+			if(deleted.get(doc)){
+				renumbered[doc] = -1;
+			} else {
+				renumbered[doc] = live;
+				productIds[live] = productIds[doc];
+				names[live] = names[doc];
+				docsByProduct.put(productIds[live], live);
+				live++;
+			}
+		}
+		name.compact(renumbered, live);
+		description.compact(renumbered, live);
+		Arrays.fill(names, live, docs, null);
+		docs = live;
+		deleted.clear();
+	}
+	
+	/**
+	 * Postings lists and document lengths of one Product field.
+	 */
+	private static final class Field {
+		private final Map<String, Postings> terms = new HashMap<String, Postings>();
+		
+		private int[] lengths = new int[1024];
+		
+		private long totalLength;
+		
+		private int liveDocs;
+		
+		private void add(int doc, String text){
+			List<String> tokens = Tokenizer.tokenize(text);
+			Map<String, Integer> frequencies = new HashMap<String, Integer>();
+			for(String token : tokens){
+				frequencies.merge(token, 1, Integer::sum);
+			}
+			for(Map.Entry<String, Integer> frequency : frequencies.entrySet()){
+				terms.computeIfAbsent(frequency.getKey(), t -> new Postings()).add(doc, frequency.getValue());
+			}
+			if(doc >= lengths.length){
+				lengths = Arrays.copyOf(lengths, Math.max(lengths.length * 2, doc + 1));
+			}
+			lengths[doc] = tokens.size();
+			totalLength += tokens.size();
+			liveDocs++;
+		}
+		
+		private void remove(int doc){
+			totalLength -= lengths[doc];
+			liveDocs--;
+		}
+		
+		/**
+		 * @return int number of documents in the postings list of the term, deleted ones included
+		 */
+		private int count(String term){
+			Postings postings = terms.get(term);
+			return postings == null ? 0 : postings.count();
+		}
+		
+		private void score(String term, double weight, int documents, ScoreMap scores){
+			Postings postings = terms.get(term);
+			if(postings == null || liveDocs == 0){
+				return;
+			}
+			double averageLength = Math.max(1.0, (double) totalLength / liveDocs);
+			//deleted documents still in the postings slightly overestimate the document frequency until the next compaction
+			double idf = Math.log(1 + (documents - postings.count() + 0.5) / (postings.count() + 0.5));
+			postings.forEach((doc, frequency) -> 
+				scores.add(doc, weight * idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * lengths[doc] / averageLength))));
+		}
+		
+		private void compact(int[] renumbered, int live){
+			for(Iterator<Map.Entry<String, Postings>> i = terms.entrySet().iterator(); i.hasNext();){
+				Map.Entry<String, Postings> entry = i.next();
+				Postings compacted = new Postings();
+				entry.getValue().forEach((doc, frequency) -> {
+					if(renumbered[doc] >= 0){
+						compacted.add(renumbered[doc], frequency);
+					}
+				});
+				if(compacted.count() == 0){
+					i.remove();
+				} else {
+					compacted.trim();
+					entry.setValue(compacted);
+				}
+			}
+			int[] compactedLengths = new int[Math.max(1024, live)];
+			for(int doc = 0; doc < renumbered.length; doc++){
+				if(renumbered[doc] >= 0){
+					compactedLengths[renumbered[doc]] = lengths[doc];
+				}
+			}
+			lengths = compactedLengths;
+		}
+		
+		private void trim(){
+			for(Postings postings : terms.values()){
+				postings.trim();
+			}
+		}
+		
+		private long sizeInBytes(){
+			long size = 0;
+			for(Postings postings : terms.values()){
+				size += postings.sizeInBytes();
+			}
+			return size;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package ws.search;
+
+import java.util.Arrays;
+
+/**
+ * Scores of the documents matching a query, accumulated over the postings lists of its terms:
+ * an open addressing hash map (linear probing) from document number to score, sized by the postings rather than the index.
+ */
+final class ScoreMap {
+	private static final int FREE = -1;
+	
+	private int[] docs;
+	
+	private double[] scores;
+	
+	private int size;
+	
+	/**
+	 * @param expected number of documents expected to match, usually the total length of the postings lists
+	 */
+	ScoreMap(int expected){
+		//at most half full, so the probe sequences stay short
+		int wanted = Math.max(4, Math.min(expected, 1 << 28)) * 2;
+		allocate(Integer.highestOneBit(wanted * 2 - 1));
+	}
+	
+	/**
+	 * @param doc document number
+	 * @param score added to the score of the document
+	 */
+	void add(int doc, double score){
+		int mask = docs.length - 1;
+		int slot = hash(doc) & mask;
+		while(docs[slot] != FREE){
+			if(docs[slot] == doc){
+				scores[slot] += score;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		docs[slot] = doc;
+		scores[slot] = score;
+		if(++size * 2 > docs.length){
+			rehash();
+		}
+	}
+	
+	/**
+	 * @return int number of slots, the valid arguments of doc and score
+	 */
+	int slots(){
+		return docs.length;
+	}
+	
+	/**
+	 * @param slot between 0 and slots
+	 * @return int document number in the slot, negative if the slot is free
+	 */
+	int doc(int slot){
+		return docs[slot];
+	}
+	
+	/**
+	 * @param slot of a document
+	 * @return double score of the document in the slot
+	 */
+	double score(int slot){
+		return scores[slot];
+	}
+	
+	int size(){
+		return size;
+	}
+	
+	private void allocate(int capacity){
+		docs = new int[capacity];
+		Arrays.fill(docs, FREE);
+		scores = new double[capacity];
+	}
+	
+	private void rehash(){
+		int[] previousDocs = docs;
+		double[] previousScores = scores;
+		allocate(previousDocs.length * 2);
+		int mask = docs.length - 1;
+		for(int i = 0; i < previousDocs.length; i++){
+			if(previousDocs[i] != FREE){
+				int slot = hash(previousDocs[i]) & mask;
+				while(docs[slot] != FREE){
+					slot = (slot + 1) & mask;
+				}
+				docs[slot] = previousDocs[i];
+				scores[slot] = previousScores[i];
+			}
+		}
+	}
+	
+	/**
+	 * Spreads consecutive document numbers, which are common in postings lists, over the table.
+	 */
+	private static int hash(int doc){
+		int h = doc * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,32 @@
+package ws.search;
+
+/**
+ * Ranked search result: a Product reference and its relevance score.
+ */
+public class SearchHit {
+	private Long id;
+	
+	private String name;
+	
+	private double score;
+	
+	public SearchHit() {}
+	
+	SearchHit(Long id, String name, double score) {
+		this.id = id;
+		this.name = name;
+		this.score = score;
+	}
+	
+	public Long getId() {
+		return id;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public double getScore() {
+		return score;
+	}
+}
@@ -0,0 +1,25 @@
+package ws.search;
+
+/**
+ * Product name matching a suggestion prefix.
+ */
+public class Suggestion {
+	private Long id;
+	
+	private String name;
+	
+	public Suggestion() {}
+	
+	Suggestion(Long id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+	
+	public Long getId() {
+		return id;
+	}
+	
+	public String getName() {
+		return name;
+	}
+}
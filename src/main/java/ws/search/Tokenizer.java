@@ -0,0 +1,51 @@
+package ws.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into lower case, accent free terms made of letters and digits.
+ * The same folding is applied to names for prefix suggestions.
+ */
+final class Tokenizer {
+	private Tokenizer() {}
+	
+	/**
+	 * @return String lower case text without accents (combining marks)
+	 */
+	static String fold(String text){
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		StringBuilder folded = new StringBuilder(decomposed.length());
+		for(int i = 0; i < decomposed.length(); i++){
+			char c = decomposed.charAt(i);
+			if(Character.getType(c) != Character.NON_SPACING_MARK){
+				folded.append(c);
+			}
+		}
+		return folded.toString().toLowerCase(Locale.ROOT);
+	}
+	
+	static List<String> tokenize(String text){
+		List<String> terms = new ArrayList<String>();
+		if(text == null){
+			return terms;
+		}
+		String folded = fold(text);
+		StringBuilder term = new StringBuilder();
+		for(int i = 0; i < folded.length(); i++){
+			char c = folded.charAt(i);
+			if(Character.isLetterOrDigit(c)){
+				term.append(c);
+			} else if(term.length() > 0){
+				terms.add(term.toString());
+				term.setLength(0);
+			}
+		}
+		if(term.length() > 0){
+			terms.add(term.toString());
+		}
+		return terms;
+	}
+}
@@ -0,0 +1,174 @@
+package ws.snapshot;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import ws.metrics.MetricsSource;
+import ws.metrics.MetricsWriter;
+import ws.persistence.datasource.WriteBarrier;
+
+/**
+ * <pre>
+ * Persisted snapshot of the in-memory H2 catalog, so a restarted node comes up with its Products, Images, versions and tombstones
+ * instead of empty. Every ws.snapshot.interval-ms and on shutdown, the database is written with H2's SCRIPT command to a gzip
+ * compressed SQL file next to ws.snapshot.file, which then atomically replaces it. H2 reads committed rows table by table, so
+ * the write transactions are held by the WriteBarrier while the database is written and the tables are consistent with each other;
+ * reads are served meanwhile, writes resume once the file is written.
+ * At boot, once Hibernate has created the schema, the file is bulk loaded with RUNSCRIPT in place of it: the snapshot carries
+ * the schema of the version that wrote it, so it must be removed when the entities change. The search index and name suggestions
+ * are built from the restored tables as usual, before the server accepts requests; the read-through caches fill up as they are used.
+ * The time from JVM start to serving requests is logged and exposed, along with the restore and checkpoint times.
+ * When ws.snapshot.file is not set, nothing is restored nor written.
+ * </pre>
+ */
+@Component
+public class CatalogSnapshot implements MetricsSource {
+	private static final Logger log = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+	private final DataSource dataSource;
+
+	private final WriteBarrier writeBarrier;
+
+	private final Path file;
+
+	/**
+	 * Only for ordering: the schema is created by Hibernate before it is replaced by the snapshot, and dropped after the last checkpoint.
+	 */
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	private volatile long restoreMillis = -1;
+
+	private volatile long checkpointMillis = -1;
+
+	private volatile long checkpointBytes;
+
+	private volatile long startupMillis = -1;
+
+	private final LongAdder checkpoints = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	@Autowired
+	public CatalogSnapshot(DataSource dataSource, WriteBarrier writeBarrier, @Value("${ws.snapshot.file:}") String file) {
+		this.dataSource = dataSource;
+		this.writeBarrier = writeBarrier;
+		this.file = StringUtils.hasText(file) ? Paths.get(file).toAbsolutePath() : null;
+	}
+
+	@PostConstruct
+	void init() {
+		if(file != null && Files.exists(file)){
+			restore();
+		}
+	}
+
+	/**
+	 * Replaces the whole database with the snapshot.
+	 * @throws IllegalStateException if the snapshot cannot be loaded, in which case the database is left without schema
+	 */
+	void restore() {
+		long started = System.currentTimeMillis();
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+			statement.execute("RUNSCRIPT FROM " + literal(file) + " COMPRESSION GZIP");
+		} catch (SQLException e) {
+			throw new IllegalStateException("Catalog snapshot " + file + " cannot be restored, remove it to start empty", e);
+		}
+		restoreMillis = System.currentTimeMillis() - started;
+		log.info("Catalog snapshot restored from " + file + " (" + file.toFile().length() + " bytes) in " + restoreMillis + " ms");
+	}
+
+	/**
+	 * Writes the database to the snapshot file, replacing the previous snapshot only once completely written.
+	 */
+	@Scheduled(initialDelayString = "${ws.snapshot.interval-ms:300000}", fixedDelayString = "${ws.snapshot.interval-ms:300000}")
+	public synchronized void checkpoint() {
+		if(file == null){
+			return;
+		}
+		long started = System.currentTimeMillis();
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(file.getParent());
+			try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+				writeBarrier.block();
+				try {
+					statement.execute("SCRIPT TO " + literal(temporary) + " COMPRESSION GZIP");
+				} finally {
+					writeBarrier.unblock();
+				}
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (SQLException | IOException e) {
+			failures.increment();
+			log.warn("Catalog snapshot " + file + " cannot be written, the previous one is kept", e);
+			return;
+		}
+		checkpointMillis = System.currentTimeMillis() - started;
+		checkpointBytes = file.toFile().length();
+		checkpoints.increment();
+		log.debug("Catalog snapshot written to " + file + " (" + checkpointBytes + " bytes) in " + checkpointMillis + " ms");
+	}
+
+	@PreDestroy
+	void shutdown() {
+		checkpoint();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void onReady() {
+		startupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		log.info("Serving requests " + startupMillis + " ms after JVM start" + (restoreMillis < 0 ? "" : ", catalog snapshot restored in " + restoreMillis + " ms"));
+	}
+
+	@Override
+	public void collect(MetricsWriter writer) {
+		writer.family("ws_startup_seconds", "gauge", "Time from JVM start to serving requests");
+		writer.sample("ws_startup_seconds", startupMillis / 1000.0);
+		if(file == null){
+			return;
+		}
+		if(restoreMillis >= 0){
+			writer.family("ws_snapshot_restore_seconds", "gauge", "Time spent loading the catalog snapshot at boot");
+			writer.sample("ws_snapshot_restore_seconds", restoreMillis / 1000.0);
+		}
+		if(checkpointMillis >= 0){
+			writer.family("ws_snapshot_checkpoint_seconds", "gauge", "Time spent writing the latest catalog snapshot");
+			writer.sample("ws_snapshot_checkpoint_seconds", checkpointMillis / 1000.0);
+			writer.family("ws_snapshot_bytes", "gauge", "Size of the latest catalog snapshot written");
+			writer.sample("ws_snapshot_bytes", checkpointBytes);
+		}
+		writer.family("ws_snapshot_checkpoints_total", "counter", "Catalog snapshots written");
+		writer.sample("ws_snapshot_checkpoints_total", checkpoints.sum());
+		writer.family("ws_snapshot_failures_total", "counter", "Catalog snapshots that could not be written");
+		writer.sample("ws_snapshot_failures_total", failures.sum());
+	}
+
+	private static String literal(Path path) {
+		return "'" + path.toString().replace("'", "''") + "'";
+	}
+}
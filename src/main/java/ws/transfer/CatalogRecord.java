@@ -0,0 +1,117 @@
+package ws.transfer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+
+/**
+ * <pre>
+ * Line of a catalog export, read back by the import: a Product {"kind":"PRODUCT","id","name","description","parent"}
+ * or an Image {"kind":"IMAGE","id","type","product"}, references to other Products being their ids in the same export.
+ * </pre>
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CatalogRecord {
+	public enum Kind { PRODUCT, IMAGE }
+	
+	private Kind kind;
+	
+	private Long id;
+	
+	private String name;
+	
+	private String description;
+	
+	private Long parent;
+	
+	private ImageType type;
+	
+	private Long product;
+	
+	public CatalogRecord() {}
+	
+	/**
+	 * @param p Product projection holding its id, name, description and parent id
+	 * @return CatalogRecord of the Product
+	 */
+	public static CatalogRecord of(Product p){
+		CatalogRecord record = new CatalogRecord();
+		record.kind = Kind.PRODUCT;
+		record.id = p.getId();
+		record.name = p.getName();
+		record.description = p.getDescription();
+		record.parent = p.getParent() == null ? null : p.getParent().getId();
+		return record;
+	}
+	
+	/**
+	 * @param i Image projection holding its id, type and product id
+	 * @return CatalogRecord of the Image
+	 */
+	public static CatalogRecord of(Image i){
+		CatalogRecord record = new CatalogRecord();
+		record.kind = Kind.IMAGE;
+		record.id = i.getId();
+		record.type = i.getType();
+		record.product = i.getProduct() == null ? null : i.getProduct().getId();
+		return record;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public void setKind(Kind kind) {
+		this.kind = kind;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public Long getParent() {
+		return parent;
+	}
+
+	public void setParent(Long parent) {
+		this.parent = parent;
+	}
+
+	public ImageType getType() {
+		return type;
+	}
+
+	public void setType(ImageType type) {
+		this.type = type;
+	}
+
+	public Long getProduct() {
+		return product;
+	}
+
+	public void setProduct(Long product) {
+		this.product = product;
+	}
+}
@@ -0,0 +1,316 @@
+package ws.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ws.cache.CatalogCache;
+import ws.constants.ErrorMessage;
+import ws.event.ImageChangeEvent;
+import ws.event.ProductChangeEvent;
+import ws.persistence.enumerate.ImageStatus;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+import ws.persistence.repository.ImageField;
+import ws.persistence.repository.ImageRepository;
+import ws.persistence.repository.ProductField;
+import ws.persistence.repository.ProductRepository;
+import ws.validator.ImageValidator;
+import ws.validator.ProductValidator;
+
+/**
+ * <pre>
+ * Moves whole catalogs between services as newline delimited JSON, one {@link CatalogRecord} per line, in constant memory.
+ * The export scrolls the Products parents first and writes the Images of every chunk of Products right after it.
+ * The import parses the lines one at a time and inserts them in JDBC batches of ws.transfer.batch-size records, each batch in its
+ * own transaction. Ids are remapped: the ids in the lines are only references within the import, and the only state kept
+ * for the whole import is their translation to the generated ids (two longs per Product). Parents may come after their children:
+ * such Products are inserted without parent, and moved under it once the last line is read.
+ * Images are not referenced by other records, and come with status NONE, their content being uploaded afterwards.
+ * </pre>
+ */
+@Component
+public class CatalogTransfer {
+	private static final Set<ProductField> PRODUCT_FIELDS = EnumSet.of(ProductField.ID, ProductField.NAME, ProductField.DESCRIPTION, ProductField.PARENT);
+
+	private static final Set<ImageField> IMAGE_FIELDS = EnumSet.of(ImageField.ID, ImageField.TYPE, ImageField.PRODUCT);
+
+	@Autowired
+	ProductRepository productRepo;
+
+	@Autowired
+	ImageRepository imageRepo;
+
+	@Autowired
+	ProductValidator productValidator;
+
+	@Autowired
+	ImageValidator imageValidator;
+
+	@Autowired
+	CatalogCache catalogCache;
+
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Value("${ws.transfer.batch-size:1000}")
+	int batchSize;
+
+	/**
+	 * Writes ALL the Products and Images, every Product after its parent and before its Images.
+	 * @param output response body
+	 * @throws IOException if the body cannot be written
+	 */
+	public void export(OutputStream output) throws IOException {
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+		generator.setRootValueSeparator(new SerializedString("\n"));
+		try {
+			productRepo.scrollByDepth(PRODUCT_FIELDS, chunk -> {
+				List<Long> ids = new ArrayList<Long>(chunk.size());
+				try {
+					for(Product p : chunk){
+						objectMapper.writeValue(generator, CatalogRecord.of(p));
+						ids.add(p.getId());
+					}
+					for(Image i : imageRepo.findByProducts(ids, IMAGE_FIELDS)){
+						objectMapper.writeValue(generator, CatalogRecord.of(i));
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		generator.writeRaw('\n');
+		generator.flush();
+	}
+
+	/**
+	 * Reads records until the end of the input or the first invalid one, inserting them in batches.
+	 * @param input request body
+	 * @return ImportReport numbers of inserted Products and Images, with the error and its line if the import stopped early
+	 * @throws IOException if the body cannot be read
+	 */
+	public ImportReport importFrom(InputStream input) throws IOException {
+		Import batch = new Import();
+		JsonParser parser = objectMapper.getFactory().createParser(input);
+		long line = 1;
+		try {
+			while(parser.nextToken() != null){
+				line = parser.getTokenLocation().getLineNr();
+				String error = batch.add(objectMapper.readValue(parser, CatalogRecord.class));
+				if(error != null){
+					return batch.report(error, line);
+				}
+			}
+		} catch (JsonProcessingException e) {
+			return batch.report(ErrorMessage.INVALID_IMPORT_RECORD, e.getLocation() == null ? line : e.getLocation().getLineNr());
+		} finally {
+			parser.close();
+		}
+		batch.flushProducts();
+		batch.flushImages();
+		return batch.report(batch.resolveParents(), null);
+	}
+
+	/**
+	 * State of a running import: the pending batches and the id translations.
+	 */
+	private class Import {
+		private final LongMap ids = new LongMap();
+
+		private final List<Product> products = new ArrayList<Product>();
+
+		/**
+		 * Products of the pending batch by their id in the import, for references within the batch.
+		 */
+		private final Map<Long, Product> batchProducts = new HashMap<Long, Product>();
+
+		private final Map<Product, Long> importIds = new IdentityHashMap<Product, Long>();
+
+		/**
+		 * Import ids of the parents not imported yet, by the Product of the pending batch referencing them.
+		 */
+		private final Map<Product, Long> missingParents = new IdentityHashMap<Product, Long>();
+
+		private final List<Image> images = new ArrayList<Image>();
+
+		/**
+		 * Generated id and parent import id of the inserted Products whose parent was not known yet, in insertion order.
+		 */
+		private long[] orphans = new long[32];
+
+		private int orphanCount;
+
+		private long productCount;
+
+		private long imageCount;
+
+		/**
+		 * @return String error message if the record is invalid, null once it is added to its batch
+		 */
+		String add(CatalogRecord record){
+			if(record.getKind() == CatalogRecord.Kind.PRODUCT){
+				return addProduct(record);
+			}
+			if(record.getKind() == CatalogRecord.Kind.IMAGE){
+				return addImage(record);
+			}
+			return ErrorMessage.INVALID_IMPORT_RECORD;
+		}
+
+		private String addProduct(CatalogRecord record){
+			Long id = record.getId();
+			if(id == null || id == LongMap.MISSING){
+				return ErrorMessage.INVALID_IMPORT_RECORD;
+			}
+			if(ids.containsKey(id) || batchProducts.containsKey(id)){
+				return ErrorMessage.DUPLICATE_IMPORT_ID;
+			}
+			Product p = new Product(record.getName(), record.getDescription());
+			if(!productValidator.hasValidFields(p)){
+				return ErrorMessage.EMPTY_FIELDS;
+			}
+			Long parent = record.getParent();
+			if(parent != null){
+				if(parent.equals(id)){
+					return ErrorMessage.CYCLIC_PARENT_REFERENCE;
+				}
+				if(batchProducts.containsKey(parent)){
+					p.setParent(batchProducts.get(parent));
+				} else if(ids.containsKey(parent)){
+					Product existing = new Product();
+					existing.setId(ids.get(parent));
+					p.setParent(existing);
+				} else {
+					missingParents.put(p, parent);
+				}
+			}
+			products.add(p);
+			batchProducts.put(id, p);
+			importIds.put(p, id);
+			if(products.size() == batchSize){
+				flushProducts();
+			}
+			return null;
+		}
+
+		private String addImage(CatalogRecord record){
+			Image i = new Image(record.getType());
+			if(!imageValidator.hasValidFields(i) || record.getProduct() == null){
+				return ErrorMessage.INVALID_IMPORT_RECORD;
+			}
+			if(batchProducts.containsKey(record.getProduct())){
+				//the product gets its id
+				flushProducts();
+			}
+			long productId = ids.get(record.getProduct());
+			if(productId == LongMap.MISSING){
+				return ErrorMessage.UNKNOWN_PRODUCT;
+			}
+			Product product = new Product();
+			product.setId(productId);
+			i.setProduct(product);
+			i.setStatus(ImageStatus.NONE);
+			images.add(i);
+			if(images.size() == batchSize){
+				flushImages();
+			}
+			return null;
+		}
+
+		void flushProducts(){
+			if(products.isEmpty()){
+				return;
+			}
+			productRepo.insertAll(products);
+			for(Product p : products){
+				ids.put(importIds.get(p), p.getId());
+				Long missingParent = missingParents.get(p);
+				if(missingParent != null){
+					if(orphanCount + 2 > orphans.length){
+						orphans = Arrays.copyOf(orphans, orphans.length * 2);
+					}
+					orphans[orphanCount++] = p.getId();
+					orphans[orphanCount++] = missingParent;
+				}
+			}
+			productCount += products.size();
+			eventPublisher.publishEvent(ProductChangeEvent.created(this, new ArrayList<Product>(products)));
+			for(Product p : products){
+				catalogCache.evictProduct(p.getParent() == null ? null : p.getParent().getId());
+			}
+			products.clear();
+			batchProducts.clear();
+			importIds.clear();
+			missingParents.clear();
+		}
+
+		void flushImages(){
+			if(images.isEmpty()){
+				return;
+			}
+			imageRepo.insertAll(images);
+			imageCount += images.size();
+			List<Long> imageIds = new ArrayList<Long>(images.size());
+			for(Image i : images){
+				imageIds.add(i.getId());
+				catalogCache.evictProduct(i.getProduct().getId());
+			}
+			eventPublisher.publishEvent(new ImageChangeEvent(this, ImageChangeEvent.Type.CREATED, imageIds));
+			images.clear();
+		}
+
+		/**
+		 * Moves the Products imported before their parents under them, one at a time, each move rewriting its current subtree.
+		 * @return String error message of the first reference that cannot be resolved, null if all were
+		 */
+		String resolveParents(){
+			for(int i = 0; i < orphanCount; i += 2){
+				long parentId = ids.get(orphans[i + 1]);
+				if(parentId == LongMap.MISSING){
+					return ErrorMessage.UNKNOWN_PARENT_PRODUCT;
+				}
+				Product moved = productRepo.move(orphans[i], parentId);
+				if(moved == null){
+					return ErrorMessage.CYCLIC_PARENT_REFERENCE;
+				}
+				eventPublisher.publishEvent(ProductChangeEvent.saved(this, Collections.singletonList(moved)));
+			}
+			if(orphanCount > 0){
+				//moved subtrees are embedded in their new ancestors
+				catalogCache.evictAll();
+			}
+			return null;
+		}
+
+		ImportReport report(String error, Long line){
+			return new ImportReport(productCount, imageCount, error, error == null ? null : line);
+		}
+	}
+}
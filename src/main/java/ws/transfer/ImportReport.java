@@ -0,0 +1,43 @@
+package ws.transfer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of a catalog import, as reported to clients: the number of Products and Images inserted and, for a failed import,
+ * the error and the line of the offending record (absent when it concerns a parent reference resolved after the last line).
+ * Records are inserted in batches, each one committed on its own, so the counts of a failed import are already in the catalog.
+ * @see CatalogTransfer
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportReport {
+	private long products;
+	
+	private long images;
+	
+	private String error;
+	
+	private Long line;
+	
+	ImportReport(long products, long images, String error, Long line) {
+		this.products = products;
+		this.images = images;
+		this.error = error;
+		this.line = line;
+	}
+
+	public long getProducts() {
+		return products;
+	}
+
+	public long getImages() {
+		return images;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public Long getLine() {
+		return line;
+	}
+}
@@ -0,0 +1,77 @@
+package ws.transfer;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map of long keys to long values, holding the id translations of an import in two arrays
+ * instead of a boxed entry per Product.
+ */
+final class LongMap {
+	/**
+	 * Marks free slots, and is returned by get for absent keys; it cannot be used as a key.
+	 */
+	static final long MISSING = Long.MIN_VALUE;
+	
+	private long[] keys = newKeys(16);
+	
+	private long[] values = new long[16];
+	
+	private int size;
+	
+	long get(long key){
+		int slot = slot(keys, key);
+		return keys[slot] == key ? values[slot] : MISSING;
+	}
+	
+	boolean containsKey(long key){
+		return get(key) != MISSING;
+	}
+	
+	void put(long key, long value){
+		int slot = slot(keys, key);
+		values[slot] = value;
+		if(keys[slot] != key){
+			keys[slot] = key;
+			//kept at most half full, so probes stay short
+			if(++size * 2 > keys.length){
+				grow();
+			}
+		}
+	}
+	
+	int size(){
+		return size;
+	}
+	
+	private void grow(){
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = newKeys(oldKeys.length * 2);
+		values = new long[oldKeys.length * 2];
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != MISSING){
+				int slot = slot(keys, oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+	
+	/**
+	 * Linear probing from the mixed hash of the key: the slot holding the key, or the free slot where it belongs.
+	 */
+	private static int slot(long[] keys, long key){
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while(keys[slot] != key && keys[slot] != MISSING){
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private static long[] newKeys(int capacity){
+		long[] keys = new long[capacity];
+		Arrays.fill(keys, MISSING);
+		return keys;
+	}
+}
@@ -1,9 +1,15 @@
 package ws.validator;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import ws.persistence.model.Image;
+import ws.persistence.repository.ImageField;
 import ws.persistence.repository.ProductRepository;
 
 /**
@@ -27,11 +33,37 @@ public class ImageValidator {
 	}
 	
 	/**
-	 * Verifies if provided Image has a non-null and valid product reference (in database).
+	 * Verifies if the new values of a partial update keep the Image type and product non-null.
+	 * @param changes new values by field, fields absent from it being unchanged
+	 * @return boolean if valid
+	 */
+	public boolean hasValidChanges(Map<ImageField, Object> changes){
+		return !(changes.containsKey(ImageField.TYPE) && changes.get(ImageField.TYPE) == null)
+				&& !(changes.containsKey(ImageField.PRODUCT) && changes.get(ImageField.PRODUCT) == null);
+	}
+	
+	/**
+	 * Verifies if provided Image has a non-null and valid product reference (in database), without loading the Product.
 	 * @param image Image from whom product will be verified
 	 * @return boolean if valid
 	 */
 	public boolean hasValidProduct(Image image){
-		return image.getProduct() != null && image.getProduct().getId() != null && productRepo.findOne(image.getProduct().getId()) != null;
+		return image.getProduct() != null && image.getProduct().getId() != null && productRepo.exists(image.getProduct().getId());
+	}
+	
+	/**
+	 * Verifies if every Image in a batch has a non-null and valid product reference (in database), with a single query for the whole batch.
+	 * @param images batch from whom products will be verified
+	 * @return boolean if valid
+	 */
+	public boolean hasValidProducts(List<Image> images){
+		Set<Long> productIds = new HashSet<Long>();
+		for(Image image : images){
+			if(image.getProduct() == null || image.getProduct().getId() == null){
+				return false;
+			}
+			productIds.add(image.getProduct().getId());
+		}
+		return productIds.isEmpty() || productRepo.findExistingIds(productIds).size() == productIds.size();
 	}
 }
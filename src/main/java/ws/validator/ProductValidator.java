@@ -1,9 +1,17 @@
 package ws.validator;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import ws.persistence.model.Product;
+import ws.persistence.repository.ProductField;
 import ws.persistence.repository.ProductRepository;
 
 @Component
@@ -23,13 +31,90 @@ public class ProductValidator {
 	}
 	
 	/**
-	 * Verifies if provided Product has a non-null and valid parent reference (in database).
+	 * Verifies if the new values of a partial update keep the Product fields non-null/non-empty.
+	 * @param changes new values by field, fields absent from it being unchanged
+	 * @return boolean if valid
+	 */
+	public boolean hasValidChanges(Map<ProductField, Object> changes){
+		for(ProductField field : new ProductField[]{ProductField.NAME, ProductField.DESCRIPTION}){
+			if(changes.containsKey(field) && (changes.get(field) == null || ((String) changes.get(field)).isEmpty())){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Verifies if provided Product has a non-null and valid parent reference (in database), without loading the parent.
 	 * @param product Product from whom parent will be verified
 	 * @return boolean if valid
 	 */
 	public boolean hasValidParent(Product product){
 		//has no parent or provided parent exists in database
 		return product.getParent() == null || 
-				(product.getParent() != null && product.getParent().getId() != null && productRepo.findOne(product.getParent().getId()) != null);
+				(product.getParent() != null && product.getParent().getId() != null && productRepo.exists(product.getParent().getId()));
+	}
+	
+	/**
+	 * Verifies if the parent provided for an existing Product is neither the Product itself nor one of its descendants.
+	 * @param id of the Product being updated
+	 * @param product Product from whom parent will be verified
+	 * @return boolean if valid
+	 */
+	public boolean hasAcyclicParent(Long id, Product product){
+		if(product.getParent() == null || product.getParent().getId() == null){
+			return true;
+		}
+		if(id.equals(product.getParent().getId())){
+			return false;
+		}
+		//the new parent must not have the Product among its ancestors
+		String parentPath = productRepo.findPathById(product.getParent().getId());
+		return parentPath == null || !parentPath.contains("/" + id + "/");
+	}
+	
+	/**
+	 * Verifies if every parent reference in a batch of Products is either another Product of the batch or a valid Product in database.
+	 * Existing parents are verified with a single query for the whole batch.
+	 * @param products batch from whom parents will be verified
+	 * @return boolean if valid
+	 */
+	public boolean hasValidParents(List<Product> products){
+		Set<Product> batch = identitySet(products);
+		Set<Long> parentIds = new HashSet<Long>();
+		for(Product p : products){
+			if(p.getParent() != null && !batch.contains(p.getParent())){
+				if(p.getParent().getId() == null){
+					return false;
+				}
+				parentIds.add(p.getParent().getId());
+			}
+		}
+		return parentIds.isEmpty() || productRepo.findExistingIds(parentIds).size() == parentIds.size();
+	}
+	
+	/**
+	 * Verifies if parent references between Products of a batch do not form a cycle.
+	 * @param products batch from whom parents will be verified
+	 * @return boolean if valid
+	 */
+	public boolean hasAcyclicParents(List<Product> products){
+		Set<Product> batch = identitySet(products);
+		for(Product p : products){
+			//a chain inside the batch longer than the batch itself must revisit a Product
+			int steps = 0;
+			for(Product parent = p.getParent(); parent != null && batch.contains(parent); parent = parent.getParent()){
+				if(++steps > products.size()){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	private Set<Product> identitySet(List<Product> products){
+		Set<Product> set = Collections.newSetFromMap(new IdentityHashMap<Product, Boolean>());
+		set.addAll(products);
+		return set;
 	}
 }
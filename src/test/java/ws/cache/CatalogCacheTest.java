@@ -0,0 +1,72 @@
+package ws.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ws.persistence.enumerate.ImageStatus;
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.repository.ImageRepository;
+import ws.persistence.repository.ProductRepository;
+
+public class CatalogCacheTest {
+	private CatalogCache cache;
+
+	private final CountDownLatch loading = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		cache = new CatalogCache(100);
+		cache.enabled = true;
+		cache.imageRepo = mock(ImageRepository.class);
+		cache.productRepo = mock(ProductRepository.class);
+	}
+
+	@Test
+	public void testFindImage_loadOverlappingEvictionNotCached() throws Exception {
+		Image pending = image(ImageStatus.PENDING);
+		Image ready = image(ImageStatus.READY);
+		when(cache.imageRepo.findOne(1L)).then(invocation -> {
+			loading.countDown();
+			assertThat(release.await(5, TimeUnit.SECONDS)).isTrue();
+			return pending;
+		}).thenReturn(ready);
+
+		//the row is read before the change commits, and the change is evicted while the load is still in flight
+		CompletableFuture<Image> stale = CompletableFuture.supplyAsync(() -> cache.findImage(1L));
+		assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+		cache.evictImage(1L);
+		release.countDown();
+
+		assertThat(stale.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(ImageStatus.PENDING);
+		assertThat(cache.findImage(1L).getStatus()).isEqualTo(ImageStatus.READY);
+		assertThat(cache.findImage(1L).getStatus()).isEqualTo(ImageStatus.READY);
+	}
+
+	@Test
+	public void testFindImage_cachedWithoutEviction() {
+		when(cache.imageRepo.findOne(1L)).thenReturn(image(ImageStatus.PENDING), image(ImageStatus.READY));
+
+		assertThat(cache.findImage(1L).getStatus()).isEqualTo(ImageStatus.PENDING);
+		assertThat(cache.findImage(1L).getStatus()).isEqualTo(ImageStatus.PENDING);
+		cache.evictImage(1L);
+		assertThat(cache.findImage(1L).getStatus()).isEqualTo(ImageStatus.READY);
+	}
+
+	private static Image image(ImageStatus status) {
+		Image image = new Image(ImageType.PNG);
+		image.setId(1L);
+		image.setStatus(status);
+		return image;
+	}
+}
@@ -0,0 +1,95 @@
+package ws.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveLimitTest {
+	private static final long HIT = TimeUnit.MICROSECONDS.toNanos(10);
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Test
+	public void testTryAcquire_boundedByLimit() {
+		AdaptiveLimit limit = new AdaptiveLimit(2, 1, 10, 2.0, 0.5);
+		assertThat(limit.tryAcquire()).isTrue();
+		assertThat(limit.tryAcquire()).isTrue();
+		assertThat(limit.tryAcquire()).isFalse();
+		assertThat(limit.getInflight()).isEqualTo(2);
+
+		limit.release(FAST, false);
+		assertThat(limit.getInflight()).isEqualTo(1);
+		assertThat(limit.tryAcquire()).isTrue();
+	}
+
+	@Test
+	public void testRelease_increasedOncePerWindowWhileUsed() {
+		AdaptiveLimit limit = new AdaptiveLimit(2, 1, 10, 2.0, 0.5);
+		window(limit, 2, FAST, false);
+		assertThat(limit.getLimit()).isEqualTo(3);
+
+		//a single request at a time does not use half of the limit
+		AdaptiveLimit idle = new AdaptiveLimit(4, 1, 10, 2.0, 0.5);
+		window(idle, 1, FAST, false);
+		assertThat(idle.getLimit()).isEqualTo(4);
+	}
+
+	@Test
+	public void testRelease_decreasedOncePerWindowWhenSlowOrFailed() {
+		AdaptiveLimit limit = new AdaptiveLimit(8, 1, 10, 2.0, 0.5);
+		window(limit, 4, FAST, false);
+		assertThat(limit.getLimit()).isEqualTo(9);
+
+		window(limit, 5, SLOW, false);
+		assertThat(limit.getLimit()).isEqualTo(4);
+
+		window(limit, 2, FAST, true);
+		assertThat(limit.getLimit()).isEqualTo(2);
+		assertThat(limit.getLatencyMillis()).isGreaterThan(10);
+	}
+
+	@Test
+	public void testRelease_slowWithoutLoadKeepsLimit() {
+		AdaptiveLimit limit = new AdaptiveLimit(8, 1, 10, 2.0, 0.5);
+		window(limit, 1, FAST, false);
+		window(limit, 1, SLOW, false);
+		assertThat(limit.getLimit()).isEqualTo(8);
+	}
+
+	@Test
+	public void testRelease_steadyWithCacheHitsAndMisses() {
+		AdaptiveLimit limit = new AdaptiveLimit(20, 10, 100, 2.0, 0.9);
+		Random random = new Random(7);
+		int[] missRatios = {5, 30, 70};
+		for(int missRatio : missRatios){
+			for(int i = 0; i < 100 * AdaptiveLimit.WINDOW; i++){
+				//half of the limit kept in use, mixing cache hits in microseconds with misses in milliseconds
+				while(limit.getInflight() < limit.getLimit() / 2 + 1){
+					limit.tryAcquire();
+				}
+				limit.release(random.nextInt(100) < missRatio ? FAST : HIT, false);
+			}
+			assertThat(limit.getLimit()).as("miss ratio " + missRatio).isGreaterThanOrEqualTo(20);
+		}
+	}
+
+	/**
+	 * Completes one window of requests with the given number running.
+	 */
+	private static void window(AdaptiveLimit limit, int running, long latencyNanos, boolean oneFailed) {
+		while(limit.getInflight() < running){
+			assertThat(limit.tryAcquire()).isTrue();
+		}
+		for(int i = 0; i < AdaptiveLimit.WINDOW; i++){
+			limit.release(latencyNanos, oneFailed && i == 0);
+			if(i < AdaptiveLimit.WINDOW - 1){
+				limit.tryAcquire();
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package ws.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import ws.constants.ErrorMessage;
+
+/**
+ * Asserts that requests over the concurrency limit of their budget are shed, without affecting the other budget.
+ * The running requests are simulated by holding the slots of the budget.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.url=jdbc:h2:mem:limit;DB_CLOSE_ON_EXIT=FALSE",
+		"ws.limit.point.initial-limit=1", "ws.limit.point.min-limit=1", "ws.limit.point.max-limit=1",
+		"ws.limit.bulk.initial-limit=1", "ws.limit.bulk.min-limit=1", "ws.limit.bulk.max-limit=1" })
+public class ConcurrencyLimitFilterTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private ConcurrencyLimitFilter filter;
+
+	@Test
+	public void testBulkReadShedWith429() throws InterruptedException {
+		assertThat(holdSlot(filter.bulk)).isTrue();
+		try {
+			ResponseEntity<String> response = restTemplate.getForEntity("/product/all", String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+			assertThat(response.getHeaders().getFirst("Retry-After")).isEqualTo("1");
+			assertThat(response.getBody()).isEqualTo(ErrorMessage.TOO_MANY_BULK_REQUESTS);
+
+			//point reads have their own budget
+			assertThat(restTemplate.getForEntity("/product/1", String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+			assertThat(restTemplate.getForObject("/metrics", String.class)).contains("ws_concurrency_rejected_total{budget=\"bulk\"} 1");
+		} finally {
+			filter.bulk.limit.release(0, false);
+		}
+		assertThat(restTemplate.getForEntity("/product/all", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	public void testPointReadShedWith503() throws InterruptedException {
+		assertThat(holdSlot(filter.point)).isTrue();
+		try {
+			ResponseEntity<String> response = restTemplate.getForEntity("/product/image/1", String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+			assertThat(response.getHeaders().getFirst("Retry-After")).isEqualTo("1");
+			assertThat(response.getBody()).isEqualTo(ErrorMessage.SERVICE_UNAVAILABLE);
+		} finally {
+			filter.point.limit.release(0, false);
+		}
+		assertThat(restTemplate.getForEntity("/product/image/1", String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	/**
+	 * Slots are released once the previous responses are completely written, which may be after the client read them.
+	 */
+	private boolean holdSlot(ConcurrencyLimitFilter.Budget budget) throws InterruptedException {
+		for(int attempt = 0; attempt < 50 && budget.limit.getInflight() > 0; attempt++){
+			Thread.sleep(100);
+		}
+		return budget.limit.tryAcquire();
+	}
+}
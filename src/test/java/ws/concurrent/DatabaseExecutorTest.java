@@ -0,0 +1,177 @@
+package ws.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import ws.metrics.PersistenceCounters;
+
+public class DatabaseExecutorTest {
+	private DatabaseExecutor executor;
+	
+	private final CountDownLatch release = new CountDownLatch(1);
+	
+	private JdbcTemplate jdbc;
+	
+	@Before
+	public void setUp() {
+		//one thread and one queued request
+		executor = new DatabaseExecutor(1, 1);
+		executor.async = true;
+		executor.timeoutMillis = 1000;
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:executor;DB_CLOSE_DELAY=-1");
+		jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("create table product (id bigint primary key)");
+	}
+	
+	@After
+	public void tearDown() {
+		release.countDown();
+		executor.shutdown();
+		jdbc.execute("drop all objects");
+	}
+	
+	@Test
+	public void testSubmit_rejectedWhenSaturated() {
+		executor.submit(suspended(), this::blocked);
+		executor.submit(suspended(), this::blocked);
+		AsyncResponse rejected = suspended();
+		executor.submit(rejected, this::blocked);
+		
+		assertThat(resumedWith(rejected).getStatus()).isEqualTo(503);
+	}
+	
+	@Test
+	public void testSubmit_timeout() {
+		AsyncResponse response = suspended();
+		executor.submit(response, this::blocked);
+		
+		ArgumentCaptor<TimeoutHandler> handler = ArgumentCaptor.forClass(TimeoutHandler.class);
+		verify(response).setTimeoutHandler(handler.capture());
+		handler.getValue().handleTimeout(response);
+		assertThat(resumedWith(response).getStatus()).isEqualTo(503);
+	}
+	
+	@Test
+	public void testSubmitWrite_timedOutWhileQueuedNotWritten() {
+		//room for the next work behind the write
+		executor.shutdown();
+		executor = new DatabaseExecutor(1, 2);
+		executor.async = true;
+		executor.timeoutMillis = 1000;
+		executor.submit(suspended(), this::blocked);
+		AsyncResponse write = suspended();
+		executor.submitWrite(write, this::insert);
+		
+		ArgumentCaptor<TimeoutHandler> handler = ArgumentCaptor.forClass(TimeoutHandler.class);
+		verify(write).setTimeoutHandler(handler.capture());
+		handler.getValue().handleTimeout(write);
+		assertThat(resumedWith(write).getStatus()).isEqualTo(503);
+		
+		//the queue is run in order: once the next work is done, the write was skipped
+		AsyncResponse next = suspended();
+		executor.submit(next, () -> Response.ok().build());
+		release.countDown();
+		assertThat(resumedWith(next).getStatus()).isEqualTo(200);
+		verify(write, times(1)).resume(any(Object.class));
+		assertThat(jdbc.queryForObject("select count(*) from product", Long.class)).isEqualTo(0);
+	}
+	
+	@Test
+	public void testSubmitWrite_runningNotTimedOut() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		AsyncResponse write = suspended();
+		executor.submitWrite(write, () -> {
+			started.countDown();
+			blocked();
+			return insert();
+		});
+		assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+		
+		ArgumentCaptor<TimeoutHandler> handler = ArgumentCaptor.forClass(TimeoutHandler.class);
+		verify(write).setTimeoutHandler(handler.capture());
+		handler.getValue().handleTimeout(write);
+		//the timeout is extended instead
+		verify(write, times(2)).setTimeout(1000, TimeUnit.MILLISECONDS);
+		verify(write, never()).resume(any(Object.class));
+		
+		release.countDown();
+		assertThat(resumedWith(write).getStatus()).isEqualTo(201);
+		assertThat(jdbc.queryForObject("select count(*) from product", Long.class)).isEqualTo(1);
+	}
+	
+	@Test
+	public void testSubmit_exceptionResumesRequest() {
+		AsyncResponse response = suspended();
+		IllegalStateException failure = new IllegalStateException();
+		executor.submit(response, () -> { throw failure; });
+		
+		verify(response, timeout(1000)).resume(failure);
+	}
+	
+	@Test
+	public void testSubmit_countersHandedOverToExecutorThread() throws InterruptedException {
+		PersistenceCounters counters = PersistenceCounters.start();
+		PersistenceCounters[] seen = new PersistenceCounters[2];
+		CountDownLatch done = new CountDownLatch(2);
+		executor.submit(suspended(), () -> {
+			seen[0] = PersistenceCounters.current();
+			done.countDown();
+			return Response.ok().build();
+		});
+		//the request thread does not count once the request is handed over
+		assertThat(PersistenceCounters.current()).isNull();
+		
+		PersistenceCounters.start();
+		executor.submit(suspended(), () -> {
+			seen[1] = PersistenceCounters.current();
+			done.countDown();
+			return Response.ok().build();
+		});
+		assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(seen[0]).isSameAs(counters);
+		assertThat(seen[1]).isNotNull().isNotSameAs(counters);
+	}
+	
+	private AsyncResponse suspended() {
+		AsyncResponse response = mock(AsyncResponse.class);
+		when(response.isSuspended()).thenReturn(true);
+		return response;
+	}
+	
+	private Response blocked() throws InterruptedException {
+		release.await();
+		return Response.ok().build();
+	}
+	
+	private Response insert() {
+		jdbc.update("insert into product values (1)");
+		return Response.status(201).build();
+	}
+	
+	private Response resumedWith(AsyncResponse response) {
+		ArgumentCaptor<Object> resumed = ArgumentCaptor.forClass(Object.class);
+		verify(response, timeout(1000)).resume(resumed.capture());
+		return (Response) resumed.getValue();
+	}
+}
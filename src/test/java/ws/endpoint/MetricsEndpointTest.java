@@ -0,0 +1,48 @@
+package ws.endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import ws.persistence.model.Product;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+public class MetricsEndpointTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	@Test
+	public void testGetMetrics_resourceMethods() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		Product product = restTemplate.postForEntity("/product", new HttpEntity<Product>(new Product("Camaro", "Vintage muscle car"), headers), Product.class).getBody();
+		restTemplate.getForEntity("/product/" + String.valueOf(product.getId()), String.class);
+		restTemplate.getForEntity("/product/" + String.valueOf(-1L), String.class);
+		
+		ResponseEntity<String> response = restTemplate.getForEntity("/metrics", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType().toString()).startsWith("text/plain");
+		assertThat(response.getBody())
+			.contains("ws_request_duration_seconds{method=\"getProduct\",quantile=\"0.99\"}")
+			.contains("ws_responses_total{method=\"getProduct\",status=\"200\"}")
+			.contains("ws_responses_total{method=\"getProduct\",status=\"404\"}")
+			.contains("ws_cache_requests_total{cache=\"products\",result=\"miss\"}")
+			.contains("ws_sql_statements_total{method=\"createProduct\"}")
+			.doesNotContain("ws_sql_statements_total{method=\"createProduct\"} 0\n")
+			.contains("ws_entity_loads_total{method=\"getProduct\"}")
+			.doesNotContain("ws_entity_loads_total{method=\"getProduct\"} 0\n");
+	}
+}
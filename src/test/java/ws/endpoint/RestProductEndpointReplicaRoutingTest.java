@@ -0,0 +1,100 @@
+package ws.endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import ws.persistence.datasource.ReadYourWritesFilter;
+import ws.persistence.datasource.ReplicaRoutingDataSource;
+import ws.persistence.model.Product;
+
+/**
+ * Asserts that, with the replicas profile and the read-through cache disabled, writes go to the primary pool and reads to the replicas in turn,
+ * except for the reads of a client that has just written.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("replicas")
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.url=jdbc:h2:mem:replicas;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+		"ws.cache.enabled=false",
+		"ws.datasource.sticky-ms=60000" })
+public class RestProductEndpointReplicaRoutingTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private ReplicaRoutingDataSource routingDataSource;
+
+	@Test
+	public void testWritesToPrimaryAndReadsFromReplicas() {
+		long primary = routingDataSource.getRoutedCount(ReplicaRoutingDataSource.PRIMARY);
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		assertThat(routingDataSource.getRoutedCount(ReplicaRoutingDataSource.PRIMARY)).isGreaterThan(primary);
+
+		primary = routingDataSource.getRoutedCount(ReplicaRoutingDataSource.PRIMARY);
+		long replica0 = routingDataSource.getRoutedCount("replica-0");
+		long replica1 = routingDataSource.getRoutedCount("replica-1");
+		for(int i = 0; i < 4; i++){
+			ResponseEntity<Product> response = restTemplate.getForEntity("/product/" + String.valueOf(product.getId()), Product.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+			assertThat(response.getBody().getName()).isEqualTo("Camaro");
+		}
+		assertThat(routingDataSource.getRoutedCount(ReplicaRoutingDataSource.PRIMARY)).isEqualTo(primary);
+		assertThat(routingDataSource.getRoutedCount("replica-0") - replica0).isGreaterThan(0)
+				.isEqualTo(routingDataSource.getRoutedCount("replica-1") - replica1);
+	}
+
+	@Test
+	public void testReadsOfWritingClientFromPrimary() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		ResponseEntity<Product> created = restTemplate.postForEntity("/product", new HttpEntity<Product>(new Product("Camaro", "Vintage muscle car"), headers), Product.class);
+		String cookie = created.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+		assertThat(cookie).startsWith(ReadYourWritesFilter.COOKIE + "=");
+		String uri = "/product/" + String.valueOf(created.getBody().getId());
+		
+		long primary = routingDataSource.getRoutedCount(ReplicaRoutingDataSource.PRIMARY);
+		long replicas = routingDataSource.getRoutedCount("replica-0") + routingDataSource.getRoutedCount("replica-1");
+		HttpHeaders sticky = new HttpHeaders();
+		sticky.add(HttpHeaders.COOKIE, cookie.substring(0, cookie.indexOf(';')));
+		ResponseEntity<Product> response = restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<Void>(sticky), Product.class);
+		assertThat(response.getBody().getName()).isEqualTo("Camaro");
+		assertThat(response.getHeaders().get(HttpHeaders.SET_COOKIE)).isNull();
+		assertThat(routingDataSource.getRoutedCount(ReplicaRoutingDataSource.PRIMARY)).isGreaterThan(primary);
+		assertThat(routingDataSource.getRoutedCount("replica-0") + routingDataSource.getRoutedCount("replica-1")).isEqualTo(replicas);
+		
+		//other clients are not affected by the write
+		restTemplate.getForEntity(uri, Product.class);
+		assertThat(routingDataSource.getRoutedCount("replica-0") + routingDataSource.getRoutedCount("replica-1")).isGreaterThan(replicas);
+	}
+
+	@Test
+	public void testPoolMetrics() {
+		String metrics = restTemplate.getForObject("/metrics", String.class);
+		assertThat(metrics).contains("ws_datasource_connections_total{pool=\"replica-1\"}");
+		assertThat(metrics).contains("ws_datasource_pool_connections{pool=\"primary\",state=\"idle\"}");
+	}
+
+	private Product insertProduct(Product product) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+
+		HttpEntity<Product> request = new HttpEntity<Product>(product, headers);
+		ResponseEntity<Product> response = restTemplate.postForEntity("/product", request, Product.class);
+		return response.getBody();
+	}
+}
@@ -0,0 +1,109 @@
+package ws.endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import ws.cache.CacheReport;
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+
+/**
+ * Asserts that, with the read-through cache disabled, repeated reads are served by the Hibernate second-level cache without SQL statements.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("l2cache")
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.url=jdbc:h2:mem:l2cache;DB_CLOSE_ON_EXIT=FALSE",
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector=ws.endpoint.SqlStatementCounter",
+		"ws.cache.enabled=false" })
+public class RestProductEndpointSecondLevelCacheTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	@Test
+	public void testGetProduct() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product child = new Product("Wheel", "Vintage muscle wheel");
+		child.setParent(product);
+		child = insertProduct(child);
+		insertImage(product);
+		
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		SqlStatementCounter.reset();
+		ResponseEntity<Product> response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		//product, children and images from the entity and collection regions
+		assertThat(SqlStatementCounter.count()).isEqualTo(0);
+		assertThat(response.getBody().getChildren()).extracting("id").containsExactly(child.getId());
+		assertThat(response.getBody().getImages()).hasSize(1);
+	}
+	
+	@Test
+	public void testGetProduct_collectionEvictedOnNewChild() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		Product child = new Product("Wheel", "Vintage muscle wheel");
+		child.setParent(product);
+		child = insertProduct(child);
+		
+		ResponseEntity<Product> response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		assertThat(response.getBody().getChildren()).extracting("id").containsExactly(child.getId());
+	}
+	
+	@Test
+	public void testGetImageAndLookups() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		
+		restTemplate.getForEntity("/product/image/" + String.valueOf(image.getId()), Image.class);
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/descendants/count", String.class);
+		SqlStatementCounter.reset();
+		ResponseEntity<Image> response = restTemplate.getForEntity("/product/image/" + String.valueOf(image.getId()), Image.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		//path and subtree size from the query cache
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/descendants/count", String.class);
+		assertThat(SqlStatementCounter.count()).isEqualTo(0);
+		
+		CacheReport[] reports = restTemplate.getForEntity("/product/cache/stats", CacheReport[].class).getBody();
+		assertThat(reports).extracting("name").contains(Product.class.getName(), Image.class.getName(), Product.class.getName() + ".children");
+		for(CacheReport report : reports){
+			if(report.getName().equals(Image.class.getName())){
+				assertThat(report.getHitCount()).isGreaterThan(0);
+			}
+		}
+	}
+	
+	private Product insertProduct(Product product) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+
+		HttpEntity<Product> request = new HttpEntity<Product>(product, headers);
+		ResponseEntity<Product> response = restTemplate.postForEntity("/product", request, Product.class);
+		return response.getBody();
+	}
+	
+	private Image insertImage(Product product) {
+		Image image = new Image(ImageType.PNG);
+		image.setProduct(product);
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<Image> request = new HttpEntity<Image>(image, headers);
+		ResponseEntity<Image> response = restTemplate.postForEntity("/product/image", request, Image.class);
+		return response.getBody();
+	}
+}
@@ -0,0 +1,231 @@
+package ws.endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import ws.constants.ContentType;
+import ws.persistence.enumerate.ImageType;
+import ws.persistence.model.Image;
+import ws.persistence.model.Product;
+
+/**
+ * Asserts the number of SQL statements issued by each endpoint, so extra database round-trips are caught as regressions.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.url=jdbc:h2:mem:sqlcount;DB_CLOSE_ON_EXIT=FALSE",
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector=ws.endpoint.SqlStatementCounter" })
+public class RestProductEndpointSqlCountTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+	
+	@LocalServerPort
+	private int port;
+	
+	@Test
+	public void testCreateProduct() {
+		SqlStatementCounter.reset();
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		//insert
+		assertThat(SqlStatementCounter.count()).isEqualTo(1);
+		
+		Product child = new Product("Wheel", "Vintage muscle wheel");
+		child.setParent(product);
+		SqlStatementCounter.reset();
+		insertProduct(child);
+		//parent existence, parent hierarchy path and insert
+		assertThat(SqlStatementCounter.count()).isEqualTo(3);
+	}
+	
+	@Test
+	public void testGetProduct() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		//product with children, then images
+		assertThat(SqlStatementCounter.count()).isEqualTo(2);
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		//cached
+		assertThat(SqlStatementCounter.count()).isEqualTo(0);
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "?excludeChildren=true&excludeImages=true", Product.class);
+		//product only
+		assertThat(SqlStatementCounter.count()).isEqualTo(1);
+	}
+	
+	@Test
+	public void testGetProductSparseFields() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "?fields=name,parent", String.class);
+		//projection only, neither collections nor the parent row are read
+		assertThat(SqlStatementCounter.count()).isEqualTo(1);
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "?fields=children,images", String.class);
+		//projection, then child ids and image ids
+		assertThat(SqlStatementCounter.count()).isEqualTo(3);
+	}
+	
+	@Test
+	public void testGetProductChildrenAndImages() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/children", String.class);
+		assertThat(SqlStatementCounter.count()).isEqualTo(1);
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/image", String.class);
+		assertThat(SqlStatementCounter.count()).isEqualTo(1);
+	}
+	
+	@Test
+	public void testGetProductDescendants() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product parent = root;
+		for(int i = 0; i < 10; i++){
+			Product child = new Product("Part", "Vintage muscle part");
+			child.setParent(parent);
+			parent = insertProduct(child);
+		}
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(root.getId()) + "/descendants", String.class);
+		//root path, subtree and the root itself as parent of the first level, regardless of the depth
+		assertThat(SqlStatementCounter.count()).isEqualTo(3);
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/"+ String.valueOf(parent.getId()) + "/ancestors", String.class);
+		//path and ancestors
+		assertThat(SqlStatementCounter.count()).isEqualTo(2);
+	}
+	
+	@Test
+	public void testPatchProduct() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		SqlStatementCounter.reset();
+		assertThat(patch("/product/"+ String.valueOf(product.getId()), "{\"description\":\"Restored muscle car\"}")).isEqualTo(200);
+		//update of the description column, then the patched row for the change listeners
+		assertThat(SqlStatementCounter.count()).isEqualTo(2);
+		
+		String tag = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), String.class).getHeaders().getETag();
+		SqlStatementCounter.reset();
+		assertThat(patch("/product/"+ String.valueOf(product.getId()), "{\"name\":\"Chevrolet Camaro\"}", tag)).isEqualTo(200);
+		//version column for the If-Match header, instead of the whole graph, then the versioned update and the patched row
+		assertThat(SqlStatementCounter.count()).isEqualTo(3);
+	}
+	
+	@Test
+	public void testDeleteProduct() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		SqlStatementCounter.reset();
+		restTemplate.delete("/product/"+ String.valueOf(product.getId()));
+		//path and subtree size in the endpoint, path and empty chunk of descendants in the repository, 
+		//lock of the rows left in the subtree, parent touch, image ids (none to delete), product delete and its tombstone
+		assertThat(SqlStatementCounter.count()).isEqualTo(9);
+		
+		SqlStatementCounter.reset();
+		ResponseEntity<String> response = restTemplate.exchange("/product/"+ String.valueOf(product.getId()), HttpMethod.DELETE, null, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		assertThat(SqlStatementCounter.count()).isEqualTo(1);
+	}
+	
+	@Test
+	public void testDeleteProductSubtree() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product parent = root;
+		for(int i = 0; i < 10; i++){
+			Product child = new Product("Part", "Vintage muscle part");
+			child.setParent(parent);
+			parent = insertProduct(child);
+			insertImage(parent);
+		}
+		
+		SqlStatementCounter.reset();
+		restTemplate.delete("/product/"+ String.valueOf(root.getId()));
+		//as for a single product, plus one chunk of descendants (unlink, image ids, image tombstones, images, products, product tombstones),
+		//regardless of the subtree size
+		assertThat(SqlStatementCounter.count()).isEqualTo(15);
+	}
+	
+	@Test
+	public void testImageLifecycle() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		SqlStatementCounter.reset();
+		Image image = insertImage(product);
+		//product existence and insert
+		assertThat(SqlStatementCounter.count()).isEqualTo(2);
+		
+		SqlStatementCounter.reset();
+		restTemplate.getForEntity("/product/image/" + String.valueOf(image.getId()), String.class);
+		assertThat(SqlStatementCounter.count()).isEqualTo(1);
+		
+		SqlStatementCounter.reset();
+		restTemplate.delete("/product/image/" + String.valueOf(image.getId()));
+		//product lookup for cache eviction, product touch, delete and tombstone
+		assertThat(SqlStatementCounter.count()).isEqualTo(4);
+	}
+	
+	private int patch(String uri, String body) {
+		return patch(uri, body, null);
+	}
+	
+	private int patch(String uri, String body, String ifMatch) {
+		Client client = ClientBuilder.newClient().property(HttpUrlConnectorProvider.SET_METHOD_WORKAROUND, true);
+		try {
+			return client.target("http://localhost:" + port + uri).request().header(javax.ws.rs.core.HttpHeaders.IF_MATCH, ifMatch)
+					.method("PATCH", Entity.entity(body, ContentType.MERGE_PATCH)).getStatus();
+		} finally {
+			client.close();
+		}
+	}
+	
+	private Product insertProduct(Product product) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+
+		HttpEntity<Product> request = new HttpEntity<Product>(product, headers);
+		ResponseEntity<Product> response = restTemplate.postForEntity("/product", request, Product.class);
+		return response.getBody();
+	}
+	
+	private Image insertImage(Product product) {
+		Image image = new Image(ImageType.PNG);
+		image.setProduct(product);
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<Image> request = new HttpEntity<Image>(image, headers);
+		ResponseEntity<Image> response = restTemplate.postForEntity("/product/image", request, Image.class);
+		return response.getBody();
+	}
+}
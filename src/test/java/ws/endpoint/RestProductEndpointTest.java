@@ -1,33 +1,113 @@
 package ws.endpoint;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import javax.imageio.ImageIO;
+import javax.sql.DataSource;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import ws.blob.BlobStore;
+import ws.cache.CacheReport;
+import ws.constants.ContentType;
+import ws.constants.ErrorMessage;
+import ws.endpoint.representation.ProductPage;
+import ws.image.ImageVariant;
+import ws.persistence.datasource.WriteBarrier;
+import ws.persistence.enumerate.ImageStatus;
 import ws.persistence.enumerate.ImageType;
 import ws.persistence.model.Image;
 import ws.persistence.model.Product;
+import ws.persistence.repository.ProductRepository;
+import ws.search.SearchHit;
+import ws.search.Suggestion;
+import ws.snapshot.CatalogSnapshot;
 
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
 public class RestProductEndpointTest {
 
+	private static final ParameterizedTypeReference<Map<String, Object>> JSON_OBJECT = new ParameterizedTypeReference<Map<String, Object>>() {};
+	
 	@Autowired
 	private TestRestTemplate restTemplate;
 	
+	@Autowired
+	private ProductRepository productRepo;
+	
+	@Autowired
+	private DataSource dataSource;
+	
+	@Autowired
+	private WriteBarrier writeBarrier;
+	
+	@Autowired
+	private BlobStore blobStore;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@LocalServerPort
+	private int port;
+	
 	@Test
 	public void testCreateProduct_validProduct() {
 		Product parent = new Product("Camaro", "Vintage muscle car");
@@ -99,6 +179,57 @@ public class RestProductEndpointTest {
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
 	}
 	
+	@Test
+	public void testCreateProducts_parentsInsideBatch() {
+		Product existing = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product parent = new Product("Wheel", "Vintage muscle wheel");
+		parent.setId(-1L);
+		parent.setParent(existing);
+		Product child = new Product("Tire", "Vintage muscle tire");
+		child.setParent(parent);
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<List<Product>> request = new HttpEntity<List<Product>>(Arrays.asList(child, parent), headers);
+		ResponseEntity<Product[]> response = restTemplate.postForEntity("/product/batch", request, Product[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(response.getBody()[1].getId()).isPositive();
+		assertThat(response.getBody()[1].getParent().getId()).isEqualTo(existing.getId());
+		assertThat(response.getBody()[0].getParent().getId()).isEqualTo(response.getBody()[1].getId());
+		
+		ResponseEntity<Product> children = restTemplate.getForEntity("/product/"+ String.valueOf(response.getBody()[1].getId()), Product.class);
+		assertThat(children.getBody().getChildren()).extracting("id").containsExactly(response.getBody()[0].getId());
+	}
+	
+	@Test
+	public void testCreateProducts_cyclicParents() {
+		Product first = new Product("Wheel", "Vintage muscle wheel");
+		first.setId(-1L);
+		Product second = new Product("Tire", "Vintage muscle tire");
+		second.setId(-2L);
+		first.setParent(second);
+		second.setParent(first);
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<List<Product>> request = new HttpEntity<List<Product>>(Arrays.asList(first, second), headers);
+		ResponseEntity<String> response = restTemplate.postForEntity("/product/batch", request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
+	@Test
+	public void testCreateProducts_invalidParent() {
+		Product product = new Product("Camaro", "Vintage muscle car");
+		product.setParent(new Product());
+		product.getParent().setId(-1L);
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<List<Product>> request = new HttpEntity<List<Product>>(Arrays.asList(product), headers);
+		ResponseEntity<String> response = restTemplate.postForEntity("/product/batch", request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
 	@Test
 	public void testGetProduct_validProduct() {
 		Product product = new Product("Camaro", "Vintage muscle car");
@@ -162,6 +293,33 @@ public class RestProductEndpointTest {
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
 	}
 	
+	@Test
+	public void testCreateImages_validImages() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image front = new Image(ImageType.PNG);
+		front.setProduct(product);
+		Image back = new Image(ImageType.JPEG);
+		back.setProduct(product);
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<List<Image>> request = new HttpEntity<List<Image>>(Arrays.asList(front, back), headers);
+		ResponseEntity<Image[]> response = restTemplate.postForEntity("/product/image/batch", request, Image[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		
+		ResponseEntity<Image[]> images = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/image", Image[].class);
+		assertThat(images.getBody()).extracting("id").containsOnly(response.getBody()[0].getId(), response.getBody()[1].getId());
+	}
+	
+	@Test
+	public void testCreateImages_emptyBatch() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<List<Image>> request = new HttpEntity<List<Image>>(Collections.<Image>emptyList(), headers);
+		ResponseEntity<String> response = restTemplate.postForEntity("/product/image/batch", request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
 	@Test
 	public void testGetImage_validImage() {
 		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
@@ -201,6 +359,36 @@ public class RestProductEndpointTest {
 		  assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
 	}
 	
+	@Test
+	public void testGetAllProducts_streamsInsertedProduct() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		ResponseEntity<Product[]> response = restTemplate.getForEntity("/product/all", Product[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).extracting("id").contains(product.getId());
+	}
+	
+	@Test
+	public void testGetAllProducts_keysetPages() {
+		Product first = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product second = insertProduct(new Product("Mustang", "Vintage muscle car"));
+		Product third = insertProduct(new Product("Charger", "Vintage muscle car"));
+		
+		ResponseEntity<ProductPage> response = restTemplate.getForEntity("/product/all?limit=2&after=" + String.valueOf(first.getId() - 1), ProductPage.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().getProducts()).extracting("id").containsExactly(first.getId(), second.getId());
+		assertThat(response.getBody().getNext()).isEqualTo(second.getId());
+		
+		response = restTemplate.getForEntity("/product/all?limit=2&after=" + String.valueOf(response.getBody().getNext()), ProductPage.class);
+		assertThat(response.getBody().getProducts().get(0).getId()).isEqualTo(third.getId());
+	}
+	
+	@Test
+	public void testGetAllProducts_invalidLimit() {
+		ResponseEntity<String> response = restTemplate.getForEntity("/product/all?limit=0", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
 	@Test
 	public void testGetProduct_excludeChildren() {
 		Product product = new Product("Camaro", "Vintage muscle car");
@@ -214,6 +402,19 @@ public class RestProductEndpointTest {
 		assertTrue(response.getBody().getChildren().isEmpty());
 	}
 	
+	@Test
+	public void testGetProduct_includeRelations() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product child = new Product("Wheel", "Vintage muscle wheel");
+		child.setParent(product);
+		child = insertProduct(child);
+		Image image = insertImage(product);
+		
+		ResponseEntity<Product> response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		assertThat(response.getBody().getChildren()).extracting("id").containsExactly(child.getId());
+		assertThat(response.getBody().getImages()).extracting("id").containsExactly(image.getId());
+	}
+	
 	@Test
 	public void testGetProduct_excludeImages() {
 		Product product = new Product("Camaro", "Vintage muscle car");
@@ -267,6 +468,867 @@ public class RestProductEndpointTest {
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
 	}
 	
+	@Test
+	public void testGetProductDescendantsAndAncestors() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		Product tire = insertChild(wheel, "Tire");
+		Product valve = insertChild(tire, "Valve");
+		
+		ResponseEntity<Product[]> descendants = restTemplate.getForEntity("/product/" + String.valueOf(root.getId()) + "/descendants", Product[].class);
+		assertThat(descendants.getBody()).extracting("id").containsExactly(wheel.getId(), tire.getId(), valve.getId());
+		
+		descendants = restTemplate.getForEntity("/product/" + String.valueOf(root.getId()) + "/descendants?depth=2", Product[].class);
+		assertThat(descendants.getBody()).extracting("id").containsExactly(wheel.getId(), tire.getId());
+		
+		ResponseEntity<Long> count = restTemplate.getForEntity("/product/" + String.valueOf(root.getId()) + "/descendants/count", Long.class);
+		assertThat(count.getBody()).isEqualTo(3L);
+		
+		ResponseEntity<Product[]> ancestors = restTemplate.getForEntity("/product/" + String.valueOf(valve.getId()) + "/ancestors", Product[].class);
+		assertThat(ancestors.getBody()).extracting("id").containsExactly(root.getId(), wheel.getId(), tire.getId());
+	}
+	
+	@Test
+	public void testUpdateProduct_movesSubtree() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		Product tire = insertChild(wheel, "Tire");
+		Product valve = insertChild(tire, "Valve");
+		
+		tire.setParent(root);
+		ResponseEntity<String> response = restTemplate.exchange("/product/" + String.valueOf(tire.getId()), HttpMethod.PUT, new HttpEntity<Product>(tire, jsonHeaders()), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		ResponseEntity<Product[]> children = restTemplate.getForEntity("/product/" + String.valueOf(root.getId()) + "/descendants?depth=1", Product[].class);
+		assertThat(children.getBody()).extracting("id").containsExactly(wheel.getId(), tire.getId());
+		ResponseEntity<Product[]> ancestors = restTemplate.getForEntity("/product/" + String.valueOf(valve.getId()) + "/ancestors", Product[].class);
+		assertThat(ancestors.getBody()).extracting("id").containsExactly(root.getId(), tire.getId());
+	}
+	
+	@Test
+	public void testUpdateProduct_renameSeenInCachedGraphs() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		Product tire = insertChild(wheel, "Tire");
+		Image image = insertImage(tire);
+		restTemplate.getForEntity("/product/" + String.valueOf(root.getId()), Product.class);
+		restTemplate.getForEntity("/product/" + String.valueOf(tire.getId()), Product.class);
+		restTemplate.getForEntity("/product/image/" + String.valueOf(image.getId()), Image.class);
+		
+		wheel.setName("Rim");
+		ResponseEntity<String> response = restTemplate.exchange("/product/" + String.valueOf(wheel.getId()), HttpMethod.PUT, new HttpEntity<Product>(wheel, jsonHeaders()), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(root.getId()), Product.class).getBody().getChildren())
+			.extracting("name").containsExactly("Rim");
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(tire.getId()), Product.class).getBody().getParent().getName())
+			.isEqualTo("Rim");
+		assertThat(restTemplate.getForEntity("/product/image/" + String.valueOf(image.getId()), String.class).getBody())
+			.contains("\"Rim\"").doesNotContain("\"Wheel\"");
+	}
+	
+	@Test
+	public void testUpdateProduct_descendantAsParent() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		
+		root.setParent(wheel);
+		ResponseEntity<String> response = restTemplate.exchange("/product/" + String.valueOf(root.getId()), HttpMethod.PUT, new HttpEntity<Product>(root, jsonHeaders()), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
+	@Test
+	public void testUpdateProduct_unknownProduct() {
+		Product product = new Product("Camaro", "Vintage muscle car");
+		ResponseEntity<String> response = restTemplate.exchange("/product/" + String.valueOf(-1L), HttpMethod.PUT, new HttpEntity<Product>(product, jsonHeaders()), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testDeleteProduct_subtree() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		Product tire = insertChild(wheel, "Tire");
+		Product door = insertChild(root, "Door");
+		Image image = insertImage(tire);
+		
+		ResponseEntity<String> response = restTemplate.exchange("/product/" + String.valueOf(root.getId()), HttpMethod.DELETE, null, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		for(Product deleted : Arrays.asList(root, wheel, tire, door)){
+			assertThat(restTemplate.getForEntity("/product/" + String.valueOf(deleted.getId()), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		}
+		assertThat(restTemplate.getForEntity("/product/image/" + String.valueOf(image.getId()), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testDeleteProduct_subtreeGrownMeanwhile() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		insertChild(wheel, "Tire");
+		List<Product> added = new ArrayList<Product>();
+		
+		//a Product inserted under the root once the descendants were deleted in a single chunk, before the root itself
+		long deleted = productRepo.deleteSubtree(root.getId(), 10, (ids, imageIds) -> {
+			if(added.isEmpty()){
+				added.add(insertChild(root, "Seat"));
+			}
+		});
+		assertThat(deleted).isEqualTo(4);
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(root.getId()), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(added.get(0).getId()), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testDeleteProduct_asyncJob() throws InterruptedException {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		insertImage(wheel);
+		
+		ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/product/" + String.valueOf(root.getId()) + "?async=true", HttpMethod.DELETE, null, JSON_OBJECT);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(response.getBody().get("total")).isEqualTo(2);
+		
+		Map<String, Object> job = response.getBody();
+		for(int attempt = 0; attempt < 50 && !"COMPLETED".equals(job.get("status")); attempt++){
+			Thread.sleep(100);
+			job = restTemplate.exchange(response.getHeaders().getLocation(), HttpMethod.GET, null, JSON_OBJECT).getBody();
+		}
+		assertThat(job.get("status")).isEqualTo("COMPLETED");
+		assertThat(job.get("deleted")).isEqualTo(2);
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(wheel.getId()), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testGetDeletionJob_unknownJob() {
+		ResponseEntity<String> response = restTemplate.getForEntity("/product/delete-jobs/unknown", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testSearchProducts_ranked() {
+		Product named = insertProduct(new Product("Zephyr roadster", "Convertible with a soft top"));
+		Product described = insertProduct(new Product("Convertible", "Classic zephyr body"));
+		
+		ResponseEntity<SearchHit[]> response = restTemplate.getForEntity("/product/search?q=ZÉPHYR", SearchHit[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).extracting("id").containsExactly(named.getId(), described.getId());
+		
+		response = restTemplate.getForEntity("/product/search?q=zephyr&limit=1", SearchHit[].class);
+		assertThat(response.getBody()).extracting("id").containsExactly(named.getId());
+	}
+	
+	@Test
+	public void testSearchProducts_followsWrites() {
+		Product product = insertProduct(new Product("Quokka coupe", "Vintage muscle car"));
+		assertThat(restTemplate.getForEntity("/product/search?q=quokka", SearchHit[].class).getBody()).extracting("id").containsExactly(product.getId());
+		
+		product.setName("Wombat coupe");
+		restTemplate.exchange("/product/" + String.valueOf(product.getId()), HttpMethod.PUT, new HttpEntity<Product>(product, jsonHeaders()), String.class);
+		assertThat(restTemplate.getForEntity("/product/search?q=quokka", SearchHit[].class).getBody()).isEmpty();
+		assertThat(restTemplate.getForEntity("/product/search?q=wombat", SearchHit[].class).getBody()).extracting("id").containsExactly(product.getId());
+		
+		restTemplate.delete("/product/" + String.valueOf(product.getId()));
+		assertThat(restTemplate.getForEntity("/product/search?q=wombat", SearchHit[].class).getBody()).isEmpty();
+	}
+	
+	@Test
+	public void testSearchProducts_emptyQuery() {
+		ResponseEntity<String> response = restTemplate.getForEntity("/product/search?q= !", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
+	@Test
+	public void testSuggestProducts_prefix() {
+		Product second = insertProduct(new Product("Xylo Roadster", "Vintage muscle car"));
+		Product first = insertProduct(new Product("Xýlo coupe", "Vintage muscle car"));
+		insertProduct(new Product("Roadster Xylo", "Vintage muscle car"));
+		
+		ResponseEntity<Suggestion[]> response = restTemplate.getForEntity("/product/suggest?prefix=XYL", Suggestion[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).extracting("id").containsExactly(first.getId(), second.getId());
+		assertThat(response.getBody()[0].getName()).isEqualTo("Xýlo coupe");
+		
+		restTemplate.delete("/product/" + String.valueOf(first.getId()));
+		response = restTemplate.getForEntity("/product/suggest?prefix=xylo&limit=5", Suggestion[].class);
+		assertThat(response.getBody()).extracting("id").containsExactly(second.getId());
+	}
+	
+	@Test
+	public void testSuggestProducts_emptyPrefix() {
+		ResponseEntity<String> response = restTemplate.getForEntity("/product/suggest?prefix=", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGetProduct_sparseFields() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product child = new Product("Wheel", "Vintage muscle wheel");
+		child.setParent(product);
+		child = insertProduct(child);
+		
+		ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/product/"+ String.valueOf(child.getId()) + "?fields=name,parent", HttpMethod.GET, null, JSON_OBJECT);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsOnlyKeys("id", "name", "parent");
+		assertThat(response.getBody().get("name")).isEqualTo("Wheel");
+		assertThat(((Number) response.getBody().get("parent")).longValue()).isEqualTo(product.getId());
+		
+		response = restTemplate.exchange("/product/"+ String.valueOf(product.getId()) + "?fields=children,images", HttpMethod.GET, null, JSON_OBJECT);
+		assertThat(response.getBody()).containsOnlyKeys("id", "children", "images");
+		assertThat((List<Number>) response.getBody().get("children")).hasSize(1);
+		assertThat(((List<Number>) response.getBody().get("children")).get(0).longValue()).isEqualTo(child.getId());
+	}
+	
+	@Test
+	public void testGetProduct_unknownField() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		ResponseEntity<String> response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "?fields=name,price", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		
+		response = restTemplate.getForEntity("/product/-1?fields=name", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGetAllProducts_sparseFields() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		ResponseEntity<List<Map<String, Object>>> streamed = restTemplate.exchange("/product/all?fields=name", HttpMethod.GET, null, 
+				new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+		assertThat(streamed.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(streamed.getBody()).isNotEmpty();
+		for(Map<String, Object> p : streamed.getBody()){
+			assertThat(p).containsOnlyKeys("id", "name");
+		}
+		
+		ResponseEntity<Map<String, Object>> page = restTemplate.exchange("/product/all?fields=description&after=" + String.valueOf(product.getId() - 1) + "&limit=1", 
+				HttpMethod.GET, null, JSON_OBJECT);
+		assertThat(page.getStatusCode()).isEqualTo(HttpStatus.OK);
+		List<Map<String, Object>> products = (List<Map<String, Object>>) page.getBody().get("products");
+		assertThat(products).hasSize(1);
+		assertThat(products.get(0)).containsOnlyKeys("id", "description");
+		assertThat(products.get(0).get("description")).isEqualTo("Vintage muscle car");
+	}
+	
+	@Test
+	public void testGetImage_sparseFields() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		
+		ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/product/image/" + String.valueOf(image.getId()) + "?fields=product", HttpMethod.GET, null, JSON_OBJECT);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsOnlyKeys("id", "product");
+		assertThat(((Number) response.getBody().get("product")).longValue()).isEqualTo(product.getId());
+	}
+	
+	@Test
+	public void testGetAllProducts_smile() throws IOException {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		ResponseEntity<byte[]> response = restTemplate.exchange("/product/all", HttpMethod.GET, accepting(ContentType.SMILE, null), byte[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType().toString()).isEqualTo(ContentType.SMILE);
+		Map<?, ?>[] products = new ObjectMapper(new SmileFactory()).readValue(response.getBody(), Map[].class);
+		assertThat(products).extracting("name").contains("Camaro");
+		assertThat(products).extracting("id").contains(product.getId().intValue());
+	}
+	
+	@Test
+	public void testGetProductChildren_cbor() throws IOException {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product child = new Product("Wheel", "Vintage muscle wheel");
+		child.setParent(product);
+		child = insertProduct(child);
+		
+		ResponseEntity<byte[]> response = restTemplate.exchange("/product/"+ String.valueOf(product.getId()) + "/children", HttpMethod.GET, 
+				accepting(ContentType.CBOR, null), byte[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType().toString()).isEqualTo(ContentType.CBOR);
+		Map<?, ?>[] children = new ObjectMapper(new CBORFactory()).readValue(response.getBody(), Map[].class);
+		assertThat(children).extracting("name").containsExactly("Wheel");
+	}
+	
+	@Test
+	public void testGetAllProducts_gzip() throws IOException {
+		for(int i = 0; i < 20; i++){
+			insertProduct(new Product("Camaro", "Vintage muscle car"));
+		}
+		
+		ResponseEntity<byte[]> response = restTemplate.exchange("/product/all", HttpMethod.GET, accepting(ContentType.JSON, "gzip;q=1.0, deflate;q=0.5"), byte[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		Product[] products = new ObjectMapper().readValue(new GZIPInputStream(new ByteArrayInputStream(response.getBody())), Product[].class);
+		assertThat(products.length).isGreaterThanOrEqualTo(20);
+	}
+	
+	@Test
+	public void testGetProductChildren_smallResponseNotCompressed() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		
+		ResponseEntity<String> response = restTemplate.exchange("/product/"+ String.valueOf(product.getId()) + "/children", HttpMethod.GET, 
+				accepting(ContentType.JSON, "gzip, deflate"), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+		assertThat(response.getBody()).isEqualTo("[]");
+	}
+	
+	@Test
+	public void testImageContent_uploadAndDownload() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String uri = "/product/image/" + String.valueOf(image.getId()) + "/content";
+		byte[] content = new byte[20000];
+		for(int i = 0; i < content.length; i++){
+			content[i] = (byte) i;
+		}
+		
+		assertThat(restTemplate.getForEntity(uri, String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.IMAGE_PNG);
+		ResponseEntity<String> upload = restTemplate.exchange(uri, HttpMethod.PUT, new HttpEntity<byte[]>(content, headers), String.class);
+		assertThat(upload.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		ResponseEntity<byte[]> response = restTemplate.getForEntity(uri, byte[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+		assertThat(response.getHeaders().getContentLength()).isEqualTo(content.length);
+		assertThat(response.getBody()).isEqualTo(content);
+		
+		headers = new HttpHeaders();
+		headers.set(HttpHeaders.RANGE, "bytes=10000-10003");
+		response = restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<Void>(headers), byte[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+		assertThat(response.getHeaders().getFirst("Content-Range")).isEqualTo("bytes 10000-10003/20000");
+		assertThat(response.getBody()).isEqualTo(Arrays.copyOfRange(content, 10000, 10004));
+		
+		headers.set(HttpHeaders.RANGE, "bytes=20000-");
+		ResponseEntity<String> unsatisfiable = restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<Void>(headers), String.class);
+		assertThat(unsatisfiable.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+		assertThat(unsatisfiable.getHeaders().getFirst("Content-Range")).isEqualTo("bytes */20000");
+		
+		restTemplate.delete("/product/image/" + String.valueOf(image.getId()));
+		assertThat(restTemplate.getForEntity(uri, String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testImageContent_unknownImage() {
+		ResponseEntity<String> response = restTemplate.exchange("/product/image/-1/content", HttpMethod.PUT, 
+				new HttpEntity<byte[]>(new byte[]{1}), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testImageContent_derivatives() throws IOException, InterruptedException {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String uri = "/product/image/" + String.valueOf(image.getId());
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB), "png", png);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.IMAGE_PNG);
+		
+		assertThat(restTemplate.getForEntity(uri, Image.class).getBody().getStatus()).isEqualTo(ImageStatus.NONE);
+		ResponseEntity<String> upload = restTemplate.exchange(uri + "/content", HttpMethod.PUT, new HttpEntity<byte[]>(png.toByteArray(), headers), String.class);
+		assertThat(upload.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(awaitStatus(uri)).isEqualTo(ImageStatus.READY);
+		
+		ResponseEntity<byte[]> thumbnail = restTemplate.getForEntity(uri + "/content/thumbnail", byte[].class);
+		assertThat(thumbnail.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(thumbnail.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumbnail.getBody()));
+		assertThat(decoded.getWidth()).isEqualTo(128);
+		assertThat(decoded.getHeight()).isEqualTo(64);
+		decoded = ImageIO.read(new ByteArrayInputStream(restTemplate.getForEntity(uri + "/content/medium", byte[].class).getBody()));
+		assertThat(decoded.getWidth()).isEqualTo(640);
+		assertThat(decoded.getHeight()).isEqualTo(320);
+		assertThat(restTemplate.getForEntity(uri + "/content/huge", String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		
+		restTemplate.delete(uri);
+		assertThat(restTemplate.getForEntity(uri + "/content/thumbnail", String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testImageContent_removedWithSubtree() throws IOException, InterruptedException {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		Image image = insertImage(wheel);
+		String uri = "/product/image/" + String.valueOf(image.getId());
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "png", png);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.IMAGE_PNG);
+		restTemplate.exchange(uri + "/content", HttpMethod.PUT, new HttpEntity<byte[]>(png.toByteArray(), headers), String.class);
+		assertThat(awaitStatus(uri)).isEqualTo(ImageStatus.READY);
+		
+		restTemplate.delete("/product/" + String.valueOf(root.getId()));
+		for(ImageVariant variant : ImageVariant.values()){
+			assertThat(blobStore.find(variant.key(image.getId()))).as(variant.name()).isNull();
+		}
+	}
+	
+	@Test
+	public void testImageContent_undecodableContentFails() throws InterruptedException {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String uri = "/product/image/" + String.valueOf(image.getId());
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.IMAGE_PNG);
+		restTemplate.exchange(uri + "/content", HttpMethod.PUT, new HttpEntity<byte[]>(new byte[]{1, 2, 3}, headers), String.class);
+		assertThat(awaitStatus(uri)).isEqualTo(ImageStatus.FAILED);
+		assertThat(restTemplate.getForEntity(uri + "/content/thumbnail", String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testImageContent_oversizedContentFails() throws IOException, InterruptedException {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String uri = "/product/image/" + String.valueOf(image.getId());
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", png);
+		//a header claiming 60000 x 60000 pixels, over 13 GB once decoded
+		byte[] content = png.toByteArray();
+		ByteBuffer header = ByteBuffer.wrap(content);
+		header.putInt(16, 60000).putInt(20, 60000);
+		CRC32 crc = new CRC32();
+		crc.update(content, 12, 17);
+		header.putInt(29, (int) crc.getValue());
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.IMAGE_PNG);
+		
+		restTemplate.exchange(uri + "/content", HttpMethod.PUT, new HttpEntity<byte[]>(content, headers), String.class);
+		assertThat(awaitStatus(uri)).isEqualTo(ImageStatus.FAILED);
+		
+		//the workers are still running
+		Image next = insertImage(product);
+		uri = "/product/image/" + String.valueOf(next.getId());
+		restTemplate.exchange(uri + "/content", HttpMethod.PUT, new HttpEntity<byte[]>(png.toByteArray(), headers), String.class);
+		assertThat(awaitStatus(uri)).isEqualTo(ImageStatus.READY);
+	}
+	
+	@Test
+	public void testStreamChanges_liveAndResumed() throws IOException {
+		HttpURLConnection live = openChangeStream(null);
+		BufferedReader events = new BufferedReader(new InputStreamReader(live.getInputStream(), StandardCharsets.UTF_8));
+		assertThat(live.getContentType()).startsWith("text/event-stream");
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		
+		//background work of other tests may still publish changes
+		Map<String, String> created = nextEvent(events);
+		while(!created.get("data").contains("\"entity\":\"PRODUCT\"")){
+			created = nextEvent(events);
+		}
+		assertThat(created.get("event")).isEqualTo("change");
+		assertThat(created.get("data")).contains("\"operation\":\"CREATED\"", "\"id\":" + product.getId());
+		assertThat(nextEvent(events).get("data")).contains("\"entity\":\"IMAGE\"", "\"id\":" + image.getId());
+		live.disconnect();
+		
+		String epoch = created.get("id").substring(0, created.get("id").indexOf(':'));
+		long sequence = Long.parseLong(created.get("id").substring(epoch.length() + 1));
+		HttpURLConnection resumed = openChangeStream(epoch + ":" + (sequence - 1));
+		events = new BufferedReader(new InputStreamReader(resumed.getInputStream(), StandardCharsets.UTF_8));
+		assertThat(nextEvent(events).get("id")).isEqualTo(epoch + ":" + sequence);
+		assertThat(nextEvent(events).get("id")).isEqualTo(epoch + ":" + (sequence + 1));
+		resumed.disconnect();
+	}
+	
+	@Test
+	public void testStreamChanges_imagesDeletedWithSubtree() throws IOException {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		Image image = insertImage(wheel);
+		HttpURLConnection live = openChangeStream(null);
+		BufferedReader events = new BufferedReader(new InputStreamReader(live.getInputStream(), StandardCharsets.UTF_8));
+		restTemplate.delete("/product/" + String.valueOf(root.getId()));
+		
+		//background work of other tests may still publish changes
+		Map<String, String> deleted = nextEvent(events);
+		while(!deleted.get("data").contains("\"operation\":\"DELETED\"")){
+			deleted = nextEvent(events);
+		}
+		assertThat(deleted.get("data")).contains("\"entity\":\"IMAGE\"", "\"id\":" + image.getId());
+		assertThat(nextEvent(events).get("data")).contains("\"entity\":\"PRODUCT\"", "\"operation\":\"DELETED\"", "\"id\":" + wheel.getId());
+		assertThat(nextEvent(events).get("data")).contains("\"entity\":\"PRODUCT\"", "\"operation\":\"DELETED\"", "\"id\":" + root.getId());
+		live.disconnect();
+	}
+	
+	@Test
+	public void testStreamChanges_unknownSequenceResets() throws IOException {
+		//e.g. a sequence from before a restart, which may be lower than the current one
+		Map<String, String> reset = resetEvent("previous:1");
+		assertThat(reset.get("id")).isEqualTo(reset.get("data"));
+		String epoch = reset.get("id").substring(0, reset.get("id").indexOf(':'));
+		//ahead of this epoch
+		assertThat(resetEvent(epoch + ":" + Long.MAX_VALUE).get("id")).startsWith(epoch + ":");
+		
+		assertThat(openChangeStream("abc").getResponseCode()).isEqualTo(400);
+		assertThat(openChangeStream("12").getResponseCode()).isEqualTo(400);
+	}
+	
+	@Test
+	public void testGetChanges_createdUpdatedAndDeleted() throws InterruptedException {
+		long since = System.currentTimeMillis() - 1;
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		
+		//the Image was written last: once it settled, so did the Product
+		Map<String, Object> changes = awaitChanges(since, "images", image.getId());
+		assertThat(change(changes, "products", product.getId())).containsEntry("name", "Camaro").containsEntry("version", 0);
+		assertThat(change(changes, "images", image.getId())).containsEntry("product", product.getId().intValue()).containsEntry("status", "NONE");
+		
+		product.setName("Corvette");
+		restTemplate.put("/product/"+ String.valueOf(product.getId()), product);
+		changes = awaitChanges(((Number) changes.get("next")).longValue(), "products", product.getId());
+		assertThat(change(changes, "products", product.getId())).containsEntry("name", "Corvette").containsEntry("version", 1);
+		
+		restTemplate.delete("/product/"+ String.valueOf(product.getId()));
+		changes = awaitChanges(((Number) changes.get("next")).longValue(), "deleted", product.getId());
+		assertThat(change(changes, "deleted", product.getId())).containsEntry("entity", "PRODUCT");
+		assertThat(change(changes, "deleted", image.getId())).isNotNull();
+	}
+	
+	@Test
+	public void testGetChanges_lateWriteRolledBack() {
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		List<Long> ids = new ArrayList<Long>();
+		//stamped at once but committed after ws.sync.write-timeout-ms, when a delta could already have been read past its time
+		assertThatThrownBy(() -> transaction.execute(status -> {
+			Product late = productRepo.save(new Product("Late", "Slow write"));
+			ids.add(late.getId());
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return late;
+		})).isInstanceOf(TransactionTimedOutException.class);
+		
+		assertThat(ids).hasSize(1);
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(ids.get(0)), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testGetChanges_invalidAndExpiredTokens() {
+		assertThat(restTemplate.getForEntity("/product/changes?since=-1", String.class).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(restTemplate.getForEntity("/product/changes?since=0&limit=0", String.class).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(restTemplate.getForEntity("/product/changes?since=1", String.class).getStatusCode()).isEqualTo(HttpStatus.GONE);
+		assertThat(restTemplate.getForEntity("/product/changes?since=0&limit=1", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+	
+	@Test
+	public void testGetProduct_notModified() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		String uri = "/product/"+ String.valueOf(product.getId());
+		ResponseEntity<String> response = restTemplate.getForEntity(uri, String.class);
+		String tag = response.getHeaders().getETag();
+		assertThat(tag).startsWith("\"");
+		assertThat(response.getHeaders().getLastModified()).isPositive();
+		
+		response = restTemplate.exchange(uri, HttpMethod.GET, ifNoneMatch(tag), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(response.getBody()).isNull();
+		
+		//a new child changes the representation, not the version of the Product itself
+		insertChild(product, "Wheel");
+		response = restTemplate.exchange(uri, HttpMethod.GET, ifNoneMatch(tag), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getETag()).isNotEqualTo(tag);
+		
+		String childrenTag = restTemplate.getForEntity(uri + "/children", String.class).getHeaders().getETag();
+		assertThat(restTemplate.exchange(uri + "/children", HttpMethod.GET, ifNoneMatch(childrenTag), String.class).getStatusCode())
+				.isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+	
+	@Test
+	public void testGetProductChildren_compressedTag() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		for(int i = 0; i < 20; i++){
+			insertChild(product, "Wheel");
+		}
+		String uri = "/product/"+ String.valueOf(product.getId()) + "/children";
+		ResponseEntity<byte[]> response = restTemplate.exchange(uri, HttpMethod.GET, accepting(ContentType.JSON, "gzip"), byte[].class);
+		String tag = response.getHeaders().getETag();
+		assertThat(tag).endsWith("--gzip\"");
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.putAll(accepting(ContentType.JSON, "gzip").getHeaders());
+		headers.setIfNoneMatch(tag);
+		response = restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<Void>(headers), byte[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(response.getHeaders().getETag()).isEqualTo(tag);
+	}
+	
+	@Test
+	public void testUpdateProduct_ifMatch() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		String uri = "/product/"+ String.valueOf(product.getId());
+		String tag = restTemplate.getForEntity(uri, String.class).getHeaders().getETag();
+		
+		product.setName("Corvette");
+		ResponseEntity<String> response = restTemplate.exchange(uri, HttpMethod.PUT, ifMatch(product, tag), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		//the tag read before the first update is stale
+		product.setName("Mustang");
+		response = restTemplate.exchange(uri, HttpMethod.PUT, ifMatch(product, tag), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(response.getBody()).isEqualTo(ErrorMessage.PRECONDITION_FAILED);
+		assertThat(restTemplate.getForEntity(uri, Product.class).getBody().getName()).isEqualTo("Corvette");
+	}
+	
+	@Test
+	public void testUpdate_ifMatchOnOwnVersion() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String productUri = "/product/" + String.valueOf(product.getId());
+		String imageUri = "/product/image/" + String.valueOf(image.getId());
+		String productTag = restTemplate.getForEntity(productUri, String.class).getHeaders().getETag();
+		String imageTag = restTemplate.getForEntity(imageUri, String.class).getHeaders().getETag();
+		
+		//relations of the representations change, not the columns being updated
+		insertImage(product);
+		assertThat(restTemplate.getForEntity(productUri, String.class).getHeaders().getETag()).isNotEqualTo(productTag);
+		product.setName("Corvette");
+		assertThat(restTemplate.exchange(productUri, HttpMethod.PUT, ifMatch(product, productTag), String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.getForEntity(imageUri, String.class).getHeaders().getETag()).isNotEqualTo(imageTag);
+		image.setType(ImageType.JPEG);
+		assertThat(restTemplate.exchange(imageUri, HttpMethod.PUT, ifMatch(image, imageTag), String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		//stale once the Product and Image themselves changed
+		assertThat(restTemplate.exchange(productUri, HttpMethod.PUT, ifMatch(product, productTag), String.class).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(restTemplate.exchange(imageUri, HttpMethod.PUT, ifMatch(image, imageTag), String.class).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(restTemplate.exchange(imageUri, HttpMethod.PUT, ifMatch(image, "*"), String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+	
+	@Test
+	public void testGetImage_notModifiedAndIfMatch() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String uri = "/product/image/" + String.valueOf(image.getId());
+		String tag = restTemplate.getForEntity(uri, String.class).getHeaders().getETag();
+		assertThat(restTemplate.exchange(uri, HttpMethod.GET, ifNoneMatch(tag), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		
+		image.setType(ImageType.JPEG);
+		assertThat(restTemplate.exchange(uri, HttpMethod.PUT, ifMatch(image, tag), String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.exchange(uri, HttpMethod.PUT, ifMatch(image, tag), String.class).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(restTemplate.exchange(uri, HttpMethod.GET, ifNoneMatch(tag), String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+	
+	@Test
+	public void testPatchProduct_onlyPatchedFields() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		String uri = "/product/" + String.valueOf(wheel.getId());
+		ResponseEntity<String> response = patch(uri, "{\"description\":\"Restored wheel\"}", null);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		Product patched = restTemplate.getForEntity(uri, Product.class).getBody();
+		assertThat(patched.getName()).isEqualTo("Wheel");
+		assertThat(patched.getDescription()).isEqualTo("Restored wheel");
+		assertThat(patched.getParent().getId()).isEqualTo(root.getId());
+		assertThat(restTemplate.exchange(uri, HttpMethod.GET, null, JSON_OBJECT).getBody()).containsEntry("version", 1);
+		
+		String tag = restTemplate.getForEntity(uri, String.class).getHeaders().getETag();
+		assertThat(patch(uri, "{\"parent\":null}", tag).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(patch(uri, "{\"name\":\"Rim\"}", tag).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(restTemplate.getForEntity(uri, Product.class).getBody().getParent()).isNull();
+		assertThat(patch(uri, "{\"parent\":{\"id\":" + root.getId() + "}}", null).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.getForEntity(uri, Product.class).getBody().getParent().getId()).isEqualTo(root.getId());
+		
+		assertThat(patch(uri, "{\"version\":7}", null).getBody()).isEqualTo(ErrorMessage.INVALID_PATCH);
+		assertThat(patch(uri, "[]", null).getBody()).isEqualTo(ErrorMessage.INVALID_PATCH);
+		assertThat(patch(uri, "{\"name\":\"\"}", null).getBody()).isEqualTo(ErrorMessage.EMPTY_FIELDS);
+		assertThat(patch("/product/" + String.valueOf(root.getId()), "{\"parent\":" + wheel.getId() + "}", null).getBody())
+				.isEqualTo(ErrorMessage.CYCLIC_PARENT_REFERENCE);
+		assertThat(patch(uri, "{\"parent\":-1}", null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		assertThat(patch("/product/-1", "{\"name\":\"Rim\"}", null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testPatchProduct_ifMatchOnProductVersion() {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Wheel");
+		String uri = "/product/" + String.valueOf(root.getId());
+		String tag = restTemplate.getForEntity(uri, String.class).getHeaders().getETag();
+		restTemplate.getForEntity("/product/" + String.valueOf(wheel.getId()), Product.class);
+		
+		//a new child changes the representation, not the columns being patched
+		insertChild(root, "Seat");
+		assertThat(restTemplate.getForEntity(uri, String.class).getHeaders().getETag()).isNotEqualTo(tag);
+		assertThat(patch(uri, "{\"name\":\"Chevrolet Camaro\"}", "\"0-0\", " + tag).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(patch(uri, "{\"name\":\"Camaro\"}", tag).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(patch(uri, "{\"name\":\"Camaro\"}", "W/" + tag).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(patch(uri, "{\"name\":\"Camaro\"}", "*").getStatusCode()).isEqualTo(HttpStatus.OK);
+		
+		//the patched name is written in the children, which are not evicted wholesale
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(wheel.getId()), Product.class).getBody().getParent().getName())
+			.isEqualTo("Camaro");
+	}
+	
+	@Test
+	public void testPatchImage_typeAndProduct() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Product other = insertProduct(new Product("Corvette", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String uri = "/product/image/" + String.valueOf(image.getId());
+		assertThat(patch(uri, "{\"type\":\"GIF\"}", null).getStatusCode()).isEqualTo(HttpStatus.OK);
+		Image patched = restTemplate.getForEntity(uri, Image.class).getBody();
+		assertThat(patched.getType()).isEqualTo(ImageType.GIF);
+		assertThat(patched.getProduct().getId()).isEqualTo(product.getId());
+		
+		assertThat(patch(uri, "{\"product\":{\"id\":" + other.getId() + "}}", null).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(product.getId()) + "/image", Image[].class).getBody()).isEmpty();
+		assertThat(restTemplate.getForEntity("/product/" + String.valueOf(other.getId()) + "/image", Image[].class).getBody())
+				.extracting("id").containsExactly(image.getId());
+		
+		assertThat(patch(uri, "{\"status\":\"READY\"}", null).getBody()).isEqualTo(ErrorMessage.INVALID_PATCH);
+		assertThat(patch(uri, "{\"type\":\"TIFF\"}", null).getBody()).isEqualTo(ErrorMessage.INVALID_PATCH);
+		assertThat(patch(uri, "{\"type\":null}", null).getBody()).isEqualTo(ErrorMessage.EMPTY_FIELDS);
+		assertThat(patch(uri, "{\"product\":-1}", null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testPatchImage_ifMatchOnImageVersion() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		Image image = insertImage(product);
+		String uri = "/product/image/" + String.valueOf(image.getId());
+		String tag = restTemplate.getForEntity(uri, String.class).getHeaders().getETag();
+		
+		//the product embedded in the representation changes, not the columns being patched
+		assertThat(patch("/product/" + String.valueOf(product.getId()), "{\"description\":\"Restored\"}", null).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.getForEntity(uri, String.class).getHeaders().getETag()).isNotEqualTo(tag);
+		assertThat(patch(uri, "{\"type\":\"GIF\"}", tag).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(patch(uri, "{\"type\":\"JPEG\"}", tag).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(patch(uri, "{\"type\":\"JPEG\"}", "*").getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(patch("/product/image/-1", "{\"type\":\"JPEG\"}", "*").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testGetProduct_cachedAfterFirstRead() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		long hits = restTemplate.getForEntity("/product/cache/stats", CacheReport[].class).getBody()[0].getHitCount();
+		
+		ResponseEntity<Product> response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.getForEntity("/product/cache/stats", CacheReport[].class).getBody()[0].getHitCount()).isGreaterThan(hits);
+	}
+	
+	@Test
+	public void testGetProduct_cacheEvictedOnNewChild() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		Product child = new Product("Wheel", "Vintage muscle wheel");
+		child.setParent(product);
+		child = insertProduct(child);
+		
+		ResponseEntity<Product> response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()), Product.class);
+		assertThat(response.getBody().getChildren()).extracting("id").containsExactly(child.getId());
+	}
+	
+	@Test
+	public void testGetProductImages_cacheEvictedOnImageChanges() {
+		Product product = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/image", Image[].class);
+		Image image = insertImage(product);
+		
+		ResponseEntity<Image[]> response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/image", Image[].class);
+		assertThat(response.getBody()).extracting("id").containsExactly(image.getId());
+		
+		restTemplate.delete("/product/image/" + String.valueOf(image.getId()));
+		response = restTemplate.getForEntity("/product/"+ String.valueOf(product.getId()) + "/image", Image[].class);
+		assertThat(response.getBody()).isEmpty();
+		assertThat(restTemplate.getForEntity("/product/image/" + String.valueOf(image.getId()), String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+	
+	@Test
+	public void testExportAndImportCatalog() throws IOException {
+		Product root = insertProduct(new Product("Mustang", "Vintage muscle car"));
+		Product wheel = insertChild(root, "Mustang wheel");
+		insertImage(wheel);
+		List<Map<String, Object>> records = exportCatalog();
+		Map<String, Object> rootRecord = record(records, "Mustang");
+		Map<String, Object> wheelRecord = record(records, "Mustang wheel");
+		assertThat(records.indexOf(rootRecord)).isLessThan(records.indexOf(wheelRecord));
+		assertThat(wheelRecord).containsEntry("kind", "PRODUCT").containsEntry("parent", rootRecord.get("id"));
+		//images follow the chunk of products they belong to
+		Map<String, Object> imageRecord = null;
+		for(Map<String, Object> record : records.subList(records.indexOf(wheelRecord) + 1, records.size())){
+			if(wheelRecord.get("id").equals(record.get("product"))){
+				imageRecord = record;
+			}
+		}
+		assertThat(imageRecord).containsEntry("kind", "IMAGE").containsEntry("type", "PNG");
+		
+		//the child comes before its parent
+		String body = "{\"kind\":\"PRODUCT\",\"id\":2,\"name\":\"Imported wheel\",\"description\":\"Spoked\",\"parent\":1}\n"
+				+ "{\"kind\":\"IMAGE\",\"id\":7,\"type\":\"JPEG\",\"product\":2}\n"
+				+ "{\"kind\":\"PRODUCT\",\"id\":1,\"name\":\"Imported car\",\"description\":\"Roadster\"}\n";
+		ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/product/import", HttpMethod.POST, ndjson(body), JSON_OBJECT);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsEntry("products", 2).containsEntry("images", 1).doesNotContainKey("error");
+		
+		records = exportCatalog();
+		Map<String, Object> car = record(records, "Imported car");
+		Map<String, Object> importedWheel = record(records, "Imported wheel");
+		assertThat(importedWheel).containsEntry("parent", car.get("id"));
+		ResponseEntity<Image[]> images = restTemplate.getForEntity("/product/" + importedWheel.get("id") + "/image", Image[].class);
+		assertThat(images.getBody()).hasSize(1);
+		assertThat(images.getBody()[0].getType()).isEqualTo(ImageType.JPEG);
+		assertThat(images.getBody()[0].getStatus()).isEqualTo(ImageStatus.NONE);
+	}
+	
+	@Test
+	public void testImportCatalog_invalidRecords() {
+		String body = "{\"kind\":\"PRODUCT\",\"id\":1,\"name\":\"Imported roadster\",\"description\":\"Convertible\"}\n"
+				+ "{\"kind\":\"PRODUCT\",\"id\":1,\"name\":\"Imported coupe\",\"description\":\"Hardtop\"}\n";
+		ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/product/import", HttpMethod.POST, ndjson(body), JSON_OBJECT);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(response.getBody()).containsEntry("error", ErrorMessage.DUPLICATE_IMPORT_ID).containsEntry("line", 2).containsEntry("products", 0);
+		
+		response = restTemplate.exchange("/product/import", HttpMethod.POST, ndjson("{\"kind\":\"PRODUCT\",\"id\":1,\"parent\":3,\"name\":\"Orphan\",\"description\":\"Part\"}\n{\"kind\":"), JSON_OBJECT);
+		assertThat(response.getBody()).containsEntry("error", ErrorMessage.INVALID_IMPORT_RECORD).containsEntry("line", 2);
+		
+		response = restTemplate.exchange("/product/import", HttpMethod.POST, ndjson("{\"kind\":\"PRODUCT\",\"id\":1,\"parent\":3,\"name\":\"Orphan\",\"description\":\"Part\"}\n"), JSON_OBJECT);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(response.getBody()).containsEntry("error", ErrorMessage.UNKNOWN_PARENT_PRODUCT).containsEntry("products", 1).doesNotContainKey("line");
+	}
+	
+	@Test
+	public void testCheckpoint_readsServedWhileWritesHeld() throws Exception {
+		Product root = insertProduct(new Product("Camaro", "Vintage muscle car"));
+		File file = new File(folder.getRoot(), "snapshot.sql.gz");
+		CatalogSnapshot snapshot = new CatalogSnapshot(dataSource, writeBarrier, file.getPath());
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> checkpoint;
+			Future<Product> write;
+			//a write in flight, which the checkpoint waits for
+			writeBarrier.enter();
+			try {
+				checkpoint = executor.submit(snapshot::checkpoint);
+				while(!writeBarrier.isBlocked()){
+					Thread.sleep(10);
+				}
+				assertThat(restTemplate.getForEntity("/product/" + String.valueOf(root.getId()), Product.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+				assertThat(restTemplate.getForEntity("/product/" + String.valueOf(root.getId()) + "/children", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+				
+				write = executor.submit(() -> insertChild(root, "Wheel"));
+				Thread.sleep(300);
+				assertThat(write.isDone()).isFalse();
+				assertThat(checkpoint.isDone()).isFalse();
+			} finally {
+				writeBarrier.exit();
+			}
+			checkpoint.get(10, TimeUnit.SECONDS);
+			assertThat(write.get(10, TimeUnit.SECONDS).getName()).isEqualTo("Wheel");
+			assertThat(file).exists();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
 	private Product insertProduct(Product product) {
 		HttpHeaders headers = new HttpHeaders();
 		headers.setContentType(MediaType.APPLICATION_JSON);
@@ -276,6 +1338,18 @@ public class RestProductEndpointTest {
 		return response.getBody();
 	}
 	
+	private Product insertChild(Product parent, String name) {
+		Product child = new Product(name, "Vintage muscle part");
+		child.setParent(parent);
+		return insertProduct(child);
+	}
+	
+	private HttpHeaders jsonHeaders() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return headers;
+	}
+	
 	private Image insertImage(Product product) {
 		Image image = new Image(ImageType.PNG);
 		image.setProduct(product);
@@ -286,4 +1360,138 @@ public class RestProductEndpointTest {
 		ResponseEntity<Image> response = restTemplate.postForEntity("/product/image", request, Image.class);
 		return response.getBody();
 	}
-}
\ No newline at end of file
+	
+	private HttpURLConnection openChangeStream(String lastEventId) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/product/changes/stream").openConnection();
+		connection.setRequestProperty(HttpHeaders.ACCEPT, "text/event-stream");
+		if(lastEventId != null){
+			connection.setRequestProperty("Last-Event-ID", lastEventId);
+		}
+		//never back to the keep-alive pool shared with the rest template, the stream is left unfinished
+		connection.setRequestProperty("Connection", "close");
+		connection.setReadTimeout(5000);
+		return connection;
+	}
+	
+	private Map<String, String> resetEvent(String lastEventId) throws IOException {
+		HttpURLConnection stream = openChangeStream(lastEventId);
+		Map<String, String> reset = nextEvent(new BufferedReader(new InputStreamReader(stream.getInputStream(), StandardCharsets.UTF_8)));
+		stream.disconnect();
+		assertThat(reset.get("event")).isEqualTo("reset");
+		return reset;
+	}
+	
+	/**
+	 * Reads the fields of the next event of a stream, skipping comments.
+	 */
+	private Map<String, String> nextEvent(BufferedReader events) throws IOException {
+		Map<String, String> fields = new HashMap<String, String>();
+		String line;
+		while((line = events.readLine()) != null && !(line.isEmpty() && !fields.isEmpty())){
+			int colon = line.indexOf(':');
+			if(colon > 0){
+				fields.put(line.substring(0, colon), line.substring(colon + 1).trim());
+			}
+		}
+		return fields;
+	}
+	
+	/**
+	 * Polls the delta after the given token until the given kind of change of the given id shows up, changes being held back for the settle window.
+	 */
+	private Map<String, Object> awaitChanges(long since, String kind, Long id) throws InterruptedException {
+		Map<String, Object> changes = restTemplate.exchange("/product/changes?since=" + since, HttpMethod.GET, null, JSON_OBJECT).getBody();
+		for(int attempt = 0; attempt < 50 && change(changes, kind, id) == null; attempt++){
+			Thread.sleep(100);
+			changes = restTemplate.exchange("/product/changes?since=" + since, HttpMethod.GET, null, JSON_OBJECT).getBody();
+		}
+		return changes;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> change(Map<String, Object> changes, String kind, Long id) {
+		for(Map<String, Object> change : (List<Map<String, Object>>) changes.get(kind)){
+			if(((Number) change.get("id")).longValue() == id){
+				return change;
+			}
+		}
+		return null;
+	}
+	
+	private ImageStatus awaitStatus(String uri) throws InterruptedException {
+		ImageStatus status = restTemplate.getForEntity(uri, Image.class).getBody().getStatus();
+		for(int attempt = 0; attempt < 50 && status == ImageStatus.PENDING; attempt++){
+			Thread.sleep(100);
+			status = restTemplate.getForEntity(uri, Image.class).getBody().getStatus();
+		}
+		return status;
+	}
+	
+	/**
+	 * PATCH through the Jersey client, the JDK connection used by the rest template does not support the method.
+	 */
+	private ResponseEntity<String> patch(String uri, String body, String ifMatch) {
+		Client client = ClientBuilder.newClient().property(HttpUrlConnectorProvider.SET_METHOD_WORKAROUND, true);
+		try {
+			Invocation.Builder request = client.target("http://localhost:" + port + uri).request();
+			if(ifMatch != null){
+				request.header(HttpHeaders.IF_MATCH, ifMatch);
+			}
+			javax.ws.rs.core.Response response = request.method("PATCH", Entity.entity(body, ContentType.MERGE_PATCH));
+			return new ResponseEntity<String>(response.readEntity(String.class), HttpStatus.valueOf(response.getStatus()));
+		} finally {
+			client.close();
+		}
+	}
+	
+	private HttpEntity<String> ndjson(String body) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.valueOf(ContentType.NDJSON));
+		return new HttpEntity<String>(body, headers);
+	}
+	
+	private List<Map<String, Object>> exportCatalog() throws IOException {
+		ResponseEntity<String> response = restTemplate.getForEntity("/product/export", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType().toString()).startsWith(ContentType.NDJSON);
+		List<Map<String, Object>> records = new ArrayList<Map<String, Object>>();
+		ObjectMapper mapper = new ObjectMapper();
+		for(String line : response.getBody().split("\n")){
+			if(!line.isEmpty()){
+				records.add(mapper.readValue(line, new TypeReference<Map<String, Object>>() {}));
+			}
+		}
+		return records;
+	}
+	
+	private static Map<String, Object> record(List<Map<String, Object>> records, String name) {
+		for(Map<String, Object> record : records){
+			if(name.equals(record.get("name"))){
+				return record;
+			}
+		}
+		return null;
+	}
+	
+	private HttpEntity<Void> ifNoneMatch(String tag) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(tag);
+		return new HttpEntity<Void>(headers);
+	}
+	
+	private <T> HttpEntity<T> ifMatch(T body, String tag) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.setIfMatch(tag);
+		return new HttpEntity<T>(body, headers);
+	}
+	
+	private HttpEntity<Void> accepting(String mediaType, String encoding) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setAccept(Collections.singletonList(MediaType.valueOf(mediaType)));
+		if(encoding != null){
+			headers.set(HttpHeaders.ACCEPT_ENCODING, encoding);
+		}
+		return new HttpEntity<Void>(headers);
+	}
+}
@@ -0,0 +1,34 @@
+package ws.endpoint;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ws.metrics.PersistenceCounters;
+import ws.metrics.StatementCountingInspector;
+
+/**
+ * Hibernate statement inspector counting the SQL statements prepared while serving requests.
+ * Only statements of threads counting for a request (see PersistenceCounters) are counted, so background work
+ * (derivative generation, tombstone purge, snapshots) cannot change the counts; the per-request counters are still fed.
+ * Sequence calls are not counted, since the pooled optimizer only issues them once every allocationSize ids.
+ */
+public class SqlStatementCounter extends StatementCountingInspector {
+	private static final long serialVersionUID = 1L;
+
+	private static final AtomicInteger COUNT = new AtomicInteger();
+
+	@Override
+	public String inspect(String sql) {
+		if(PersistenceCounters.current() != null && !sql.contains("next value for")){
+			COUNT.incrementAndGet();
+		}
+		return super.inspect(sql);
+	}
+
+	public static void reset(){
+		COUNT.set(0);
+	}
+
+	public static int count(){
+		return COUNT.get();
+	}
+}
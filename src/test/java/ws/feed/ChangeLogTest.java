@@ -0,0 +1,50 @@
+package ws.feed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ws.feed.ChangeRecord.Entity;
+import ws.feed.ChangeRecord.Operation;
+
+public class ChangeLogTest {
+	
+	@Test
+	public void testRead_fromCursor() throws InterruptedException {
+		ChangeLog log = new ChangeLog(4);
+		assertThat(log.read(0, 10)).isEmpty();
+		assertThat(log.await(0, 1, TimeUnit.MILLISECONDS)).isFalse();
+		log.append(Entity.PRODUCT, Operation.CREATED, 10L);
+		log.append(Entity.IMAGE, Operation.CREATED, 20L);
+		log.append(Entity.PRODUCT, Operation.DELETED, 10L);
+		
+		assertThat(log.await(0, 1, TimeUnit.MILLISECONDS)).isTrue();
+		assertThat(log.read(0, 10)).extracting("sequence").containsExactly(1L, 2L, 3L);
+		ChangeRecord record = log.read(1, 1).get(0);
+		assertThat(record.getEntity()).isEqualTo(Entity.IMAGE);
+		assertThat(record.getOperation()).isEqualTo(Operation.CREATED);
+		assertThat(record.getId()).isEqualTo(20L);
+		assertThat(log.read(3, 10)).isEmpty();
+	}
+	
+	@Test
+	public void testRead_overwrittenOrUnknownCursor() {
+		ChangeLog log = new ChangeLog(4);
+		for(long id = 1; id <= 6; id++){
+			log.append(Entity.PRODUCT, Operation.UPDATED, id);
+		}
+		//sequences 1 and 2 were overwritten: a reader that has only seen 1 missed 2
+		assertThat(log.read(1, 10)).isNull();
+		assertThat(log.read(2, 10)).extracting("sequence").containsExactly(3L, 4L, 5L, 6L);
+		//e.g. a sequence from before a restart
+		assertThat(log.read(7, 10)).isNull();
+	}
+	
+	@Test
+	public void testEpoch_differentPerLog() {
+		assertThat(new ChangeLog(4).getEpoch()).isNotEqualTo(new ChangeLog(4).getEpoch()).doesNotContain(":");
+		assertThat(new ChangeLog(4, "boot").getEpoch()).isEqualTo("boot");
+	}
+}
@@ -0,0 +1,87 @@
+package ws.persistence.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class ReplicaRoutingDataSourceTest {
+
+	@Test
+	public void testReadsStickToPrimaryAfterClientWrite() {
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(h2("sticky-primary"), Arrays.asList(h2("sticky-replica")), 60000);
+		routing.afterPropertiesSet();
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		TransactionTemplate write = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		TransactionTemplate read = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		read.setReadOnly(true);
+
+		ReadYourWrites client = ReadYourWrites.start(0);
+		try {
+			//no write committed yet
+			read.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+			assertThat(routing.getRoutedCount("replica-0")).isEqualTo(1);
+
+			write.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+			assertThat(client.isWritten()).isTrue();
+			long primary = routing.getRoutedCount(ReplicaRoutingDataSource.PRIMARY);
+			read.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+			assertThat(routing.getRoutedCount(ReplicaRoutingDataSource.PRIMARY)).isEqualTo(primary + 1);
+			assertThat(routing.getRoutedCount("replica-0")).isEqualTo(1);
+		} finally {
+			ReadYourWrites.stop(client);
+		}
+
+		//another client, and work without a client, are not sticky
+		ReadYourWrites other = ReadYourWrites.start(0);
+		try {
+			read.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+		} finally {
+			ReadYourWrites.stop(other);
+		}
+		read.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+		assertThat(routing.getRoutedCount("replica-0")).isEqualTo(3);
+		
+		//a client whose write committed elsewhere
+		ReadYourWrites returning = ReadYourWrites.start(System.currentTimeMillis());
+		try {
+			read.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+		} finally {
+			ReadYourWrites.stop(returning);
+		}
+		assertThat(routing.getRoutedCount("replica-0")).isEqualTo(3);
+	}
+
+	@Test
+	public void testNoStickiness() {
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(h2("primary"), Arrays.asList(h2("replica-0"), h2("replica-1")), 0);
+		routing.afterPropertiesSet();
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		TransactionTemplate write = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		TransactionTemplate read = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		read.setReadOnly(true);
+
+		write.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+		long primary = routing.getRoutedCount(ReplicaRoutingDataSource.PRIMARY);
+		for(int i = 0; i < 4; i++){
+			read.execute(status -> jdbc.queryForObject("select 1", Integer.class));
+		}
+		assertThat(routing.getRoutedCount(ReplicaRoutingDataSource.PRIMARY)).isEqualTo(primary);
+		assertThat(routing.getRoutedCount("replica-0")).isEqualTo(2);
+		assertThat(routing.getRoutedCount("replica-1")).isEqualTo(2);
+	}
+
+	private static JdbcDataSource h2(String name) {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + name);
+		return dataSource;
+	}
+}
@@ -0,0 +1,39 @@
+package ws.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ws.event.ProductChangeEvent;
+import ws.persistence.model.Product;
+
+public class ProductNameSuggesterTest {
+	private final ProductNameSuggester suggester = new ProductNameSuggester();
+	
+	@Test
+	public void testSuggest_mergesDeltaWithSortedNames() {
+		List<Product> products = new ArrayList<Product>();
+		for(long id = 1; id <= 2000; id++){
+			products.add(product(id, String.format("Part %04d", id)));
+		}
+		//larger than the minimum merge size, so these end up in the sorted arrays
+		suggester.onProductChange(ProductChangeEvent.saved(this, products));
+		suggester.onProductChange(ProductChangeEvent.saved(this, Arrays.asList(product(2001L, "Part 0010b"), product(5L, "Gear"))));
+		suggester.onProductChange(ProductChangeEvent.deleted(this, Arrays.asList(11L)));
+		
+		assertThat(suggester.suggest("part 001", 4)).extracting("id").containsExactly(10L, 2001L, 12L, 13L);
+		assertThat(suggester.suggest("part 0005", 10)).isEmpty();
+		assertThat(suggester.suggest("  GE", 10)).extracting("name").containsExactly("Gear");
+		assertThat(suggester.estimateBytes()).isGreaterThan(2000 * 16);
+	}
+	
+	private Product product(Long id, String name) {
+		Product product = new Product(name, "Vintage muscle part");
+		product.setId(id);
+		return product;
+	}
+}
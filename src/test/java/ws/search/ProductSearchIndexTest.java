@@ -0,0 +1,95 @@
+package ws.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ws.event.ProductChangeEvent;
+import ws.persistence.model.Product;
+
+public class ProductSearchIndexTest {
+	private final ProductSearchIndex index = new ProductSearchIndex();
+	
+	@Test
+	public void testSearch_afterCompaction() {
+		List<Product> products = new ArrayList<Product>();
+		List<Long> removed = new ArrayList<Long>();
+		for(long id = 1; id <= 300; id++){
+			products.add(product(id, "Part " + id, id % 3 == 0 ? "Chrome wheel" : "Leather seat"));
+			if(id % 3 != 0){
+				removed.add(id);
+			}
+		}
+		index.onProductChange(ProductChangeEvent.saved(this, products));
+		//two thirds of the documents are deleted, which triggers a compaction
+		index.onProductChange(ProductChangeEvent.deleted(this, removed));
+		index.onProductChange(ProductChangeEvent.saved(this, Collections.singletonList(product(301L, "Chrome bumper", "Chrome plated"))));
+		
+		assertThat(index.search("leather", 10)).isEmpty();
+		List<SearchHit> hits = index.search("chrome", 200);
+		assertThat(hits).hasSize(101);
+		assertThat(hits.get(0).getId()).isEqualTo(301L);
+		assertThat(index.search("part 150", 1)).extracting("id").containsExactly(150L);
+	}
+	
+	@Test
+	public void testSearch_bestHitsWithinLimit() {
+		List<Product> products = new ArrayList<Product>();
+		for(long id = 1; id <= 1000; id++){
+			products.add(product(id, id % 100 == 0 ? "Chrome wheel" : "Part " + id, id % 10 == 0 ? "Chrome plated" : "Leather seat"));
+		}
+		index.onProductChange(ProductChangeEvent.saved(this, products));
+		
+		//name matches weigh more than description matches
+		List<SearchHit> hits = index.search("chrome", 12);
+		assertThat(hits).hasSize(12);
+		assertThat(hits.subList(0, 10)).extracting("id").containsOnly(100L, 200L, 300L, 400L, 500L, 600L, 700L, 800L, 900L, 1000L);
+		assertThat(hits.get(10).getScore()).isLessThan(hits.get(9).getScore());
+		assertThat(index.search("chrome", 1000)).hasSize(100);
+		assertThat(index.search("chrome", 0)).isEmpty();
+		assertThat(index.search("bumper", 10)).isEmpty();
+	}
+	
+	@Test
+	public void testScoreMap_accumulatedAcrossGrowth() {
+		ScoreMap scores = new ScoreMap(1);
+		for(int doc = 0; doc < 10000; doc += 3){
+			scores.add(doc, 1.0);
+			scores.add(doc, 0.5);
+		}
+		assertThat(scores.size()).isEqualTo(3334);
+		assertThat(scores.slots()).isGreaterThanOrEqualTo(scores.size() * 2);
+		double total = 0;
+		for(int slot = 0; slot < scores.slots(); slot++){
+			if(scores.doc(slot) >= 0){
+				assertThat(scores.doc(slot) % 3).isEqualTo(0);
+				total += scores.score(slot);
+			}
+		}
+		assertThat(total).isEqualTo(3334 * 1.5);
+	}
+	
+	@Test
+	public void testPostings_largeValues() {
+		Postings postings = new Postings();
+		postings.add(3, 1);
+		postings.add(300, 200);
+		postings.add(5000000, 70000);
+		List<Integer> values = new ArrayList<Integer>();
+		postings.forEach((doc, frequency) -> {
+			values.add(doc);
+			values.add(frequency);
+		});
+		assertThat(values).containsExactly(3, 1, 300, 200, 5000000, 70000);
+	}
+	
+	private Product product(Long id, String name, String description) {
+		Product product = new Product(name, description);
+		product.setId(id);
+		return product;
+	}
+}
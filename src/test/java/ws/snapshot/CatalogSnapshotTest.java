@@ -0,0 +1,44 @@
+package ws.snapshot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import ws.persistence.datasource.WriteBarrier;
+
+public class CatalogSnapshotTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCheckpoint_restoredAfterChanges() {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:snapshot;DB_CLOSE_DELAY=-1");
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("create sequence product_seq");
+		jdbc.execute("create table product (id bigint primary key, name varchar(255), parent_id bigint references product(id))");
+		jdbc.update("insert into product values (product_seq.nextval, 'Camaro', null)");
+		jdbc.update("insert into product values (product_seq.nextval, 'Wheel', 1)");
+
+		File file = new File(folder.getRoot(), "catalog/snapshot.sql.gz");
+		CatalogSnapshot snapshot = new CatalogSnapshot(dataSource, new WriteBarrier(), file.getPath());
+		snapshot.checkpoint();
+		assertThat(file).exists();
+		assertThat(new File(file.getPath() + ".tmp")).doesNotExist();
+
+		//changes after the checkpoint are lost, as after a restart
+		jdbc.update("delete from product where id = 2");
+		jdbc.execute("create table image (id bigint primary key)");
+		snapshot.restore();
+		assertThat(jdbc.queryForList("select name from product order by id", String.class)).containsExactly("Camaro", "Wheel");
+		assertThat(jdbc.queryForObject("select count(*) from information_schema.tables where table_name = 'IMAGE'", Long.class)).isEqualTo(0);
+		assertThat(jdbc.queryForObject("select product_seq.nextval", Long.class)).isEqualTo(3);
+		jdbc.execute("drop all objects");
+	}
+}